@@ -0,0 +1,89 @@
+package com.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The AcceptMetrics class counts the connections accepted by one listener and
+ * derives its recent accept rate.
+ *
+ * <p>
+ * Accepts are counted in one-second buckets over a short sliding window. Only
+ * the listener's accept thread records, so a bucket is never reset and
+ * incremented concurrently; the atomics just make the counts safe to read from
+ * other threads.
+ * </p>
+ */
+public class AcceptMetrics {
+    private static final int WINDOW_SECONDS = 10;
+
+    private final String name;
+    private final AtomicLong totalAccepted = new AtomicLong();
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray bucketSeconds = new AtomicLongArray(WINDOW_SECONDS);
+
+    /**
+     * Creates metrics for a listener.
+     *
+     * @param name the listener name used when reporting
+     */
+    public AcceptMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one accepted connection.
+     */
+    public void recordAccept() {
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % WINDOW_SECONDS);
+        if (bucketSeconds.get(slot) != second) {
+            bucketCounts.set(slot, 0);
+            bucketSeconds.set(slot, second);
+        }
+        bucketCounts.incrementAndGet(slot);
+        totalAccepted.incrementAndGet();
+    }
+
+    /**
+     * Gets the listener name.
+     *
+     * @return the listener name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of connections accepted since the listener started.
+     *
+     * @return the total accepted connections
+     */
+    public long getTotalAccepted() {
+        return totalAccepted.get();
+    }
+
+    /**
+     * Gets the average accept rate over the last complete seconds of the window.
+     * The current, partial second is left out so the rate does not dip at the
+     * start of each second.
+     *
+     * @return accepted connections per second
+     */
+    public double getAcceptRate() {
+        long now = System.currentTimeMillis() / 1000;
+        long accepted = 0;
+        for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+            long second = bucketSeconds.get(slot);
+            if (second < now && second >= now - (WINDOW_SECONDS - 1)) {
+                accepted += bucketCounts.get(slot);
+            }
+        }
+        return accepted / (double) (WINDOW_SECONDS - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d accepted, %.1f/s", name, getTotalAccepted(), getAcceptRate());
+    }
+}
@@ -1,12 +1,16 @@
 package com.app;
 
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.security.KeyStore;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -32,10 +36,16 @@ import javax.net.ssl.*;
  */
 public class Acceptor {
     private final ServerSocket serverSocket;
+    private final ServerSocketChannel serverChannel;
     private Socket clientSocket;
     private final boolean isSecure;
+    private final TlsContext tlsContext;
     private static final int HTTP_PORT = 8080;
     private static final int HTTPS_PORT = 8443;
+
+    /** The bytes every HTTP/2 client sends first, RFC 7540 section 3.5. */
+    static final byte[] CONNECTION_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
     private final ConcurrentHashMap<Socket, String> protocolMap = new ConcurrentHashMap<>();
 
     /**
@@ -45,50 +55,61 @@ public class Acceptor {
      *                     bound to port 8080.
      */
     public Acceptor(boolean enableSSL) throws IOException {
-        isSecure = enableSSL;
-
-        if (enableSSL) {
-            File keystore = new File("keystore.jks");
-            if (!keystore.exists()) {
-                throw new IOException("Keystore file 'keystore.jks' not found. Please create it using keytool.");
-            }
-
-            try {
-                System.setProperty("javax.net.ssl.keyStore", "keystore.jks");
-                System.setProperty("javax.net.ssl.keyStorePassword", "password");
-
-                SSLContext sslContext = SSLContext.getInstance("TLS");
-                KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-                KeyStore ks = KeyStore.getInstance("JKS");
-                ks.load(new FileInputStream("keystore.jks"), "password".toCharArray());
-                kmf.init(ks, "password".toCharArray());
-                sslContext.init(kmf.getKeyManagers(), null, null);
-
-                SSLServerSocketFactory sslServerSocketFactory = sslContext.getServerSocketFactory();
-
-                SSLServerSocket sslServerSocket = (SSLServerSocket) sslServerSocketFactory
-                        .createServerSocket(HTTPS_PORT);
-
-                sslServerSocket.setEnabledProtocols(new String[] { "TLSv1.2", "TLSv1.3" });
-
-                SSLParameters sslParameters = sslServerSocket.getSSLParameters();
-
-                sslParameters.setApplicationProtocols(new String[] { "h2", "http/1/1" });
+        this(enableSSL, false);
+    }
 
-                sslServerSocket.setSSLParameters(sslParameters);
+    /**
+     * Constructs an Acceptor that listens on port 8443 (SSL/TLS) or port 8080,
+     * optionally sharing the port with other acceptors through SO_REUSEPORT. The
+     * kernel then spreads incoming connections across every socket bound to the
+     * port.
+     *
+     * @param enableSSL whether to accept TLS connections on port 8443
+     * @param reusePort whether to set SO_REUSEPORT before binding
+     * @throws IOException if the server socket cannot be created or bound, or
+     *                     if SO_REUSEPORT is not supported on this platform
+     */
+    public Acceptor(boolean enableSSL, boolean reusePort) throws IOException {
+        this(enableSSL ? new TlsContext(new ServerConfig()) : null, reusePort);
+    }
 
-                serverSocket = sslServerSocket;
-                System.out.println("Secure server with ALPN support listening on port " + HTTPS_PORT);
-                System.out.println("Supported protocols: " + Arrays.toString(sslParameters.getApplicationProtocols()));
+    /**
+     * Constructs an Acceptor that serves TLS on port 8443 using a shared
+     * {@link TlsContext}, or plaintext on port 8080 when no context is given.
+     *
+     * <p>
+     * TLS is layered over accepted connections rather than done by an
+     * SSLServerSocket, so that the handshake never runs on the accepting thread
+     * and the same channel can serve the NIO transport.
+     * </p>
+     *
+     * @param tlsContext the TLS configuration, or null for plaintext
+     * @param reusePort  whether to set SO_REUSEPORT before binding
+     * @throws IOException if the server socket cannot be created or bound, or
+     *                     if SO_REUSEPORT is not supported on this platform
+     */
+    public Acceptor(TlsContext tlsContext, boolean reusePort) throws IOException {
+        this.tlsContext = tlsContext;
+        isSecure = tlsContext != null;
 
-            } catch (Exception e) {
-                System.err.println("Failed server listening on port " + HTTPS_PORT);
-                e.printStackTrace();
-                throw new IOException("SSL initialization failed", e);
+        int port = isSecure ? HTTPS_PORT : HTTP_PORT;
+        serverChannel = ServerSocketChannel.open();
+        if (reusePort) {
+            try {
+                serverChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            } catch (UnsupportedOperationException e) {
+                serverChannel.close();
+                throw new IOException("SO_REUSEPORT is not supported on this platform", e);
             }
+        }
+        serverChannel.bind(new InetSocketAddress(port));
+        serverSocket = serverChannel.socket();
+
+        if (isSecure) {
+            Log.info("Secure server with ALPN support listening on port {}", HTTPS_PORT);
+            Log.info("Supported protocols: {}", Arrays.toString(tlsContext.getApplicationProtocols()));
         } else {
-            serverSocket = new ServerSocket(HTTP_PORT);
-            System.out.println("Server listening on port " + HTTP_PORT);
+            Log.info("Server listening on port {}", HTTP_PORT);
         }
         clientSocket = null;
     }
@@ -96,59 +117,180 @@ public class Acceptor {
     /**
      * Blocks until a client connects to the server, then returns the new client
      * socket.
-     * This method updates the internal clientSocket reference.
+     *
+     * <p>
+     * With SSL enabled the returned socket is an {@link SSLSocket} whose
+     * handshake has not started yet. The caller must pass it to
+     * {@link #negotiate(Socket)} on the thread that will serve it, so a slow
+     * peer cannot hold up the accept loop.
+     * </p>
      * 
      * @return a Socket connected to the client
      * @throws IOException if an I/O error occurs when waiting for a connection
      */
     public Socket acceptConnection() throws IOException {
-        Socket socket = serverSocket.accept();
-        if (socket instanceof SSLSocket) {
-            SSLSocket sslSocket = (SSLSocket) socket;
+        Socket socket;
+        try {
+            socket = serverSocket.accept();
+        } catch (ClosedChannelException e) {
+            // Report a closed channel the same way a plain ServerSocket does
+            throw new SocketException("Socket closed");
+        }
+        if (isSecure) {
+            return tlsContext.wrapSocket(socket);
+        }
+        protocolMap.put(socket, "http/1.1");
+        return socket;
+    }
+
+    /**
+     * Completes the TLS handshake of a socket returned by
+     * {@link #acceptConnection()} and records the protocol chosen through ALPN.
+     * When the client picked HTTP/2 the connection preface is read and checked
+     * as well. Plaintext sockets need no negotiation.
+     *
+     * @param socket the accepted socket
+     * @return true if the connection is ready to serve, false if the HTTP/2
+     *         preface was invalid and the socket should be closed
+     * @throws IOException if the handshake fails
+     */
+    public boolean negotiate(Socket socket) throws IOException {
+        if (!(socket instanceof SSLSocket)) {
+            return true;
+        }
+
+        SSLSocket sslSocket = (SSLSocket) socket;
+        long startNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        try {
             sslSocket.startHandshake();
-            String protocol = sslSocket.getApplicationProtocol();
-
-            if ("h2".equals(protocol)) {
-                System.out.println("HTTP/2 connection established");
-                boolean prefaceIsValid = verifyHttp2ConnectionPreface(sslSocket);
-                if (!prefaceIsValid) {
-                    sslSocket.close();
-                    return acceptConnection();
-                }
-                protocolMap.put(socket, "h2");
-            } else {
-                System.out.println("HTTP/1.1 connection established");
-                protocolMap.put(socket, "http/1.1");
+        } catch (IOException e) {
+            tlsContext.getMetrics().recordFailure();
+            throw e;
+        }
+        tlsContext.getMetrics().recordHandshake(TlsContext.isResumed(sslSocket.getSession(), startMillis),
+                System.nanoTime() - startNanos);
+        String protocol = sslSocket.getApplicationProtocol();
+
+        if ("h2".equals(protocol)) {
+            Log.debug("HTTP/2 connection established");
+            if (!verifyHttp2ConnectionPreface(sslSocket.getInputStream())) {
+                return false;
             }
+            protocolMap.put(socket, "h2");
         } else {
+            Log.debug("HTTP/1.1 connection established");
             protocolMap.put(socket, "http/1.1");
         }
-        return socket;
+        return true;
+    }
+
+    /**
+     * Gets the TLS configuration shared with the other listeners.
+     *
+     * @return the TLS context, or null when SSL is disabled
+     */
+    public TlsContext getTlsContext() {
+        return tlsContext;
     }
 
-    private boolean verifyHttp2ConnectionPreface(Socket socket) throws IOException {
-        byte[] CONNECTION_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Checks if this acceptor serves TLS connections.
+     *
+     * @return true if SSL/TLS is enabled
+     */
+    public boolean isSecure() {
+        return isSecure;
+    }
+
+    /**
+     * Accepts a pending connection from the non-blocking server channel.
+     * Plaintext connections always start out speaking HTTP/1.1; TLS connections
+     * are handed an engine from {@link TlsContext#createEngine()} by the caller.
+     *
+     * @return the accepted channel, or null if no connection is pending
+     * @throws IOException if an I/O error occurs while accepting
+     */
+    public SocketChannel acceptChannel() throws IOException {
+        return serverChannel.accept();
+    }
+
+    /**
+     * Gets the channel backing the server socket, for registration with an
+     * {@link EventLoop}.
+     *
+     * @return the server channel
+     */
+    public ServerSocketChannel getChannel() {
+        return serverChannel;
+    }
+
+    /**
+     * Checks whether a plaintext connection opens with the HTTP/2 connection
+     * preface, meaning the client speaks h2c with prior knowledge. Reading
+     * stops at the first byte that differs from the preface, so a short HTTP/1.1
+     * request never blocks the check, and every byte read is pushed back unless
+     * the whole preface matched.
+     *
+     * @param socket      the accepted socket, recorded as "h2" on a match
+     * @param inputStream the socket input, able to push back
+     *                    {@link #CONNECTION_PREFACE} bytes
+     * @return true if the preface was read and consumed
+     * @throws IOException if reading fails
+     */
+    public boolean detectPriorKnowledge(Socket socket, PushbackInputStream inputStream) throws IOException {
+        byte[] received = new byte[CONNECTION_PREFACE.length];
+        int totalRead = 0;
+
+        while (totalRead < received.length) {
+            int b = inputStream.read();
+            if (b == -1) {
+                break;
+            }
+            received[totalRead++] = (byte) b;
+            if (b != (CONNECTION_PREFACE[totalRead - 1] & 0xFF)) {
+                break;
+            }
+        }
+
+        if (totalRead == CONNECTION_PREFACE.length && Arrays.equals(received, CONNECTION_PREFACE)) {
+            Log.debug("Cleartext HTTP/2 connection established with prior knowledge");
+            protocolMap.put(socket, "h2");
+            return true;
+        }
+
+        inputStream.unread(received, 0, totalRead);
+        return false;
+    }
+
+    /**
+     * Reads the HTTP/2 connection preface and checks it is correct.
+     *
+     * @param inputStream the connection input
+     * @return true if the preface was valid
+     * @throws IOException if reading fails
+     */
+    public static boolean verifyHttp2ConnectionPreface(InputStream inputStream) throws IOException {
         byte[] preface = new byte[CONNECTION_PREFACE.length];
 
-        InputStream inputStream = socket.getInputStream();
         int totalRead = 0;
         int bytesRead;
 
         while (totalRead < CONNECTION_PREFACE.length) {
             bytesRead = inputStream.read(preface, totalRead, CONNECTION_PREFACE.length - totalRead);
             if (bytesRead == -1) {
-                System.err.println("Invalid HTTP/2 preface: incomplete read");
+                Log.debug("Invalid HTTP/2 preface: incomplete read");
                 return false;
             }
             totalRead += bytesRead;
         }
 
         if (!Arrays.equals(preface, CONNECTION_PREFACE)) {
-            System.err.println("Invalid HTTP/2 preface: incorrect magic string");
+            Log.debug("Invalid HTTP/2 preface: incorrect magic string");
             return false;
         }
 
-        System.out.println("Valid HTTP/2 connection preface received");
+        Log.debug("Valid HTTP/2 connection preface received");
         return true;
     }
 
@@ -167,7 +309,7 @@ public class Acceptor {
      */
     public void close() throws IOException {
         if (serverSocket != null) {
-            System.out.println("Server socket closed!");
+            Log.info("Server socket closed");
             serverSocket.close();
         }
         protocolMap.clear();
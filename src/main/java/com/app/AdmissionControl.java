@@ -0,0 +1,201 @@
+package com.app;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The AdmissionControl class decides whether an accepted connection is served.
+ *
+ * <p>
+ * Up to the connection limit every connection is admitted. Past it, a bounded
+ * number of connections are refused politely: they are held just long enough
+ * to read the request head or HTTP/2 preface and are answered with a
+ * pre-encoded "503 Service Unavailable" carrying Retry-After, or with SETTINGS
+ * and a GOAWAY whose last stream id of 0 tells the client that nothing was
+ * processed and the request can be retried. Once that pending budget is also
+ * spent, further connections are closed as soon as they are accepted. Either
+ * way the cost of saturation falls on the excess connections, not on the
+ * latency of the ones already admitted.
+ * </p>
+ */
+public class AdmissionControl {
+
+    /**
+     * What to do with a newly accepted connection.
+     */
+    public enum Decision {
+        /** Serve the connection. */
+        ADMIT,
+        /** Answer the first request with a 503 or GOAWAY, then close. */
+        REJECT,
+        /** Close the connection straight away. */
+        DROP
+    }
+
+    private final int maxConnections;
+    private final int maxPendingAccepts;
+    private final byte[] http1Rejection;
+    private final byte[] http2Rejection;
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger pendingRejections = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates the admission policy described by the configuration.
+     *
+     * @param config the server configuration holding the limits
+     */
+    public AdmissionControl(ServerConfig config) {
+        this.maxConnections = config.getMaxConnections();
+        this.maxPendingAccepts = config.getMaxPendingAccepts();
+        this.http1Rejection = encodeHttp1Rejection(config.getRetryAfterSeconds());
+        this.http2Rejection = encodeHttp2Rejection();
+    }
+
+    /**
+     * Decides whether a newly accepted connection is served. An admitted
+     * connection must later be given back with {@link #release()}, a rejected
+     * one with {@link #finishRejection()}.
+     *
+     * @return the decision
+     */
+    public Decision admit() {
+        if (activeConnections.incrementAndGet() <= maxConnections) {
+            admitted.incrementAndGet();
+            return Decision.ADMIT;
+        }
+        activeConnections.decrementAndGet();
+        return refuse();
+    }
+
+    /**
+     * Refuses a connection that cannot be served, either because the connection
+     * limit is reached or because an admitted connection found no room to wait
+     * for a worker thread. The caller must already have released any admission
+     * it held.
+     *
+     * @return {@link Decision#REJECT} while the pending budget lasts, otherwise
+     *         {@link Decision#DROP}
+     */
+    public Decision refuse() {
+        if (pendingRejections.incrementAndGet() <= maxPendingAccepts) {
+            rejected.incrementAndGet();
+            return Decision.REJECT;
+        }
+        pendingRejections.decrementAndGet();
+        dropped.incrementAndGet();
+        return Decision.DROP;
+    }
+
+    /**
+     * Gives back the slot of an admitted connection once it closes.
+     */
+    public void release() {
+        activeConnections.decrementAndGet();
+    }
+
+    /**
+     * Gives back the pending slot of a rejected connection once its refusal has
+     * been sent or abandoned.
+     */
+    public void finishRejection() {
+        pendingRejections.decrementAndGet();
+    }
+
+    /**
+     * Gets the bytes that refuse an HTTP/1.1 request: a 503 status line,
+     * Retry-After and Connection: close.
+     *
+     * @return the encoded response, which callers must not modify
+     */
+    public byte[] getHttp1Rejection() {
+        return http1Rejection;
+    }
+
+    /**
+     * Gets the bytes that refuse an HTTP/2 connection once its preface has been
+     * read: an empty SETTINGS frame followed by GOAWAY with last stream id 0 and
+     * REFUSED_STREAM.
+     *
+     * @return the encoded frames, which callers must not modify
+     */
+    public byte[] getHttp2Rejection() {
+        return http2Rejection;
+    }
+
+    /**
+     * Gets the number of connections currently admitted.
+     *
+     * @return the active connection count
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Gets the number of refused connections still being answered.
+     *
+     * @return the pending rejection count
+     */
+    public int getPendingRejections() {
+        return pendingRejections.get();
+    }
+
+    /**
+     * Gets the number of connections admitted since the server started.
+     *
+     * @return the admitted count
+     */
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    /**
+     * Gets the number of connections answered with a 503 or GOAWAY.
+     *
+     * @return the rejected count
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the number of connections closed without an answer.
+     *
+     * @return the dropped count
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private static byte[] encodeHttp1Rejection(int retryAfterSeconds) {
+        String body = "Service Unavailable";
+        String response = "HTTP/1.1 503 Service Unavailable\r\n"
+                + "Retry-After: " + retryAfterSeconds + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + "Connection: close\r\n\r\n"
+                + body;
+        return response.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] encodeHttp2Rejection() {
+        ByteBuffer settings = new SettingsFrame(0, 0, ByteBuffer.allocate(0)).encode();
+        ByteBuffer goAway = new GoAwayFrame(0, Http2Frame.REFUSED_STREAM).encode();
+        byte[] frames = new byte[settings.remaining() + goAway.remaining()];
+        settings.get(frames, 0, settings.remaining());
+        goAway.get(frames, frames.length - goAway.remaining(), goAway.remaining());
+        return frames;
+    }
+
+    @Override
+    public String toString() {
+        return "Admission: " + getAdmitted() + " admitted, " + getRejected() + " rejected, "
+                + getDropped() + " dropped, " + getActiveConnections() + "/" + maxConnections + " active";
+    }
+}
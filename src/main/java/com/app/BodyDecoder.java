@@ -0,0 +1,322 @@
+package com.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The BodyDecoder class finds the bytes of an HTTP/1.1 request body in the
+ * connection's read buffer, framed either by Content-Length or by chunked
+ * transfer coding.
+ *
+ * <p>
+ * Like {@link RequestParser} it is a state machine that carries on where it
+ * stopped when more bytes arrive, and it copies nothing: each call returns a
+ * slice of the read buffer holding the next run of body bytes. Chunk sizes,
+ * extensions and trailers are consumed and dropped. The declared length, or
+ * the running total of a chunked body, is checked against the configured
+ * maximum before the bytes are read, so an oversized body is refused without
+ * being received.
+ * </p>
+ */
+public class BodyDecoder {
+    static final int MAX_LINE_LENGTH = 4096;
+    static final int MAX_TRAILER_LENGTH = 8192;
+
+    private enum State {
+        LENGTH, SIZE, EXTENSION, SIZE_LF, CHUNK, CHUNK_CR, CHUNK_LF, TRAILER, TRAILER_LINE, TRAILER_LF,
+        TRAILER_END_LF, DONE
+    }
+
+    private final long contentLength;
+    private final long maxSize;
+    private State state;
+    private long remaining;
+    private long decoded;
+    private int sizeDigits;
+    private int lineLength;
+    private int trailerLength;
+
+    private BodyDecoder(long contentLength, long maxSize) {
+        this.contentLength = contentLength;
+        this.maxSize = maxSize;
+        this.state = contentLength >= 0 ? State.LENGTH : State.SIZE;
+        this.remaining = Math.max(contentLength, 0);
+    }
+
+    /**
+     * Checks whether a request head announces a body, without validating the
+     * framing headers. A Content-Length is read as {@link #forRequest} reads
+     * it, so "00" is no body to either; one that is not a valid length counts
+     * as a body, for forRequest to refuse.
+     *
+     * @param request the parsed request head
+     * @return true if the request has Transfer-Encoding or a Content-Length
+     *         other than 0
+     */
+    public static boolean hasBody(HttpRequest request) {
+        if (request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null) {
+            return true;
+        }
+        for (String contentLength : request.getRequestHeaders().getAll(HttpHeaders.CONTENT_LENGTH)) {
+            if (!isZero(contentLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isZero(String contentLength) {
+        if (contentLength.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < contentLength.length(); i++) {
+            if (contentLength.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Works out how a request's body is framed.
+     *
+     * @param request the parsed request head
+     * @param maxSize the largest body to accept, in bytes
+     * @return a decoder for the body, or null if the request has none
+     * @throws HttpStatusException if the framing headers are invalid or
+     *                             contradict each other, including repeated
+     *                             Content-Length values that differ (400),
+     *                             name a coding other than chunked (501), or
+     *                             declare a body larger than the maximum (413)
+     */
+    public static BodyDecoder forRequest(HttpRequest request, long maxSize) throws HttpStatusException {
+        HttpHeaders headers = request.getRequestHeaders();
+        List<String> transferEncodings = headers.getAll(HttpHeaders.TRANSFER_ENCODING);
+        List<String> contentLengths = headers.getAll(HttpHeaders.CONTENT_LENGTH);
+        String contentLength = contentLengths.isEmpty() ? null : contentLengths.get(0);
+
+        if (!transferEncodings.isEmpty()) {
+            // Both at once is how requests are smuggled past proxies
+            if (contentLength != null) {
+                throw new HttpStatusException("400 Bad Request", "Content-Length sent with Transfer-Encoding");
+            }
+            // A repeated header lists further codings, which are not supported
+            String transferEncoding = String.join(", ", transferEncodings);
+            if (!transferEncoding.trim().equalsIgnoreCase("chunked")) {
+                throw new HttpStatusException("501 Not Implemented",
+                        "Unsupported Transfer-Encoding: " + transferEncoding);
+            }
+            return new BodyDecoder(-1, maxSize);
+        }
+
+        if (contentLength == null) {
+            return null;
+        }
+        for (String other : contentLengths) {
+            if (!other.equals(contentLength)) {
+                throw new HttpStatusException("400 Bad Request", "Conflicting Content-Length values");
+            }
+        }
+        long length = parseContentLength(contentLength);
+        if (length > maxSize) {
+            throw new HttpStatusException("413 Payload Too Large",
+                    "Request body of " + length + " bytes exceeds " + maxSize);
+        }
+        return length == 0 ? null : new BodyDecoder(length, maxSize);
+    }
+
+    private static long parseContentLength(String value) throws HttpStatusException {
+        if (value.isEmpty() || value.length() > 18) {
+            throw new HttpStatusException("400 Bad Request", "Invalid Content-Length: " + value);
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new HttpStatusException("400 Bad Request", "Invalid Content-Length: " + value);
+            }
+            length = length * 10 + (c - '0');
+        }
+        return length;
+    }
+
+    /**
+     * Finds the next run of body bytes in the buffer.
+     *
+     * @param in the buffer to read between its position and limit; its
+     *           position is moved past everything consumed
+     * @return a slice of the buffer holding body bytes, or null if the buffer
+     *         holds no more of the body or the body is complete
+     * @throws HttpStatusException if the chunked framing is malformed (400) or
+     *                             the body grows past the maximum (413)
+     */
+    public ByteBuffer next(ByteBuffer in) throws HttpStatusException {
+        while (in.hasRemaining()) {
+            switch (state) {
+                case LENGTH:
+                case CHUNK: {
+                    int count = (int) Math.min(remaining, in.remaining());
+                    ByteBuffer data = in.slice(in.position(), count);
+                    in.position(in.position() + count);
+                    remaining -= count;
+                    decoded += count;
+                    if (remaining == 0) {
+                        state = state == State.LENGTH ? State.DONE : State.CHUNK_CR;
+                    }
+                    return data;
+                }
+                case SIZE: {
+                    byte b = in.get();
+                    int digit = Character.digit(b, 16);
+                    if (digit >= 0) {
+                        remaining = remaining * 16 + digit;
+                        if (++sizeDigits > 15) {
+                            throw malformed("chunk size too long");
+                        }
+                        if (remaining > maxSize - decoded) {
+                            throw tooLarge();
+                        }
+                    } else if (sizeDigits == 0) {
+                        throw malformed("missing chunk size");
+                    } else if (b == ';' || b == ' ' || b == '\t') {
+                        state = State.EXTENSION;
+                        lineLength = sizeDigits + 1;
+                    } else if (b == '\r') {
+                        state = State.SIZE_LF;
+                    } else if (b == '\n') {
+                        endOfSize();
+                    } else {
+                        throw malformed("invalid chunk size");
+                    }
+                    break;
+                }
+                case EXTENSION: {
+                    byte b = in.get();
+                    if (b == '\r') {
+                        state = State.SIZE_LF;
+                    } else if (b == '\n') {
+                        endOfSize();
+                    } else if (++lineLength > MAX_LINE_LENGTH) {
+                        throw malformed("chunk extension too long");
+                    }
+                    break;
+                }
+                case SIZE_LF:
+                    expect(in.get(), '\n');
+                    endOfSize();
+                    break;
+                case CHUNK_CR: {
+                    byte b = in.get();
+                    if (b == '\r') {
+                        state = State.CHUNK_LF;
+                    } else {
+                        expect(b, '\n');
+                        startChunk();
+                    }
+                    break;
+                }
+                case CHUNK_LF:
+                    expect(in.get(), '\n');
+                    startChunk();
+                    break;
+                case TRAILER: {
+                    byte b = in.get();
+                    if (b == '\r') {
+                        state = State.TRAILER_END_LF;
+                    } else if (b == '\n') {
+                        state = State.DONE;
+                        return null;
+                    } else {
+                        state = State.TRAILER_LINE;
+                        countTrailer();
+                    }
+                    break;
+                }
+                case TRAILER_LINE: {
+                    byte b = in.get();
+                    if (b == '\r') {
+                        state = State.TRAILER_LF;
+                    } else if (b == '\n') {
+                        state = State.TRAILER;
+                    } else {
+                        countTrailer();
+                    }
+                    break;
+                }
+                case TRAILER_LF:
+                    expect(in.get(), '\n');
+                    state = State.TRAILER;
+                    break;
+                case TRAILER_END_LF:
+                    expect(in.get(), '\n');
+                    state = State.DONE;
+                    return null;
+                case DONE:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the whole body, including any trailers, has been read.
+     *
+     * @return true once the body is complete
+     */
+    public boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    /**
+     * Gets the length the request declared for its body.
+     *
+     * @return the Content-Length, or -1 for a chunked body
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Gets the number of body bytes returned so far.
+     *
+     * @return the decoded byte count
+     */
+    public long getDecoded() {
+        return decoded;
+    }
+
+    private void endOfSize() {
+        if (remaining == 0) {
+            // The last chunk, which may be followed by trailer fields
+            state = State.TRAILER;
+        } else {
+            state = State.CHUNK;
+        }
+    }
+
+    private void startChunk() {
+        state = State.SIZE;
+        sizeDigits = 0;
+    }
+
+    private void countTrailer() throws HttpStatusException {
+        if (++trailerLength > MAX_TRAILER_LENGTH) {
+            throw malformed("trailer section too long");
+        }
+    }
+
+    private static void expect(byte actual, char expected) throws HttpStatusException {
+        if (actual != expected) {
+            throw malformed("expected line ending");
+        }
+    }
+
+    private static HttpStatusException malformed(String reason) {
+        return new HttpStatusException("400 Bad Request", "Malformed chunked body: " + reason);
+    }
+
+    private HttpStatusException tooLarge() {
+        return new HttpStatusException("413 Payload Too Large", "Request body exceeds " + maxSize + " bytes");
+    }
+}
@@ -0,0 +1,75 @@
+package com.app;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * The BufferPool class recycles direct byte buffers of a fixed size.
+ *
+ * <p>
+ * Direct buffers avoid a copy on every channel read and write but are costly to
+ * allocate and are only freed by the garbage collector, so they are kept for
+ * reuse instead. A pool belongs to one {@link EventLoop} and is not thread
+ * safe; buffers must be acquired and released on the loop thread.
+ * </p>
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param bufferSize the capacity of every buffer handed out
+     * @param maxPooled  the most idle buffers kept; extra releases are dropped
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating one if the pool is empty.
+     *
+     * @return a direct buffer of {@link #getBufferSize()} bytes
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not use it afterwards.
+     *
+     * @param buffer a buffer previously acquired from this pool
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || free.size() >= maxPooled) {
+            return;
+        }
+        buffer.clear();
+        free.push(buffer);
+    }
+
+    /**
+     * Gets the capacity of the buffers in this pool.
+     *
+     * @return the buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Gets the number of idle buffers waiting to be reused.
+     *
+     * @return the idle buffer count
+     */
+    public int getPooledCount() {
+        return free.size();
+    }
+}
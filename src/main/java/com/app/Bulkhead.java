@@ -0,0 +1,255 @@
+package com.app;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Bulkhead class keeps a group of costly routes from taking the capacity
+ * every other route needs.
+ *
+ * <p>
+ * A route is put behind a bulkhead by wrapping its handler with
+ * {@link #guard(Router.Handler)} or {@link #guardAsync(Router.AsyncHandler)}.
+ * At most a fixed number of its requests are handled at once, on threads of
+ * the bulkhead's own, so the shared workers are back for other requests as
+ * soon as they have handed one over. A request is in progress until its
+ * response is complete and, for a streamed response, until the body has been
+ * written or dropped, so a route that runs a command for as long as its body
+ * takes is bounded too. Requests beyond the limit wait in a queue of bounded
+ * depth; once that is full they are answered at once with 503 Service
+ * Unavailable and Retry-After, rather than left to pile up.
+ * </p>
+ *
+ * <p>
+ * Each bulkhead counts the requests it admits and rejects and records how
+ * long admitted ones waited for their turn.
+ * </p>
+ */
+public class Bulkhead {
+    private static final String REJECTION_BODY = "Service Unavailable";
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final ThreadPoolExecutor executor;
+
+    // Guarded by the queue's monitor
+    private final ArrayDeque<Task> queue = new ArrayDeque<>();
+    private int active;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    /**
+     * Creates a bulkhead.
+     *
+     * @param name          the name used for its threads and when reporting
+     * @param maxConcurrent how many requests are handled at once
+     * @param maxQueued     how many more may wait for their turn; 0 answers
+     *                      every request beyond the limit with 503
+     */
+    public Bulkhead(String name, int maxConcurrent, int maxQueued) {
+        if (maxConcurrent < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Bulkhead " + name + " needs maxConcurrent >= 1 and maxQueued >= 0");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // No more tasks than permits are ever handed to it, so its own queue
+        // never holds more than maxConcurrent
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "bulkhead-" + name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Puts a handler behind this bulkhead.
+     *
+     * @param handler the handler of the route
+     * @return a handler that runs it within the bulkhead's limits
+     */
+    public Router.AsyncHandler guard(Router.Handler handler) {
+        return guardAsync((request, response) -> {
+            handler.handle(request, response);
+            return CompletableFuture.completedFuture(response);
+        });
+    }
+
+    /**
+     * Puts an asynchronous handler behind this bulkhead. Its request holds a
+     * place in the bulkhead until the handler's future completes.
+     *
+     * @param handler the handler of the route
+     * @return a handler that runs it within the bulkhead's limits
+     */
+    public Router.AsyncHandler guardAsync(Router.AsyncHandler handler) {
+        return (request, response) -> submit(new Task(handler, request, response));
+    }
+
+    private CompletableFuture<HttpResponse> submit(Task task) {
+        boolean start = false;
+        boolean queued = false;
+        synchronized (queue) {
+            if (active < maxConcurrent) {
+                active++;
+                start = true;
+            } else if (queue.size() < maxQueued) {
+                queue.add(task);
+                queued = true;
+            }
+        }
+        if (!start && !queued) {
+            rejected.incrementAndGet();
+            Log.debug("Bulkhead {} full, rejecting {}", name, task.request.getPath());
+            HttpResponse response = task.response;
+            response.setStatusCode("503 Service Unavailable");
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            response.setBody(REJECTION_BODY);
+            return CompletableFuture.completedFuture(response);
+        }
+        admitted.incrementAndGet();
+        if (start) {
+            start(task);
+        }
+        return task.result;
+    }
+
+    private void start(Task task) {
+        queueWait.record(System.nanoTime() - task.queuedNanos);
+        executor.execute(() -> {
+            CompletableFuture<HttpResponse> handled;
+            try {
+                handled = task.handler.handle(task.request, task.response);
+            } catch (RuntimeException e) {
+                handled = CompletableFuture.failedFuture(e);
+            }
+            handled.whenComplete((response, failure) -> {
+                if (failure == null && response.isStreamed()) {
+                    // The body is produced after the head is sent
+                    response.onBodyDone(this::release);
+                } else {
+                    release();
+                }
+                if (failure != null) {
+                    task.result.completeExceptionally(failure);
+                } else {
+                    task.result.complete(response);
+                }
+            });
+        });
+    }
+
+    /**
+     * Gives back the place of a finished request, handing it straight to the
+     * next one waiting.
+     */
+    private void release() {
+        Task next;
+        synchronized (queue) {
+            next = queue.poll();
+            if (next == null) {
+                active--;
+            }
+        }
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    /**
+     * Gets the bulkhead's name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of requests in progress.
+     *
+     * @return the active request count
+     */
+    public int getActive() {
+        synchronized (queue) {
+            return active;
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting for their turn.
+     *
+     * @return the queue depth
+     */
+    public int getQueued() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Gets the number of requests admitted, run at once or queued, since the
+     * server started.
+     *
+     * @return the admitted count
+     */
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    /**
+     * Gets the number of requests answered with 503 because the queue was
+     * full.
+     *
+     * @return the rejected count
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets how long admitted requests waited before they were started.
+     *
+     * @return the queue wait histogram
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead " + name + ": " + getAdmitted() + " admitted, " + getRejected() + " rejected, "
+                + getActive() + "/" + maxConcurrent + " active, " + getQueued() + "/" + maxQueued
+                + " queued, queue wait " + queueWait;
+    }
+
+    /**
+     * A request admitted to the bulkhead, running or waiting.
+     */
+    private static final class Task {
+        private final Router.AsyncHandler handler;
+        private final HttpRequest request;
+        private final HttpResponse response;
+        private final long queuedNanos = System.nanoTime();
+        private final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+
+        private Task(Router.AsyncHandler handler, HttpRequest request, HttpResponse response) {
+            this.handler = handler;
+            this.request = request;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ConcurrentLongMap class is a thread-safe map from primitive long keys to
+ * objects.
+ *
+ * <p>
+ * Keys are never boxed: the map is split into lock-striped segments, each an
+ * open-addressing table of parallel {@code long[]} keys and {@code Object[]}
+ * values with linear probing. Removal shifts the following entries back into
+ * the gap instead of leaving tombstones, so a table that sees constant churn,
+ * such as the set of open connections, never needs cleaning up. Looking up,
+ * adding and removing an entry allocate nothing unless the segment has to
+ * grow.
+ * </p>
+ *
+ * <p>
+ * Every operation locks only the segment its key hashes to. Iteration locks
+ * one segment at a time, so like {@link java.util.concurrent.ConcurrentHashMap}
+ * it sees each entry that stays in the map throughout but is not an atomic
+ * snapshot of the whole map. Null values are not allowed.
+ * </p>
+ *
+ * @param <V> the type of the values
+ */
+public class ConcurrentLongMap<V> {
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    /**
+     * Creates a map with 16 segments.
+     */
+    public ConcurrentLongMap() {
+        this(DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Creates a map.
+     *
+     * @param concurrencyLevel the number of segments, rounded up to a power of
+     *                         two
+     */
+    ConcurrentLongMap(int concurrencyLevel) {
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Concurrency level must be positive");
+        }
+        int count = 1;
+        while (count < concurrencyLevel) {
+            count <<= 1;
+        }
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        this.segmentMask = count - 1;
+    }
+
+    /**
+     * Gets the value mapped to a key.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int hash = hash(key);
+        return (V) segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * Maps a key to a value, replacing any previous value.
+     *
+     * @param key   the key
+     * @param value the value, not null
+     * @return the previous value, or null if the key was not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not allowed");
+        }
+        int hash = hash(key);
+        return (V) segmentFor(hash).put(key, hash, value);
+    }
+
+    /**
+     * Removes the mapping for a key.
+     *
+     * @param key the key
+     * @return the value that was mapped, or null if the key was not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int hash = hash(key);
+        return (V) segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * Gets the number of mappings. Concurrent updates may or may not be
+     * counted.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Passes every value to the action, one segment at a time. The action runs
+     * while the segment is locked, so it must be quick and must not update this
+     * map.
+     *
+     * @param action the action to run for each value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> action) {
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                Object[] values = segment.values;
+                for (Object value : values) {
+                    if (value != null) {
+                        action.accept((V) value);
+                    }
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Copies the values into a new list. The list belongs to the caller, who may
+     * work through it at leisure while the map changes.
+     *
+     * @return the values
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        forEach(values::add);
+        return values;
+    }
+
+    private Segment segmentFor(int hash) {
+        // The top bits pick the segment and the bottom bits the slot within it
+        return segments[(hash >>> 24) & segmentMask];
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * One lock and the open-addressing table it guards.
+     */
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long[] keys = new long[INITIAL_SEGMENT_CAPACITY];
+        private Object[] values = new Object[INITIAL_SEGMENT_CAPACITY];
+        private volatile int size;
+
+        Object get(long key, int hash) {
+            lock.lock();
+            try {
+                int index = indexOf(key, hash);
+                return index >= 0 ? values[index] : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Object put(long key, int hash, Object value) {
+            lock.lock();
+            try {
+                int mask = values.length - 1;
+                int index = hash & mask;
+                while (values[index] != null) {
+                    if (keys[index] == key) {
+                        Object previous = values[index];
+                        values[index] = value;
+                        return previous;
+                    }
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = value;
+                size++;
+                // Half full at most keeps probe sequences short
+                if (size * 2 > values.length) {
+                    resize();
+                }
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Object remove(long key, int hash) {
+            lock.lock();
+            try {
+                int index = indexOf(key, hash);
+                if (index < 0) {
+                    return null;
+                }
+                Object previous = values[index];
+                values[index] = null;
+                size--;
+                closeGap(index);
+                return previous;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int indexOf(long key, int hash) {
+            int mask = values.length - 1;
+            int index = hash & mask;
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Moves entries that probed past the emptied slot back into it, so
+         * every entry stays reachable from its home slot.
+         */
+        private void closeGap(int gap) {
+            int mask = values.length - 1;
+            int index = gap;
+            while (true) {
+                index = (index + 1) & mask;
+                if (values[index] == null) {
+                    return;
+                }
+                int home = hash(keys[index]) & mask;
+                // The entry may move only if its home is not between the gap
+                // and where it sits now, cyclically
+                boolean movable = gap <= index
+                        ? home <= gap || home > index
+                        : home <= gap && home > index;
+                if (movable) {
+                    keys[gap] = keys[index];
+                    values[gap] = values[index];
+                    values[index] = null;
+                    gap = index;
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldValues.length * 2];
+            int mask = values.length - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int index = hash(oldKeys[i]) & mask;
+                    while (values[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    keys[index] = oldKeys[i];
+                    values[index] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.app;
+
+import java.util.function.Consumer;
+
+/**
+ * The ConnectionDeadline class tracks the one deadline a connection is waiting
+ * on at a time, backed by a shared {@link TimingWheel}.
+ *
+ * <p>
+ * Each phase of a connection has its own limit: the TLS handshake and request
+ * head must arrive within the header timeout, the wait for the next request on
+ * a persistent connection is bounded by the keep-alive timeout, and so on.
+ * Arming a new phase cancels the previous deadline. An {@link Kind#IDLE}
+ * deadline is refreshed by {@link #touch()} without touching the wheel: when it
+ * falls due it checks the last activity and re-arms for the time remaining, so
+ * a busy HTTP/2 connection costs one timeout per idle period rather than one
+ * per frame.
+ * </p>
+ *
+ * <p>
+ * Arming and cancelling may happen on the connection's thread while the wheel
+ * expires deadlines on another. Every arm starts a new generation, so a
+ * deadline that was already firing when it was replaced does nothing. The
+ * generation is checked and the deadline's fields are changed under the
+ * deadline's lock, so an expiry can never clear or replace a deadline armed
+ * after it. The expiry callback itself runs outside the lock.
+ * </p>
+ */
+public class ConnectionDeadline {
+
+    /**
+     * The phases of a connection that have a deadline.
+     */
+    public enum Kind {
+        /** No bytes read, or a queued write making no progress. */
+        IDLE,
+        /** Waiting for the TLS handshake or a complete request head. */
+        REQUEST_HEADER,
+        /** Waiting for the rest of a request body. */
+        REQUEST_BODY,
+        /** Waiting for the next request on a persistent connection. */
+        KEEP_ALIVE,
+        /** Waiting for the client to acknowledge the server's HTTP/2 SETTINGS. */
+        SETTINGS_ACK
+    }
+
+    private final TimingWheel wheel;
+    private final ServerConfig config;
+    private final Consumer<Kind> onExpiry;
+    private volatile TimingWheel.Timeout timeout;
+    private volatile Kind kind;
+    private volatile long lastActivityMillis;
+    private volatile int generation;
+
+    /**
+     * Creates a deadline with nothing armed.
+     *
+     * @param wheel    the wheel that times the deadline
+     * @param config   the configuration holding the timeout of each kind
+     * @param onExpiry called with the kind that expired, on the thread that
+     *                 advances the wheel
+     */
+    public ConnectionDeadline(TimingWheel wheel, ServerConfig config, Consumer<Kind> onExpiry) {
+        this.wheel = wheel;
+        this.config = config;
+        this.onExpiry = onExpiry;
+    }
+
+    /**
+     * Replaces the current deadline with a new one of the given kind.
+     *
+     * @param kind the phase the connection is entering
+     */
+    public synchronized void arm(Kind kind) {
+        cancel();
+        int armed = generation;
+        this.kind = kind;
+        this.lastActivityMillis = TimingWheel.monotonicMillis();
+        this.timeout = wheel.schedule(() -> expire(armed), getTimeoutMillis(kind));
+    }
+
+    /**
+     * Records activity on the connection, which postpones an idle deadline.
+     */
+    public void touch() {
+        lastActivityMillis = TimingWheel.monotonicMillis();
+    }
+
+    /**
+     * Cancels the current deadline, if any.
+     */
+    public synchronized void cancel() {
+        generation++;
+        TimingWheel.Timeout current = timeout;
+        if (current != null) {
+            current.cancel();
+            timeout = null;
+        }
+        kind = null;
+    }
+
+    /**
+     * Gets the kind of deadline currently armed.
+     *
+     * @return the kind, or null if none is armed
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    private void expire(int armed) {
+        Kind expired;
+        synchronized (this) {
+            expired = kind;
+            if (armed != generation || expired == null) {
+                return;
+            }
+
+            if (expired == Kind.IDLE) {
+                long idleMillis = TimingWheel.monotonicMillis() - lastActivityMillis;
+                long remaining = getTimeoutMillis(expired) - idleMillis;
+                if (remaining > 0) {
+                    timeout = wheel.schedule(() -> expire(armed), remaining);
+                    return;
+                }
+            }
+
+            timeout = null;
+            kind = null;
+        }
+        // Outside the lock, as the callback usually closes the connection
+        // and cancels or re-arms this deadline
+        onExpiry.accept(expired);
+    }
+
+    private long getTimeoutMillis(Kind kind) {
+        switch (kind) {
+            case IDLE:
+                return config.getIdleTimeout();
+            case REQUEST_HEADER:
+                return config.getRequestHeaderTimeout();
+            case REQUEST_BODY:
+                return config.getRequestBodyTimeout();
+            case KEEP_ALIVE:
+                return config.getKeepAliveTimeout();
+            case SETTINGS_ACK:
+                return config.getSettingsAckTimeout();
+            default:
+                throw new IllegalArgumentException("Unknown deadline: " + kind);
+        }
+    }
+}
@@ -1,73 +1,103 @@
 package com.app;
 
-import java.net.Socket;
-import java.util.Collection;
-import java.util.concurrent.ConcurrentHashMap;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Manages client socket connections to the HTTP server.
+ * Tracks the connections open on the server.
  *
  * <p>
- * This class provides functionality to track, add, and remove client
- * connections
- * using a thread-safe concurrent hash map. Each connection is uniquely
- * identified by
- * a combination of the client's IP address and port number.
+ * Each connection is given a numeric id when it opens and is registered under
+ * it in a {@link ConcurrentLongMap}, with a {@link ConnectionStats} entry that
+ * its transport keeps up to date. Ids are never reused, so unlike the client's
+ * address and port they cannot collide with a connection that has just closed,
+ * and registering or removing a connection neither builds a key string nor
+ * logs.
+ * </p>
+ *
+ * <p>
+ * {@link #snapshot()} copies the open connections so that shutdown and admin
+ * views can walk them without holding up connections opening and closing.
  * </p>
  */
 public class ConnectionManager {
-    private final ConcurrentHashMap<String, Socket> connectedClients = new ConcurrentHashMap<>();
+    private final ConcurrentLongMap<ConnectionStats> connections = new ConcurrentLongMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * Registers a newly accepted connection under a fresh id.
+     *
+     * @param remoteAddress the client's address
+     * @return the connection's entry, to be passed to {@link #close} once the
+     *         connection ends
+     */
+    public ConnectionStats open(SocketAddress remoteAddress) {
+        ConnectionStats stats = new ConnectionStats(nextId.incrementAndGet(), remoteAddress);
+        connections.put(stats.getId(), stats);
+        return stats;
+    }
 
     /**
-     * Generates a unique connection ID for a socket.
+     * Removes a connection that has ended. Safe to call more than once.
      *
-     * @param socket The client socket for which to generate an ID
-     * @return A string in the format "ipv6Address:port" that uniquely identifies
-     *         the connection
+     * @param stats the connection's entry
      */
-    private String getConnectionId(Socket socket) {
-        return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+    public void close(ConnectionStats stats) {
+        connections.remove(stats.getId());
     }
 
     /**
-     * Checks if a client is already connected to the server.
+     * Looks up an open connection.
      *
-     * @param socket The client socket to check
-     * @return true if the client is already connected
+     * @param id the connection id
+     * @return the connection's entry, or null if it is not open
      */
-    public boolean isClientConnected(Socket socket) {
-        String connectionId = getConnectionId(socket);
-        return connectedClients.containsKey(connectionId);
+    public ConnectionStats get(long id) {
+        return connections.get(id);
     }
 
     /**
-     * Adds a new client connection to the manager.
+     * Gets the number of open connections.
      *
-     * @param socket The client socket to add
+     * @return the open connection count
      */
-    public void addConnectedClient(Socket socket) {
-        String connectionId = getConnectionId(socket);
-        connectedClients.put(connectionId, socket);
-        System.out.println("Added client: " + connectionId);
+    public int getOpenConnections() {
+        return connections.size();
     }
 
     /**
-     * Removes a client connection from the manager
+     * Gets the number of connections opened since the server started.
      *
-     * @param socket The client socket to remove
+     * @return the opened count
      */
-    public void removeClient(Socket socket) {
-        String connectionId = getConnectionId(socket);
-        connectedClients.remove(connectionId);
-        System.out.println("Removed client: " + connectionId);
+    public long getOpenedConnections() {
+        return nextId.get();
     }
 
     /**
-     * Returns all currently connected client sockets.
+     * Passes every open connection to the action. The action must be quick and
+     * must not open or close connections; use {@link #snapshot()} for anything
+     * slower.
      *
-     * @return A collection of all client sockets currently managed by this class
+     * @param action the action to run for each connection
      */
-    public Collection<Socket> getAllConnectedClients() {
-        return connectedClients.values();
+    public void forEach(Consumer<? super ConnectionStats> action) {
+        connections.forEach(action);
+    }
+
+    /**
+     * Copies the entries of every open connection.
+     *
+     * @return the open connections, in no particular order
+     */
+    public List<ConnectionStats> snapshot() {
+        return connections.values();
+    }
+
+    @Override
+    public String toString() {
+        return "Connections: " + getOpenConnections() + " open, " + getOpenedConnections() + " opened";
     }
 }
@@ -0,0 +1,199 @@
+package com.app;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ConnectionStats class is the {@link ConnectionManager} entry for one open
+ * connection: who it is with, what protocol it speaks, when it opened and how
+ * much it has carried.
+ *
+ * <p>
+ * Byte counts are of application data, so a TLS connection counts the
+ * plaintext rather than the records on the wire. The counters are updated by
+ * whichever thread moves the bytes and may be read at any time.
+ * </p>
+ */
+public class ConnectionStats {
+    private final long id;
+    private final SocketAddress remoteAddress;
+    private final long openedAtMillis;
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile String protocol;
+
+    /**
+     * Creates the entry for a connection that has just opened.
+     *
+     * @param id            the connection id
+     * @param remoteAddress the client's address
+     */
+    ConnectionStats(long id, SocketAddress remoteAddress) {
+        this.id = id;
+        this.remoteAddress = remoteAddress;
+        this.openedAtMillis = ServerClock.currentTimeMillis();
+    }
+
+    /**
+     * Gets the id the connection is registered under.
+     *
+     * @return the connection id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets the client's address.
+     *
+     * @return the remote address, or null if the socket was already closed
+     */
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Gets the wall-clock time the connection opened.
+     *
+     * @return the open time in epoch milliseconds
+     */
+    public long getOpenedAtMillis() {
+        return openedAtMillis;
+    }
+
+    /**
+     * Gets the protocol the connection speaks.
+     *
+     * @return "http/1.1", "h2" or "h2c", or null until the protocol is known
+     */
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Records the protocol the connection speaks, which changes once if the
+     * connection is upgraded.
+     *
+     * @param protocol "http/1.1", "h2" or "h2c"
+     */
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Adds to the bytes read from the client.
+     *
+     * @param count the number of bytes
+     */
+    public void addBytesIn(long count) {
+        bytesIn.addAndGet(count);
+    }
+
+    /**
+     * Adds to the bytes written to the client.
+     *
+     * @param count the number of bytes
+     */
+    public void addBytesOut(long count) {
+        bytesOut.addAndGet(count);
+    }
+
+    /**
+     * Counts a request received on the connection.
+     */
+    public void recordRequest() {
+        requests.incrementAndGet();
+    }
+
+    /**
+     * Gets the bytes read from the client.
+     *
+     * @return the byte count
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * Gets the bytes written to the client.
+     *
+     * @return the byte count
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * Gets the number of requests received on the connection.
+     *
+     * @return the request count
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Wraps a stream so every byte read through it is counted as bytes in.
+     *
+     * @param in the stream to read from
+     * @return the counting stream
+     */
+    public InputStream countInput(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bytesIn.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0) {
+                    bytesIn.addAndGet(count);
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Wraps a stream so every byte written through it is counted as bytes out.
+     *
+     * @param out the stream to write to
+     * @return the counting stream
+     */
+    public OutputStream countOutput(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut.incrementAndGet();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                // FilterOutputStream would write the array a byte at a time
+                out.write(b, off, len);
+                bytesOut.addAndGet(len);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        long ageSeconds = (ServerClock.currentTimeMillis() - openedAtMillis) / 1000;
+        return "#" + id + " " + remoteAddress + " " + (protocol != null ? protocol : "-") + ", open " + ageSeconds
+                + "s, " + getRequests() + " requests, " + getBytesIn() + " bytes in, " + getBytesOut()
+                + " bytes out";
+    }
+}
@@ -0,0 +1,228 @@
+package com.app;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The EventLoop class is a single-threaded reactor built on a NIO
+ * {@link Selector}.
+ *
+ * <p>
+ * All channels registered with a loop are serviced by its one thread, so any
+ * state that is only touched from {@link ReadyHandler} callbacks or from tasks
+ * passed to {@link #execute(Runnable)} needs no further synchronisation.
+ * </p>
+ */
+public class EventLoop implements Executor {
+    // Large enough for any TLS record, including the 32 KB fragments some
+    // peers negotiate
+    private static final int TLS_BUFFER_SIZE = 33 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    /**
+     * Callback invoked on the loop thread when a registered channel is ready.
+     */
+    interface ReadyHandler {
+        void onReady(SelectionKey key) throws IOException;
+    }
+
+    private final String name;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final BufferPool bufferPool = new BufferPool(TLS_BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private final TimingWheel timingWheel = new TimingWheel();
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Creates a new event loop. The loop does not run until {@link #start()} is
+     * called.
+     *
+     * @param name the name given to the loop thread
+     * @throws IOException if the selector cannot be opened
+     */
+    public EventLoop(String name) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Starts the loop thread.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, name);
+        thread.start();
+    }
+
+    /**
+     * Checks if the caller is running on this loop's thread.
+     *
+     * @return true if called from the loop thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Queues a task to run on the loop thread and wakes the selector.
+     *
+     * @param task the task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers a channel with this loop. Must be called from the loop thread;
+     * other threads should wrap the call in {@link #execute(Runnable)}.
+     *
+     * @param channel the channel, which is switched to non-blocking mode
+     * @param ops     the initial interest set
+     * @param handler the callback invoked when the channel is ready
+     * @return the selection key for the registration
+     * @throws IOException if the channel cannot be registered
+     */
+    public SelectionKey register(SelectableChannel channel, int ops, ReadyHandler handler) throws IOException {
+        channel.configureBlocking(false);
+        return channel.register(selector, ops, handler);
+    }
+
+    /**
+     * Records that a connection has been assigned to this loop.
+     */
+    public void connectionOpened() {
+        connectionCount.incrementAndGet();
+    }
+
+    /**
+     * Records that a connection serviced by this loop has closed.
+     */
+    public void connectionClosed() {
+        connectionCount.decrementAndGet();
+    }
+
+    /**
+     * Gets the number of open connections serviced by this loop.
+     *
+     * @return the connection count
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Gets the pool of direct buffers used for TLS records on this loop. It may
+     * only be used from the loop thread.
+     *
+     * @return the loop's buffer pool
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Gets the wheel that times the deadlines of this loop's connections. Its
+     * tasks run on the loop thread, and it should only be used from there.
+     *
+     * @return the loop's timing wheel
+     */
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    /**
+     * Stops the loop and closes every channel still registered with it.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                // Wake at least once per tick while any deadline is pending
+                long timeout = timingWheel.getMillisUntilNextTick();
+                if (timeout > 0) {
+                    selector.select(timeout);
+                } else {
+                    selector.select();
+                }
+                runTasks();
+                processSelectedKeys();
+                timingWheel.advance();
+            } catch (IOException e) {
+                Log.error("Event loop " + name + " error: {}", e.getMessage());
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                Log.error("Event loop task failed", e);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+
+            ReadyHandler handler = (ReadyHandler) key.attachment();
+            try {
+                if (key.isValid()) {
+                    handler.onReady(key);
+                }
+            } catch (CancelledKeyException e) {
+                // Channel was closed by an earlier handler in this batch
+            } catch (IOException e) {
+                Log.warn("Error servicing channel: {}", e.getMessage());
+                closeQuietly(key);
+            } catch (RuntimeException e) {
+                // A bug in one channel must not stop the loop serving the
+                // rest. Connections catch their own, to close with cleanup.
+                Log.error("Unexpected error servicing channel", e);
+                closeQuietly(key);
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            Log.warn("Error closing selector: {}", e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+}
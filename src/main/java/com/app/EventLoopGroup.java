@@ -0,0 +1,88 @@
+package com.app;
+
+import java.io.IOException;
+
+/**
+ * The EventLoopGroup class owns a fixed set of worker {@link EventLoop}s and
+ * decides which one services each new connection.
+ *
+ * <p>
+ * A connection stays on the loop it is assigned to for its whole life, so its
+ * protocol state is confined to one thread. {@link #next()} is intended to be
+ * called from a single accepting thread.
+ * </p>
+ */
+public class EventLoopGroup {
+    private final EventLoop[] loops;
+    private final LoopAssignment assignment;
+    private int nextIndex;
+
+    /**
+     * Creates a group of event loops. The loops do not run until
+     * {@link #start()} is called.
+     *
+     * @param name       the prefix used to name the loop threads
+     * @param size       the number of loops
+     * @param assignment how connections are spread across the loops
+     * @throws IOException if a loop's selector cannot be opened
+     */
+    public EventLoopGroup(String name, int size, LoopAssignment assignment) throws IOException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Event loop group needs at least one loop");
+        }
+
+        this.loops = new EventLoop[size];
+        this.assignment = assignment;
+        for (int i = 0; i < size; i++) {
+            loops[i] = new EventLoop(name + "-" + i);
+        }
+    }
+
+    /**
+     * Starts every loop in the group.
+     */
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    /**
+     * Picks the loop that should service the next connection.
+     *
+     * @return the chosen loop
+     */
+    public EventLoop next() {
+        if (assignment == LoopAssignment.LEAST_CONNECTIONS) {
+            EventLoop least = loops[0];
+            for (int i = 1; i < loops.length; i++) {
+                if (loops[i].getConnectionCount() < least.getConnectionCount()) {
+                    least = loops[i];
+                }
+            }
+            return least;
+        }
+
+        EventLoop loop = loops[nextIndex];
+        nextIndex = (nextIndex + 1) % loops.length;
+        return loop;
+    }
+
+    /**
+     * Gets the number of loops in the group.
+     *
+     * @return the group size
+     */
+    public int size() {
+        return loops.length;
+    }
+
+    /**
+     * Stops every loop in the group.
+     */
+    public void shutdown() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+}
@@ -6,10 +6,13 @@ import com.twitter.hpack.Decoder;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.io.IOException;
 import java.io.OutputStream;
 
-public class Http2ConnectionManager extends ConnectionManager {
+public class Http2ConnectionManager {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     private final ConcurrentHashMap<Integer, Http2Stream> streams = new ConcurrentHashMap<>();
 
     private final Http2Settings localSettings = new Http2Settings();
@@ -17,9 +20,17 @@ public class Http2ConnectionManager extends ConnectionManager {
 
     private int connectionWindowSize = 65535;
 
+    // ReentrantLocks rather than synchronized so virtual threads are never
+    // pinned to their carrier. The write lock also keeps HPACK encoding and the
+    // frames it produces in the same order when several streams respond at once.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
     private int lastStreamId = 0;
     private boolean goAwaySent = false;
     private boolean goAwayReceived = false;
+    private volatile boolean settingsAckPending = false;
+    private volatile boolean frameDumps = false;
 
     private final Encoder encoder = new Encoder(remoteSettings.getHeaderTableSize());
     private final Decoder decoder = new Decoder(remoteSettings.getMaxHeaderListSize(),
@@ -59,21 +70,36 @@ public class Http2ConnectionManager extends ConnectionManager {
         remoteSettings.merge(settings);
     }
 
-    public synchronized boolean consumeConnectionWindow(int size) {
-        if (connectionWindowSize >= size) {
-            connectionWindowSize -= size;
-            return true;
+    public boolean consumeConnectionWindow(int size) {
+        lock.lock();
+        try {
+            if (connectionWindowSize >= size) {
+                connectionWindowSize -= size;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
-    public synchronized void increaseConnectionWindow(int increment) {
-        connectionWindowSize += increment;
+    public void increaseConnectionWindow(int increment) {
+        lock.lock();
+        try {
+            connectionWindowSize += increment;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized int getNextStreamId() {
-        lastStreamId += 2;
-        return lastStreamId;
+    public int getNextStreamId() {
+        lock.lock();
+        try {
+            lastStreamId += 2;
+            return lastStreamId;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void sendGoAway(int lastStreamId, int errorCode) {
@@ -92,20 +118,72 @@ public class Http2ConnectionManager extends ConnectionManager {
         return goAwayReceived;
     }
 
+    /**
+     * Records that the server's SETTINGS frame has been sent and is waiting to
+     * be acknowledged.
+     */
+    public void markSettingsSent() {
+        settingsAckPending = true;
+    }
+
+    /**
+     * Records that the client acknowledged the server's SETTINGS.
+     */
+    public void markSettingsAcknowledged() {
+        settingsAckPending = false;
+    }
+
+    /**
+     * Checks if the server's SETTINGS are still waiting for an acknowledgement.
+     *
+     * @return true if no SETTINGS ACK has arrived since SETTINGS were sent
+     */
+    public boolean isSettingsAckPending() {
+        return settingsAckPending;
+    }
+
+    /**
+     * Sets whether this connection logs a description of every frame it sends
+     * and receives. Dumps are off by default and cost nothing while off.
+     *
+     * @param enabled true to dump frames
+     */
+    public void setFrameDumps(boolean enabled) {
+        frameDumps = enabled;
+    }
+
+    /**
+     * Checks whether this connection dumps its frames.
+     *
+     * @return true if frames are dumped
+     */
+    public boolean isFrameDumps() {
+        return frameDumps;
+    }
+
+    /**
+     * Gets the lock that serialises writes to the connection. Hold it across
+     * header encoding and the frames that carry the encoded block.
+     *
+     * @return the connection write lock
+     */
+    public ReentrantLock getWriteLock() {
+        return writeLock;
+    }
+
     public void sendFrame(Http2Frame frame, OutputStream output) throws IOException {
+        writeLock.lock();
         try {
-            dumpFrame("SENDING", frame);
+            if (frameDumps) {
+                Log.info(describeFrame("SENDING", frame.getType(), frame.getFlags(), frame.getStreamId(),
+                        frame.getPayload()));
+            }
 
             ByteBuffer encodedFrame = frame.encode();
 
             byte[] frameBytes = new byte[encodedFrame.remaining()];
             encodedFrame.get(frameBytes);
 
-            System.out.println("SENDING FRAME: type=" + frame.getType() +
-                    ", stream=" + frame.getStreamId() +
-                    ", flags=" + frame.getFlags() +
-                    ", length=" + frameBytes.length);
-
             output.write(frameBytes);
             output.flush();
 
@@ -118,9 +196,10 @@ public class Http2ConnectionManager extends ConnectionManager {
                 goAwaySent = true;
             }
         } catch (Exception e) {
-            System.err.println("Error sending frame: " + e.getMessage());
-            e.printStackTrace();
+            Log.debug("Error sending frame: {}", e.getMessage());
             throw new IOException("Failed to send frame", e);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -132,56 +211,53 @@ public class Http2ConnectionManager extends ConnectionManager {
         return decoder;
     }
 
-    public static void dumpFrame(String prefix, Http2Frame frame) {
+    /**
+     * Describes a frame for a frame dump: its type, stream, flags and payload
+     * size, and the start of a HEADERS frame's header block in hex.
+     *
+     * @param prefix  what is being done with the frame, such as "SENDING"
+     * @param type    the frame type
+     * @param flags   the frame flags
+     * @param streamId the stream the frame belongs to
+     * @param payload the payload; its position is left unchanged
+     * @return the description
+     */
+    public static String describeFrame(String prefix, int type, int flags, int streamId, ByteBuffer payload) {
         StringBuilder sb = new StringBuilder(prefix);
-        sb.append(" Frame Type: ").append(frameTypeToString(frame.getType()));
-        sb.append(", Stream ID: ").append(frame.getStreamId());
-        sb.append(", Flags: ").append(Integer.toHexString(frame.getFlags())).append(" (");
+        sb.append(" Frame Type: ").append(frameTypeToString(type));
+        sb.append(", Stream ID: ").append(streamId);
+        sb.append(", Flags: ").append(Integer.toHexString(flags)).append(" (");
 
         // Decode flags
-        if ((frame.getFlags() & Http2Frame.FLAG_END_STREAM) != 0)
+        if ((flags & Http2Frame.FLAG_END_STREAM) != 0 && type != Http2Frame.TYPE_SETTINGS
+                && type != Http2Frame.TYPE_PING)
             sb.append("END_STREAM ");
-        if ((frame.getFlags() & Http2Frame.FLAG_END_HEADERS) != 0)
+        if ((flags & Http2Frame.FLAG_END_HEADERS) != 0)
             sb.append("END_HEADERS ");
-        if ((frame.getFlags() & Http2Frame.FLAG_ACK) != 0)
+        if ((flags & Http2Frame.FLAG_ACK) != 0 && (type == Http2Frame.TYPE_SETTINGS || type == Http2Frame.TYPE_PING))
             sb.append("ACK ");
-        if ((frame.getFlags() & Http2Frame.FLAG_PADDED) != 0)
+        if ((flags & Http2Frame.FLAG_PADDED) != 0)
             sb.append("PADDED ");
-        if ((frame.getFlags() & Http2Frame.FLAG_PRIORITY) != 0)
+        if ((flags & Http2Frame.FLAG_PRIORITY) != 0)
             sb.append("PRIORITY ");
         sb.append(")");
 
-        // Specific frame type details
-        if (frame instanceof HeadersFrame) {
-            sb.append(" [HEADERS] EndStream: ").append(((HeadersFrame) frame).isEndStream());
-            sb.append(", EndHeaders: ").append(((HeadersFrame) frame).isEndHeaders());
-        } else if (frame instanceof DataFrame) {
-            sb.append(" [DATA] EndStream: ").append(((DataFrame) frame).isEndStream());
-        } else if (frame instanceof SettingsFrame) {
-            sb.append(" [SETTINGS] IsAck: ").append(((SettingsFrame) frame).isAck());
-        }
-
         // Payload info
-        ByteBuffer payload = frame.getPayload();
         sb.append(", Payload size: ").append(payload.remaining()).append(" bytes");
 
-        // For HEADERS frames, try to decode the headers (simplified)
-        if (frame instanceof HeadersFrame && payload.remaining() > 0) {
+        // For HEADERS frames, show the start of the header block
+        if (type == Http2Frame.TYPE_HEADERS && payload.remaining() > 0) {
             sb.append("\nHeader block (hex): ");
-            byte[] data = new byte[Math.min(payload.remaining(), 50)];
-            int originalPosition = payload.position();
-            payload.get(data);
-            payload.position(originalPosition); // Reset position
-
-            for (byte b : data) {
-                sb.append(String.format("%02X ", b & 0xFF));
+            int length = Math.min(payload.remaining(), 50);
+            for (int i = 0; i < length; i++) {
+                int b = payload.get(payload.position() + i) & 0xFF;
+                sb.append(HEX_DIGITS[b >>> 4]).append(HEX_DIGITS[b & 0xF]).append(' ');
             }
             if (payload.remaining() > 50) {
                 sb.append("...");
             }
         }
-
-        System.out.println(sb.toString());
+        return sb.toString();
     }
 
     private static String frameTypeToString(int type) {
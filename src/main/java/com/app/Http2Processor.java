@@ -10,18 +10,50 @@ import java.io.OutputStream;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class Http2Processor {
 
     private final Http2ConnectionManager connectionManager;
+    // Handlers are stateless and the routing table is shared, so one
+    // processor serves every stream, including streams handled concurrently
+    private final Processor processor = new Processor();
     private OutputStream outputStream;
+    private boolean deferRequests;
+    private final ArrayDeque<HttpRequest> pendingRequests = new ArrayDeque<>();
+
+    // Hop-by-hop headers of the upgrade request that do not carry over to HTTP/2
+    private static final Set<String> UPGRADE_HEADERS = Set.of("connection", "upgrade", "http2-settings",
+            "keep-alive", "proxy-connection", "transfer-encoding");
 
     public Http2Processor(Http2ConnectionManager connectionManager) {
         this.connectionManager = connectionManager;
     }
 
+    /**
+     * Controls whether completed requests are processed inline. When deferred,
+     * frames that complete a request queue it for {@link #pollPendingRequest()}
+     * instead of running the handler, so an event loop can hand the work to
+     * another thread and keep reading frames.
+     *
+     * @param defer true to queue completed requests rather than process them
+     */
+    public void setDeferRequests(boolean defer) {
+        this.deferRequests = defer;
+    }
+
+    /**
+     * Takes the next request completed while requests are deferred. The stream
+     * it belongs to is stored in the "streamId" property.
+     *
+     * @return the next completed request, or null if there is none
+     */
+    public HttpRequest pollPendingRequest() {
+        return pendingRequests.poll();
+    }
+
     /**
      * Process a single HTTP/2 frame from the input stream
      * 
@@ -29,7 +61,6 @@ public class Http2Processor {
      * @return An HTTP response if this frame completes a request, null otherwise
      */
     public HttpResponse processNextFrame(InputStream inputStream) throws IOException {
-        System.out.println("Processing next frame...");
         // Read single frame
         ByteBuffer frameHeaderBuffer = ByteBuffer.allocate(9);
         readFully(inputStream, frameHeaderBuffer);
@@ -54,10 +85,9 @@ public class Http2Processor {
         payloadBuffer.flip();
 
         // Process frame based on type
-        System.out.println("Finished processing next frame!");
         HttpResponse response = processFrame(type, flags, streamId, payloadBuffer);
         if (response != null) {
-            System.out.println("Generated response for frame type " + type);
+            Log.debug("Generated response for frame type {}", type);
         }
         return response;
     }
@@ -73,20 +103,61 @@ public class Http2Processor {
         // Send initial SETTINGS frame
         SettingsFrame settingsFrame = new SettingsFrame(connectionManager.getLocalSettings());
         connectionManager.sendFrame(settingsFrame, outputStream);
+        connectionManager.markSettingsSent();
+    }
+
+    /**
+     * Takes over a connection upgraded from HTTP/1.1 with "Upgrade: h2c", once
+     * the 101 response has been written. The settings the client sent in its
+     * HTTP2-Settings header are applied and the server's SETTINGS frame is sent.
+     * The request that asked for the upgrade becomes stream 1, already
+     * half-closed by the client (RFC 7540 section 3.2). The client connection
+     * preface still follows on the wire and must be checked by the caller.
+     *
+     * @param request        the HTTP/1.1 request that carried the upgrade
+     * @param clientSettings the settings decoded from HTTP2-Settings
+     * @param outputStream   the socket output stream
+     * @return the response for stream 1, or null if requests are deferred
+     */
+    public HttpResponse upgrade(HttpRequest request, Http2Settings clientSettings, OutputStream outputStream)
+            throws IOException {
+        connectionManager.updateRemoteSettings(clientSettings);
+        initialise(outputStream);
+
+        HttpHeaders requestHeaders = request.getRequestHeaders();
+        HttpHeaders headers = new HttpHeaders(requestHeaders.size() + 3);
+        headers.add(HttpHeaders.METHOD, request.getMethod());
+        headers.add(HttpHeaders.PATH, request.getUrlPath());
+        headers.add(HttpHeaders.SCHEME, "http");
+        for (int i = 0; i < requestHeaders.size(); i++) {
+            String name = HttpHeaders.lowerCase(requestHeaders.getName(i));
+            if (name.equals("host")) {
+                headers.add(HttpHeaders.AUTHORITY, requestHeaders.getValue(i));
+            } else if (!UPGRADE_HEADERS.contains(name)) {
+                headers.add(name, requestHeaders.getValue(i));
+            }
+        }
+
+        Http2Stream stream = connectionManager.createStream(1);
+        stream.transitionToOpen();
+        stream.receiveHeaders(headers, true);
+        Log.debug("Upgraded HTTP/1.1 request to HTTP/2 stream 1");
+
+        return createResponse(stream);
     }
 
     private HttpResponse processFrame(int type, int flags, int streamId, ByteBuffer payload) throws IOException {
-        System.out.println("Processing frame of type " + type);
+        if (connectionManager.isFrameDumps()) {
+            Log.info(Http2ConnectionManager.describeFrame("RECEIVED", type, flags, streamId, payload));
+        }
         HttpResponse response = null;
 
         switch (type) {
             case Http2Frame.TYPE_DATA:
-                System.out.println("Processing DATA frame");
                 response = processDataFrame(streamId, flags, payload);
                 break;
 
             case Http2Frame.TYPE_HEADERS:
-                System.out.println("Processing HEADERS frame");
                 response = processHeadersFrame(streamId, flags, payload);
                 break;
 
@@ -125,16 +196,10 @@ public class Http2Processor {
                 break;
             default:
                 // Unknown frame type, ignore per spec
-                System.out.println("Ignore unknown frame type: " + type);
+                Log.debug("Ignore unknown frame type: {}", type);
                 break;
         }
 
-        if (response != null) {
-            System.out.println("Frame processing generated a response");
-        } else {
-            System.out.println("Frame processing did not generate a response");
-        }
-
         return response;
     }
 
@@ -169,9 +234,9 @@ public class Http2Processor {
             HttpResponse response = createResponse(stream);
             if (response != null) {
                 response.setProperty("streamId", streamId);
-                System.out.println("Created response for data frame on stream " + streamId);
-            } else {
-                System.err.println("Failed to create response for headers frame on stream " + streamId);
+                Log.debug("Created response for data frame on stream {}", streamId);
+            } else if (!deferRequests) {
+                Log.warn("Failed to create response for headers frame on stream {}", streamId);
             }
             return response;
             // return createResponse(stream);
@@ -201,16 +266,7 @@ public class Http2Processor {
             byte[] headerBlock = new byte[payload.remaining()];
             payload.get(headerBlock);
 
-            System.out.println("Header block size: " + headerBlock.length + " bytes");
-            if (headerBlock.length > 0) {
-                System.out.print("Header block bytes (hex): ");
-                for (int i = 0; i < Math.min(headerBlock.length, 20); i++) {
-                    System.out.printf("%02X ", headerBlock[i] & 0xFF);
-                }
-                System.out.println(headerBlock.length > 20 ? "..." : "");
-            }
-
-            final HashMap<String, String> headers = new HashMap<>();
+            final HttpHeaders headers = new HttpHeaders();
 
             ByteArrayInputStream headerInputStream = new ByteArrayInputStream(headerBlock);
 
@@ -218,12 +274,11 @@ public class Http2Processor {
                 @Override
                 public void addHeader(byte[] name, byte[] value, boolean sensitive) {
                     if (name != null && value != null) {
-                        String nameStr = new String(name, StandardCharsets.UTF_8);
+                        String nameStr = HttpHeaders.canonicalName(name, 0, name.length);
                         String valueStr = new String(value, StandardCharsets.UTF_8);
-                        headers.put(nameStr, valueStr);
-                        System.out.println("Decoded header: " + nameStr + ": " + valueStr);
+                        headers.add(nameStr, valueStr);
                     } else {
-                        System.out.println("Warning: Received null name or value in header");
+                        Log.warn("Received null name or value in header");
                     }
                 }
             };
@@ -236,10 +291,9 @@ public class Http2Processor {
             // System.out.println("Decoded header: " + nameStr + ": " + valueStr);
             // });
 
-            int maxHeaderSize = Math.max(8192, connectionManager.getRemoteSettings().getMaxHeaderListSize());
-            int maxHeaderTableSize = Math.max(4096, connectionManager.getRemoteSettings().getHeaderTableSize());
-
-            Decoder decoder = new Decoder(maxHeaderSize, maxHeaderTableSize);
+            // The decoder's dynamic table spans every header block on the
+            // connection, so it must not be recreated per frame
+            Decoder decoder = connectionManager.getDecoder();
 
             decoder.decode(headerInputStream, listener);
             decoder.endHeaderBlock();
@@ -251,21 +305,19 @@ public class Http2Processor {
                 HttpResponse response = createResponse(stream);
                 if (response != null) {
                     response.setProperty("streamId", streamId);
-                    System.out.println("Created response for headers frame on stream " + streamId);
-                } else {
-                    System.err.println("Failed to create response for headers frame on stream " + streamId);
+                    Log.debug("Created response for headers frame on stream {}", streamId);
+                } else if (!deferRequests) {
+                    Log.warn("Failed to create response for headers frame on stream {}", streamId);
                 }
                 return response;
                 // return createResponse(stream);
             }
 
         } catch (IOException e) {
-            System.err.println("Error processing HEADERS frame: " + e.getMessage());
-            e.printStackTrace();
+            Log.warn("Error processing HEADERS frame: {}", e.getMessage());
             sendRstStream(streamId, Http2Frame.COMPRESSION_ERROR);
         } catch (Exception e) {
-            System.err.println("Unexpected error in HEADERS frame: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Unexpected error in HEADERS frame", e);
             sendRstStream(streamId, Http2Frame.INTERNAL_ERROR);
         }
 
@@ -308,7 +360,10 @@ public class Http2Processor {
         boolean isAck = (flags & Http2Frame.FLAG_ACK) != 0;
 
         if (isAck) {
-            System.out.println("Received SETTINGS ACK");
+            // An ACK carries no settings and must not itself be acknowledged
+            Log.debug("Received SETTINGS ACK");
+            connectionManager.markSettingsAcknowledged();
+            return;
         }
 
         // Parse settings
@@ -349,7 +404,7 @@ public class Http2Processor {
         int lastStreamId = goAwayFrame.getLastStreamId();
         int errorCode = goAwayFrame.getErrorCode();
 
-        System.out.println("Received GOAWAY, last stream: " + lastStreamId + ", error: " + errorCode);
+        Log.debug("Received GOAWAY, last stream: {}, error: {}", lastStreamId, errorCode);
 
         // Handle connection shutdown
         connectionManager.getAllStreams().forEach(stream -> {
@@ -357,7 +412,7 @@ public class Http2Processor {
                 try {
                     sendRstStream(stream.getStreamId(), Http2Frame.REFUSED_STREAM);
                 } catch (IOException e) {
-                    System.out.println("Error resetting stream during GOAWAY: " + e.getMessage());
+                    Log.debug("Error resetting stream during GOAWAY: {}", e.getMessage());
                 }
             }
         });
@@ -403,11 +458,11 @@ public class Http2Processor {
         try {
             ByteArrayInputStream headerInputStream = new ByteArrayInputStream(headerBlock);
 
-            HashMap<String, String> headers = new HashMap<>();
+            HttpHeaders headers = new HttpHeaders();
             connectionManager.getDecoder().decode(headerInputStream, (name, value, sensitive) -> {
-                String nameStr = new String(name, StandardCharsets.UTF_8);
+                String nameStr = HttpHeaders.canonicalName(name, 0, name.length);
                 String valueStr = new String(value, StandardCharsets.UTF_8);
-                headers.put(nameStr, valueStr);
+                headers.add(nameStr, valueStr);
             });
 
             stream.receiveHeaders(headers, false);
@@ -417,7 +472,7 @@ public class Http2Processor {
             }
         } catch (Exception e) {
             sendRstStream(streamId, Http2Frame.INTERNAL_ERROR);
-            System.err.println("Error processing CONTINUATION frame: " + e.getMessage());
+            Log.warn("Error processing CONTINUATION frame: {}", e.getMessage());
         }
     }
 
@@ -441,7 +496,7 @@ public class Http2Processor {
 
     private void sendGoAway(int errorCode) throws IOException {
         if (this.outputStream == null) {
-            System.err.println("Cannot send GOAWAY: output stream is null");
+            Log.warn("Cannot send GOAWAY: output stream is null");
             return;
         }
 
@@ -453,7 +508,7 @@ public class Http2Processor {
 
     private void sendRstStream(int streamId, int errorCode) throws IOException {
         if (this.outputStream == null) {
-            System.err.println("Cannot seand RST_STREAM: output stream is null");
+            Log.warn("Cannot send RST_STREAM: output stream is null");
             return;
         }
         RstStreamFrame rstStreamFrame = new RstStreamFrame(streamId, errorCode);
@@ -463,84 +518,82 @@ public class Http2Processor {
     private HttpResponse createResponse(Http2Stream stream) {
         try {
             // Convert HTTP/2 stream to HTTP request
-            Map<String, String> headers = stream.getRequestHeaders();
+            HttpHeaders headers = stream.getRequestHeaders();
             ByteBuffer data = stream.getData();
 
-            System.out.println("Creating response for stream " + stream.getStreamId());
-            System.out.println("Request headers: " + headers);
+            if (Log.isDebugEnabled()) {
+                Log.debug("Creating response for stream " + stream.getStreamId() + ", request headers: " + headers);
+            }
 
             // Extract method, urlPath, etc. from headers
-            String method = headers.get(":method");
-            String urlPath = headers.get(":path");
-            String scheme = headers.get(":scheme");
-            String authority = headers.get(":authority");
+            String method = headers.get(HttpHeaders.METHOD);
+            String urlPath = headers.get(HttpHeaders.PATH);
+            String scheme = headers.get(HttpHeaders.SCHEME);
+            String authority = headers.get(HttpHeaders.AUTHORITY);
 
             if (method == null || urlPath == null || scheme == null) {
-                System.err.println("Missing required pseudo-headers");
+                Log.warn("Missing required pseudo-headers");
                 try {
                     sendRstStream(stream.getStreamId(), Http2Frame.PROTOCOL_ERROR);
                 } catch (IOException e) {
-                    System.err.println("Error sending RST_STREAM: " + e.getMessage());
+                    Log.debug("Error sending RST_STREAM: {}", e.getMessage());
                 }
                 return null;
             }
 
-            // Add headers
-            HashMap<String, String> requestHeaders = new HashMap<>();
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                String name = entry.getKey();
-                if (!name.startsWith(":")) {
-                    requestHeaders.put(name, entry.getValue());
-                }
-            }
-
-            System.out.println("HTTP/2 Request: " + method + " " + urlPath);
+            Log.debug("HTTP/2 Request: {} {}", method, urlPath);
 
-            // Create an HttpRequest object
-            HttpRequest request = new HttpRequest(method, "HTTP/2", urlPath, requestHeaders);
+            // The request shares the stream's headers rather than copying
+            // them; handlers look up regular fields, so the pseudo-headers
+            // left among them do no harm
+            HttpRequest request = new HttpRequest(method, "HTTP/2", urlPath, headers);
+            request.setProperty("streamId", stream.getStreamId());
 
             // Add request body if present
             if (data != null && data.hasRemaining()) {
                 byte[] body = new byte[data.remaining()];
                 data.get(body);
-                System.out.println("Request has body of " + body.length + " bytes");
+                Log.debug("Request has body of {} bytes", body.length);
+            }
+
+            if (deferRequests) {
+                pendingRequests.add(request);
+                return null;
             }
 
             // Process the request to get a response
-            System.out.println("Processing request...");
             HttpResponse response = processRequest(request);
-            System.out.println("Request processed, response status: " + response.getStatusCode());
+            Log.debug("Request processed, response status: {}", response.getStatusCode());
 
             // Store the stream ID so we can reference it later
             response.setProperty("streamId", stream.getStreamId());
-            System.out.println("Response created for stream " + stream.getStreamId());
+            Log.debug("Response created for stream {}", stream.getStreamId());
 
             return response;
 
         } catch (Exception e) {
-            System.err.println("Error creating response: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error creating response", e);
             return null;
 
         }
     }
 
     public HttpResponse processRequest(HttpRequest request) {
-        try {
-            Processor http1Processor = new Processor();
-            HttpResponse response = http1Processor.processRequest(request);
-
-            response.setHeader("x-protocol", "HTTP/2");
-
-            return response;
-        } catch (Exception e) {
-            HttpResponse response = new HttpResponse(request.getProtocolVersion());
+        return processRequestAsync(request).join();
+    }
 
-            response.setStatusCode("500 Internal Server Error");
-            response.setHeader("Content-Type", "text/plain");
-            response.setBody("Error processing HTTP/2 request: " + e.getMessage());
-            return response;
-        }
+    /**
+     * Answers the request of a stream without waiting for a handler that
+     * completes asynchronously, so the connection can go on reading frames.
+     * The request goes through the same filters as an HTTP/1.1 one, which
+     * also mark the response with x-protocol.
+     *
+     * @param request the request of the stream
+     * @return a future completed, on whichever thread finishes the response,
+     *         with the response to send
+     */
+    public CompletableFuture<HttpResponse> processRequestAsync(HttpRequest request) {
+        return processor.processRequestAsync(request);
     }
 
     // Utility methods
@@ -4,10 +4,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Http2Responder {
+    private static final Set<String> CONNECTION_HEADERS = Set.of("connection", "keep-alive",
+            "proxy-connection", "transfer-encoding", "upgrade");
+
     private final Http2ConnectionManager connectionManager;
 
     public Http2Responder(Http2ConnectionManager connectionManager) {
@@ -15,48 +19,80 @@ public class Http2Responder {
     }
 
     public void sendResponse(HttpResponse response, Http2Stream stream, OutputStream outputStream) throws IOException {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put(":status", String.valueOf(response.getStatusCode()));
+        // Streams may respond concurrently, so encode and send under the connection
+        // write lock to keep the HPACK tables of both peers in step
+        ReentrantLock writeLock = connectionManager.getWriteLock();
+        writeLock.lock();
+        try {
+            writeResponse(response, stream, outputStream);
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-        // Add response headers
-        for (Map.Entry<String, String> entry : response.getHeaders().entrySet()) {
-            headers.put(entry.getKey().toLowerCase(), entry.getValue());
+    private void writeResponse(HttpResponse response, Http2Stream stream, OutputStream outputStream)
+            throws IOException {
+        // The body's bytes as they go on the wire, compressed or not
+        ByteBuffer[] body = response.getBodyBuffers();
+        int last = body.length - 1;
+        while (last >= 0 && !body[last].hasRemaining()) {
+            last--;
         }
 
         // Send HEADERS frame
-        ByteBuffer headerBlock = encodeHeaders(headers);
+        ByteBuffer headerBlock = encodeHeaders(response);
         HeadersFrame headersFrame = new HeadersFrame(
                 stream.getStreamId(),
                 headerBlock,
-                response.getBody() == null || response.getBody().length() == 0,
+                last < 0,
                 true);
 
         connectionManager.sendFrame(headersFrame, outputStream);
 
-        // Send DATA frame if there is a body
-        if (response.getBody() != null && response.getBody().length() > 0) {
-            ByteBuffer data = ByteBuffer.wrap(response.getBody().getBytes());
-            DataFrame dataFrame = new DataFrame(stream.getStreamId(), data, true);
-            connectionManager.sendFrame(dataFrame, outputStream);
+        // Send a DATA frame for each part of the body, the last ending the stream
+        for (int i = 0; i <= last; i++) {
+            if (body[i].hasRemaining()) {
+                DataFrame dataFrame = new DataFrame(stream.getStreamId(), body[i], i == last);
+                connectionManager.sendFrame(dataFrame, outputStream);
+            }
         }
     }
 
-    private ByteBuffer encodeHeaders(HashMap<String, String> headers) {
+    /**
+     * Encodes the status and the response headers into one HPACK block. The
+     * response's header container is read in place; names go out in the
+     * lower case HTTP/2 requires, taken from the shared table for well-known
+     * ones.
+     */
+    private ByteBuffer encodeHeaders(HttpResponse response) {
         // Use HPACK encoder to compress headers
         try {
             ByteArrayOutputStream boas = new ByteArrayOutputStream();
 
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                connectionManager.getEncoder().encodeHeader(
-                        boas,
-                        entry.getKey().getBytes("UTF-8"),
-                        entry.getValue().getBytes("UTF-8"),
-                        true);
+            // The pseudo-header goes first. The status line holds the reason
+            // phrase as well, HTTP/2 wants the code only
+            String status = String.valueOf(response.getStatusCode());
+            int space = status.indexOf(' ');
+            connectionManager.getEncoder().encodeHeader(boas,
+                    HttpHeaders.lowerCaseBytes(HttpHeaders.STATUS),
+                    (space < 0 ? status : status.substring(0, space)).getBytes(StandardCharsets.UTF_8),
+                    true);
+
+            // Leave out the HTTP/1.1 connection-specific headers that HTTP/2 forbids
+            HttpHeaders headers = response.getHeaders();
+            for (int i = 0; i < headers.size(); i++) {
+                String name = HttpHeaders.lowerCase(headers.getName(i));
+                if (!CONNECTION_HEADERS.contains(name)) {
+                    connectionManager.getEncoder().encodeHeader(boas,
+                            HttpHeaders.lowerCaseBytes(name),
+                            headers.getValue(i).getBytes(StandardCharsets.UTF_8),
+                            true);
+                }
             }
 
             return ByteBuffer.wrap(boas.toByteArray());
         } catch (Exception e) {
-            System.err.println("Error encoding headers: " + e.getMessage());
+            Log.warn("Error encoding headers: {}", e.getMessage());
             return ByteBuffer.allocate(0);
         }
     }
@@ -1,11 +1,11 @@
 package com.app;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Collections;
 import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 import java.io.IOException;
 
 enum StreamState {
@@ -31,9 +31,9 @@ public class Http2Stream {
     private int localWindowSize; // Our window for receiving data
     private int remoteWindowSize; // Peer's window for receiving data
 
-    private final HashMap<String, String> requestHeaders = new HashMap<>();
-    private final HashMap<String, String> responseHeaders = new HashMap<>();
-    private final HashMap<String, String> trailers = new HashMap<>();
+    private HttpHeaders requestHeaders = new HttpHeaders();
+    private final HttpHeaders responseHeaders = new HttpHeaders();
+    private final HttpHeaders trailers = new HttpHeaders(4);
 
     private ByteBuffer dataBuffer;
 
@@ -46,6 +46,10 @@ public class Http2Stream {
 
     private int errorCode;
 
+    // A ReentrantLock rather than synchronized so virtual threads are never
+    // pinned to their carrier while updating stream state
+    private final ReentrantLock lock = new ReentrantLock();
+
     public Http2Stream(int streamId, Http2ConnectionManager connectionManager) {
         this.streamId = streamId;
         this.connectionManager = connectionManager;
@@ -63,64 +67,104 @@ public class Http2Stream {
     }
 
     // State transition methods
-    public synchronized boolean transitionToOpen() {
-        if (state == StreamState.IDLE) {
-            state = StreamState.OPEN;
-            return true;
+    public boolean transitionToOpen() {
+        lock.lock();
+        try {
+            if (state == StreamState.IDLE) {
+                state = StreamState.OPEN;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
-    public synchronized boolean closeLocal() {
-        if (state == StreamState.OPEN) {
-            state = StreamState.HALF_CLOSED_LOCAL;
-            return true;
-        } else if (state == StreamState.HALF_CLOSED_REMOTE) {
-            state = StreamState.CLOSED;
-            return true;
+    public boolean closeLocal() {
+        lock.lock();
+        try {
+            if (state == StreamState.OPEN) {
+                state = StreamState.HALF_CLOSED_LOCAL;
+                return true;
+            } else if (state == StreamState.HALF_CLOSED_REMOTE) {
+                state = StreamState.CLOSED;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
-    public synchronized boolean closeRemote() {
-        if (state == StreamState.OPEN) {
-            state = StreamState.HALF_CLOSED_REMOTE;
-            return true;
-        } else if (state == StreamState.HALF_CLOSED_LOCAL) {
-            state = StreamState.CLOSED;
-            return true;
+    public boolean closeRemote() {
+        lock.lock();
+        try {
+            if (state == StreamState.OPEN) {
+                state = StreamState.HALF_CLOSED_REMOTE;
+                return true;
+            } else if (state == StreamState.HALF_CLOSED_LOCAL) {
+                state = StreamState.CLOSED;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
-    public synchronized void resetStream(int errorCode) {
-        this.errorCode = errorCode;
-        state = StreamState.CLOSED;
+    public void resetStream(int errorCode) {
+        lock.lock();
+        try {
+            this.errorCode = errorCode;
+            state = StreamState.CLOSED;
+        } finally {
+            lock.unlock();
+        }
     }
 
     // Flow control methods
-    public synchronized boolean consumeLocalWindow(int size) {
-        if (localWindowSize >= size) {
-            localWindowSize -= size;
-            return true;
+    public boolean consumeLocalWindow(int size) {
+        lock.lock();
+        try {
+            if (localWindowSize >= size) {
+                localWindowSize -= size;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
-    public synchronized void increaseLocalWindow(int increment) {
-        localWindowSize += increment;
+    public void increaseLocalWindow(int increment) {
+        lock.lock();
+        try {
+            localWindowSize += increment;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized boolean consumeRemoteWindow(int size) {
-        if (remoteWindowSize >= size) {
-            remoteWindowSize -= size;
-            return true;
+    public boolean consumeRemoteWindow(int size) {
+        lock.lock();
+        try {
+            if (remoteWindowSize >= size) {
+                remoteWindowSize -= size;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
-    public synchronized void increaseRemoteWindow(int increment) {
-        remoteWindowSize += increment;
+    public void increaseRemoteWindow(int increment) {
+        lock.lock();
+        try {
+            remoteWindowSize += increment;
+        } finally {
+            lock.unlock();
+        }
     }
 
     // Priority handling
@@ -155,31 +199,41 @@ public class Http2Stream {
     }
 
     public void addRequestHeader(String name, String value) {
-        requestHeaders.put(name.toLowerCase(), value);
+        requestHeaders.add(name, value);
     }
 
     public void addResponseHeader(String name, String value) {
-        responseHeaders.put(name.toLowerCase(), value);
+        responseHeaders.add(name, value);
     }
 
     public void addTrailer(String name, String value) {
-        trailers.put(name.toLowerCase(), value);
+        trailers.add(name, value);
     }
 
     public String getRequestHeader(String name) {
-        return requestHeaders.get(name.toLowerCase());
+        return requestHeaders.get(name);
     }
 
     public String getResponseHeader(String name) {
-        return responseHeaders.get(name.toLowerCase());
+        return responseHeaders.get(name);
     }
 
-    public HashMap<String, String> getRequestHeaders() {
-        return new HashMap<>(requestHeaders);
+    public String getTrailer(String name) {
+        return trailers.get(name);
     }
 
-    public HashMap<String, String> getResponseHeaders() {
-        return new HashMap<>(responseHeaders);
+    /**
+     * Gets the request headers. They are the stream's own, not a copy, and
+     * become the headers of the request handed to the handler.
+     *
+     * @return the request header fields
+     */
+    public HttpHeaders getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    public HttpHeaders getResponseHeaders() {
+        return responseHeaders;
     }
 
     // Data handling
@@ -208,14 +262,15 @@ public class Http2Stream {
 
     // Frame processing methods - these would depend on your Http2Frame
     // implementation
-    public void receiveHeaders(HashMap<String, String> headers, boolean endStream) {
-        headers.forEach((name, value) -> {
-            if (headersReceived) {
-                addTrailer(name, value);
-            } else {
-                addRequestHeader(name, value);
-            }
-        });
+    public void receiveHeaders(HttpHeaders headers, boolean endStream) {
+        if (headersReceived) {
+            trailers.addAll(headers);
+        } else if (requestHeaders.isEmpty()) {
+            // The decoded block becomes the stream's headers as it is
+            requestHeaders = headers;
+        } else {
+            requestHeaders.addAll(headers);
+        }
 
         headersReceived = true;
 
@@ -235,12 +290,12 @@ public class Http2Stream {
     }
 
     // Frame sending methods - these would depend on your Http2Frame implementation
-    public void sendHeaders(HashMap<String, String> headers, boolean endStream) throws IOException {
+    public void sendHeaders(HttpHeaders headers, boolean endStream) throws IOException {
         // Implementation would encode headers and send via connection manager
         // For example: connectionManager.sendFrame(new HeadersFrame(streamId, headers,
         // endStream));
 
-        headers.forEach(this::addResponseHeader);
+        responseHeaders.addAll(headers);
         headersSent = true;
 
         if (endStream) {
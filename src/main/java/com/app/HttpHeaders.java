@@ -0,0 +1,516 @@
+package com.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * The HttpHeaders class holds the header fields of a request or response, for
+ * HTTP/1.1 and HTTP/2 alike.
+ *
+ * <p>
+ * Fields are kept in the order they were added, in flat arrays of names,
+ * values and case-insensitive name hashes, so a lookup is a scan of a few
+ * ints rather than a walk through map entries. Names are compared ignoring
+ * case and a name may appear more than once: {@link #get(String)} returns the
+ * last value, as the header maps it replaces did, and {@link #getAll(String)}
+ * returns every value.
+ * </p>
+ *
+ * <p>
+ * Well-known names are kept as the shared constants below, in their usual
+ * capitalisation, whatever case they arrived in. Names read from the wire are
+ * matched against them without allocating, and HTTP/2 gets their lower-case
+ * form from a table instead of lower-casing them on every response.
+ * </p>
+ *
+ * <p>
+ * Headers parsed by {@link RequestParser} stay in the raw request head until
+ * they are changed. Lookups read the head in place, and the arrays are only
+ * filled in the first time a field is added, set or removed.
+ * </p>
+ */
+public final class HttpHeaders {
+    public static final String ACCEPT = "Accept";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String ACCEPT_LANGUAGE = "Accept-Language";
+    public static final String ALLOW = "Allow";
+    public static final String AUTHORIZATION = "Authorization";
+    public static final String CACHE_CONTROL = "Cache-Control";
+    public static final String CONNECTION = "Connection";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String CONTENT_LENGTH = "Content-Length";
+    public static final String CONTENT_TYPE = "Content-Type";
+    public static final String COOKIE = "Cookie";
+    public static final String DATE = "Date";
+    public static final String ETAG = "ETag";
+    public static final String EXPECT = "Expect";
+    public static final String HOST = "Host";
+    public static final String HTTP2_SETTINGS = "HTTP2-Settings";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String KEEP_ALIVE = "Keep-Alive";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String LOCATION = "Location";
+    public static final String ORIGIN = "Origin";
+    public static final String PROXY_CONNECTION = "Proxy-Connection";
+    public static final String REFERER = "Referer";
+    public static final String RETRY_AFTER = "Retry-After";
+    public static final String SERVER = "Server";
+    public static final String SET_COOKIE = "Set-Cookie";
+    public static final String TE = "TE";
+    public static final String TRAILER = "Trailer";
+    public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    public static final String UPGRADE = "Upgrade";
+    public static final String USER_AGENT = "User-Agent";
+    public static final String VARY = "Vary";
+
+    /** HTTP/2 pseudo-header fields (RFC 7540 section 8.1.2.1). */
+    public static final String METHOD = ":method";
+    public static final String PATH = ":path";
+    public static final String SCHEME = ":scheme";
+    public static final String AUTHORITY = ":authority";
+    public static final String STATUS = ":status";
+
+    private static final String[] WELL_KNOWN = { ACCEPT, ACCEPT_ENCODING, ACCEPT_LANGUAGE, ALLOW,
+            AUTHORIZATION, CACHE_CONTROL, CONNECTION, CONTENT_ENCODING, CONTENT_LENGTH, CONTENT_TYPE, COOKIE, DATE,
+            ETAG, EXPECT, HOST, HTTP2_SETTINGS, IF_MODIFIED_SINCE, IF_NONE_MATCH, KEEP_ALIVE, LAST_MODIFIED,
+            LOCATION, ORIGIN, PROXY_CONNECTION, REFERER, RETRY_AFTER, SERVER, SET_COOKIE, TE, TRAILER,
+            TRANSFER_ENCODING, UPGRADE, USER_AGENT, VARY, METHOD, PATH, SCHEME, AUTHORITY, STATUS };
+
+    // Open-addressed by case-insensitive hash; the lower-case forms sit at
+    // the same index as their constant
+    private static final int TABLE_MASK = 127;
+    private static final String[] TABLE = new String[TABLE_MASK + 1];
+    private static final int[] TABLE_HASHES = new int[TABLE_MASK + 1];
+    private static final String[] TABLE_LOWER = new String[TABLE_MASK + 1];
+    private static final byte[][] TABLE_LOWER_BYTES = new byte[TABLE_MASK + 1][];
+    private static final byte[][] TABLE_BYTES = new byte[TABLE_MASK + 1][];
+
+    static {
+        for (String name : WELL_KNOWN) {
+            int hash = hash(name);
+            int slot = hash & TABLE_MASK;
+            while (TABLE[slot] != null) {
+                slot = (slot + 1) & TABLE_MASK;
+            }
+            TABLE[slot] = name;
+            TABLE_HASHES[slot] = hash;
+            TABLE_LOWER[slot] = name.toLowerCase();
+            TABLE_LOWER_BYTES[slot] = TABLE_LOWER[slot].getBytes(StandardCharsets.ISO_8859_1);
+            TABLE_BYTES[slot] = name.getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private String[] names;
+    private String[] values;
+    private int[] hashes;
+    private int size;
+
+    // Raw form: four offsets per field, the start and end of its name and
+    // then of its value within the head
+    private byte[] head;
+    private int[] offsets;
+
+    /**
+     * Creates an empty header set.
+     */
+    public HttpHeaders() {
+        this(8);
+    }
+
+    /**
+     * Creates an empty header set with room for the given number of fields
+     * before it has to grow.
+     *
+     * @param capacity the expected number of fields
+     */
+    public HttpHeaders(int capacity) {
+        capacity = Math.max(capacity, 1);
+        names = new String[capacity];
+        values = new String[capacity];
+        hashes = new int[capacity];
+    }
+
+    /**
+     * Creates a header set that reads its fields from a raw request head.
+     *
+     * @param head    the bytes of the request head
+     * @param offsets the start and end of each field's name and then its value
+     *                within the head, four entries per field
+     * @param count   the number of fields
+     */
+    HttpHeaders(byte[] head, int[] offsets, int count) {
+        this.head = head;
+        this.offsets = offsets;
+        this.size = count;
+    }
+
+    /**
+     * Gets the number of fields, counting each value of a repeated name.
+     *
+     * @return the field count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether there are no fields.
+     *
+     * @return true if the set is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the name of a field by position.
+     *
+     * @param index the field's position, from 0 to {@link #size()} - 1
+     * @return the name, as its shared constant if it is well known
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        if (head != null) {
+            int from = offsets[index * 4];
+            return canonicalName(head, from, offsets[index * 4 + 1] - from);
+        }
+        return names[index];
+    }
+
+    /**
+     * Gets the value of a field by position.
+     *
+     * @param index the field's position, from 0 to {@link #size()} - 1
+     * @return the value
+     */
+    public String getValue(int index) {
+        checkIndex(index);
+        if (head != null) {
+            int from = offsets[index * 4 + 2];
+            return new String(head, from, offsets[index * 4 + 3] - from, StandardCharsets.ISO_8859_1);
+        }
+        return values[index];
+    }
+
+    /**
+     * Gets a field's value, ignoring the case of the name. When the name is
+     * repeated the last value is returned.
+     *
+     * @param name the field name
+     * @return the value, or null if there is no such field
+     */
+    public String get(String name) {
+        int hash = hash(name);
+        for (int i = size - 1; i >= 0; i--) {
+            if (matches(i, name, hash)) {
+                return getValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets every value of a field, ignoring the case of the name.
+     *
+     * @param name the field name
+     * @return the values in the order they were added, empty if there is no
+     *         such field
+     */
+    public List<String> getAll(String name) {
+        int hash = hash(name);
+        List<String> all = null;
+        for (int i = 0; i < size; i++) {
+            if (matches(i, name, hash)) {
+                if (all == null) {
+                    all = new ArrayList<>(2);
+                }
+                all.add(getValue(i));
+            }
+        }
+        return all != null ? all : Collections.emptyList();
+    }
+
+    /**
+     * Checks whether a field is present, ignoring the case of the name.
+     *
+     * @param name the field name
+     * @return true if at least one field has the name
+     */
+    public boolean contains(String name) {
+        int hash = hash(name);
+        for (int i = 0; i < size; i++) {
+            if (matches(i, name, hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a field, keeping any others with the same name.
+     *
+     * @param name  the field name
+     * @param value the field value
+     */
+    public void add(String name, String value) {
+        materialize();
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        names[size] = canonicalName(name);
+        values[size] = value;
+        hashes[size] = hash(name);
+        size++;
+    }
+
+    /**
+     * Sets a field to a single value. The first field with the name takes the
+     * value and keeps its position; any others are removed. A name that is
+     * not present yet is added at the end.
+     *
+     * @param name  the field name
+     * @param value the field value
+     */
+    public void set(String name, String value) {
+        materialize();
+        int hash = hash(name);
+        int found = -1;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (matches(i, name, hash)) {
+                if (found >= 0) {
+                    continue;
+                }
+                found = kept;
+                values[i] = value;
+            }
+            move(i, kept++);
+        }
+        clearFrom(kept);
+        if (found < 0) {
+            add(name, value);
+        }
+    }
+
+    /**
+     * Removes every field with the given name, ignoring case.
+     *
+     * @param name the field name
+     * @return true if any field was removed
+     */
+    public boolean remove(String name) {
+        if (!contains(name)) {
+            return false;
+        }
+        materialize();
+        int hash = hash(name);
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!matches(i, name, hash)) {
+                move(i, kept++);
+            }
+        }
+        clearFrom(kept);
+        return true;
+    }
+
+    /**
+     * Adds every field of another set, keeping the fields already present.
+     *
+     * @param other the fields to add
+     */
+    public void addAll(HttpHeaders other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.getName(i), other.getValue(i));
+        }
+    }
+
+    /**
+     * Runs an action for every field, in order.
+     *
+     * @param action the action, given each name and value
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(getName(i), getValue(i));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getName(i)).append('=').append(getValue(i));
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Gets the shared constant for a well-known field name in any case.
+     *
+     * @param name the field name
+     * @return the constant, or the name itself if it is not well known
+     */
+    public static String canonicalName(String name) {
+        int slot = find(name, hash(name));
+        return slot >= 0 ? TABLE[slot] : name;
+    }
+
+    /**
+     * Gets the shared constant for a field name read from the wire, so that
+     * well-known names need no new string.
+     *
+     * @param bytes  the buffer holding the name
+     * @param from   the start of the name
+     * @param length the length of the name
+     * @return the constant, or a new string if the name is not well known
+     */
+    public static String canonicalName(byte[] bytes, int from, int length) {
+        int hash = 0;
+        for (int i = from; i < from + length; i++) {
+            hash = 31 * hash + fold(bytes[i]);
+        }
+        for (int slot = hash & TABLE_MASK; TABLE[slot] != null; slot = (slot + 1) & TABLE_MASK) {
+            if (TABLE_HASHES[slot] == hash && equalsIgnoreCase(bytes, from, length, TABLE[slot])) {
+                return TABLE[slot];
+            }
+        }
+        return new String(bytes, from, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Gets a field name in lower case, as HTTP/2 requires on the wire.
+     *
+     * @param name the field name
+     * @return the lower-case name, shared for well-known names
+     */
+    public static String lowerCase(String name) {
+        int slot = find(name, hash(name));
+        return slot >= 0 ? TABLE_LOWER[slot] : name.toLowerCase();
+    }
+
+    /**
+     * Gets the bytes of a field name in lower case, for HPACK encoding.
+     *
+     * @param name the field name
+     * @return the lower-case name as ASCII; shared for well-known names, so it
+     *         must not be modified
+     */
+    public static byte[] lowerCaseBytes(String name) {
+        int slot = find(name, hash(name));
+        return slot >= 0 ? TABLE_LOWER_BYTES[slot] : name.toLowerCase().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the bytes of a field name as HTTP/1.1 writes it.
+     *
+     * @param name the field name
+     * @return the name as ASCII; shared for well-known names, so it must not
+     *         be modified
+     */
+    static byte[] nameBytes(String name) {
+        int slot = find(name, hash(name));
+        return slot >= 0 && TABLE[slot].equals(name) ? TABLE_BYTES[slot]
+                : name.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static int find(String name, int hash) {
+        for (int slot = hash & TABLE_MASK; TABLE[slot] != null; slot = (slot + 1) & TABLE_MASK) {
+            String candidate = TABLE[slot];
+            if (candidate == name || (TABLE_HASHES[slot] == hash && candidate.equalsIgnoreCase(name))) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hashes a name the same whatever the case of its ASCII letters.
+     */
+    static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + fold(name.charAt(i));
+        }
+        return hash;
+    }
+
+    private static int fold(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static boolean equalsIgnoreCase(byte[] bytes, int from, int length, String name) {
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (fold(bytes[from + i] & 0xFF) != fold(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int index, String name, int hash) {
+        if (head != null) {
+            int from = offsets[index * 4];
+            return equalsIgnoreCase(head, from, offsets[index * 4 + 1] - from, name);
+        }
+        String candidate = names[index];
+        return hashes[index] == hash && (candidate == name || candidate.equalsIgnoreCase(name));
+    }
+
+    /**
+     * Copies raw fields into the arrays so they can be changed.
+     */
+    private void materialize() {
+        if (head == null) {
+            return;
+        }
+        int capacity = Math.max(size * 2, 8);
+        String[] newNames = new String[capacity];
+        String[] newValues = new String[capacity];
+        int[] newHashes = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            newNames[i] = getName(i);
+            newValues[i] = getValue(i);
+            newHashes[i] = hash(newNames[i]);
+        }
+        names = newNames;
+        values = newValues;
+        hashes = newHashes;
+        head = null;
+        offsets = null;
+    }
+
+    private void move(int from, int to) {
+        if (from != to) {
+            names[to] = names[from];
+            values[to] = values[from];
+            hashes[to] = hashes[from];
+        }
+    }
+
+    private void clearFrom(int newSize) {
+        Arrays.fill(names, newSize, size, null);
+        Arrays.fill(values, newSize, size, null);
+        size = newSize;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Header index " + index + " out of bounds for " + size);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.app;
 
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * The HttpRequest class represents an HTTP request message.
@@ -11,12 +12,22 @@ import java.util.HashMap;
  * This class is used to construct the request that will be parsed and
  * processed.
  * </p>
+ *
+ * <p>
+ * A request read by {@link RequestParser} carries {@link HttpHeaders} that
+ * still point into the raw head, so headers are looked up in place until
+ * something changes them.
+ * </p>
  */
 public class HttpRequest {
     private final String method;
     private final String protocolVersion;
     private final String urlPath;
-    private HashMap<String, String> requestHeaders;
+    private final int queryStart;
+    private Map<String, String> pathParameters;
+    private HttpHeaders requestHeaders;
+    private HashMap<String, Object> properties = new HashMap<>();
+    private RequestBody body;
 
     /**
      * Constructs a complete HTTP request with all components.
@@ -24,14 +35,15 @@ public class HttpRequest {
      * @param method          the HTTP request method (e.g., "GET")
      * @param protocolVersion the HTTP protocol version (e.g., "HTTP/1.1")
      * @param urlPath         the URL path to send to (e.g., "/system/info")
-     * @param requestHeaders  the HTTP request headers hashmap (e.g., (Connection:
+     * @param requestHeaders  the HTTP request headers (e.g., (Connection:
      *                        keep-alive))
      */
-    public HttpRequest(String method, String protocolVersion, String urlPath, HashMap<String, String> requestHeaders) {
+    public HttpRequest(String method, String protocolVersion, String urlPath, HttpHeaders requestHeaders) {
         this.method = method;
         this.protocolVersion = protocolVersion;
         this.urlPath = urlPath;
         this.requestHeaders = requestHeaders;
+        this.queryStart = urlPath != null ? urlPath.indexOf('?') : -1;
     }
 
     /**
@@ -44,7 +56,7 @@ public class HttpRequest {
     }
 
     /**
-     * Gets the requested URL path.
+     * Gets the request target as it was sent, query included.
      *
      * @return the URL path string
      */
@@ -52,6 +64,43 @@ public class HttpRequest {
         return urlPath;
     }
 
+    /**
+     * Gets the path of the request target, without the query.
+     *
+     * @return the path, such as "/health" for "/health?x=1"
+     */
+    public String getPath() {
+        return queryStart < 0 ? urlPath : urlPath.substring(0, queryStart);
+    }
+
+    /**
+     * Gets the query of the request target.
+     *
+     * @return the text after the '?', or null if the target has no query
+     */
+    public String getQuery() {
+        return queryStart < 0 ? null : urlPath.substring(queryStart + 1);
+    }
+
+    /**
+     * Gets a parameter the route matched in the path.
+     *
+     * @param name the name in the route pattern, "id" for "{id}"
+     * @return the path segment, or null if the route has no such parameter
+     */
+    public String getPathParameter(String name) {
+        return pathParameters != null ? pathParameters.get(name) : null;
+    }
+
+    /**
+     * Sets the parameters the route matched in the path.
+     *
+     * @param parameters the segment of each parameter, by name
+     */
+    void setPathParameters(Map<String, String> parameters) {
+        this.pathParameters = parameters;
+    }
+
     /**
      * Gets the protocol version.
      *
@@ -64,18 +113,55 @@ public class HttpRequest {
     /**
      * Gets the HTTP request headers.
      *
-     * @return a map of header name-value pairs
+     * @return the request's header fields
      */
-    public HashMap<String, String> getRequestHeaders() {
+    public HttpHeaders getRequestHeaders() {
         return requestHeaders;
     }
 
+    /**
+     * Gets a header value, ignoring the case of the name. When a header is
+     * repeated the last value is returned.
+     *
+     * @param name the header name
+     * @return the value, or null if the request does not have the header
+     */
+    public String getHeader(String name) {
+        return requestHeaders != null ? requestHeaders.get(name) : null;
+    }
+
     /**
      * Sets the HTTP request headers.
      *
-     * @param requestHeaders a map of header name-value pairs
+     * @param requestHeaders the request's header fields
      */
-    public void setRequestHeaders(HashMap<String, String> requestHeaders) {
+    public void setRequestHeaders(HttpHeaders requestHeaders) {
         this.requestHeaders = requestHeaders;
     }
+
+    /**
+     * Gets the request body, which streams in from the client as it is read.
+     *
+     * @return the body, or null if the request does not have one
+     */
+    public RequestBody getBody() {
+        return body;
+    }
+
+    /**
+     * Sets the request body.
+     *
+     * @param body the body stream
+     */
+    public void setBody(RequestBody body) {
+        this.body = body;
+    }
+
+    public void setProperty(String name, Object value) {
+        properties.put(name, value);
+    }
+
+    public Object getProperty(String name) {
+        return properties.get(name);
+    }
 }
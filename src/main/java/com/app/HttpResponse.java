@@ -1,9 +1,11 @@
 package com.app;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The HttpResponse class represents an HTTP response message.
@@ -14,14 +16,29 @@ import java.util.HashMap;
  * This class is used to construct the response that will be sent back to the
  * client
  * after processing their HTTP request.
+ * </p>
+ *
  * <p>
+ * The body is held as the bytes that go on the wire. A text body is encoded
+ * to UTF-8 once, when it is set, and the same bytes give the Content-Length,
+ * feed compression and are written out by every protocol. A body may also be
+ * made of several buffers, written in order, and a handler serving a fixed
+ * payload can pass the same read-only buffer to every response; buffers are
+ * never copied, only their bytes between position and limit are used, and
+ * neither the buffers nor their positions are changed.
+ * </p>
  */
 public class HttpResponse {
     private String statusCode;
     private final String protocolVersion;
-    private HashMap<String, String> headers;
-    private String body;
+    private final HttpHeaders headers = new HttpHeaders();
+    private static final ByteBuffer[] NO_BODY = new ByteBuffer[0];
+
+    private ByteBuffer[] body;
+    private int bodyLength;
     private byte[] compressedBody;
+    private ResponseBody.Writer bodyWriter;
+    private final AtomicReference<Runnable> bodyDoneAction = new AtomicReference<>();
     private HashMap<String, Object> properties = new HashMap<>();
 
     /**
@@ -33,16 +50,17 @@ public class HttpResponse {
     public HttpResponse(String protocolVersion, String body) {
         this.statusCode = "200 OK";
         this.protocolVersion = protocolVersion;
-        this.body = body;
-
-        Instant nowUtc = Instant.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ISO_INSTANT;
-        String date = formatter.format(nowUtc);
 
-        this.headers = new HashMap<>();
-        this.headers.put("Date", date);
-        this.headers.put("Content-Type", "text/plain");
-        this.headers.put("Content-Length", String.valueOf(body.getBytes(StandardCharsets.UTF_8).length));
+        this.headers.add(HttpHeaders.DATE, ServerClock.httpDate());
+        this.headers.add(HttpHeaders.CONTENT_TYPE, "text/plain");
+        // Set here rather than through setBody, which a subclass could
+        // override and see the response before it is constructed
+        if (body != null) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            this.body = new ByteBuffer[] { ByteBuffer.wrap(bytes) };
+            this.bodyLength = bytes.length;
+            this.headers.set(HttpHeaders.CONTENT_LENGTH, String.valueOf(bytes.length));
+        }
     }
 
     /**
@@ -54,13 +72,8 @@ public class HttpResponse {
         this.statusCode = "200 OK";
         this.protocolVersion = protocolVersion;
 
-        Instant nowUtc = Instant.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ISO_INSTANT;
-        String date = formatter.format(nowUtc);
-
-        this.headers = new HashMap<>();
-        this.headers.put("Date", date);
-        this.headers.put("Content-Type", "text/plain");
+        this.headers.add(HttpHeaders.DATE, ServerClock.httpDate());
+        this.headers.add(HttpHeaders.CONTENT_TYPE, "text/plain");
     }
 
     /**
@@ -93,74 +106,271 @@ public class HttpResponse {
     /**
      * Gets the HTTP headers.
      * 
-     * @return a map of header name-value pairs
+     * @return the response's header fields
      */
-    public HashMap<String, String> getHeaders() {
+    public HttpHeaders getHeaders() {
         return headers;
     }
 
     /**
-     * Sets a new header to headers hashmap
+     * Sets a header, replacing any value it already has.
      *
      * @param name  the header name
      * @param value the header value
      */
     public void setHeader(String name, String value) {
-        if (headers.containsKey(name) && name.equals("Content-Length")) {
-            this.headers.remove(name);
-            this.headers.put(name, value);
-        } else {
-            this.headers.put(name, value);
-        }
+        headers.set(name, value);
     }
 
     /**
-     * Sets the HTTP headers.
+     * Sets each of the given headers, replacing the values of any already
+     * present.
      * 
-     * @param headers a map of header name-value pairs
+     * @param headers the header fields to set
      */
-    public void setHeaders(HashMap<String, String> headers) {
-        this.headers.putAll(headers);
+    public void setHeaders(HttpHeaders headers) {
+        for (int i = 0; i < headers.size(); i++) {
+            this.headers.set(headers.getName(i), headers.getValue(i));
+        }
     }
 
     /**
-     * Gets the response body content.
+     * Gets the response body as text. This decodes the body's bytes, so it is
+     * meant for handlers and tests; responses are written from
+     * {@link #getBodyBuffers()}.
      * 
-     * @return the body string
+     * @return the body decoded from UTF-8, or null if there is none
      */
     public String getBody() {
-        return body;
+        if (body == null) {
+            return null;
+        }
+        if (body.length == 1 && body[0].hasArray()) {
+            ByteBuffer part = body[0];
+            return new String(part.array(), part.arrayOffset() + part.position(), part.remaining(),
+                    StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[bodyLength];
+        int offset = 0;
+        for (ByteBuffer part : body) {
+            int length = part.remaining();
+            part.duplicate().get(bytes, offset, length);
+            offset += length;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     /**
-     * Sets the response body content.
+     * Sets the response body content, encoded to UTF-8 now.
      * 
-     * @param body the body content to set
+     * @param body the body content to set, or null to leave the response
+     *             without a body
      */
     public void setBody(String body) {
-        this.body = body;
+        if (body == null) {
+            this.body = null;
+            this.bodyLength = 0;
+            this.compressedBody = null;
+            dropBodyWriter();
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            return;
+        }
+        setBodyBytes(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets the response body to the given bytes, which are not copied.
+     *
+     * @param body the body
+     */
+    public void setBodyBytes(byte[] body) {
+        setBodyBuffers(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Sets the response body to the remaining bytes of the given buffers, in
+     * order. The buffers are shared, not copied, so a fixed payload can be
+     * kept in one read-only buffer and handed to every response.
+     *
+     * @param parts the buffers that make up the body
+     */
+    public void setBodyBuffers(ByteBuffer... parts) {
+        ByteBuffer[] held = new ByteBuffer[parts.length];
+        long length = 0;
+        for (int i = 0; i < parts.length; i++) {
+            held[i] = parts[i].duplicate();
+            length += held[i].remaining();
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Response body of " + length + " bytes is too large");
+        }
+        this.body = held;
+        this.bodyLength = (int) length;
+        this.compressedBody = null;
+        dropBodyWriter();
+        this.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(length));
+    }
+
+    /**
+     * Stops the body being streamed. The chunked framing, and the trailer
+     * fields announced for it, go with the writer, since a body held in the
+     * response is sent with a Content-Length.
+     */
+    private void dropBodyWriter() {
+        if (bodyWriter != null) {
+            bodyWriter = null;
+            headers.remove(HttpHeaders.TRANSFER_ENCODING);
+            headers.remove(HttpHeaders.TRAILER);
+        }
+    }
+
+    /**
+     * Gets the bytes of the body as they go on the wire: the compressed body
+     * if there is one, otherwise the body as set. Each call returns new views,
+     * so the caller may consume them.
+     *
+     * @return the body's buffers, empty if the response has no body
+     */
+    public ByteBuffer[] getBodyBuffers() {
+        if (compressedBody != null) {
+            return new ByteBuffer[] { ByteBuffer.wrap(compressedBody) };
+        }
+        if (body == null) {
+            return NO_BODY;
+        }
+        ByteBuffer[] views = new ByteBuffer[body.length];
+        for (int i = 0; i < body.length; i++) {
+            views[i] = body[i].duplicate();
+        }
+        return views;
+    }
+
+    /**
+     * Gets the length of the body as set, before any compression.
+     *
+     * @return the number of bytes, 0 if there is no body
+     */
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * Writes the body as set, before any compression, to a stream.
+     * Read-only buffers have no accessible array and are copied through a
+     * small scratch array.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeBody(OutputStream out) throws IOException {
         if (body != null) {
-            this.setHeader("Content-Length", String.valueOf(body.getBytes(StandardCharsets.UTF_8).length));
+            write(body, out);
+        }
+    }
+
+    /**
+     * Writes buffers to a stream without consuming them.
+     *
+     * @param buffers the buffers to write
+     * @param out     the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    static void write(ByteBuffer[] buffers, OutputStream out) throws IOException {
+        byte[] scratch = null;
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                continue;
+            }
+            ByteBuffer source = buffer.duplicate();
+            if (scratch == null) {
+                scratch = new byte[Math.min(8192, Math.max(source.remaining(), 1))];
+            }
+            while (source.hasRemaining()) {
+                int length = Math.min(scratch.length, source.remaining());
+                source.get(scratch, 0, length);
+                out.write(scratch, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Streams the body instead of holding it. The writer runs once the head
+     * has been sent; on HTTP/1.1 the body goes out with chunked transfer
+     * coding, so the response carries no Content-Length.
+     *
+     * @param bodyWriter produces the body
+     */
+    public void setBodyWriter(ResponseBody.Writer bodyWriter) {
+        this.bodyWriter = bodyWriter;
+        this.body = null;
+        this.bodyLength = 0;
+        this.compressedBody = null;
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.set(HttpHeaders.TRANSFER_ENCODING, "chunked");
+    }
+
+    /**
+     * Gets the writer of a streamed body.
+     *
+     * @return the writer, or null if the body is held in the response
+     */
+    public ResponseBody.Writer getBodyWriter() {
+        return bodyWriter;
+    }
+
+    /**
+     * Checks if the body is streamed by a writer.
+     *
+     * @return true if the body is produced while the response is sent
+     */
+    public boolean isStreamed() {
+        return bodyWriter != null;
+    }
+
+    /**
+     * Sets an action to run once the streamed body is done with: when its
+     * writer has returned or failed, or when the response is dropped without
+     * the writer being run. Whatever the handler holds for the body's sake,
+     * such as a place in a {@link Bulkhead}, is given back from it.
+     *
+     * @param action the action, run once on whichever thread is done with
+     *               the body
+     */
+    public void onBodyDone(Runnable action) {
+        bodyDoneAction.set(action);
+    }
+
+    /**
+     * Runs the action set with {@link #onBodyDone(Runnable)}, if it has not
+     * run yet. Whoever writes or drops a response calls this once they are
+     * done with its body; calling it again does nothing.
+     */
+    void bodyDone() {
+        Runnable action = bodyDoneAction.getAndSet(null);
+        if (action != null) {
+            action.run();
         }
     }
 
     /**
-     * Gets the response body content.
+     * Gets the compressed response body.
      *
-     * @return the body string
+     * @return the compressed bytes, or null if the body is not compressed
      */
     public byte[] getCompressedBody() {
         return compressedBody;
     }
 
     /**
-     * Sets the compressed response body content.
+     * Sets the compressed response body, which is sent in place of the body
+     * and gives the Content-Length.
      *
      * @param compressedBody the compressed body content to set
      */
     public void setCompressedBody(byte[] compressedBody) {
         this.compressedBody = compressedBody;
-        this.setHeader("Content-Length", String.valueOf(body.getBytes(StandardCharsets.UTF_8).length));
+        this.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(compressedBody.length));
     }
 
     /**
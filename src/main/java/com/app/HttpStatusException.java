@@ -0,0 +1,39 @@
+package com.app;
+
+import java.io.IOException;
+
+/**
+ * The HttpStatusException class reports a request the server will not serve,
+ * together with the status line to answer it with.
+ *
+ * <p>
+ * It is an {@link IOException} so that it passes through the stream reads of
+ * a request body unchanged, and a handler that catches it can still tell a
+ * body that was too large from a connection that failed.
+ * </p>
+ */
+public class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String statusCode;
+
+    /**
+     * Creates the exception.
+     *
+     * @param statusCode the status to answer with (e.g., "413 Payload Too Large")
+     * @param message    the reason, for logging
+     */
+    public HttpStatusException(String statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Gets the status the request should be answered with.
+     *
+     * @return the status code string
+     */
+    public String getStatusCode() {
+        return statusCode;
+    }
+}
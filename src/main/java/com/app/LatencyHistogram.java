@@ -0,0 +1,100 @@
+package com.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram class records durations into power-of-two microsecond
+ * buckets.
+ *
+ * <p>
+ * Bucket {@code i} holds samples below {@code 2^i} microseconds, so the
+ * histogram covers one microsecond to about 35 minutes in 32 counters with a
+ * worst-case error of a factor of two. Recording is lock-free and safe from any
+ * thread.
+ * </p>
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    /**
+     * Records one sample.
+     *
+     * @param nanos the measured duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketFor(micros));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+    }
+
+    /**
+     * Gets the number of samples recorded.
+     *
+     * @return the sample count
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Gets the mean of the recorded samples.
+     *
+     * @return the mean in microseconds, or 0 if nothing was recorded
+     */
+    public double getMeanMicros() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : totalMicros.get() / (double) count;
+    }
+
+    /**
+     * Gets an upper bound for the given percentile: the top of the bucket the
+     * percentile falls into.
+     *
+     * @param percentile a value between 0 and 100
+     * @return the percentile bound in microseconds, or 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    /**
+     * Gets the number of samples in one bucket.
+     *
+     * @param bucket the bucket index
+     * @return the number of samples below {@code 2^bucket} microseconds that
+     *         did not fit a lower bucket
+     */
+    public long getBucketCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    static int bucketFor(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fus p50<=%dus p99<=%dus", getCount(), getMeanMicros(),
+                getPercentileMicros(50), getPercentileMicros(99));
+    }
+}
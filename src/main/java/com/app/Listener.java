@@ -0,0 +1,113 @@
+package com.app;
+
+import java.io.IOException;
+
+/**
+ * The Listener class groups one listening socket with the resources that serve
+ * the connections it accepts.
+ *
+ * <p>
+ * When a server runs several listeners, each binds the same port with
+ * SO_REUSEPORT and the kernel shards incoming connections between them. Every
+ * listener accepts on its own thread (or its own boss loop with the NIO
+ * transport), so a burst of connections is not funnelled through one accept
+ * call.
+ * </p>
+ */
+public class Listener {
+    private final int index;
+    private final Acceptor acceptor;
+    private final AcceptMetrics metrics;
+    private final EventLoop bossLoop;
+    private final EventLoopGroup workerLoops;
+
+    /**
+     * Creates a listener and binds its socket.
+     *
+     * @param index      the position of this listener within the server
+     * @param config     the server configuration
+     * @param tlsContext the TLS configuration shared by all listeners, or null
+     *                   for plaintext
+     * @param reusePort  whether the port is shared with other listeners
+     * @throws IOException if the socket cannot be bound or an event loop cannot
+     *                     be created
+     */
+    public Listener(int index, ServerConfig config, TlsContext tlsContext, boolean reusePort) throws IOException {
+        this.index = index;
+        this.acceptor = new Acceptor(tlsContext, reusePort);
+        this.metrics = new AcceptMetrics("listener-" + index);
+
+        if (config.getTransportMode() == TransportMode.NIO) {
+            // The worker loops are divided between the listeners so the total
+            // stays at the configured count
+            int loops = Math.max(1, config.getEventLoopThreads() / config.getListeners());
+            this.bossLoop = new EventLoop("nio-boss-" + index);
+            this.workerLoops = new EventLoopGroup("nio-worker-" + index, loops, config.getLoopAssignment());
+        } else {
+            this.bossLoop = null;
+            this.workerLoops = null;
+        }
+    }
+
+    /**
+     * Gets the position of this listener within the server.
+     *
+     * @return the listener index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the acceptor that owns the listening socket.
+     *
+     * @return the acceptor
+     */
+    public Acceptor getAcceptor() {
+        return acceptor;
+    }
+
+    /**
+     * Gets the accept counters of this listener.
+     *
+     * @return the accept metrics
+     */
+    public AcceptMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the loop that accepts connections for the NIO transport.
+     *
+     * @return the boss loop, or null for the thread-based transports
+     */
+    public EventLoop getBossLoop() {
+        return bossLoop;
+    }
+
+    /**
+     * Gets the loops that service this listener's connections for the NIO
+     * transport.
+     *
+     * @return the worker loops, or null for the thread-based transports
+     */
+    public EventLoopGroup getWorkerLoops() {
+        return workerLoops;
+    }
+
+    /**
+     * Closes the listening socket and stops any event loops.
+     */
+    public void close() {
+        try {
+            acceptor.close();
+        } catch (IOException e) {
+            Log.warn("Error closing acceptor: {}", e.getMessage());
+        }
+
+        if (bossLoop != null) {
+            bossLoop.shutdown();
+            workerLoops.shutdown();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.app;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Log class is the server's logging facade.
+ *
+ * <p>
+ * Each message has a {@link Level}, and messages below the configured level
+ * are dropped by a single comparison against a volatile field before anything
+ * is allocated. Callers that have to build a message, or walk a structure to
+ * describe it, check {@link #isEnabled(Level)} first; messages with one or two
+ * values can instead use a "{}" pattern, which is only filled in if the
+ * message is written.
+ * </p>
+ *
+ * <p>
+ * Enabled messages are not written by the thread that logs them. They are
+ * published to a bounded lock-free ring, and a daemon thread drains the ring
+ * in batches, formatting each batch into one string and writing it to the
+ * console with a single call, ERROR and WARN to standard error and the rest to
+ * standard output. A request thread therefore never waits on the console
+ * lock. When the ring is full, messages are dropped and counted rather than
+ * blocking the caller; the count is reported with the next batch.
+ * </p>
+ */
+public final class Log {
+
+    /**
+     * How severe a message is, from the most to the least.
+     */
+    public enum Level {
+        /** A failure the server cannot recover from for the task at hand. */
+        ERROR,
+        /** A problem with a client or a connection that was dealt with. */
+        WARN,
+        /** Lifecycle events: starting, stopping, summaries. */
+        INFO,
+        /** Per-connection and per-request detail. */
+        DEBUG;
+
+        /**
+         * Parses a level name, ignoring case.
+         *
+         * @param name the name, such as "debug"
+         * @return the level
+         * @throws IllegalArgumentException if there is no such level
+         */
+        public static Level parse(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /** Slots in the ring; a power of two. */
+    static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    // Stands in for an argument a message does not have, so that a null
+    // argument is still written as "null"
+    private static final Object NONE = new Object();
+
+    private static volatile int threshold = Level.INFO.ordinal();
+
+    // The ring: producers claim a sequence from tail, fill the slot and then
+    // publish it by storing sequence + 1 in the slot's marker; the writer
+    // consumes in order from head.
+    private static final AtomicReferenceArray<Event> slots = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long head;
+    private static volatile Thread writer;
+    private static long reportedDropped;
+
+    static {
+        Thread thread = new Thread(Log::run, "log-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drainOnExit, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    /**
+     * Sets the least severe level that is written.
+     *
+     * @param level the level; messages at it and above are written
+     */
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    /**
+     * Gets the least severe level that is written.
+     *
+     * @return the level
+     */
+    public static Level getLevel() {
+        return Level.values()[threshold];
+    }
+
+    /**
+     * Checks if messages at a level are written. Guard any message that is
+     * costly to build with this.
+     *
+     * @param level the level
+     * @return true if messages at the level are written
+     */
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() <= threshold;
+    }
+
+    /**
+     * Checks if DEBUG messages are written.
+     *
+     * @return true if DEBUG messages are written
+     */
+    public static boolean isDebugEnabled() {
+        return Level.DEBUG.ordinal() <= threshold;
+    }
+
+    /**
+     * Logs a message at ERROR.
+     *
+     * @param message the message
+     */
+    public static void error(String message) {
+        log(Level.ERROR, message, NONE, NONE, null);
+    }
+
+    /**
+     * Logs a message at ERROR with the stack trace of what caused it.
+     *
+     * @param message the message
+     * @param thrown  the exception
+     */
+    public static void error(String message, Throwable thrown) {
+        log(Level.ERROR, message, NONE, NONE, thrown);
+    }
+
+    /**
+     * Logs a message at ERROR, with "{}" in the pattern replaced by a value.
+     *
+     * @param pattern the message pattern
+     * @param arg     the value
+     */
+    public static void error(String pattern, Object arg) {
+        log(Level.ERROR, pattern, arg, NONE, null);
+    }
+
+    /**
+     * Logs a message at WARN.
+     *
+     * @param message the message
+     */
+    public static void warn(String message) {
+        log(Level.WARN, message, NONE, NONE, null);
+    }
+
+    /**
+     * Logs a message at WARN, with "{}" in the pattern replaced by a value.
+     *
+     * @param pattern the message pattern
+     * @param arg     the value
+     */
+    public static void warn(String pattern, Object arg) {
+        log(Level.WARN, pattern, arg, NONE, null);
+    }
+
+    /**
+     * Logs a message at WARN, with each "{}" in the pattern replaced by the
+     * next value.
+     *
+     * @param pattern the message pattern
+     * @param arg1    the first value
+     * @param arg2    the second value
+     */
+    public static void warn(String pattern, Object arg1, Object arg2) {
+        log(Level.WARN, pattern, arg1, arg2, null);
+    }
+
+    /**
+     * Logs a message at INFO.
+     *
+     * @param message the message
+     */
+    public static void info(String message) {
+        log(Level.INFO, message, NONE, NONE, null);
+    }
+
+    /**
+     * Logs a message at INFO, with "{}" in the pattern replaced by a value.
+     *
+     * @param pattern the message pattern
+     * @param arg     the value
+     */
+    public static void info(String pattern, Object arg) {
+        log(Level.INFO, pattern, arg, NONE, null);
+    }
+
+    /**
+     * Logs a message at INFO, with each "{}" in the pattern replaced by the
+     * next value.
+     *
+     * @param pattern the message pattern
+     * @param arg1    the first value
+     * @param arg2    the second value
+     */
+    public static void info(String pattern, Object arg1, Object arg2) {
+        log(Level.INFO, pattern, arg1, arg2, null);
+    }
+
+    /**
+     * Logs a message at DEBUG.
+     *
+     * @param message the message
+     */
+    public static void debug(String message) {
+        log(Level.DEBUG, message, NONE, NONE, null);
+    }
+
+    /**
+     * Logs a message at DEBUG, with "{}" in the pattern replaced by a value.
+     *
+     * @param pattern the message pattern
+     * @param arg     the value
+     */
+    public static void debug(String pattern, Object arg) {
+        log(Level.DEBUG, pattern, arg, NONE, null);
+    }
+
+    /**
+     * Logs a message at DEBUG, with each "{}" in the pattern replaced by the
+     * next value.
+     *
+     * @param pattern the message pattern
+     * @param arg1    the first value
+     * @param arg2    the second value
+     */
+    public static void debug(String pattern, Object arg1, Object arg2) {
+        log(Level.DEBUG, pattern, arg1, arg2, null);
+    }
+
+    /**
+     * Waits until every message logged before the call has been written.
+     *
+     * @param timeoutMillis how long to wait at most
+     * @return true if the messages were written in time
+     */
+    public static boolean flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (head < target) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of messages dropped because the ring was full.
+     *
+     * @return the count since the class was loaded
+     */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    private static void log(Level level, String pattern, Object arg1, Object arg2, Throwable thrown) {
+        if (level.ordinal() > threshold) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & MASK;
+        slots.lazySet(index, new Event(level, pattern, arg1, arg2, thrown));
+        published.set(index, sequence + 1);
+    }
+
+    private static void run() {
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        while (true) {
+            if (drain(out, err) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private static void drainOnExit() {
+        flush(1000);
+    }
+
+    /**
+     * Writes every published message, up to the first slot a producer has
+     * claimed but not yet filled.
+     *
+     * @return the number of messages written
+     */
+    private static int drain(StringBuilder out, StringBuilder err) {
+        long next = head;
+        int count = 0;
+        while (count < CAPACITY) {
+            int index = (int) next & MASK;
+            if (published.get(index) != next + 1) {
+                break;
+            }
+            Event event = slots.get(index);
+            slots.lazySet(index, null);
+            event.appendTo(event.level.ordinal() <= Level.WARN.ordinal() ? err : out);
+            next++;
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long lost = dropped.get() - reportedDropped;
+        if (lost > 0) {
+            reportedDropped += lost;
+            err.append("Log ring full, dropped ").append(lost).append(" messages").append(System.lineSeparator());
+        }
+        write(System.err, err);
+        write(System.out, out);
+        head = next;
+        return count;
+    }
+
+    private static void write(PrintStream stream, StringBuilder text) {
+        if (text.length() > 0) {
+            stream.print(text);
+            stream.flush();
+            text.setLength(0);
+        }
+    }
+
+    /**
+     * Replaces each "{}" in a pattern with the next argument.
+     */
+    static String format(String pattern, Object arg1, Object arg2) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 16);
+        appendFormatted(sb, pattern, arg1, arg2);
+        return sb.toString();
+    }
+
+    private static void appendFormatted(StringBuilder sb, String pattern, Object arg1, Object arg2) {
+        int from = 0;
+        int used = 0;
+        int at;
+        while (used < 2 && (used == 0 ? arg1 : arg2) != NONE && (at = pattern.indexOf("{}", from)) >= 0) {
+            sb.append(pattern, from, at).append(used == 0 ? arg1 : arg2);
+            from = at + 2;
+            used++;
+        }
+        sb.append(pattern, from, pattern.length());
+    }
+
+    /**
+     * One logged message, captured with the time and thread it was logged on.
+     */
+    private static final class Event {
+        private final Level level;
+        private final String pattern;
+        private final Object arg1;
+        private final Object arg2;
+        private final Throwable thrown;
+        private final long timeMillis;
+        private final String thread;
+
+        private Event(Level level, String pattern, Object arg1, Object arg2, Throwable thrown) {
+            this.level = level;
+            this.pattern = pattern;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.thrown = thrown;
+            this.timeMillis = ServerClock.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+        }
+
+        private void appendTo(StringBuilder sb) {
+            TIME.formatTo(Instant.ofEpochMilli(timeMillis), sb);
+            sb.append(' ').append(level).append(" [").append(thread).append("] ");
+            appendFormatted(sb, pattern, arg1, arg2);
+            sb.append(System.lineSeparator());
+            if (thrown != null) {
+                StringWriter trace = new StringWriter();
+                thrown.printStackTrace(new PrintWriter(trace));
+                sb.append(trace);
+            }
+        }
+    }
+}
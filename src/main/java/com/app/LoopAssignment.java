@@ -0,0 +1,11 @@
+package com.app;
+
+/**
+ * How the NIO transport picks the worker event loop for a new connection.
+ */
+enum LoopAssignment {
+    /** Cycle through the loops in order. */
+    ROUND_ROBIN,
+    /** Pick the loop currently servicing the fewest connections. */
+    LEAST_CONNECTIONS
+}
@@ -10,31 +10,94 @@ public class Main {
     /**
      * The main method that starts the HTTP server.
      * 
-     * @param args command line arguments '--ssl' for encryption
+     * @param args command line arguments '--ssl' for encryption, '--nio' for the
+     *             event loop transport, '--virtual' for virtual thread per
+     *             connection, '--event-loops=N' to size the NIO worker loops,
+     *             '--listeners=K' to shard accepts across K SO_REUSEPORT
+     *             sockets, '--tls-session-cache=N' and
+     *             '--tls-session-timeout=S' to size TLS session resumption,
+     *             '--no-session-tickets' to disable TLS 1.3 tickets,
+     *             '--max-connections=N' and '--max-pending-accepts=N' to bound
+     *             admission, '--retry-after=S' for the 503 sent beyond them,
+     *             '--idle-timeout=MS', '--header-timeout=MS' and
+     *             '--keep-alive-timeout=MS' for connection deadlines,
+     *             '--max-keep-alive-requests=N' to recycle persistent
+     *             connections,
+     *             '--max-pipelined=N' to size HTTP/1.1 pipeline batches,
+     *             '--parallel-pipeline' to handle their requests concurrently
+     *             '--max-body-size=N' to cap request bodies in bytes,
+     *             '--log-level=L' (error, warn, info or debug) to choose what
+     *             is logged and '--dump-frames' to log every HTTP/2 frame
      * @throws IOException if an I/O error occurs when creating the Acceptor
      */
     public static void main(String[] args) throws IOException {
-        boolean enableSSL = args.length > 0 && args[0].equalsIgnoreCase("--ssl");
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            if (arg.equalsIgnoreCase("--ssl")) {
+                config.setSslEnabled(true);
+            } else if (arg.equalsIgnoreCase("--nio")) {
+                config.setTransportMode(TransportMode.NIO);
+            } else if (arg.equalsIgnoreCase("--virtual")) {
+                config.setTransportMode(TransportMode.VIRTUAL);
+            } else if (arg.startsWith("--event-loops=")) {
+                config.setEventLoopThreads(Integer.parseInt(arg.substring("--event-loops=".length())));
+            } else if (arg.startsWith("--listeners=")) {
+                config.setListeners(Integer.parseInt(arg.substring("--listeners=".length())));
+            } else if (arg.startsWith("--tls-session-cache=")) {
+                config.setTlsSessionCacheSize(Integer.parseInt(arg.substring("--tls-session-cache=".length())));
+            } else if (arg.startsWith("--tls-session-timeout=")) {
+                config.setTlsSessionTimeout(Integer.parseInt(arg.substring("--tls-session-timeout=".length())));
+            } else if (arg.equalsIgnoreCase("--no-session-tickets")) {
+                config.setTlsSessionTickets(false);
+            } else if (arg.startsWith("--max-connections=")) {
+                config.setMaxConnections(Integer.parseInt(arg.substring("--max-connections=".length())));
+            } else if (arg.startsWith("--max-pending-accepts=")) {
+                config.setMaxPendingAccepts(Integer.parseInt(arg.substring("--max-pending-accepts=".length())));
+            } else if (arg.startsWith("--retry-after=")) {
+                config.setRetryAfterSeconds(Integer.parseInt(arg.substring("--retry-after=".length())));
+            } else if (arg.startsWith("--idle-timeout=")) {
+                config.setIdleTimeout(Integer.parseInt(arg.substring("--idle-timeout=".length())));
+            } else if (arg.startsWith("--header-timeout=")) {
+                config.setRequestHeaderTimeout(Integer.parseInt(arg.substring("--header-timeout=".length())));
+            } else if (arg.startsWith("--keep-alive-timeout=")) {
+                config.setKeepAliveTimeout(Integer.parseInt(arg.substring("--keep-alive-timeout=".length())));
+            } else if (arg.startsWith("--max-keep-alive-requests=")) {
+                config.setMaxKeepAliveRequests(
+                        Integer.parseInt(arg.substring("--max-keep-alive-requests=".length())));
+            } else if (arg.startsWith("--max-pipelined=")) {
+                config.setMaxPipelinedRequests(Integer.parseInt(arg.substring("--max-pipelined=".length())));
+            } else if (arg.equalsIgnoreCase("--parallel-pipeline")) {
+                config.setPipelineParallel(true);
+            } else if (arg.startsWith("--max-body-size=")) {
+                config.setMaxRequestBodySize(Long.parseLong(arg.substring("--max-body-size=".length())));
+            } else if (arg.startsWith("--log-level=")) {
+                config.setLogLevel(Log.Level.parse(arg.substring("--log-level=".length())));
+            } else if (arg.equalsIgnoreCase("--dump-frames")) {
+                config.setFrameDumps(true);
+            }
+        }
+        boolean enableSSL = config.isSslEnabled();
 
         try {
-            // Create server with specified SSL setting and a thread pool size of 10
-            Server server = new Server(enableSSL, 10);
+            // Create server with the requested SSL setting and transport
+            Server server = new Server(config);
 
             // Add shutdown hook to gracefully terminate the server
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                System.out.println("Shutting down server...");
+                Log.info("Shutting down server...");
                 server.stop();
+                Log.flush(1000);
             }));
 
             // Start the server
             server.start();
 
-            System.out.println("Server started " + (enableSSL ? "with SSL" : "without SSL"));
-            System.out.println("Press Ctrl+C to stop the server");
+            Log.info("Server started {}", enableSSL ? "with SSL" : "without SSL");
+            Log.info("Press Ctrl+C to stop the server");
 
         } catch (IOException e) {
-            System.err.println("Server failed to start: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Server failed to start", e);
+            Log.flush(1000);
         }
     }
 }
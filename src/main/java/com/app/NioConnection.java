@@ -0,0 +1,1474 @@
+package com.app;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+
+/**
+ * The NioConnection class drives a single client connection on an
+ * {@link EventLoop}.
+ *
+ * <p>
+ * Bytes are read without blocking into a per-connection buffer. HTTP/1.1
+ * request heads are parsed in place by a {@link RequestParser}, which picks up
+ * where it left off as more bytes arrive, and complete HTTP/2 frames are handed
+ * to the same {@link Http2Processor} used by the blocking transport.
+ * Request handlers run on a worker executor so slow endpoints never stall the
+ * loop, and their responses are posted back to the loop to be encoded and
+ * written. A handler that answers asynchronously releases its worker as well;
+ * its response is posted back whenever it completes. A plaintext connection
+ * switches to HTTP/2 when it opens with the HTTP/2 preface or when its first
+ * request asks for "Upgrade: h2c".
+ * </p>
+ *
+ * <p>
+ * With TLS enabled the bytes pass through an {@link SSLEngine} first. The
+ * connection moves through three non-blocking stages: the handshake, whose
+ * delegated tasks run on the worker executor; ALPN, which picks the protocol
+ * once the handshake completes; and for HTTP/2 the check of the connection
+ * preface. Encrypted records are read into direct buffers taken from the loop's
+ * {@link BufferPool}, and a connection holds one only while part of a record is
+ * waiting for the rest.
+ * </p>
+ *
+ * <p>
+ * Every connection has at most one deadline armed on its loop's
+ * {@link TimingWheel}, chosen by what it is waiting for: the handshake and
+ * request head, the next request on a persistent connection, HTTP/2 frames,
+ * or a write the client is not reading. HTTP/2 connections also get a
+ * deadline for the client to acknowledge the server's SETTINGS.
+ * </p>
+ *
+ * <p>
+ * An HTTP/1.1 request body is decoded on the loop and handed to the handler
+ * through a bounded {@link RequestBody.Queued}. When the queue fills the loop
+ * stops reading the socket until the handler has drained it, so an upload
+ * never takes more memory than the queue and the read buffer.
+ * </p>
+ *
+ * <p>
+ * A streamed response body is written on a worker and carried to the loop
+ * by a {@link ResponsePump}, which holds the writer back while the client is
+ * behind on reading. The responses pipelined after it wait until it ends.
+ * </p>
+ *
+ * <p>
+ * Apart from {@link #register()}, every method must be called on the loop
+ * thread. Protocol state such as the {@link Http2ConnectionManager} is created
+ * on, and only ever touched by, the owning loop; worker threads see nothing but
+ * the request they are handling.
+ * </p>
+ */
+public class NioConnection implements EventLoop.ReadyHandler {
+    private static final byte[] CONNECTION_PREFACE = Acceptor.CONNECTION_PREFACE;
+    private static final int FRAME_HEADER_LENGTH = 9;
+    private static final int INITIAL_BUFFER_SIZE = 16384;
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+    private static final int BODY_QUEUE_SIZE = 64 * 1024;
+    private static final int RESPONSE_QUEUE_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private final Executor workers;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final ServerConfig DEFAULT_CONFIG = new ServerConfig();
+
+    private boolean http2;
+    private final ChannelOutputStream outputStream = new ChannelOutputStream();
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private SelectionKey key;
+    private Runnable closeListener;
+    private boolean closeAfterWrite;
+    private boolean closed;
+    private AdmissionControl rejection;
+    private ServerConfig config = DEFAULT_CONFIG;
+    private ConnectionDeadline deadline;
+    private ConnectionDeadline settingsDeadline;
+    private ConnectionStats stats;
+
+    // TLS state
+    private SSLEngine sslEngine;
+    private TlsMetrics tlsMetrics;
+    private long handshakeStartNanos;
+    private long handshakeStartMillis;
+    private ByteBuffer netIn;
+    private boolean handshaking;
+    private boolean taskRunning;
+    private boolean protocolStarted;
+
+    // HTTP/1.1 state
+    private Processor processor;
+    private RequestParser requestParser;
+    private Responder responder;
+    private final List<HttpRequest> batch = new ArrayList<>();
+    private HttpResponse[] batchResponses;
+    private int batchWritten;
+    private boolean batchKeepAlive;
+    private int requestCount;
+    private HttpRequest deferred;
+    private BodyDecoder bodyDecoder;
+    private RequestBody.Queued requestBody;
+    private boolean bodyPaused;
+    private boolean bodyFailed;
+    private ResponsePump responsePump;
+    private long responsePumpQueued;
+    private boolean prefaceSniffed;
+
+    // HTTP/2 state
+    private Http2ConnectionManager http2ConnectionManager;
+    private Http2Processor http2Processor;
+    private Http2Responder http2Responder;
+    private boolean prefaceReceived;
+    private int http2RequestsInFlight;
+
+    /**
+     * Creates a connection handler for an accepted channel.
+     *
+     * @param channel   the accepted client channel
+     * @param eventLoop the loop that will service the channel
+     * @param workers   the executor that runs request handlers
+     * @param protocol  the negotiated protocol, "h2" or "http/1.1"; with TLS it
+     *                  is replaced by the protocol chosen through ALPN
+     */
+    public NioConnection(SocketChannel channel, EventLoop eventLoop, Executor workers, String protocol) {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.workers = workers;
+        this.http2 = "h2".equals(protocol);
+    }
+
+    /**
+     * Sets a callback to run once when the connection closes.
+     *
+     * @param closeListener the callback
+     */
+    public void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    /**
+     * Sets the configuration holding the connection's timeouts. Must be called
+     * before {@link #register()}; without it the defaults apply.
+     *
+     * @param config the server configuration
+     */
+    public void setConfig(ServerConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Sets the registry entry that counts the connection's bytes and requests.
+     * Must be called before {@link #register()}; a refused connection has none.
+     *
+     * @param stats the connection's entry
+     */
+    public void setStats(ConnectionStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Refuses the connection instead of serving it. The request head or HTTP/2
+     * preface is still read, so the client is not reset mid-request, and is
+     * answered with the admission control's pre-encoded 503 or GOAWAY. Must be
+     * called before {@link #register()}.
+     *
+     * @param admission the admission control that refused the connection
+     */
+    public void setRejection(AdmissionControl admission) {
+        this.rejection = admission;
+    }
+
+    /**
+     * Serves the connection over TLS using the given engine. Must be called
+     * before {@link #register()}.
+     *
+     * @param sslEngine  a server-mode engine
+     * @param tlsMetrics the counters that record how the handshake went
+     */
+    public void setSslEngine(SSLEngine sslEngine, TlsMetrics tlsMetrics) {
+        this.sslEngine = sslEngine;
+        this.tlsMetrics = tlsMetrics;
+    }
+
+    /**
+     * Registers the channel with the event loop and starts reading. Safe to call
+     * from any thread.
+     */
+    public void register() {
+        eventLoop.connectionOpened();
+        eventLoop.execute(() -> {
+            try {
+                key = eventLoop.register(channel, SelectionKey.OP_READ, this);
+                TimingWheel wheel = eventLoop.getTimingWheel();
+                deadline = new ConnectionDeadline(wheel, config, this::onDeadline);
+                settingsDeadline = new ConnectionDeadline(wheel, config, this::onDeadline);
+                // The handshake and the first request head share one deadline
+                deadline.arm(ConnectionDeadline.Kind.REQUEST_HEADER);
+                if (sslEngine != null) {
+                    handshakeStartNanos = System.nanoTime();
+                    handshakeStartMillis = System.currentTimeMillis();
+                    sslEngine.beginHandshake();
+                    handshaking = true;
+                    handshake();
+                } else {
+                    startProtocol();
+                }
+            } catch (IOException e) {
+                Log.warn("Error registering connection: {}", e.getMessage());
+                close();
+            }
+        });
+    }
+
+    private void startProtocol() throws IOException {
+        protocolStarted = true;
+        if (http2) {
+            startHttp2();
+        } else {
+            processor = new Processor();
+            requestParser = new RequestParser();
+            responder = new Responder();
+            if (stats != null) {
+                stats.setProtocol("http/1.1");
+            }
+            // h2c is only offered in cleartext, TLS clients use ALPN instead
+            prefaceSniffed = sslEngine != null;
+        }
+    }
+
+    /**
+     * Switches to HTTP/2 and sends the server's SETTINGS. A refused connection
+     * only needs to read the preface, so it skips the protocol state.
+     */
+    private void startHttp2() throws IOException {
+        http2 = true;
+        if (rejection == null) {
+            createHttp2State();
+            http2Processor.initialise(outputStream);
+            armHttp2Deadlines();
+        }
+    }
+
+    private void armHttp2Deadlines() {
+        deadline.arm(ConnectionDeadline.Kind.IDLE);
+        settingsDeadline.arm(ConnectionDeadline.Kind.SETTINGS_ACK);
+    }
+
+    private void createHttp2State() {
+        http2 = true;
+        http2ConnectionManager = new Http2ConnectionManager();
+        http2ConnectionManager.setFrameDumps(config.isFrameDumps());
+        http2Processor = new Http2Processor(http2ConnectionManager);
+        http2Processor.setDeferRequests(true);
+        http2Responder = new Http2Responder(http2ConnectionManager);
+        if (stats != null) {
+            stats.setProtocol(sslEngine != null ? "h2" : "h2c");
+        }
+    }
+
+    @Override
+    public void onReady(SelectionKey key) {
+        try {
+            if (key.isWritable()) {
+                flushWrites();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+        } catch (IOException e) {
+            Log.debug("Connection error: {}", e.getMessage());
+            close();
+        } catch (RuntimeException e) {
+            // Closed here rather than by the loop, so that the admission
+            // slot, stats and pending responses are given back as well
+            Log.error("Unexpected connection error", e);
+            close();
+        }
+    }
+
+    private void read() throws IOException {
+        if (sslEngine != null) {
+            readTls();
+            return;
+        }
+
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead == -1) {
+            Log.debug("Client closed the connection");
+            close();
+            return;
+        }
+
+        if (bytesRead > 0) {
+            if (stats != null) {
+                stats.addBytesIn(bytesRead);
+            }
+            onBytesRead();
+            processInbound();
+        }
+
+        // Body bytes are consumed as they come, so a full buffer only means
+        // the body queue is full too
+        if (!readBuffer.hasRemaining() && bodyDecoder == null) {
+            growReadBuffer();
+        }
+    }
+
+    /**
+     * Moves the deadline on when bytes arrive. An idle HTTP/2 connection is
+     * active again, and the first byte of a request after keep-alive starts
+     * the clock on its head.
+     */
+    private void onBytesRead() {
+        if (deadline.getKind() == ConnectionDeadline.Kind.IDLE) {
+            deadline.touch();
+        } else if (deadline.getKind() == ConnectionDeadline.Kind.KEEP_ALIVE) {
+            deadline.arm(ConnectionDeadline.Kind.REQUEST_HEADER);
+        }
+    }
+
+    private void processInbound() throws IOException {
+        readBuffer.flip();
+        try {
+            if (http2) {
+                processHttp2();
+            } else {
+                processHttp1();
+            }
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    private void readTls() throws IOException {
+        if (netIn == null) {
+            netIn = eventLoop.getBufferPool().acquire();
+        }
+
+        int bytesRead = channel.read(netIn);
+        if (bytesRead == -1) {
+            Log.debug("Client closed the connection");
+            close();
+            return;
+        }
+
+        if (bytesRead > 0) {
+            onBytesRead();
+            processTls();
+        }
+
+        releaseNetIn();
+    }
+
+    /**
+     * Advances the handshake, then decrypts every complete record and passes the
+     * plaintext on to the protocol.
+     */
+    private void processTls() throws IOException {
+        if (handshaking) {
+            if (taskRunning) {
+                return;
+            }
+            handshake();
+            if (handshaking || closed) {
+                return;
+            }
+        }
+
+        while (!closed && unwrap()) {
+            HandshakeStatus status = sslEngine.getHandshakeStatus();
+            if (status != HandshakeStatus.NOT_HANDSHAKING && status != HandshakeStatus.FINISHED) {
+                // A post-handshake message such as a TLS 1.3 key update
+                handshaking = true;
+                handshake();
+                if (handshaking) {
+                    return;
+                }
+            }
+        }
+
+        if (!closed && readBuffer.position() > 0) {
+            processInbound();
+        }
+    }
+
+    /**
+     * Drives the handshake as far as it can go without blocking. Returns when
+     * the peer must send more data, when a delegated task has been handed to the
+     * workers, or when the handshake is complete.
+     */
+    private void handshake() throws IOException {
+        while (handshaking && !closed) {
+            switch (sslEngine.getHandshakeStatus()) {
+                case NEED_WRAP:
+                    wrap(EMPTY);
+                    break;
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    if (!unwrap()) {
+                        return;
+                    }
+                    break;
+                case NEED_TASK:
+                    runHandshakeTasks();
+                    return;
+                default:
+                    finishHandshake();
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Runs the engine's delegated tasks, such as certificate and key exchange
+     * work, on the worker executor so they do not stall the loop.
+     */
+    private void runHandshakeTasks() {
+        taskRunning = true;
+        dispatch(() -> {
+            Runnable task;
+            while ((task = sslEngine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            eventLoop.execute(() -> {
+                taskRunning = false;
+                if (closed) {
+                    return;
+                }
+                try {
+                    processTls();
+                    releaseNetIn();
+                } catch (IOException e) {
+                    Log.debug("TLS handshake failed: {}", e.getMessage());
+                    close();
+                }
+            });
+        });
+    }
+
+    private void finishHandshake() throws IOException {
+        handshaking = false;
+        if (protocolStarted) {
+            return;
+        }
+
+        tlsMetrics.recordHandshake(TlsContext.isResumed(sslEngine.getSession(), handshakeStartMillis),
+                System.nanoTime() - handshakeStartNanos);
+
+        http2 = "h2".equals(sslEngine.getApplicationProtocol());
+        Log.debug("{} connection established", http2 ? "HTTP/2" : "HTTP/1.1");
+        startProtocol();
+    }
+
+    /**
+     * Decrypts one record from the network buffer into the read buffer.
+     *
+     * @return true if a record was consumed, false if more bytes are needed
+     */
+    private boolean unwrap() throws IOException {
+        if (netIn == null || netIn.position() == 0) {
+            return false;
+        }
+
+        netIn.flip();
+        SSLEngineResult result;
+        try {
+            result = sslEngine.unwrap(netIn, readBuffer);
+        } finally {
+            netIn.compact();
+        }
+
+        switch (result.getStatus()) {
+            case OK:
+                if (stats != null) {
+                    stats.addBytesIn(result.bytesProduced());
+                }
+                return true;
+            case BUFFER_OVERFLOW:
+                growReadBuffer();
+                return !closed;
+            case CLOSED:
+                Log.debug("Client closed the TLS session");
+                closeAfterWrite();
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Encrypts the given bytes and writes the resulting records.
+     */
+    private void wrap(ByteBuffer source) throws IOException {
+        BufferPool pool = eventLoop.getBufferPool();
+        do {
+            ByteBuffer netOut = pool.acquire();
+            try {
+                SSLEngineResult result = sslEngine.wrap(source, netOut);
+                netOut.flip();
+                write(netOut);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    return;
+                }
+            } finally {
+                pool.release(netOut);
+            }
+        } while (source.hasRemaining());
+    }
+
+    /**
+     * Hands the network buffer back to the pool unless it holds part of a record.
+     */
+    private void releaseNetIn() {
+        if (netIn != null && netIn.position() == 0) {
+            eventLoop.getBufferPool().release(netIn);
+            netIn = null;
+        }
+    }
+
+    private void processHttp1() throws IOException {
+        if (!prefaceSniffed) {
+            // A client with prior knowledge of h2c opens with the HTTP/2 preface
+            int available = Math.min(readBuffer.remaining(), CONNECTION_PREFACE.length);
+            for (int i = 0; i < available; i++) {
+                if (readBuffer.get(readBuffer.position() + i) != CONNECTION_PREFACE[i]) {
+                    prefaceSniffed = true;
+                    break;
+                }
+            }
+            if (!prefaceSniffed) {
+                if (available < CONNECTION_PREFACE.length) {
+                    return;
+                }
+                Log.debug("Cleartext HTTP/2 connection established with prior knowledge");
+                startHttp2();
+                processHttp2();
+                return;
+            }
+        }
+
+        if (bodyDecoder != null) {
+            transferBody();
+            if (bodyDecoder != null || closed) {
+                return;
+            }
+        }
+        if (!batch.isEmpty() || !writeQueue.isEmpty()) {
+            // One batch at a time, and not while the client is behind on reading
+            return;
+        }
+
+        // Take every complete request already buffered as one batch
+        while (!closed && !closeAfterWrite && batch.size() < config.getMaxPipelinedRequests()) {
+            HttpRequest request = deferred != null ? deferred : requestParser.parse(readBuffer);
+            deferred = null;
+            if (request == null) {
+                break;
+            }
+            if (rejection != null) {
+                refuse(rejection.getHttp1Rejection());
+                return;
+            }
+
+            Http2Settings h2cSettings = sslEngine == null ? processor.parseH2cUpgrade(request) : null;
+            boolean hasBody = BodyDecoder.hasBody(request);
+            if ((h2cSettings != null || hasBody) && !batch.isEmpty()) {
+                // The requests ahead of it are answered first
+                deferred = request;
+                break;
+            }
+            if (h2cSettings != null) {
+                upgradeToH2c(request, h2cSettings);
+                return;
+            }
+            if (hasBody && !startBody(request)) {
+                return;
+            }
+
+            batch.add(request);
+            requestCount++;
+            if (stats != null) {
+                stats.recordRequest();
+            }
+            batchKeepAlive = Processor.isKeepAlive(request) && Processor.isBelowRequestLimit(config, requestCount);
+            if (!batchKeepAlive || hasBody) {
+                // Anything pipelined after it will not be answered, or waits
+                // until the body has been read
+                break;
+            }
+        }
+
+        if (batch.isEmpty() || closed) {
+            return;
+        }
+
+        // The handlers' run time is not the client's to account for
+        deadline.cancel();
+        dispatchBatch();
+        if (bodyDecoder != null) {
+            transferBody();
+        }
+    }
+
+    /**
+     * Sets up the body of a request that is about to be dispatched. A body
+     * with invalid framing, or declared larger than the configured maximum, is
+     * refused with an error response and the connection is closed.
+     *
+     * @return true if the request can be dispatched
+     */
+    private boolean startBody(HttpRequest request) throws IOException {
+        try {
+            bodyDecoder = BodyDecoder.forRequest(request, config.getMaxRequestBodySize());
+        } catch (HttpStatusException e) {
+            Log.debug("Refusing request body: {}", e.getMessage());
+            responder.sendResponse(processor.createErrorResponse(e.getStatusCode()), outputStream);
+            closeAfterWrite();
+            return false;
+        }
+        if (bodyDecoder == null) {
+            // Content-Length: 00 and the like; there is nothing to read
+            return true;
+        }
+
+        requestBody = new RequestBody.Queued(bodyDecoder.getContentLength(), BODY_QUEUE_SIZE);
+        RequestBody.Queued body = requestBody;
+        body.setOnDrain(() -> eventLoop.execute(() -> resumeBody(body)));
+        if (Processor.expectsContinue(request)) {
+            body.setContinueAction(() -> eventLoop.execute(() -> sendContinue(body)));
+        }
+        bodyPaused = false;
+        bodyFailed = false;
+        request.setBody(requestBody);
+        return true;
+    }
+
+    /**
+     * Moves the body bytes in the read buffer to the handler's queue, or drops
+     * them once the handler has answered without reading them all. Reading
+     * from the socket is paused while the queue is full.
+     */
+    private void transferBody() throws IOException {
+        if (bodyPaused) {
+            return;
+        }
+
+        try {
+            ByteBuffer data;
+            while ((data = bodyDecoder.next(readBuffer)) != null) {
+                if (requestBody == null) {
+                    continue;
+                }
+                // The read buffer is reused, so the queue gets its own copy
+                ByteBuffer copy = ByteBuffer.allocate(data.remaining()).put(data).flip();
+                if (!requestBody.offer(copy)) {
+                    bodyPaused = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    // Waiting on the handler now, not the client
+                    deadline.cancel();
+                    return;
+                }
+            }
+        } catch (HttpStatusException e) {
+            Log.debug("Invalid request body: {}", e.getMessage());
+            bodyDecoder = null;
+            bodyFailed = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            if (requestBody != null) {
+                // The handler sees the error and answers it
+                requestBody.fail(e);
+                requestBody = null;
+            } else {
+                close();
+            }
+            return;
+        }
+
+        if (bodyDecoder.isComplete()) {
+            if (requestBody != null) {
+                requestBody.complete();
+            }
+            bodyDecoder = null;
+            requestBody = null;
+            deadline.cancel();
+        } else if (requestBody == null || !requestBody.isAwaitingContinue()) {
+            // The client owes the rest of the body; each arrival restarts the clock
+            deadline.arm(ConnectionDeadline.Kind.REQUEST_BODY);
+        }
+    }
+
+    /**
+     * Starts reading the socket again once the handler has drained a full
+     * body queue.
+     */
+    private void resumeBody(RequestBody.Queued body) {
+        if (closed || body != requestBody || !bodyPaused) {
+            return;
+        }
+        bodyPaused = false;
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        try {
+            if (sslEngine != null) {
+                // Records read before the pause may still be waiting
+                processTls();
+                releaseNetIn();
+            } else {
+                processInbound();
+            }
+        } catch (IOException e) {
+            Log.debug("IO error reading request body: {}", e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Tells a client that sent "Expect: 100-continue" to go ahead with the
+     * body, once its handler starts reading it.
+     */
+    private void sendContinue(RequestBody.Queued body) {
+        if (closed || body != requestBody) {
+            return;
+        }
+        try {
+            responder.sendResponse(processor.createContinueResponse(), outputStream);
+        } catch (IOException e) {
+            Log.debug("IO error sending 100 Continue: {}", e.getMessage());
+            close();
+            return;
+        }
+        deadline.arm(ConnectionDeadline.Kind.REQUEST_BODY);
+    }
+
+    /**
+     * Hands the batch to the workers. By default one task runs the requests in
+     * order; with parallel pipelining each request gets a task of its own and
+     * the responses are put back in order as they complete. A handler that
+     * answers asynchronously does not hold the worker: its response is handed
+     * back to the event loop whenever it completes.
+     */
+    private void dispatchBatch() {
+        List<HttpRequest> requests = new ArrayList<>(batch);
+        batchResponses = new HttpResponse[requests.size()];
+        batchWritten = 0;
+
+        if (config.isPipelineParallel() && requests.size() > 1) {
+            for (int i = 0; i < requests.size(); i++) {
+                int index = i;
+                HttpRequest request = requests.get(i);
+                dispatch(() -> processor.processRequestAsync(request)
+                        .thenAccept(response -> eventLoop.execute(() -> completeHttp1(index, response))));
+            }
+        } else {
+            dispatch(() -> runBatch(requests, 0));
+        }
+    }
+
+    /**
+     * Runs the requests of a batch in order, from the given one, on a worker.
+     * The responses that are ready at once go back to the event loop together,
+     * so they are written with one socket write. When a handler answers
+     * asynchronously the worker is released; once that response completes,
+     * the rest of the batch is dispatched again.
+     */
+    private void runBatch(List<HttpRequest> requests, int first) {
+        List<HttpResponse> ready = new ArrayList<>(requests.size() - first);
+        for (int i = first; i < requests.size(); i++) {
+            CompletableFuture<HttpResponse> response = processor.processRequestAsync(requests.get(i));
+            if (!response.isDone()) {
+                int index = i;
+                if (!ready.isEmpty()) {
+                    HttpResponse[] responses = ready.toArray(new HttpResponse[0]);
+                    eventLoop.execute(() -> completeHttp1(first, responses));
+                }
+                response.thenAccept(completed -> eventLoop.execute(() -> {
+                    completeHttp1(index, completed);
+                    if (!closed && index + 1 < requests.size()) {
+                        dispatch(() -> runBatch(requests, index + 1));
+                    }
+                }));
+                return;
+            }
+            ready.add(response.join());
+        }
+        HttpResponse[] responses = ready.toArray(new HttpResponse[0]);
+        eventLoop.execute(() -> completeHttp1(first, responses));
+    }
+
+    /**
+     * Accepts an "Upgrade: h2c" request. The 101 response goes out first, then
+     * the server's SETTINGS, and the request itself is served as stream 1. Any
+     * bytes already buffered belong to the client's HTTP/2 preface.
+     */
+    private void upgradeToH2c(HttpRequest request, Http2Settings h2cSettings) throws IOException {
+        Log.debug("Upgrading connection to h2c");
+        responder.sendResponse(processor.createUpgradeResponse(), outputStream);
+
+        createHttp2State();
+        http2Processor.upgrade(request, h2cSettings, outputStream);
+        armHttp2Deadlines();
+        dispatchPendingHttp2();
+        processHttp2();
+    }
+
+    /**
+     * Stores completed responses of the batch, then writes every response
+     * that is next in line, all in one socket write. Once the whole batch is
+     * answered the connection moves on to whatever is buffered next.
+     */
+    private void completeHttp1(int first, HttpResponse... responses) {
+        if (closed) {
+            for (HttpResponse response : responses) {
+                response.bodyDone();
+            }
+            return;
+        }
+
+        System.arraycopy(responses, 0, batchResponses, first, responses.length);
+        if (responsePump != null) {
+            // Whatever follows a streamed body waits for it to end
+            return;
+        }
+        HttpResponse streamed = null;
+        try {
+            int firstRequest = requestCount - batchResponses.length + 1;
+            int ready = batchWritten;
+            while (ready < batchResponses.length && batchResponses[ready] != null) {
+                // Only the last request of a batch can end the connection
+                boolean persistent = batchKeepAlive || ready < batchResponses.length - 1;
+                Processor.setConnectionHeaders(batchResponses[ready], persistent, config, firstRequest + ready);
+                if (batchResponses[ready++].isStreamed()) {
+                    // Its head goes out with the rest, its body after them
+                    streamed = batchResponses[ready - 1];
+                    break;
+                }
+            }
+            writeResponses(batchWritten, ready);
+            batchWritten = ready;
+        } catch (IOException e) {
+            Log.debug("IO error sending response: {}", e.getMessage());
+            close();
+            return;
+        }
+
+        if (streamed != null) {
+            startStreamedBody(streamed);
+            return;
+        }
+        if (batchWritten < batchResponses.length) {
+            return;
+        }
+
+        batch.clear();
+        batchResponses = null;
+        if (!batchKeepAlive || bodyFailed) {
+            closeAfterWrite();
+            return;
+        }
+        if (bodyDecoder != null) {
+            if (requestBody.isAwaitingContinue()) {
+                // The client is still waiting to hear whether to send it
+                closeAfterWrite();
+                return;
+            }
+            // The handler answered without reading all of the body; drop the rest
+            requestBody = null;
+            if (bodyPaused) {
+                bodyPaused = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        armHttp1Deadline();
+        try {
+            processInbound();
+        } catch (IOException e) {
+            Log.debug("IO error processing request: {}", e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Arms the deadline of an HTTP/1.1 connection between requests: the wait
+     * for a response the client is not reading, then keep-alive, or the header
+     * timeout if part of the next request is already buffered.
+     */
+    private void armHttp1Deadline() {
+        if (!writeQueue.isEmpty()) {
+            deadline.arm(ConnectionDeadline.Kind.IDLE);
+        } else if (readBuffer.position() > 0) {
+            deadline.arm(ConnectionDeadline.Kind.REQUEST_HEADER);
+        } else {
+            deadline.arm(ConnectionDeadline.Kind.KEEP_ALIVE);
+        }
+    }
+
+    private void processHttp2() throws IOException {
+        if (!prefaceReceived) {
+            if (readBuffer.remaining() < CONNECTION_PREFACE.length) {
+                return;
+            }
+            byte[] preface = new byte[CONNECTION_PREFACE.length];
+            readBuffer.get(preface);
+            if (!Arrays.equals(preface, CONNECTION_PREFACE)) {
+                Log.debug("Invalid HTTP/2 preface: incorrect magic string");
+                close();
+                return;
+            }
+            prefaceReceived = true;
+            if (rejection != null) {
+                refuse(rejection.getHttp2Rejection());
+                return;
+            }
+        }
+
+        while (!closed && !closeAfterWrite && readBuffer.remaining() >= FRAME_HEADER_LENGTH) {
+            int start = readBuffer.position();
+            int length = (readBuffer.get(start) & 0xFF) << 16
+                    | (readBuffer.get(start + 1) & 0xFF) << 8
+                    | (readBuffer.get(start + 2) & 0xFF);
+            if (readBuffer.remaining() < FRAME_HEADER_LENGTH + length) {
+                return;
+            }
+
+            byte[] frame = new byte[FRAME_HEADER_LENGTH + length];
+            readBuffer.get(frame);
+            http2Processor.processNextFrame(new ByteArrayInputStream(frame));
+            dispatchPendingHttp2();
+            if (settingsDeadline.getKind() != null && !http2ConnectionManager.isSettingsAckPending()) {
+                settingsDeadline.cancel();
+            }
+
+            if (http2ConnectionManager.isGoAwayReceived()) {
+                Log.debug("GOAWAY received, ending connection");
+                closeAfterWrite();
+                return;
+            }
+        }
+    }
+
+    private void dispatchPendingHttp2() {
+        HttpRequest request;
+        while ((request = http2Processor.pollPendingRequest()) != null) {
+            dispatchHttp2(request);
+        }
+    }
+
+    private void dispatchHttp2(HttpRequest request) {
+        int streamId = (int) request.getProperty("streamId");
+        http2RequestsInFlight++;
+        if (stats != null) {
+            stats.recordRequest();
+        }
+        // The connection goes on reading frames while the handler runs
+        dispatch(() -> http2Processor.processRequestAsync(request)
+                .thenAccept(response -> eventLoop.execute(() -> completeHttp2(streamId, response))));
+    }
+
+    private void completeHttp2(int streamId, HttpResponse response) {
+        if (closed) {
+            return;
+        }
+
+        http2RequestsInFlight--;
+        deadline.touch();
+
+        Http2Stream stream = http2ConnectionManager.getStream(streamId);
+        if (stream == null) {
+            Log.warn("Stream {} not found for sending response", streamId);
+            return;
+        }
+
+        try {
+            http2Responder.sendResponse(response, stream, outputStream);
+        } catch (IOException e) {
+            Log.debug("IO error sending HTTP/2 response: {}", e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Handles an expired deadline. A client that never acknowledges SETTINGS
+     * is told why with GOAWAY; every other deadline simply closes the
+     * connection.
+     */
+    private void onDeadline(ConnectionDeadline.Kind kind) {
+        if (closed) {
+            return;
+        }
+
+        if (kind == ConnectionDeadline.Kind.SETTINGS_ACK) {
+            if (!http2ConnectionManager.isSettingsAckPending()) {
+                return;
+            }
+            Log.debug("SETTINGS not acknowledged in time, closing connection");
+            try {
+                http2ConnectionManager.sendFrame(new GoAwayFrame(0, Http2Frame.SETTINGS_TIMEOUT), outputStream);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            closeAfterWrite();
+            return;
+        }
+
+        if (kind == ConnectionDeadline.Kind.IDLE && http2RequestsInFlight > 0) {
+            // Streams are waiting on their handlers, not on the client
+            deadline.arm(ConnectionDeadline.Kind.IDLE);
+            return;
+        }
+
+        Log.debug("Connection {} timeout, closing connection", kind);
+        close();
+    }
+
+    private void refuse(byte[] reply) throws IOException {
+        Log.debug("Server at capacity, refusing connection");
+        enqueue(ByteBuffer.wrap(reply));
+        closeAfterWrite();
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.warn("Worker pool rejected request, closing connection");
+            close();
+        }
+    }
+
+    /**
+     * Runs the writer of a streamed response on a worker once its head has
+     * gone out. Once the body ends the rest of the batch follows; a body cut
+     * short by a failing writer leaves the client nothing to tell where the
+     * message ends, so the connection is closed.
+     */
+    private void startStreamedBody(HttpResponse response) {
+        ResponsePump pump = new ResponsePump();
+        responsePump = pump;
+        dispatch(() -> {
+            boolean complete = false;
+            try {
+                Responder.writeStreamedBody(response, pump);
+                complete = true;
+            } catch (IOException e) {
+                Log.debug("Streamed response failed: {}", e.getMessage());
+            }
+            boolean succeeded = complete;
+            eventLoop.execute(() -> finishStreamedBody(pump, succeeded));
+        });
+        if (closed) {
+            // The workers refused the writer
+            response.bodyDone();
+        }
+    }
+
+    private void sendStreamedChunk(ResponsePump pump, ByteBuffer chunk) {
+        if (closed || responsePump != pump) {
+            return;
+        }
+
+        int length = chunk.remaining();
+        try {
+            enqueue(chunk);
+        } catch (IOException e) {
+            Log.debug("IO error sending response: {}", e.getMessage());
+            close();
+            return;
+        }
+        if (writeQueue.isEmpty()) {
+            pump.release(length);
+        } else {
+            // Released once the socket has taken the queue
+            responsePumpQueued += length;
+            if (deadline.getKind() == null) {
+                deadline.arm(ConnectionDeadline.Kind.IDLE);
+            }
+        }
+    }
+
+    private void finishStreamedBody(ResponsePump pump, boolean complete) {
+        if (closed || responsePump != pump) {
+            return;
+        }
+
+        responsePump = null;
+        responsePumpQueued = 0;
+        if (!complete) {
+            close();
+            return;
+        }
+        completeHttp1(0);
+    }
+
+    /**
+     * Writes a run of the batch's responses. Their heads are encoded side by
+     * side into a pooled direct buffer and go out with the bodies in one
+     * gathering write, so a batch of small responses costs one system call.
+     */
+    private void writeResponses(int from, int to) throws IOException {
+        if (from == to) {
+            return;
+        }
+
+        ByteBuffer[][] bodies = new ByteBuffer[to - from][];
+        int slots = 0;
+        for (int i = from; i < to; i++) {
+            bodies[i - from] = batchResponses[i].getBodyBuffers();
+            slots += 1 + bodies[i - from].length;
+        }
+
+        BufferPool pool = eventLoop.getBufferPool();
+        ByteBuffer heads = pool.acquire();
+        ByteBuffer[] buffers = new ByteBuffer[slots];
+        int count = 0;
+        try {
+            for (int i = from; i < to; i++) {
+                HttpResponse response = batchResponses[i];
+                int start = heads.position();
+                if (!responder.encodeHead(response, heads)) {
+                    enqueue(buffers, count);
+                    count = 0;
+                    heads.clear();
+                    start = 0;
+                    if (!responder.encodeHead(response, heads)) {
+                        // A head larger than a pooled buffer goes the slow way
+                        responder.writeResponse(response, outputStream);
+                        outputStream.flush();
+                        continue;
+                    }
+                }
+                ByteBuffer head = heads.duplicate();
+                head.limit(heads.position());
+                head.position(start);
+                buffers[count++] = head;
+
+                // Body buffers go out as they are, shared ones included
+                for (ByteBuffer part : bodies[i - from]) {
+                    if (part.hasRemaining()) {
+                        buffers[count++] = part;
+                    }
+                }
+            }
+            enqueue(buffers, count);
+        } finally {
+            pool.release(heads);
+        }
+    }
+
+    /**
+     * Queues protocol bytes for writing, encrypting them first when TLS is on.
+     */
+    private void enqueue(ByteBuffer buffer) throws IOException {
+        if (stats != null) {
+            stats.addBytesOut(buffer.remaining());
+        }
+        if (sslEngine != null) {
+            wrap(buffer);
+        } else {
+            write(buffer);
+        }
+    }
+
+    /**
+     * Queues several runs of protocol bytes, in order, with one gathering
+     * write when the connection is in plaintext.
+     */
+    private void enqueue(ByteBuffer[] buffers, int count) throws IOException {
+        if (sslEngine != null) {
+            for (int i = 0; i < count; i++) {
+                enqueue(buffers[i]);
+            }
+            return;
+        }
+        if (stats != null) {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += buffers[i].remaining();
+            }
+            stats.addBytesOut(total);
+        }
+        write(buffers, count);
+    }
+
+    /**
+     * Writes bytes to the channel, queueing whatever the socket cannot take yet.
+     * Direct buffers belong to the pool, so their unwritten bytes are copied.
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        if (closed) {
+            return;
+        }
+
+        if (writeQueue.isEmpty()) {
+            channel.write(buffer);
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+        }
+        queue(buffer);
+    }
+
+    /**
+     * Writes several buffers to the channel in one gathering write, queueing
+     * whatever the socket cannot take yet.
+     */
+    private void write(ByteBuffer[] buffers, int count) throws IOException {
+        if (closed || count == 0) {
+            return;
+        }
+
+        int next = 0;
+        if (writeQueue.isEmpty()) {
+            channel.write(buffers, 0, count);
+            while (next < count && !buffers[next].hasRemaining()) {
+                next++;
+            }
+        }
+        for (; next < count; next++) {
+            queue(buffers[next]);
+        }
+    }
+
+    private void queue(ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            buffer = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+        }
+        writeQueue.add(buffer);
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    private void flushWrites() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer buffer = writeQueue.peek();
+            if (channel.write(buffer) > 0) {
+                deadline.touch();
+            }
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            writeQueue.poll();
+        }
+
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (responsePump != null && responsePumpQueued > 0) {
+            responsePump.release(responsePumpQueued);
+            responsePumpQueued = 0;
+            if (!closeAfterWrite && deadline.getKind() == ConnectionDeadline.Kind.IDLE) {
+                // How long the writer takes is not the client's to account for
+                deadline.cancel();
+            }
+        }
+        if (closeAfterWrite) {
+            close();
+        } else if (!http2 && batch.isEmpty() && processor != null) {
+            armHttp1Deadline();
+            // Requests that arrived while the client was behind can go now
+            processInbound();
+        }
+    }
+
+    private void closeAfterWrite() {
+        closeAfterWrite = true;
+        if (writeQueue.isEmpty()) {
+            close();
+        } else {
+            // Bound the wait for a client that stops reading
+            deadline.arm(ConnectionDeadline.Kind.IDLE);
+        }
+    }
+
+    private void growReadBuffer() {
+        if (readBuffer.capacity() >= MAX_BUFFER_SIZE) {
+            Log.debug("Request exceeds {} bytes, closing connection", MAX_BUFFER_SIZE);
+            close();
+            return;
+        }
+
+        ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+        readBuffer.flip();
+        larger.put(readBuffer);
+        readBuffer = larger;
+    }
+
+    /**
+     * Closes the connection. Safe to call more than once.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        if (sslEngine != null) {
+            if (!protocolStarted) {
+                tlsMetrics.recordFailure();
+            }
+            sendCloseNotify();
+        }
+        closed = true;
+
+        if (requestBody != null) {
+            requestBody.fail(new EOFException("Connection closed before the request body was complete"));
+            requestBody = null;
+        }
+        if (responsePump != null) {
+            responsePump.abort();
+            responsePump = null;
+        }
+        if (batchResponses != null) {
+            // Responses that will never be written
+            for (int i = batchWritten; i < batchResponses.length; i++) {
+                if (batchResponses[i] != null) {
+                    batchResponses[i].bodyDone();
+                }
+            }
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        if (deadline != null) {
+            deadline.cancel();
+            settingsDeadline.cancel();
+        }
+        eventLoop.connectionClosed();
+        if (closeListener != null) {
+            closeListener.run();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.warn("Error closing connection: {}", e.getMessage());
+        }
+        if (netIn != null) {
+            eventLoop.getBufferPool().release(netIn);
+            netIn = null;
+        }
+    }
+
+    private void sendCloseNotify() {
+        sslEngine.closeOutbound();
+        try {
+            if (key != null && key.isValid()) {
+                wrap(EMPTY);
+            }
+        } catch (IOException e) {
+            // The peer may already be gone; the socket is closed regardless
+        }
+    }
+
+    /**
+     * Carries a streamed response body from the worker running its writer to
+     * the loop. Each write is copied and posted to the loop as one buffer, and
+     * the writer waits while the bytes posted but not yet taken by the socket
+     * reach {@link #RESPONSE_QUEUE_SIZE}.
+     */
+    private class ResponsePump extends OutputStream {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition writable = lock.newCondition();
+        private long pending;
+        private boolean aborted;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                while (pending >= RESPONSE_QUEUE_SIZE && !aborted) {
+                    writable.await();
+                }
+                if (aborted) {
+                    throw new IOException("Connection closed while streaming the response");
+                }
+                pending += len;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the client to read");
+            } finally {
+                lock.unlock();
+            }
+
+            ByteBuffer chunk = ByteBuffer.allocate(len).put(b, off, len).flip();
+            eventLoop.execute(() -> sendStreamedChunk(this, chunk));
+        }
+
+        /**
+         * Called on the loop once bytes have been handed to the socket.
+         */
+        void release(long count) {
+            lock.lock();
+            try {
+                pending -= count;
+                writable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Called on the loop when the connection closes, failing the writer's
+         * next write.
+         */
+        void abort() {
+            lock.lock();
+            try {
+                aborted = true;
+                writable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Adapts the protocol writers, which expect an OutputStream, to the write
+     * queue. Bytes are collected until flush and then queued as one buffer.
+     */
+    private class ChannelOutputStream extends OutputStream {
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            pending.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            pending.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (pending.size() > 0) {
+                ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+                pending.reset();
+                enqueue(buffer);
+            }
+        }
+    }
+}
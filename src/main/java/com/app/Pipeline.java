@@ -0,0 +1,253 @@
+package com.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The Pipeline class runs the filters that apply to every request, whatever
+ * route answers it and whichever protocol it came in on.
+ *
+ * <p>
+ * A filter is one of three kinds. A {@link Before} filter sees the request
+ * before the handler and may answer it itself, in which case the handler and
+ * the filters after it are skipped. An {@link After} filter sees the
+ * completed response on its way out and may change it in place. An
+ * {@link Around} filter is handed the rest of the pipeline as a
+ * {@link Chain} and decides whether and how to call it, for concerns that
+ * need both sides, such as timing a request or serving it from a cache.
+ * </p>
+ *
+ * <p>
+ * Filters run in the order they were added on the way in; on the way out the
+ * last one added sees the response first. {@link Builder#build} compiles them
+ * into one flat array of stages, with a chain object for every stage made
+ * there and then, so a request passes through the pipeline without a list,
+ * an iterator or a lambda being allocated for it. Only a response that is
+ * completed asynchronously needs a continuation to run the after filters on.
+ * Filters change the one response object in place, so adding one never costs
+ * a copy of the response. A built pipeline cannot change and is shared by
+ * every connection.
+ * </p>
+ */
+public final class Pipeline {
+    private static final int BEFORE = 0;
+    private static final int AFTER = 1;
+    private static final int AROUND = 2;
+
+    /**
+     * Runs before the handler.
+     */
+    @FunctionalInterface
+    public interface Before {
+        /**
+         * Looks at a request before it is handled.
+         *
+         * @param request  the request
+         * @param response the response, as yet unanswered
+         * @return true to go on, false if the filter has filled in the
+         *         response and the request goes no further
+         */
+        boolean before(HttpRequest request, HttpResponse response);
+    }
+
+    /**
+     * Runs once the response is complete.
+     */
+    @FunctionalInterface
+    public interface After {
+        /**
+         * Looks at, and may change, a completed response.
+         *
+         * @param request  the request
+         * @param response the completed response
+         */
+        void after(HttpRequest request, HttpResponse response);
+    }
+
+    /**
+     * Runs around the rest of the pipeline.
+     */
+    @FunctionalInterface
+    public interface Around {
+        /**
+         * Handles a request, normally by passing it on to the rest of the
+         * pipeline.
+         *
+         * @param request  the request
+         * @param response the response to fill in
+         * @param next     the rest of the pipeline
+         * @return a future completed with the response
+         */
+        CompletableFuture<HttpResponse> around(HttpRequest request, HttpResponse response, Chain next);
+    }
+
+    /**
+     * The rest of a pipeline, from one stage on.
+     */
+    public static final class Chain {
+        private final Pipeline pipeline;
+        private final int stage;
+
+        private Chain(Pipeline pipeline, int stage) {
+            this.pipeline = pipeline;
+            this.stage = stage;
+        }
+
+        /**
+         * Passes a request on to the rest of the pipeline.
+         *
+         * @param request  the request
+         * @param response the response to fill in
+         * @return a future completed with the response
+         */
+        public CompletableFuture<HttpResponse> proceed(HttpRequest request, HttpResponse response) {
+            return pipeline.run(stage, request, response);
+        }
+    }
+
+    private final int[] kinds;
+    private final Object[] filters;
+    private final Chain[] chains;
+    private final Router.AsyncHandler handler;
+
+    private Pipeline(List<Integer> kinds, List<Object> filters, Router.AsyncHandler handler) {
+        this.kinds = new int[kinds.size()];
+        this.filters = filters.toArray();
+        this.chains = new Chain[kinds.size() + 1];
+        for (int i = 0; i < this.kinds.length; i++) {
+            this.kinds[i] = kinds.get(i);
+        }
+        for (int i = 0; i < chains.length; i++) {
+            chains[i] = new Chain(this, i);
+        }
+        this.handler = handler;
+    }
+
+    /**
+     * Creates a builder for a new pipeline.
+     *
+     * @return an empty builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Passes a request through the filters to the handler.
+     *
+     * @param request  the request
+     * @param response the response to fill in
+     * @return a future completed with the response once the handler and every
+     *         after filter are done with it
+     */
+    public CompletableFuture<HttpResponse> handle(HttpRequest request, HttpResponse response) {
+        return run(0, request, response);
+    }
+
+    private CompletableFuture<HttpResponse> run(int stage, HttpRequest request, HttpResponse response) {
+        for (int i = stage; i < kinds.length; i++) {
+            switch (kinds[i]) {
+            case BEFORE:
+                if (!((Before) filters[i]).before(request, response)) {
+                    return CompletableFuture.completedFuture(response);
+                }
+                break;
+            case AFTER:
+                return runAfter(i, request, run(i + 1, request, response));
+            default:
+                return ((Around) filters[i]).around(request, response, chains[i + 1]);
+            }
+        }
+        return handler.handle(request, response);
+    }
+
+    private CompletableFuture<HttpResponse> runAfter(int stage, HttpRequest request,
+            CompletableFuture<HttpResponse> inner) {
+        After filter = (After) filters[stage];
+        if (inner.isDone() && !inner.isCompletedExceptionally()) {
+            // The usual case: the response is ready, so no continuation is needed
+            filter.after(request, inner.join());
+            return inner;
+        }
+        return inner.thenApply(response -> {
+            filter.after(request, response);
+            return response;
+        });
+    }
+
+    /**
+     * Collects filters and compiles them, with the handler they lead to, into
+     * a {@link Pipeline}. A builder is not thread safe and is meant to be used
+     * while the server is set up.
+     */
+    public static final class Builder {
+        private final List<Integer> kinds = new ArrayList<>();
+        private final List<Object> filters = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a filter that runs before the handler.
+         *
+         * @param filter the filter
+         * @return this builder
+         */
+        public Builder before(Before filter) {
+            return add(BEFORE, filter);
+        }
+
+        /**
+         * Adds a filter that runs once the response is complete.
+         *
+         * @param filter the filter
+         * @return this builder
+         */
+        public Builder after(After filter) {
+            return add(AFTER, filter);
+        }
+
+        /**
+         * Adds a filter that runs around the rest of the pipeline.
+         *
+         * @param filter the filter
+         * @return this builder
+         */
+        public Builder around(Around filter) {
+            return add(AROUND, filter);
+        }
+
+        /**
+         * Adds every filter of another builder, in its order.
+         *
+         * @param other the builder to copy the filters of
+         * @return this builder
+         */
+        public Builder addAll(Builder other) {
+            kinds.addAll(other.kinds);
+            filters.addAll(other.filters);
+            return this;
+        }
+
+        private Builder add(int kind, Object filter) {
+            if (filter == null) {
+                throw new IllegalArgumentException("Filter must not be null");
+            }
+            kinds.add(kind);
+            filters.add(filter);
+            return this;
+        }
+
+        /**
+         * Compiles the filters added so far in front of a handler.
+         *
+         * @param handler the handler the pipeline ends in, usually a
+         *                {@link Router}'s route method
+         * @return the pipeline
+         */
+        public Pipeline build(Router.AsyncHandler handler) {
+            return new Pipeline(kinds, filters, handler);
+        }
+    }
+}
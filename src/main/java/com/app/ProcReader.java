@@ -0,0 +1,347 @@
+package com.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * The ProcReader class answers the system endpoints from the files the kernel
+ * exposes, rather than by running a command to read them.
+ *
+ * <p>
+ * Forking cat, free or top costs milliseconds a request; reading
+ * /proc/loadavg, /proc/meminfo, /proc/stat or /etc/os-release costs
+ * microseconds. Each file is read into a buffer the reader keeps, and parsed
+ * in place as bytes; the response is formatted into a second kept buffer and
+ * copied out once, so a request allocates nothing but its body. The output is
+ * the same as the commands': the files themselves for load and OS release,
+ * the table of "free -m" for memory and the "%Cpu(s)" line of top for the
+ * CPU.
+ * </p>
+ *
+ * <p>
+ * The buffers are shared, so the handlers are synchronized; each holds the
+ * lock for a few microseconds. CPU usage, like top's, is measured between two
+ * readings of /proc/stat: the reader keeps the last one, and the first
+ * request after start-up gets the average since boot.
+ * </p>
+ */
+public class ProcReader {
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private static final byte[] MEM_TOTAL = ascii("MemTotal");
+    private static final byte[] MEM_FREE = ascii("MemFree");
+    private static final byte[] MEM_AVAILABLE = ascii("MemAvailable");
+    private static final byte[] BUFFERS = ascii("Buffers");
+    private static final byte[] CACHED = ascii("Cached");
+    private static final byte[] SRECLAIMABLE = ascii("SReclaimable");
+    private static final byte[] SHMEM = ascii("Shmem");
+    private static final byte[] SWAP_TOTAL = ascii("SwapTotal");
+    private static final byte[] SWAP_FREE = ascii("SwapFree");
+
+    private static final byte[] FREE_HEADER =
+            ascii("               total        used        free      shared  buff/cache   available\n");
+    private static final byte[] CPU_PREFIX = ascii("%Cpu(s):");
+    private static final byte[][] CPU_FIELDS = { ascii(" us,"), ascii(" sy,"), ascii(" ni,"), ascii(" id,"),
+            ascii(" wa,"), ascii(" hi,"), ascii(" si,"), ascii(" st") };
+    // Where each of top's fields is on the cpu line of /proc/stat: user,
+    // nice, system, idle, iowait, irq, softirq, steal
+    private static final int[] CPU_COLUMNS = { 0, 2, 1, 3, 4, 5, 6, 7 };
+
+    private final Path loadAverage;
+    private final Path memoryInfo;
+    private final Path cpuStat;
+    private final Path osRelease;
+
+    private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final byte[] output = new byte[512];
+    private final long[] cpuTicks = new long[CPU_COLUMNS.length];
+    private final long[] lastCpuTicks = new long[CPU_COLUMNS.length];
+    private final long[] cpuShares = new long[CPU_COLUMNS.length];
+
+    /**
+     * Creates a reader of the running system's files.
+     */
+    public ProcReader() {
+        this(Paths.get("/"));
+    }
+
+    /**
+     * Creates a reader of the files under another root, such as a copy of
+     * them for testing.
+     *
+     * @param root the directory holding proc and etc
+     */
+    public ProcReader(Path root) {
+        this.loadAverage = root.resolve("proc/loadavg");
+        this.memoryInfo = root.resolve("proc/meminfo");
+        this.cpuStat = root.resolve("proc/stat");
+        this.osRelease = root.resolve("etc/os-release");
+    }
+
+    /**
+     * Answers with the load averages, as "cat /proc/loadavg" does.
+     *
+     * @param request  the request
+     * @param response the response to fill in
+     */
+    public synchronized void loadAverage(HttpRequest request, HttpResponse response) {
+        copyFile(loadAverage, response);
+    }
+
+    /**
+     * Answers with the operating system release, as "cat /etc/os-release"
+     * does.
+     *
+     * @param request  the request
+     * @param response the response to fill in
+     */
+    public synchronized void osRelease(HttpRequest request, HttpResponse response) {
+        copyFile(osRelease, response);
+    }
+
+    /**
+     * Answers with memory use in MiB, in the table "free -m" prints.
+     *
+     * @param request  the request
+     * @param response the response to fill in
+     */
+    public synchronized void memory(HttpRequest request, HttpResponse response) {
+        int length;
+        try {
+            length = read(memoryInfo);
+        } catch (IOException e) {
+            fail(response, memoryInfo, e);
+            return;
+        }
+        byte[] data = input.array();
+        long total = field(data, length, MEM_TOTAL);
+        long free = field(data, length, MEM_FREE);
+        long available = field(data, length, MEM_AVAILABLE);
+        long buffCache = Math.max(0, field(data, length, BUFFERS)) + Math.max(0, field(data, length, CACHED))
+                + Math.max(0, field(data, length, SRECLAIMABLE));
+        long shared = Math.max(0, field(data, length, SHMEM));
+        long swapTotal = Math.max(0, field(data, length, SWAP_TOTAL));
+        long swapFree = Math.max(0, field(data, length, SWAP_FREE));
+        if (total < 0 || free < 0) {
+            fail(response, memoryInfo, new IOException("MemTotal or MemFree missing"));
+            return;
+        }
+        if (available < 0) {
+            // Kernels before 3.14 do not estimate it
+            available = free;
+        }
+
+        int at = put(output, 0, FREE_HEADER);
+        at = putLabel(output, at, "Mem:");
+        at = putRight(output, at, total >> 10, 12);
+        at = putRight(output, at, Math.max(0, total - available) >> 10, 12);
+        at = putRight(output, at, free >> 10, 12);
+        at = putRight(output, at, shared >> 10, 12);
+        at = putRight(output, at, buffCache >> 10, 12);
+        at = putRight(output, at, available >> 10, 12);
+        output[at++] = '\n';
+        at = putLabel(output, at, "Swap:");
+        at = putRight(output, at, swapTotal >> 10, 12);
+        at = putRight(output, at, Math.max(0, swapTotal - swapFree) >> 10, 12);
+        at = putRight(output, at, swapFree >> 10, 12);
+        output[at++] = '\n';
+
+        response.setStatusCode("200 OK");
+        response.setBodyBytes(Arrays.copyOf(output, at));
+    }
+
+    /**
+     * Answers with CPU use since the last request, in the "%Cpu(s)" line top
+     * prints.
+     *
+     * @param request  the request
+     * @param response the response to fill in
+     */
+    public synchronized void cpu(HttpRequest request, HttpResponse response) {
+        int length;
+        try {
+            length = read(cpuStat);
+        } catch (IOException e) {
+            fail(response, cpuStat, e);
+            return;
+        }
+        if (!parseCpuLine(input.array(), length)) {
+            fail(response, cpuStat, new IOException("No cpu line"));
+            return;
+        }
+
+        long total = 0;
+        for (int i = 0; i < cpuTicks.length; i++) {
+            total += cpuTicks[i] - lastCpuTicks[i];
+        }
+        if (total > 0) {
+            // Otherwise no tick has passed since the last request, and its
+            // shares still stand
+            for (int i = 0; i < cpuTicks.length; i++) {
+                cpuShares[i] = Math.round((cpuTicks[i] - lastCpuTicks[i]) * 1000.0 / total);
+            }
+            System.arraycopy(cpuTicks, 0, lastCpuTicks, 0, cpuTicks.length);
+        }
+
+        int at = put(output, 0, CPU_PREFIX);
+        for (int i = 0; i < CPU_FIELDS.length; i++) {
+            at = putTenths(output, at, cpuShares[i]);
+            at = put(output, at, CPU_FIELDS[i]);
+        }
+        output[at++] = '\n';
+
+        response.setStatusCode("200 OK");
+        response.setBodyBytes(Arrays.copyOf(output, at));
+    }
+
+    private void copyFile(Path file, HttpResponse response) {
+        try {
+            int length = read(file);
+            response.setStatusCode("200 OK");
+            response.setBodyBytes(Arrays.copyOf(input.array(), length));
+        } catch (IOException e) {
+            fail(response, file, e);
+        }
+    }
+
+    private static void fail(HttpResponse response, Path file, IOException e) {
+        response.setStatusCode("500 Internal Server Error");
+        response.setBody("Error reading " + file + ": " + e.getMessage());
+    }
+
+    /**
+     * Reads a whole file into the input buffer, growing it if the file does
+     * not fit. Files under /proc report a size of 0, so the file is read
+     * until it ends.
+     *
+     * @return the number of bytes read
+     */
+    private int read(Path file) throws IOException {
+        input.clear();
+        try (FileChannel channel = FileChannel.open(file)) {
+            while (channel.read(input) >= 0) {
+                if (!input.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+                    input.flip();
+                    larger.put(input);
+                    input = larger;
+                }
+            }
+        }
+        return input.position();
+    }
+
+    /**
+     * Finds a "Name:   value kB" line and parses its value.
+     *
+     * @return the value in KiB, or -1 if the file has no such line
+     */
+    static long field(byte[] data, int length, byte[] name) {
+        int line = 0;
+        while (line < length) {
+            int end = line;
+            while (end < length && data[end] != '\n') {
+                end++;
+            }
+            if (end - line > name.length && data[line + name.length] == ':'
+                    && Arrays.equals(data, line, line + name.length, name, 0, name.length)) {
+                int at = line + name.length + 1;
+                while (at < end && data[at] == ' ') {
+                    at++;
+                }
+                long value = 0;
+                while (at < end && data[at] >= '0' && data[at] <= '9') {
+                    value = value * 10 + (data[at++] - '0');
+                }
+                return value;
+            }
+            line = end + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the aggregate "cpu" line of /proc/stat into top's fields.
+     * Kernels that do not report a column yet leave it at 0.
+     */
+    private boolean parseCpuLine(byte[] data, int length) {
+        if (length < 4 || data[0] != 'c' || data[1] != 'p' || data[2] != 'u' || data[3] != ' ') {
+            return false;
+        }
+        Arrays.fill(cpuTicks, 0);
+        int at = 4;
+        for (int column = 0; column < cpuTicks.length; column++) {
+            while (at < length && data[at] == ' ') {
+                at++;
+            }
+            if (at >= length || data[at] < '0' || data[at] > '9') {
+                break;
+            }
+            long value = 0;
+            while (at < length && data[at] >= '0' && data[at] <= '9') {
+                value = value * 10 + (data[at++] - '0');
+            }
+            for (int field = 0; field < CPU_COLUMNS.length; field++) {
+                if (CPU_COLUMNS[field] == column) {
+                    cpuTicks[field] = value;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int put(byte[] target, int at, byte[] bytes) {
+        System.arraycopy(bytes, 0, target, at, bytes.length);
+        return at + bytes.length;
+    }
+
+    /**
+     * Writes a row label of free's table, padded to eight columns.
+     */
+    private static int putLabel(byte[] target, int at, String label) {
+        for (int i = 0; i < 8; i++) {
+            target[at + i] = i < label.length() ? (byte) label.charAt(i) : (byte) ' ';
+        }
+        return at + 8;
+    }
+
+    /**
+     * Writes a non-negative number right aligned in a field of the given
+     * width.
+     */
+    static int putRight(byte[] target, int at, long value, int width) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int end = at + Math.max(width, digits);
+        for (int i = at; i < end - digits; i++) {
+            target[i] = ' ';
+        }
+        long rest = value;
+        for (int i = end - 1; i >= end - digits; i--) {
+            target[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Writes tenths of a percent as top's "%5.1f" does.
+     */
+    static int putTenths(byte[] target, int at, long tenths) {
+        int end = putRight(target, at, tenths / 10, 3);
+        target[end] = '.';
+        target[end + 1] = (byte) ('0' + tenths % 10);
+        return end + 2;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,9 +1,12 @@
  package com.app;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
 import java.util.zip.GZIPOutputStream;
 
  /**
@@ -20,6 +23,114 @@ import java.util.zip.GZIPOutputStream;
  * </ul>
  */
 public class Processor {
+    private static final String EXIT_CODE_TRAILER = "X-Exit-Code";
+
+    // Routes that fork a short-lived command, and those whose commands run
+    // for seconds or for as long as their streamed body takes. Each group
+    // has threads and limits of its own, so a burst of one cannot starve
+    // the other or the routes that fork nothing.
+    private static final Bulkhead COMMANDS = new Bulkhead("commands",
+            Math.max(4, Runtime.getRuntime().availableProcessors()), 64);
+    private static final Bulkhead DIAGNOSTICS = new Bulkhead("diagnostics", 2, 8);
+
+    // Answers from /proc in microseconds, without forking
+    private static final ProcReader PROC = new ProcReader();
+
+    // Built once and shared by every connection, HTTP/1.1 and HTTP/2 alike
+    private static final Router ROUTES = Router.builder()
+            .get("/", (request, response) -> response.setBody("Successful GET Request"))
+            .get("/system/info", PROC::osRelease)
+            .get("/system/memory", PROC::memory)
+            .getAsync("/system/disk", COMMANDS.guardAsync(command("df", "-h")))
+            .getAsync("/network/iface", COMMANDS.guardAsync(command("ip", "addr")))
+            .getAsync("/network/ip", COMMANDS.guardAsync(command("ip", "route", "get", "1")))
+            .getAsync("/network/ping", DIAGNOSTICS.guardAsync(command("ping", "-c", "4", "8.8.8.8")))
+            .get("/hardware/cpu", PROC::cpu)
+            .get("/hardware/load", PROC::loadAverage)
+            .getAsync("/hardware/processes", DIAGNOSTICS.guard(streamedCommand("ps", "aux")))
+            .getAsync("/util/time", COMMANDS.guardAsync(command("timedatectl")))
+            .getAsync("/util/logs", DIAGNOSTICS.guard(streamedCommand("journalctl", "-n", "50")))
+            .post("/util/upload", Processor::receiveUpload)
+            .put("/util/upload", Processor::receiveUpload)
+            .getAsync("/health", DIAGNOSTICS.guardAsync(
+                    command("bash", "-c", "uptime && free -h && df -h && top -bn1 | grep 'Cpu(s)'")))
+            .build();
+
+    // The built-in routes behind the processor's own filters, compiled once
+    // for the processors every connection creates
+    private static final Pipeline DEFAULT_PIPELINE = pipeline(ROUTES, Pipeline.builder());
+
+    private final Pipeline pipeline;
+
+    /**
+     * Creates a processor that serves the server's built-in endpoints.
+     */
+    public Processor() {
+        this(DEFAULT_PIPELINE);
+    }
+
+    /**
+     * Creates a processor that dispatches requests with the given router.
+     *
+     * @param router the routing table
+     */
+    public Processor(Router router) {
+        this(router, Pipeline.builder());
+    }
+
+    /**
+     * Creates a processor that passes every request through the given filters
+     * before dispatching it with the router. The processor's own filters,
+     * which buffer streamed bodies for protocols that cannot stream them,
+     * compress and mark HTTP/2 responses, run inside them, so the given
+     * filters see the response as it is sent.
+     *
+     * @param router  the routing table
+     * @param filters the filters to run on every request, outermost first
+     */
+    public Processor(Router router, Pipeline.Builder filters) {
+        this(pipeline(router, filters));
+    }
+
+    private Processor(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    private static Pipeline pipeline(Router router, Pipeline.Builder filters) {
+        return Pipeline.builder()
+                .addAll(filters)
+                .after(Processor::markProtocol)
+                .after(Processor::compressResponse)
+                .after(Processor::gatherStreamed)
+                .build((request, response) -> route(router, request, response));
+    }
+
+    /**
+     * Gets the routing table of the server's built-in endpoints.
+     *
+     * @return the shared router
+     */
+    public static Router getDefaultRouter() {
+        return ROUTES;
+    }
+
+    /**
+     * Gets the bulkheads the built-in endpoints are divided into, for their
+     * metrics.
+     *
+     * @return the bulkheads
+     */
+    public static Bulkhead[] getBulkheads() {
+        return new Bulkhead[] { COMMANDS, DIAGNOSTICS };
+    }
+
+    private static Router.AsyncHandler command(String... command) {
+        return (request, response) -> executeCommand(new ProcessBuilder(command), response);
+    }
+
+    private static Router.Handler streamedCommand(String... command) {
+        return (request, response) -> streamCommand(new ProcessBuilder(command), response);
+    }
 
     /**
      * Parses an HTTP request from the given input stream.
@@ -51,27 +162,22 @@ public class Processor {
         String urlPath = parts[1];
         String protocolVersion = parts[2];
 
-        HashMap<String, String> headers = new HashMap<>();
+        HttpHeaders headers = new HttpHeaders();
         while ((line = reader.readLine()) != null && !line.isEmpty()) {
             int colonIndex = line.indexOf(':');
             if (colonIndex > 0) {
                 String key = line.substring(0, colonIndex).trim();
                 String value = line.substring(colonIndex + 1).trim();
-                headers.put(key, value);
+                headers.add(key, value);
             } else {
                 throw new IOException("Malformed HTTP header: " + line);
             }
 
         }
 
-        // Debug logs for request headers
-        System.out.println("Request Headers:");
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            String key = entry.getKey();
-            String value = entry.getValue();
-            System.out.println(key + ": " + value);
+        if (Log.isDebugEnabled()) {
+            Log.debug("Request headers: " + headers);
         }
-        System.out.println("\n");
 
         return new HttpRequest(method, protocolVersion, urlPath, headers);
     }
@@ -86,200 +192,429 @@ public class Processor {
      * Supported endpoints include:
      * <ul>
      *   <li>/: Root endpoint with basic response</li>
-     *   <li>/system/info: Operating system release information</li>
-     *   <li>/system/memory: Memory usage details</li>
+     *   <li>/system/info: Operating system release information, read from /etc/os-release</li>
+     *   <li>/system/memory: Memory usage details, read from /proc/meminfo</li>
      *   <li>/system/disk: Disk space information</li>
      *   <li>/network/iface: Network interface details</li>
      *   <li>/network/ip: IP route information</li>
      *   <li>/network/ping: Network connectivity test</li>
-     *   <li>/hardware/cpu: CPU usage statistics</li>
-     *   <li>/hardware/load: System load average</li>
-     *   <li>/hardware/processes: Running processes list</li>
+     *   <li>/hardware/cpu: CPU usage statistics, read from /proc/stat</li>
+     *   <li>/hardware/load: System load average, read from /proc/loadavg</li>
+     *   <li>/hardware/processes: Running processes list, streamed as it is produced</li>
      *   <li>/util/time: System time and date information</li>
-     *   <li>/util/logs: Recent system logs</li>
+     *   <li>/util/logs: Recent system logs, streamed as they are produced</li>
+     *   <li>/util/upload: Accepts a POST or PUT body and reports its size</li>
      *   <li>/health: Comprehensive system health overview</li>
      * </ul>
      * 
-     * For unsupported HTTP methods, a 405 Method Not Allowed status is returned.
-     * For unrecognized paths, a 404 Not Found status is returned.
+     * Requests are dispatched by the processor's {@link Router}, on the path
+     * without its query. For unsupported HTTP methods, a 405 Method Not
+     * Allowed status is returned with the supported ones in an Allow header.
+     * For unrecognized paths, a 404 Not Found status is returned. The endpoints
+     * that run commands sit behind {@link Bulkhead}s, and one that is full
+     * answers with 503 Service Unavailable.
+     *
+     * <p>This method waits for the response of an asynchronous route; the
+     * connections use {@link #processRequestAsync(HttpRequest)} instead. An
+     * HTTP/1.1 response may come back with a streamed body, which holds its
+     * place in a {@link Bulkhead} until the caller has written it with
+     * {@link Responder#writeStreamedBody} or dropped it.</p>
      * 
      * @param request The HttpRequest object containing request details and to be populated with response data
      * @return The modified HttpResponse object with status code, body, and other relevant information
      */
     public HttpResponse processRequest(HttpRequest request) {
+        return processRequestAsync(request).join();
+    }
+
+    /**
+     * Processes an HTTP request without waiting for a route that answers
+     * asynchronously, such as one that runs a command. The request passes
+     * through the processor's {@link Pipeline} of filters, the same for
+     * HTTP/1.1 and HTTP/2. The returned future is completed on whichever
+     * thread finishes the response, and is already complete for routes that
+     * answer at once. It never completes exceptionally: a handler or filter
+     * that fails is answered with 500.
+     *
+     * @param request the request to answer
+     * @return a future completed with the response
+     */
+    public CompletableFuture<HttpResponse> processRequestAsync(HttpRequest request) {
         HttpResponse response = new HttpResponse(request.getProtocolVersion());
+        CompletableFuture<HttpResponse> processed;
+        try {
+            processed = pipeline.handle(request, response);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(dropped(request, response, e));
+        }
+        if (processed.isDone() && !processed.isCompletedExceptionally()) {
+            return processed;
+        }
+        return processed.exceptionally(failure -> dropped(request, response, failure));
+    }
 
-        switch(request.getUrlPath()) {
-            case "/":
-                if (request.getMethod().equals("GET")) {
-                    response.setStatusCode("200 OK");
-                    response.setBody("Successful GET Request");
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/system/info":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder systemInfo = new ProcessBuilder("cat", "/etc/os-release");
-                    executeCommand(systemInfo, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/system/memory":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder memoryInfo = new ProcessBuilder("free", "-m");
-                    executeCommand(memoryInfo, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/system/disk":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder diskSpace = new ProcessBuilder("df", "-h");
-                    executeCommand(diskSpace, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                };
-                break;
-            case "/network/iface":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder networkInterface = new ProcessBuilder("ip", "addr");
-                    executeCommand(networkInterface, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/network/ip":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder ipAddress = new ProcessBuilder("ip", "route get 1");
-                    executeCommand(ipAddress, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/network/ping":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder ping = new ProcessBuilder("ping", "-c 4 8.8.8.8");
-                    executeCommand(ping, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/hardware/cpu":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder cpu = new ProcessBuilder("top", "-bn1 | grep \"Cpu(s)\"");
-                    executeCommand(cpu, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/hardware/load":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder load = new ProcessBuilder("cat", "/proc/loadavg");
-                    executeCommand(load, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/hardware/processes":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder proc = new ProcessBuilder("ps", "aux");
-                    executeCommand(proc, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/util/time":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder time = new ProcessBuilder("timedatectl");
-                    executeCommand(time, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/util/logs":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder logs = new ProcessBuilder("journalctl", "-n 50");
-                    executeCommand(logs, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            case "/health":
-                if (request.getMethod().equals("GET")) {
-                    ProcessBuilder systemHealth = new ProcessBuilder("bash", "-c", "uptime && free -h && df -h && top -bn1 | grep 'Cpu(s)'");
-                    executeCommand(systemHealth, response);
-                } else {
-                    response.setStatusCode("405 Method Not Allowed");
-                    response.setBody("Method not supported");
-                }
-                break;
-            default:
-                response.setStatusCode("404 NOT FOUND");
-                response.setBody("Cannot find what you are looking for.");        
+    /**
+     * Answers a request whose filters failed with 500. The response they
+     * were working on is never sent, so a streamed body it holds is dropped.
+     */
+    private static HttpResponse dropped(HttpRequest request, HttpResponse response, Throwable failure) {
+        response.bodyDone();
+        return failed(request, failure);
+    }
+
+    /**
+     * Ends the pipeline: routes the request, turning a failed handler into a
+     * 500 response that the filters then see like any other.
+     */
+    private static CompletableFuture<HttpResponse> route(Router router, HttpRequest request,
+            HttpResponse response) {
+        CompletableFuture<HttpResponse> routed;
+        try {
+            routed = router.route(request, response);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(failed(request, e));
+        }
+        if (routed.isDone() && !routed.isCompletedExceptionally()) {
+            return routed;
+        }
+        return routed.exceptionally(failure -> failed(request, failure));
+    }
+
+    private static HttpResponse failed(HttpRequest request, Throwable failure) {
+        Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+        Log.error("Handler failed for " + request.getMethod() + " " + request.getPath(), cause);
+        HttpResponse response = new HttpResponse(request.getProtocolVersion());
+        response.setStatusCode("500 Internal Server Error");
+        response.setBody("Error processing request: " + cause.getMessage());
+        return response;
+    }
+
+    /**
+     * Buffers a streamed body for a protocol without chunked framing to
+     * stream it with; only HTTP/1.1 has it.
+     */
+    private static void gatherStreamed(HttpRequest request, HttpResponse response) {
+        if (response.isStreamed() && !"HTTP/1.1".equals(request.getProtocolVersion())) {
+            try {
+                ResponseBody.Buffered.gather(response);
+            } catch (IOException e) {
+                response.setStatusCode("500 Internal Server Error");
+                response.setBody("Error producing response: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tells an HTTP/2 client which protocol served it.
+     */
+    private static void markProtocol(HttpRequest request, HttpResponse response) {
+        if ("HTTP/2".equals(request.getProtocolVersion())) {
+            response.setHeader("x-protocol", "HTTP/2");
+        }
+    }
+
+    /**
+     * Checks whether a request asks to switch the connection to cleartext
+     * HTTP/2, and if so decodes the settings it carries.
+     *
+     * <p>The request must list h2c in its Upgrade header, carry an
+     * HTTP2-Settings header holding a base64url encoded SETTINGS payload, and
+     * name both in its Connection header. Anything else is served as plain
+     * HTTP/1.1, as RFC 7540 section 3.2 allows.</p>
+     *
+     * @param request the parsed HTTP/1.1 request
+     * @return the client's HTTP/2 settings, or null if no valid upgrade was asked for
+     */
+    public Http2Settings parseH2cUpgrade(HttpRequest request) {
+        if (BodyDecoder.hasBody(request)) {
+            // The body would have to be read before switching protocols
+            return null;
+        }
+        String upgrade = request.getHeader(HttpHeaders.UPGRADE);
+        String connection = request.getHeader(HttpHeaders.CONNECTION);
+        String encodedSettings = request.getHeader(HttpHeaders.HTTP2_SETTINGS);
+
+        if (upgrade == null || connection == null || encodedSettings == null
+                || !hasToken(upgrade, "h2c")
+                || !hasToken(connection, "upgrade")
+                || !hasToken(connection, "http2-settings")) {
+            return null;
+        }
+
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(encodedSettings.trim());
+            if (payload.length % 6 != 0) {
+                Log.debug("Ignoring h2c upgrade with malformed HTTP2-Settings");
+                return null;
+            }
+            return new SettingsFrame(0, 0, ByteBuffer.wrap(payload)).getSettings();
+        } catch (IllegalArgumentException e) {
+            Log.debug("Ignoring h2c upgrade with invalid HTTP2-Settings: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the client wants the connection kept open after a
+     * request is answered. HTTP/1.1 connections persist unless the client
+     * sends "Connection: close"; HTTP/1.0 ones only when it sends "Connection:
+     * keep-alive" (RFC 9112 section 9.3).
+     *
+     * @param request the parsed HTTP/1.1 request
+     * @return true if the connection should be kept open
+     */
+    public static boolean isKeepAlive(HttpRequest request) {
+        boolean close = false;
+        boolean keepAlive = false;
+        HttpHeaders headers = request.getRequestHeaders();
+        if (headers != null) {
+            for (String connection : headers.getAll(HttpHeaders.CONNECTION)) {
+                close |= hasToken(connection, "close");
+                keepAlive |= hasToken(connection, "keep-alive");
+            }
+        }
+        if (close) {
+            return false;
         }
+        return keepAlive || !"HTTP/1.0".equals(request.getProtocolVersion());
+    }
+
+    /**
+     * Tells the client whether the connection stays open after a response. A
+     * persistent connection advertises, in a Keep-Alive header, how long it
+     * may sit idle and how many more requests it will take.
+     *
+     * @param response      the response to mark
+     * @param keepAlive     whether the connection stays open
+     * @param config        the server configuration holding the limits
+     * @param requestNumber how many requests the connection has carried,
+     *                      counting this one
+     */
+    public static void setConnectionHeaders(HttpResponse response, boolean keepAlive, ServerConfig config,
+            int requestNumber) {
+        if (!keepAlive) {
+            response.setHeader(HttpHeaders.CONNECTION, "close");
+            response.getHeaders().remove(HttpHeaders.KEEP_ALIVE);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CONNECTION, "keep-alive");
+        String keepAliveValue = "timeout=" + config.getKeepAliveTimeout() / 1000;
+        if (config.getMaxKeepAliveRequests() > 0) {
+            keepAliveValue += ", max=" + (config.getMaxKeepAliveRequests() - requestNumber);
+        }
+        response.setHeader(HttpHeaders.KEEP_ALIVE, keepAliveValue);
+    }
+
+    /**
+     * Checks whether a connection may carry another request after the given
+     * number of them.
+     *
+     * @param config        the server configuration holding the limit
+     * @param requestNumber how many requests the connection has carried
+     * @return true if the limit on requests per connection is not reached
+     */
+    public static boolean isBelowRequestLimit(ServerConfig config, int requestNumber) {
+        return config.getMaxKeepAliveRequests() <= 0 || requestNumber < config.getMaxKeepAliveRequests();
+    }
 
-        compressResponse(request, response);
+    /**
+     * Checks whether the client waits for a 100 response before sending the
+     * request body.
+     *
+     * @param request the parsed HTTP/1.1 request
+     * @return true if the request carries "Expect: 100-continue"
+     */
+    public static boolean expectsContinue(HttpRequest request) {
+        return "100-continue".equalsIgnoreCase(request.getHeader(HttpHeaders.EXPECT));
+    }
 
+    /**
+     * Creates the interim response that tells the client to send its body.
+     *
+     * @return the 100 Continue response
+     */
+    public HttpResponse createContinueResponse() {
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        response.setStatusCode("100 Continue");
+        response.getHeaders().remove(HttpHeaders.CONTENT_TYPE);
+        response.getHeaders().remove(HttpHeaders.DATE);
         return response;
     }
 
     /**
-     * Executes a system command and processes its output.
+     * Creates the response to a request refused before it reached a handler.
+     * The connection is closed after it, since the rest of the request cannot
+     * be trusted to be framed correctly.
+     *
+     * @param statusCode the status to answer with
+     * @return the error response
+     */
+    public HttpResponse createErrorResponse(String statusCode) {
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        response.setStatusCode(statusCode);
+        response.setBody(statusCode);
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        return response;
+    }
+
+    /**
+     * Creates the 101 response that accepts an h2c upgrade.
+     *
+     * @return the Switching Protocols response
+     */
+    public HttpResponse createUpgradeResponse() {
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        response.setStatusCode("101 Switching Protocols");
+        response.getHeaders().remove(HttpHeaders.CONTENT_TYPE);
+        response.setHeader(HttpHeaders.CONNECTION, "Upgrade");
+        response.setHeader(HttpHeaders.UPGRADE, "h2c");
+        return response;
+    }
+
+    private static boolean hasToken(String headerValue, String token) {
+        for (String part : headerValue.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads an uploaded body through to the end and reports how many bytes it
+     * held. The body is read in small pieces and dropped, so an upload of any
+     * size costs one buffer.
+     *
+     * @param request  the request carrying the body
+     * @param response the response to fill in
+     */
+    private static void receiveUpload(HttpRequest request, HttpResponse response) {
+        RequestBody body = request.getBody();
+        long received = 0;
+        if (body != null) {
+            byte[] buffer = new byte[8192];
+            try {
+                int count;
+                while ((count = body.read(buffer, 0, buffer.length)) != -1) {
+                    received += count;
+                }
+            } catch (HttpStatusException e) {
+                response.setStatusCode(e.getStatusCode());
+                response.setBody(e.getMessage());
+                return;
+            } catch (IOException e) {
+                response.setStatusCode("400 Bad Request");
+                response.setBody("Error reading request body: " + e.getMessage());
+                return;
+            }
+        }
+        response.setStatusCode("200 OK");
+        response.setBody("Received " + received + " bytes");
+    }
+
+    /**
+     * Executes a system command and answers with its output once it exits.
      * 
      * <p>This method performs the following operations:</p>
      * <ul>
-     *   <li>Starts the specified system command using ProcessBuilder</li>
-     *   <li>Reads the command's output stream, line by line</li>
-     *   <li>Captures the entire output in a StringBuilder</li>
+     *   <li>Starts the specified system command using ProcessBuilder, with its
+     *       output and error output going to temporary files</li>
+     *   <li>Returns without waiting; the response is filled in when the
+     *       process exits, so no thread is held for the command's run time
+     *       and a large output cannot stall it on a full pipe</li>
      *   <li>Sets the HTTP response status to 200 OK on successful execution</li>
      *   <li>Sets the response body to the command's output</li>
      * </ul>
      * 
      * @param command The ProcessBuilder containing the system command to execute
      * @param response the com.app.HttpResponse object containing response information
+     * @return a future completed with the response once the command has exited
      */
-    private void executeCommand(ProcessBuilder command, HttpResponse response) {
+    private static CompletableFuture<HttpResponse> executeCommand(ProcessBuilder command, HttpResponse response) {
+        Path output = null;
+        Path errors = null;
+        Process process;
         try {
-            Process process = command.start();
-            int exitCode = process.waitFor();
-
-            if (exitCode == 0) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line).append("\n");
-                }
-                response.setStatusCode("200 OK");
-                response.setBody(sb.toString());
-            } else {
-                BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-                StringBuilder errorSb = new StringBuilder();
-                String errorLine;
-                while ((errorLine = errorReader.readLine()) != null) {
-                    errorSb.append(errorLine).append("\n");
+            output = Files.createTempFile("command", ".out");
+            errors = Files.createTempFile("command", ".err");
+            process = command.redirectOutput(output.toFile()).redirectError(errors.toFile()).start();
+        } catch (IOException e) {
+            deleteQuietly(output);
+            deleteQuietly(errors);
+            response.setStatusCode("500 Internal Server Error");
+            response.setBody("Error executing command: " + e.getMessage());
+            return CompletableFuture.completedFuture(response);
+        }
+
+        Path outputFile = output;
+        Path errorFile = errors;
+        return process.onExit().handle((exited, failure) -> {
+            try {
+                if (failure != null) {
+                    response.setStatusCode("500 Internal Server Error");
+                    response.setBody("Error executing command: " + failure.getMessage());
+                } else if (exited.exitValue() == 0) {
+                    response.setStatusCode("200 OK");
+                    response.setBodyBytes(Files.readAllBytes(outputFile));
+                } else {
+                    response.setStatusCode("500 Internal Server Error");
+                    response.setBody("Command failed "
+                            + new String(Files.readAllBytes(errorFile), StandardCharsets.UTF_8));
                 }
+            } catch (IOException e) {
                 response.setStatusCode("500 Internal Server Error");
-                response.setBody("Command failed " + errorSb);
+                response.setBody("Error executing command: " + e.getMessage());
+            } finally {
+                deleteQuietly(outputFile);
+                deleteQuietly(errorFile);
             }
-        } catch (IOException | InterruptedException e) {
-            response.setStatusCode("500 Internal Server Error");
-            response.setBody("Error executing command: " + e.getMessage());
+            return response;
+        });
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
         }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            Log.debug("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a system command and streams its output as the response body, so a
+     * long listing reaches the client while the command is still producing it
+     * and is never held in memory. The status is sent before the command has
+     * run, so its error output is merged into the body and its exit code
+     * follows the body in the X-Exit-Code trailer.
+     *
+     * @param command the command to run once the response head has been sent
+     * @param response the response to stream the output through
+     */
+    private static void streamCommand(ProcessBuilder command, HttpResponse response) {
+        response.setStatusCode("200 OK");
+        response.setHeader(HttpHeaders.TRAILER, EXIT_CODE_TRAILER);
+        response.setBodyWriter(body -> {
+            Process process;
+            try {
+                process = command.redirectErrorStream(true).start();
+            } catch (IOException e) {
+                body.write(("Error executing command: " + e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            try (InputStream output = process.getInputStream()) {
+                output.transferTo(body);
+                body.addTrailer(EXIT_CODE_TRAILER, String.valueOf(process.waitFor()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the command");
+            } finally {
+                process.destroy();
+            }
+        });
     }
 
      /**
@@ -296,24 +631,20 @@ public class Processor {
       * @param request The HTTP request containing client capabilities
       * @param response The HTTP response to potentially compress
       */
-    private void compressResponse(HttpRequest request, HttpResponse response) {
-        String acceptEncoding = request.getRequestHeaders().get("Accept-Encoding");
+    private static void compressResponse(HttpRequest request, HttpResponse response) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
 
         if (acceptEncoding == null || !acceptEncoding.toLowerCase().contains("gzip")) {
             return;
         }
 
-        if (response.getBody() == null || response.getBody().isEmpty()) {
-            System.out.println("Is null");
-            return;
-        }
-
-        byte[] body = response.getBody().getBytes(StandardCharsets.UTF_8);
-        if (body.length < 1024) {
+        // Streamed and bodiless responses have a length of 0
+        int length = response.getBodyLength();
+        if (length < 1024) {
             return;
         }
 
-        String contentType = response.getHeaders().get("Content-Type");
+        String contentType = response.getHeaders().get(HttpHeaders.CONTENT_TYPE);
         boolean isCompressible = contentType != null && ((contentType.startsWith("text/")) || contentType.contains("json") || contentType.contains("xml") || contentType.contains("javascript"));
 
         if (!isCompressible) {
@@ -321,23 +652,23 @@ public class Processor {
         }
 
         try {
-            ByteArrayOutputStream byteStream = new ByteArrayOutputStream(body.length);
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream(length);
 
             GZIPOutputStream gzipStream = new GZIPOutputStream(byteStream);
 
-            gzipStream.write(body);
+            response.writeBody(gzipStream);
             gzipStream.finish();
             gzipStream.close();
 
             byte[] compressedBody = byteStream.toByteArray();
 
             response.setCompressedBody(compressedBody);
-            response.setHeader("Content-Encoding", "gzip");
-            response.setHeader("Content-Length", String.valueOf(compressedBody.length));
-            response.setHeader("Vary", "Accept-Encoding");
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(compressedBody.length));
+            response.setHeader(HttpHeaders.VARY, "Accept-Encoding");
 
         } catch (IOException e) {
-            System.err.println("Compression failed: " + e.getMessage());
+            Log.warn("Compression failed: {}", e.getMessage());
         }
     }
 }
@@ -0,0 +1,337 @@
+package com.app;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The RequestBody class is the body of an HTTP/1.1 request as its handler sees
+ * it: a stream that yields the body bytes as they arrive from the client.
+ *
+ * <p>
+ * The body is never gathered up on the heap. The blocking transports read it
+ * from the socket only when the handler asks for more, and the NIO transport
+ * queues at most a fixed number of bytes before it stops reading the socket
+ * until the handler catches up. Either way a slow handler slows the client
+ * down through TCP flow control rather than costing memory.
+ * </p>
+ *
+ * <p>
+ * When the client sent "Expect: 100-continue" the interim 100 response goes
+ * out the first time the handler waits for body bytes, so a handler that
+ * answers without reading the body never invites the client to send it.
+ * </p>
+ */
+public abstract class RequestBody extends InputStream {
+    private final long contentLength;
+    private volatile Runnable continueAction;
+    private volatile boolean continueSent;
+
+    /**
+     * Creates a body.
+     *
+     * @param contentLength the declared length, or -1 for a chunked body
+     */
+    protected RequestBody(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Gets the length the client declared for the body.
+     *
+     * @return the Content-Length, or -1 if the body is chunked
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Sets what sends the interim 100 response. Left unset when the client did
+     * not ask for one.
+     *
+     * @param continueAction the action that sends "100 Continue"
+     */
+    void setContinueAction(Runnable continueAction) {
+        this.continueAction = continueAction;
+    }
+
+    /**
+     * Checks whether the client is still waiting to be told to send the body.
+     *
+     * @return true if the client expects a 100 response that was never sent
+     */
+    boolean isAwaitingContinue() {
+        return continueAction != null && !continueSent;
+    }
+
+    /**
+     * Sends the interim 100 response if the client expects one and it has not
+     * been sent yet.
+     */
+    protected void sendContinue() {
+        Runnable action = continueAction;
+        if (action != null && !continueSent) {
+            continueSent = true;
+            action.run();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int count = read(one, 0, 1);
+        return count == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    /**
+     * A body read straight from a blocking socket through the connection's
+     * read buffer, so bytes pipelined after the body stay in the buffer for
+     * the next request.
+     */
+    static final class Streamed extends RequestBody {
+        private final BodyDecoder decoder;
+        private final ByteBuffer buffer;
+        private final InputStream in;
+        private final ConnectionDeadline deadline;
+        private ByteBuffer current;
+
+        /**
+         * Creates a body read on demand.
+         *
+         * @param decoder  the body's framing
+         * @param buffer   the connection's read buffer, in read mode, with a
+         *                 backing array
+         * @param in       the socket stream to refill the buffer from
+         * @param deadline the connection's deadline, armed while waiting for
+         *                 the client, or null
+         */
+        Streamed(BodyDecoder decoder, ByteBuffer buffer, InputStream in, ConnectionDeadline deadline) {
+            super(decoder.getContentLength());
+            this.decoder = decoder;
+            this.buffer = buffer;
+            this.in = in;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (current == null || !current.hasRemaining()) {
+                current = decoder.next(buffer);
+                if (current != null) {
+                    break;
+                }
+                if (decoder.isComplete()) {
+                    return -1;
+                }
+                fill();
+            }
+
+            int count = Math.min(len, current.remaining());
+            current.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return current != null ? current.remaining() : 0;
+        }
+
+        /**
+         * Checks whether the whole body has been read.
+         *
+         * @return true once the body is complete
+         */
+        boolean isComplete() {
+            return decoder.isComplete();
+        }
+
+        private void fill() throws IOException {
+            sendContinue();
+            // The decoder has consumed everything buffered, so compacting
+            // frees the whole buffer
+            buffer.compact();
+            if (deadline != null) {
+                deadline.arm(ConnectionDeadline.Kind.REQUEST_BODY);
+            }
+            int bytesRead;
+            try {
+                bytesRead = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } finally {
+                if (deadline != null) {
+                    deadline.cancel();
+                }
+            }
+            if (bytesRead > 0) {
+                buffer.position(buffer.position() + bytesRead);
+            }
+            buffer.flip();
+            if (bytesRead == -1) {
+                throw new EOFException("Connection closed before the request body was complete");
+            }
+        }
+    }
+
+    /**
+     * A body fed from an event loop and read by a handler on a worker thread.
+     * The loop offers each run of bytes as it is decoded and stops reading the
+     * socket once the queue is full; the handler's reads wake it again when
+     * the queue has drained to half.
+     */
+    static final class Queued extends RequestBody {
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition readable = lock.newCondition();
+        private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+        private int queued;
+        private boolean complete;
+        private IOException failure;
+        private boolean producerWaiting;
+        private Runnable onDrain;
+
+        /**
+         * Creates an empty body.
+         *
+         * @param contentLength the declared length, or -1 for a chunked body
+         * @param capacity      the number of bytes to queue before the producer
+         *                      should stop
+         */
+        Queued(long contentLength, int capacity) {
+            super(contentLength);
+            this.capacity = capacity;
+        }
+
+        /**
+         * Sets what the reader runs, on its own thread, once a full queue has
+         * drained to half.
+         *
+         * @param onDrain the action that resumes the producer
+         */
+        void setOnDrain(Runnable onDrain) {
+            this.onDrain = onDrain;
+        }
+
+        /**
+         * Adds bytes to the body. The queue takes the bytes even when full; the
+         * return value tells the producer whether to keep going.
+         *
+         * @param data the bytes, which now belong to the body
+         * @return true if there is room for more, false if the producer should
+         *         wait for the drain action
+         */
+        boolean offer(ByteBuffer data) {
+            lock.lock();
+            try {
+                chunks.add(data);
+                queued += data.remaining();
+                readable.signal();
+                if (queued >= capacity) {
+                    producerWaiting = true;
+                    return false;
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Marks the body as complete once its last bytes have been offered.
+         */
+        void complete() {
+            lock.lock();
+            try {
+                complete = true;
+                readable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Ends the body with an error that the reader sees once the bytes
+         * already queued are used up.
+         *
+         * @param e the error
+         */
+        void fail(IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+                readable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            boolean resume = false;
+            int count;
+            lock.lock();
+            try {
+                while (chunks.isEmpty()) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    if (complete) {
+                        return -1;
+                    }
+                    if (isAwaitingContinue()) {
+                        lock.unlock();
+                        try {
+                            sendContinue();
+                        } finally {
+                            lock.lock();
+                        }
+                        continue;
+                    }
+                    readable.await();
+                }
+
+                ByteBuffer chunk = chunks.peek();
+                count = Math.min(len, chunk.remaining());
+                chunk.get(b, off, count);
+                if (!chunk.hasRemaining()) {
+                    chunks.poll();
+                }
+                queued -= count;
+                if (producerWaiting && queued <= capacity / 2) {
+                    producerWaiting = false;
+                    resume = true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the request body");
+            } finally {
+                lock.unlock();
+            }
+
+            if (resume && onDrain != null) {
+                onDrain.run();
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return queued;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
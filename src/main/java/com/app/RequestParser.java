@@ -0,0 +1,299 @@
+package com.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The RequestParser class reads HTTP/1.1 request heads straight out of a
+ * connection's read buffer.
+ *
+ * <p>
+ * It is a state machine that looks at each byte once. When a head is only
+ * partly buffered it remembers how far it got, and the next call carries on
+ * from there, so a head that arrives a few bytes per read is not rescanned.
+ * Nothing is decoded while scanning: the request line parts and each header's
+ * name and value are recorded as offsets from the start of the head. Once the
+ * head is complete it is copied out of the buffer in one piece and wrapped in
+ * {@link HttpHeaders}, which only builds header Strings if asked for them.
+ * </p>
+ *
+ * <p>
+ * Empty lines before the request line are skipped and a bare LF is accepted as
+ * a line ending, as RFC 9112 section 2.2 allows. Whitespace between a header
+ * name and its colon and obsolete line folding are rejected. A parser belongs
+ * to one connection and is not thread-safe.
+ * </p>
+ */
+public class RequestParser {
+    static final int MAX_HEADERS = 100;
+
+    private enum State {
+        LINE_START, METHOD, TARGET_START, TARGET, VERSION_START, VERSION, LINE_TRAILER, LINE_LF,
+        HEADER_START, HEADER_NAME, VALUE_START, VALUE, HEAD_LF
+    }
+
+    private State state = State.LINE_START;
+    private int scanned;
+    private int start;
+    private int methodStart;
+    private int methodEnd;
+    private int targetStart;
+    private int targetEnd;
+    private int versionStart;
+    private int versionEnd;
+    private int valueEnd;
+    private int[] headerOffsets = new int[32];
+    private int headerCount;
+
+    /**
+     * Parses the request head at the buffer's position.
+     *
+     * <p>
+     * If the head is complete the buffer's position is moved past it and the
+     * request is returned. Otherwise the position is left alone and null is
+     * returned; call again once more bytes have been added to the buffer. The
+     * buffer may be compacted or grown in between, as long as the unparsed
+     * bytes keep their order.
+     * </p>
+     *
+     * @param buffer the buffer to read between its position and limit
+     * @return the request, or null if the head is not complete yet
+     * @throws IOException if the head is malformed
+     */
+    @SuppressWarnings("fallthrough")
+    public HttpRequest parse(ByteBuffer buffer) throws IOException {
+        int base = buffer.position();
+        int limit = buffer.limit();
+
+        for (int i = base + scanned; i < limit; i++) {
+            byte b = buffer.get(i);
+            int offset = i - base;
+
+            switch (state) {
+                case LINE_START:
+                    if (b == '\r' || b == '\n') {
+                        break;
+                    }
+                    if (!isTokenChar(b)) {
+                        throw new IOException("Malformed HTTP request line");
+                    }
+                    start = offset;
+                    methodStart = offset;
+                    state = State.METHOD;
+                    break;
+                case METHOD:
+                    if (b == ' ') {
+                        methodEnd = offset;
+                        state = State.TARGET_START;
+                    } else if (!isTokenChar(b)) {
+                        throw new IOException("Malformed HTTP request line");
+                    }
+                    break;
+                case TARGET_START:
+                    if (b == ' ' || b == '\t') {
+                        break;
+                    }
+                    targetStart = offset;
+                    state = State.TARGET;
+                    // fall through to check the first byte of the target
+                case TARGET:
+                    if (b == ' ' || b == '\t') {
+                        targetEnd = offset;
+                        state = State.VERSION_START;
+                    } else if (b < 0x21 || b == 0x7F) {
+                        throw new IOException("Malformed HTTP request line");
+                    }
+                    break;
+                case VERSION_START:
+                    if (b == ' ' || b == '\t') {
+                        break;
+                    }
+                    if (b == '\r' || b == '\n') {
+                        throw new IOException("Malformed HTTP request line");
+                    }
+                    versionStart = offset;
+                    state = State.VERSION;
+                    // fall through to check the first byte of the version
+                case VERSION:
+                    if (b == '\r' || b == '\n') {
+                        versionEnd = offset;
+                        state = endOfLine(b);
+                    } else if (b == ' ' || b == '\t') {
+                        versionEnd = offset;
+                        state = State.LINE_TRAILER;
+                    } else if (b < 0x21 || b == 0x7F) {
+                        throw new IOException("Malformed HTTP request line");
+                    }
+                    break;
+                case LINE_TRAILER:
+                    if (b == '\r' || b == '\n') {
+                        state = endOfLine(b);
+                    } else if (b != ' ' && b != '\t') {
+                        throw new IOException("Malformed HTTP request line");
+                    }
+                    break;
+                case LINE_LF:
+                    if (b != '\n') {
+                        throw new IOException("Malformed HTTP line ending");
+                    }
+                    state = State.HEADER_START;
+                    break;
+                case HEADER_START:
+                    if (b == '\r') {
+                        state = State.HEAD_LF;
+                    } else if (b == '\n') {
+                        return complete(buffer, base, offset + 1);
+                    } else if (isTokenChar(b)) {
+                        if (headerCount == MAX_HEADERS) {
+                            throw new IOException("Too many HTTP headers");
+                        }
+                        ensureHeaderCapacity();
+                        headerOffsets[headerCount * 4] = offset;
+                        state = State.HEADER_NAME;
+                    } else {
+                        throw new IOException("Malformed HTTP header");
+                    }
+                    break;
+                case HEADER_NAME:
+                    if (b == ':') {
+                        headerOffsets[headerCount * 4 + 1] = offset;
+                        state = State.VALUE_START;
+                    } else if (!isTokenChar(b)) {
+                        throw new IOException("Malformed HTTP header");
+                    }
+                    break;
+                case VALUE_START:
+                    if (b == ' ' || b == '\t') {
+                        break;
+                    }
+                    headerOffsets[headerCount * 4 + 2] = offset;
+                    valueEnd = offset;
+                    state = State.VALUE;
+                    // fall through to consume the first byte of the value
+                case VALUE:
+                    if (b == '\r' || b == '\n') {
+                        headerOffsets[headerCount * 4 + 3] = valueEnd;
+                        headerCount++;
+                        state = endOfLine(b);
+                    } else if (b != ' ' && b != '\t') {
+                        valueEnd = offset + 1;
+                    }
+                    break;
+                case HEAD_LF:
+                    if (b != '\n') {
+                        throw new IOException("Malformed HTTP line ending");
+                    }
+                    return complete(buffer, base, offset + 1);
+            }
+        }
+
+        scanned = limit - base;
+        return null;
+    }
+
+    /**
+     * Gets the state to move to after a CR or LF that ends a line.
+     */
+    private static State endOfLine(byte b) {
+        return b == '\r' ? State.LINE_LF : State.HEADER_START;
+    }
+
+    private HttpRequest complete(ByteBuffer buffer, int base, int end) {
+        // Offsets so far are from the buffer position; rebase them on the
+        // request line so the skipped empty lines are not copied
+        byte[] head = new byte[end - start];
+        buffer.get(base + start, head);
+        buffer.position(base + end);
+
+        int[] offsets = Arrays.copyOf(headerOffsets, headerCount * 4);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] -= start;
+        }
+
+        HttpRequest request = new HttpRequest(
+                method(head, methodStart - start, methodEnd - start),
+                version(head, versionStart - start, versionEnd - start),
+                new String(head, targetStart - start, targetEnd - targetStart, StandardCharsets.UTF_8),
+                new HttpHeaders(head, offsets, headerCount));
+        reset();
+        return request;
+    }
+
+    /**
+     * Discards any partly parsed head so the parser can start on a new one.
+     */
+    public void reset() {
+        state = State.LINE_START;
+        scanned = 0;
+        headerCount = 0;
+    }
+
+    private void ensureHeaderCapacity() {
+        if ((headerCount + 1) * 4 > headerOffsets.length) {
+            headerOffsets = Arrays.copyOf(headerOffsets, headerOffsets.length * 2);
+        }
+    }
+
+    /**
+     * Returns the shared constant for a common method so most requests do not
+     * allocate one.
+     */
+    private static String method(byte[] head, int from, int to) {
+        if (matches(head, from, to, "GET")) {
+            return "GET";
+        } else if (matches(head, from, to, "POST")) {
+            return "POST";
+        } else if (matches(head, from, to, "PUT")) {
+            return "PUT";
+        } else if (matches(head, from, to, "DELETE")) {
+            return "DELETE";
+        } else if (matches(head, from, to, "HEAD")) {
+            return "HEAD";
+        } else if (matches(head, from, to, "OPTIONS")) {
+            return "OPTIONS";
+        } else if (matches(head, from, to, "PATCH")) {
+            return "PATCH";
+        }
+        return new String(head, from, to - from, StandardCharsets.US_ASCII);
+    }
+
+    private static String version(byte[] head, int from, int to) {
+        if (matches(head, from, to, "HTTP/1.1")) {
+            return "HTTP/1.1";
+        } else if (matches(head, from, to, "HTTP/1.0")) {
+            return "HTTP/1.0";
+        }
+        return new String(head, from, to - from, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean matches(byte[] head, int from, int to, String expected) {
+        if (to - from != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (head[from + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks for a tchar from RFC 9110 section 5.6.2, the characters allowed in
+     * methods and header names.
+     */
+    private static boolean isTokenChar(byte b) {
+        if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')) {
+            return true;
+        }
+        switch (b) {
+            case '!': case '#': case '$': case '%': case '&': case '\'': case '*': case '+':
+            case '-': case '.': case '^': case '_': case '`': case '|': case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -1,61 +1,176 @@
 package com.app;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * The Responder class is responsible for sending HTTP responses to clients.
  * It formats the HTTP response according to the HTTP protocol specification
  * and writes it to the client's output stream.
- * 
+ *
  * <p>This class handles the final step in the HTTP request-response cycle
  * by sending the formatted response back to the client.</p>
+ *
+ * <p>The head of a response is serialized straight to bytes: the status lines
+ * the server sends are encoded once, as are the names of well-known header
+ * fields, the Date comes ready encoded from the {@link ServerClock}, and the
+ * rest is copied byte by byte into a buffer the responder reuses. A responder
+ * belongs to one connection and is not thread safe.</p>
  */
 public class Responder {
-    
+    private static final int INITIAL_HEAD_SIZE = 1024;
+    private static final byte[] COLON_SPACE = { ':', ' ' };
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final String HTTP_1_1 = "HTTP/1.1";
+    private static final Map<String, byte[]> STATUS_LINES = new HashMap<>();
+
+    static {
+        for (String status : new String[] { "100 Continue", "101 Switching Protocols", "200 OK",
+                "400 Bad Request", "404 NOT FOUND", "405 Method Not Allowed", "413 Payload Too Large",
+                "500 Internal Server Error", "501 Not Implemented", "503 Service Unavailable" }) {
+            STATUS_LINES.put(status, (HTTP_1_1 + " " + status + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    private ByteBuffer head = ByteBuffer.allocate(INITIAL_HEAD_SIZE);
+
     /**
      * Sends an HTTP response to the client.
-     * 
+     *
      * <p>This method formats the HTTP response with appropriate status line,
-     * headers, and body, then writes it to the provided output stream. It also
-     * prints the complete response to the console for debugging purposes.</p>
-     * 
+     * headers, and body, then writes it to the provided output stream.</p>
+     *
      * <p>The response format follows the HTTP specification:</p>
      * <pre>
      * [PROTOCOL_VERSION] [STATUS_CODE]
      * [HEADER_NAME]: [HEADER_VALUE]
      * ...
-     * 
+     *
      * [BODY]
      * </pre>
-     * 
+     *
      * @param response the HttpResponse object containing the response information
      * @param outputStream the OutputStream to write the formatted response to
      * @throws IOException if an I/O error occurs while writing to the output stream
      */
     public void sendResponse(HttpResponse response, OutputStream outputStream) throws IOException {
-        StringBuilder headerBuilder = new StringBuilder();
-        headerBuilder.append(response.getProtocolVersion()).append(" ").append(response.getStatusCode()).append("\r\n");
+        writeResponse(response, outputStream);
+        outputStream.flush();
+    }
+
+    /**
+     * Writes an HTTP response without flushing the stream, so that the
+     * responses to pipelined requests can go out together in one write. A
+     * streamed body is produced by its writer now, chunk by chunk, and the
+     * stream is flushed when it ends.
+     *
+     * @param response the HttpResponse object containing the response information
+     * @param outputStream the OutputStream to write the formatted response to
+     * @throws IOException if an I/O error occurs while writing to the output stream
+     */
+    public void writeResponse(HttpResponse response, OutputStream outputStream) throws IOException {
+        head.clear();
+        while (!encodeHead(response, head)) {
+            head = ByteBuffer.allocate(head.capacity() * 2);
+        }
+        outputStream.write(head.array(), 0, head.position());
 
-        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
-            headerBuilder.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        if (response.isStreamed()) {
+            writeStreamedBody(response, outputStream);
+            return;
         }
+        HttpResponse.write(response.getBodyBuffers(), outputStream);
+    }
 
-        headerBuilder.append("\r\n");
+    /**
+     * Runs the writer of a streamed response, sending what it writes with
+     * chunked transfer coding. The head must already have been written.
+     *
+     * @param response     the streamed response
+     * @param outputStream the stream to write the chunks to
+     * @throws IOException if the writer fails or the stream cannot be written;
+     *                     the body is then incomplete and the connection must
+     *                     be closed
+     */
+    public static void writeStreamedBody(HttpResponse response, OutputStream outputStream) throws IOException {
+        ResponseBody.Chunked body = new ResponseBody.Chunked(outputStream);
+        try {
+            response.getBodyWriter().writeTo(body);
+        } catch (RuntimeException e) {
+            throw new IOException("Response body writer failed", e);
+        } finally {
+            response.bodyDone();
+        }
+        body.close();
+    }
 
-        outputStream.write(headerBuilder.toString().getBytes(StandardCharsets.UTF_8));
+    /**
+     * Serializes the status line and header fields of a response, ending with
+     * the blank line, at the buffer's position. When they do not fit the
+     * buffer is left as it was, so the caller can write out what it holds and
+     * try again with more room.
+     *
+     * @param response the response whose head to encode
+     * @param target   the buffer to append to
+     * @return true if the head was written, false if it did not fit
+     */
+    public boolean encodeHead(HttpResponse response, ByteBuffer target) {
+        int start = target.position();
+        byte[] statusLine = HTTP_1_1.equals(response.getProtocolVersion())
+                ? STATUS_LINES.get(response.getStatusCode())
+                : null;
+        if (statusLine != null) {
+            if (!put(target, statusLine)) {
+                return rewind(target, start);
+            }
+        } else if (!putAscii(target, response.getProtocolVersion()) || !putAscii(target, " ")
+                || !putAscii(target, response.getStatusCode()) || !put(target, CRLF)) {
+            return rewind(target, start);
+        }
 
-        System.out.println("Response Headers:");
-        System.out.println(headerBuilder);
+        HttpHeaders headers = response.getHeaders();
+        for (int i = 0; i < headers.size(); i++) {
+            String value = headers.getValue(i);
+            byte[] date = ServerClock.httpDateBytes(value);
+            if (!put(target, HttpHeaders.nameBytes(headers.getName(i))) || !put(target, COLON_SPACE)
+                    || !(date != null ? put(target, date) : putAscii(target, value)) || !put(target, CRLF)) {
+                return rewind(target, start);
+            }
+        }
+        if (!put(target, CRLF)) {
+            return rewind(target, start);
+        }
+        return true;
+    }
 
-        if (response.isCompressed()) {
-            outputStream.write(response.getCompressedBody());
+    private static boolean put(ByteBuffer target, byte[] bytes) {
+        if (target.remaining() < bytes.length) {
+            return false;
+        }
+        target.put(bytes);
+        return true;
+    }
 
-        } else if (response.getBody() != null) {
-            outputStream.write(response.getBody().getBytes(StandardCharsets.UTF_8));
+    /**
+     * Copies a string that is ISO-8859-1 on the wire, as status lines and
+     * field values are, without encoding it to a new array first.
+     */
+    private static boolean putAscii(ByteBuffer target, String text) {
+        int length = text.length();
+        if (target.remaining() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            target.put((byte) text.charAt(i));
         }
+        return true;
+    }
 
-        outputStream.flush();
+    private static boolean rewind(ByteBuffer target, int start) {
+        target.position(start);
+        return false;
     }
 }
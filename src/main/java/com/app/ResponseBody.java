@@ -0,0 +1,204 @@
+package com.app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ResponseBody class is the body of a streamed response as its handler
+ * sees it: a stream the body is written to while the response is being sent.
+ *
+ * <p>
+ * A handler that does not know its output up front, or whose output is large,
+ * sets a {@link Writer} on the response instead of a body. The head goes out
+ * first and the writer runs afterwards, so the client starts receiving the
+ * body before it has all been produced and the server never holds all of it.
+ * On HTTP/1.1 the body is sent with "Transfer-Encoding: chunked"; bytes are
+ * collected into chunks of a fixed size, and {@link #flush()} sends whatever
+ * has been collected straight away. Trailer fields added while writing follow
+ * the last chunk; a handler should name them in a Trailer header before the
+ * head goes out.
+ * </p>
+ *
+ * <p>
+ * Protocols without chunked framing get the body gathered up first and sent
+ * with a Content-Length, with the trailers as ordinary header fields.
+ * </p>
+ */
+public abstract class ResponseBody extends OutputStream {
+
+    /**
+     * Produces a streamed response body.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        /**
+         * Writes the body. The stream is closed once this returns.
+         *
+         * @param body the stream to write to
+         * @throws IOException if the body cannot be produced or sent; the
+         *                     connection is then closed, since the response
+         *                     has already begun
+         */
+        void writeTo(ResponseBody body) throws IOException;
+    }
+
+    /**
+     * Adds a trailer field, sent after the body.
+     *
+     * @param name  the field name
+     * @param value the field value
+     */
+    public abstract void addTrailer(String name, String value);
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    /**
+     * A body framed with chunked transfer coding (RFC 9112 section 7.1). Each
+     * chunk, with its size line and closing CRLF, reaches the underlying
+     * stream in one write.
+     */
+    static final class Chunked extends ResponseBody {
+        static final int CHUNK_SIZE = 8192;
+        // Room for the size line of the largest chunk in hex, "2000\r\n"
+        private static final int SIZE_LINE_ROOM = 6;
+        private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+        private final OutputStream out;
+        private final byte[] buffer = new byte[SIZE_LINE_ROOM + CHUNK_SIZE + 2];
+        private final HttpHeaders trailers = new HttpHeaders(2);
+        private int count;
+        private boolean closed;
+
+        /**
+         * Creates a body written to the given stream after the response head.
+         *
+         * @param out the connection's stream; it is flushed, never closed
+         */
+        Chunked(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkOpen();
+            // A large write is copied through the chunk buffer too, a full
+            // chunk at a time, so that every chunk goes out in one write
+            while (len > 0) {
+                int room = Math.min(len, CHUNK_SIZE - count);
+                System.arraycopy(b, off, buffer, SIZE_LINE_ROOM + count, room);
+                count += room;
+                off += room;
+                len -= room;
+                if (count == CHUNK_SIZE) {
+                    writeChunk();
+                }
+            }
+        }
+
+        /**
+         * Sends the bytes collected so far as a chunk and flushes the
+         * connection, so the client sees them now.
+         */
+        @Override
+        public void flush() throws IOException {
+            checkOpen();
+            writeChunk();
+            out.flush();
+        }
+
+        @Override
+        public void addTrailer(String name, String value) {
+            trailers.add(name, value);
+        }
+
+        /**
+         * Ends the body with the last chunk and the trailer section.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            writeChunk();
+            closed = true;
+
+            StringBuilder end = new StringBuilder("0\r\n");
+            for (int i = 0; i < trailers.size(); i++) {
+                end.append(trailers.getName(i)).append(": ").append(trailers.getValue(i)).append("\r\n");
+            }
+            end.append("\r\n");
+            out.write(end.toString().getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+
+        private void writeChunk() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            // The size line is written right-aligned into the room before the data
+            int start = SIZE_LINE_ROOM;
+            buffer[--start] = '\n';
+            buffer[--start] = '\r';
+            for (int size = count; size > 0; size >>>= 4) {
+                buffer[--start] = HEX[size & 0xF];
+            }
+            int end = SIZE_LINE_ROOM + count;
+            buffer[end++] = '\r';
+            buffer[end++] = '\n';
+            out.write(buffer, start, end - start);
+            count = 0;
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Response body is closed");
+            }
+        }
+    }
+
+    /**
+     * A body gathered up in memory, for protocols that cannot stream it.
+     */
+    static final class Buffered extends ResponseBody {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final HttpHeaders trailers = new HttpHeaders(2);
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+        }
+
+        @Override
+        public void addTrailer(String name, String value) {
+            trailers.add(name, value);
+        }
+
+        /**
+         * Runs a response's writer and turns the response into an ordinary
+         * one, with the body and trailers it produced.
+         *
+         * @param response a streamed response
+         * @throws IOException if the writer fails; the response is still
+         *                     streamed, and setting a body on it in place of
+         *                     this one drops its chunked framing
+         */
+        static void gather(HttpResponse response) throws IOException {
+            Buffered body = new Buffered();
+            try {
+                response.getBodyWriter().writeTo(body);
+            } catch (RuntimeException e) {
+                throw new IOException("Response body writer failed", e);
+            } finally {
+                response.bodyDone();
+            }
+            // Drops Transfer-Encoding and Trailer along with the writer
+            response.setBodyBytes(body.bytes.toByteArray());
+            response.setHeaders(body.trailers);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The Router class maps a request's method and path to the handler that
+ * answers it.
+ *
+ * <p>
+ * Routes are registered on a {@link Builder} as a method, a path pattern and
+ * a {@link Handler}. A pattern is a path whose segments are either literal or
+ * a parameter written "{name}", which matches any one non-empty segment and
+ * is made available through {@link HttpRequest#getPathParameter(String)}.
+ * {@link Builder#build()} compiles the routes into a trie with one node per
+ * segment; a node keeps its literal children in a small array that is
+ * scanned in place against the request path, so a lookup walks the path once
+ * and allocates nothing for routes without parameters. A literal segment wins
+ * over a parameter at the same position.
+ * </p>
+ *
+ * <p>
+ * Only the path is matched; the query string is ignored, and so is a
+ * trailing slash. A path that matches a route registered for other methods is
+ * answered with 405 and an Allow header listing them, and a path that matches
+ * nothing with 404, so handlers never check the method themselves. A built
+ * router cannot change, so a single instance is shared by every connection
+ * and protocol.
+ * </p>
+ *
+ * <p>
+ * A route answered by waiting on something, such as a child process, is
+ * registered with an {@link AsyncHandler} instead. It returns at once with a
+ * future that is completed, from any thread, when the response is filled in,
+ * so the thread that routed the request is free in the meantime. Either kind
+ * of route is routed the same way, and {@link #route} returns a future that a
+ * plain {@link Handler} has already completed.
+ * </p>
+ */
+public final class Router {
+    private static final String NOT_FOUND_BODY = "Cannot find what you are looking for.";
+    private static final String METHOD_NOT_ALLOWED_BODY = "Method not supported";
+
+    /**
+     * Answers the requests of a route.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Fills in the response to a request. The response starts as 200 OK
+         * with no body.
+         *
+         * @param request  the request, with its path parameters
+         * @param response the response to fill in
+         */
+        void handle(HttpRequest request, HttpResponse response);
+    }
+
+    /**
+     * Answers the requests of a route without holding the calling thread until
+     * the response is ready.
+     */
+    @FunctionalInterface
+    public interface AsyncHandler {
+        /**
+         * Starts filling in the response to a request. The response starts as
+         * 200 OK with no body, and must not be touched by the caller until the
+         * future completes.
+         *
+         * @param request  the request, with its path parameters
+         * @param response the response to fill in
+         * @return a future completed with the response once it is filled in,
+         *         normally the one given
+         */
+        CompletableFuture<HttpResponse> handle(HttpRequest request, HttpResponse response);
+    }
+
+    private final Node root;
+    private final int maxParameters;
+
+    private Router(Node root, int maxParameters) {
+        this.root = root;
+        this.maxParameters = maxParameters;
+    }
+
+    /**
+     * Creates a builder for a new router.
+     *
+     * @return an empty builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Routes a request: runs the handler of the matching route, or answers
+     * with 404 or 405.
+     *
+     * @param request  the request
+     * @param response the response to fill in
+     * @return a future completed with the response once it is filled in; it is
+     *         already complete unless the route has an {@link AsyncHandler}
+     */
+    public CompletableFuture<HttpResponse> route(HttpRequest request, HttpResponse response) {
+        String path = request.getPath();
+        String[] values = maxParameters > 0 ? new String[maxParameters] : null;
+        Node node = path.startsWith("/") ? match(root, path, 1, values, 0) : null;
+
+        if (node == null) {
+            response.setStatusCode("404 NOT FOUND");
+            response.setBody(NOT_FOUND_BODY);
+            return CompletableFuture.completedFuture(response);
+        }
+        AsyncHandler handler = node.handlerFor(request.getMethod());
+        if (handler == null) {
+            response.setStatusCode("405 Method Not Allowed");
+            response.setHeader(HttpHeaders.ALLOW, node.allow);
+            response.setBody(METHOD_NOT_ALLOWED_BODY);
+            return CompletableFuture.completedFuture(response);
+        }
+        if (node.parameterNames.length > 0) {
+            Map<String, String> parameters = new HashMap<>(node.parameterNames.length * 2);
+            for (int i = 0; i < node.parameterNames.length; i++) {
+                parameters.put(node.parameterNames[i], values[i]);
+            }
+            request.setPathParameters(parameters);
+        }
+        return handler.handle(request, response);
+    }
+
+    /**
+     * Finds the methods a path can be requested with.
+     *
+     * @param path the request path, without a query
+     * @return the value of the Allow header for the path, or null if no route
+     *         matches it
+     */
+    public String getAllowedMethods(String path) {
+        String[] values = maxParameters > 0 ? new String[maxParameters] : null;
+        Node node = path.startsWith("/") ? match(root, path, 1, values, 0) : null;
+        return node != null ? node.allow : null;
+    }
+
+    /**
+     * Matches the rest of a path, from the start of a segment, below a node.
+     * Literal children are tried first; if the path cannot be completed
+     * through one, the parameter child is tried.
+     *
+     * @return the node of the matching route, or null
+     */
+    private static Node match(Node node, String path, int start, String[] values, int count) {
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        boolean last = end == path.length();
+        int length = end - start;
+
+        if (length == 0 && last) {
+            // The path ends here, as "/" does at the root
+            return node.isRoute() ? node : null;
+        }
+
+        for (int i = 0; i < node.names.length; i++) {
+            String name = node.names[i];
+            if (name.length() == length && path.regionMatches(start, name, 0, length)) {
+                Node child = node.children[i];
+                Node found = last ? (child.isRoute() ? child : null) : match(child, path, end + 1, values, count);
+                if (found != null) {
+                    return found;
+                }
+                break;
+            }
+        }
+
+        if (node.parameter != null && length > 0) {
+            values[count] = path.substring(start, end);
+            Node child = node.parameter;
+            return last ? (child.isRoute() ? child : null) : match(child, path, end + 1, values, count + 1);
+        }
+        return null;
+    }
+
+    /**
+     * A segment of the trie. The arrays are filled in when the router is
+     * built and never change afterwards.
+     */
+    private static final class Node {
+        private String[] names = new String[0];
+        private Node[] children = new Node[0];
+        private Node parameter;
+        private String[] methods = new String[0];
+        private AsyncHandler[] handlers = new AsyncHandler[0];
+        private String[] parameterNames = new String[0];
+        private String allow;
+
+        private boolean isRoute() {
+            return methods.length > 0;
+        }
+
+        private AsyncHandler handlerFor(String method) {
+            for (int i = 0; i < methods.length; i++) {
+                if (methods[i].equals(method)) {
+                    return handlers[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Collects routes and compiles them into a {@link Router}. A builder is
+     * not thread safe and is meant to be used once, while the server is set
+     * up.
+     */
+    public static final class Builder {
+        private final BuildNode root = new BuildNode();
+        private int maxParameters;
+
+        private Builder() {
+        }
+
+        /**
+         * Registers the handler for a method and path pattern.
+         *
+         * @param method  the request method, such as "GET"
+         * @param pattern the path pattern, such as "/files/{name}"
+         * @param handler the handler
+         * @return this builder
+         * @throws IllegalArgumentException if the pattern is malformed or the
+         *                                  route is already registered
+         */
+        public Builder add(String method, String pattern, Handler handler) {
+            return addAsync(method, pattern, (request, response) -> {
+                handler.handle(request, response);
+                return CompletableFuture.completedFuture(response);
+            });
+        }
+
+        /**
+         * Registers the asynchronous handler for a method and path pattern.
+         *
+         * @param method  the request method, such as "GET"
+         * @param pattern the path pattern, such as "/files/{name}"
+         * @param handler the handler
+         * @return this builder
+         * @throws IllegalArgumentException if the pattern is malformed or the
+         *                                  route is already registered
+         */
+        public Builder addAsync(String method, String pattern, AsyncHandler handler) {
+            if (!pattern.startsWith("/")) {
+                throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+            }
+            BuildNode node = root;
+            List<String> parameterNames = new ArrayList<>();
+            if (pattern.length() > 1) {
+                for (String segment : pattern.substring(1).split("/", -1)) {
+                    if (segment.isEmpty()) {
+                        throw new IllegalArgumentException("Route pattern has an empty segment: " + pattern);
+                    }
+                    if (segment.startsWith("{") && segment.endsWith("}")) {
+                        String name = segment.substring(1, segment.length() - 1);
+                        if (name.isEmpty() || parameterNames.contains(name)) {
+                            throw new IllegalArgumentException("Bad parameter " + segment + " in " + pattern);
+                        }
+                        parameterNames.add(name);
+                        if (node.parameter == null) {
+                            node.parameter = new BuildNode();
+                        }
+                        node = node.parameter;
+                    } else {
+                        node = node.children.computeIfAbsent(segment, s -> new BuildNode());
+                    }
+                }
+            }
+
+            if (node.parameterNames != null && !node.parameterNames.equals(parameterNames)) {
+                throw new IllegalArgumentException("Route " + pattern + " names its parameters differently from "
+                        + "another route on the same path");
+            }
+            if (node.handlers.putIfAbsent(method, handler) != null) {
+                throw new IllegalArgumentException("Route already registered: " + method + " " + pattern);
+            }
+            node.parameterNames = parameterNames;
+            maxParameters = Math.max(maxParameters, parameterNames.size());
+            return this;
+        }
+
+        /**
+         * Registers a GET route.
+         *
+         * @param pattern the path pattern
+         * @param handler the handler
+         * @return this builder
+         */
+        public Builder get(String pattern, Handler handler) {
+            return add("GET", pattern, handler);
+        }
+
+        /**
+         * Registers a GET route with an asynchronous handler.
+         *
+         * @param pattern the path pattern
+         * @param handler the handler
+         * @return this builder
+         */
+        public Builder getAsync(String pattern, AsyncHandler handler) {
+            return addAsync("GET", pattern, handler);
+        }
+
+        /**
+         * Registers a POST route.
+         *
+         * @param pattern the path pattern
+         * @param handler the handler
+         * @return this builder
+         */
+        public Builder post(String pattern, Handler handler) {
+            return add("POST", pattern, handler);
+        }
+
+        /**
+         * Registers a PUT route.
+         *
+         * @param pattern the path pattern
+         * @param handler the handler
+         * @return this builder
+         */
+        public Builder put(String pattern, Handler handler) {
+            return add("PUT", pattern, handler);
+        }
+
+        /**
+         * Compiles the routes registered so far.
+         *
+         * @return the router
+         */
+        public Router build() {
+            return new Router(root.compile(), maxParameters);
+        }
+    }
+
+    /**
+     * A segment of the trie while routes are still being added.
+     */
+    private static final class BuildNode {
+        private final Map<String, BuildNode> children = new LinkedHashMap<>();
+        private BuildNode parameter;
+        private final Map<String, AsyncHandler> handlers = new LinkedHashMap<>();
+        private List<String> parameterNames;
+
+        private Node compile() {
+            Node node = new Node();
+            node.names = children.keySet().toArray(new String[0]);
+            node.children = new Node[node.names.length];
+            for (int i = 0; i < node.names.length; i++) {
+                node.children[i] = children.get(node.names[i]).compile();
+            }
+            node.parameter = parameter != null ? parameter.compile() : null;
+            node.methods = handlers.keySet().toArray(new String[0]);
+            node.handlers = handlers.values().toArray(new AsyncHandler[0]);
+            if (parameterNames != null) {
+                node.parameterNames = parameterNames.toArray(new String[0]);
+            }
+            if (!handlers.isEmpty()) {
+                node.allow = String.join(", ", new TreeSet<>(handlers.keySet()));
+            }
+            return node;
+        }
+    }
+}
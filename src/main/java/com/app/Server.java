@@ -3,110 +3,406 @@ package com.app;
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The Server class is the main coordinator of the HTTP server
  * It manages both HTTP/1.1 and HTTP/2 connections.
  */
 public class Server {
+    // How long a refused connection may take to send its request head
+    private static final int REJECT_TIMEOUT_MS = 5000;
+    private static final int READ_BUFFER_SIZE = 16384;
+    private static final int MAX_READ_BUFFER_SIZE = 1024 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 16384;
+
     private static AtomicInteger threadCounter = new AtomicInteger();
     private final ExecutorService executorService;
-    private final Acceptor acceptor;
-    private final ConnectionManager http1ConnectionManager;
-    private final Http2ConnectionManager http2ConnectionManager;
+    private final Listener[] listeners;
+    private final TlsContext tlsContext;
+    private final AdmissionControl admission;
+    private final TimingWheel timingWheel;
+    private final ConnectionManager connections;
+    private final ServerConfig config;
     private boolean running;
 
     /**
-     * Creates a new server instance.
+     * Creates a new server instance using the blocking transport.
      *
      * @param enableSSL      whether to enable SSL/TLS
      * @param threadPoolSize number of threads in the pool
      * @throws IOException if the server socket cannot be created
      */
     public Server(boolean enableSSL, int threadPoolSize) throws IOException {
-        this.acceptor = new Acceptor(enableSSL);
-        this.http1ConnectionManager = new ConnectionManager();
-        this.http2ConnectionManager = new Http2ConnectionManager();
-        this.executorService = Executors.newFixedThreadPool(threadPoolSize);
+        this(createConfig(enableSSL, threadPoolSize));
+    }
+
+    /**
+     * Creates a new server instance.
+     *
+     * @param config the server configuration
+     * @throws IOException if the server socket or event loop cannot be created
+     */
+    public Server(ServerConfig config) throws IOException {
+        if (config.getListeners() < 1) {
+            throw new IllegalArgumentException("Server needs at least one listener");
+        }
+        if (config.getMaxConnections() < 1 || config.getMaxPendingAccepts() < 1) {
+            throw new IllegalArgumentException("Server needs a positive connection limit and pending-accept budget");
+        }
+
+        this.config = config;
+        Log.setLevel(config.getLogLevel());
+        this.listeners = new Listener[config.getListeners()];
+        this.tlsContext = config.isSslEnabled() ? new TlsContext(config) : null;
+        boolean reusePort = listeners.length > 1;
+        try {
+            for (int i = 0; i < listeners.length; i++) {
+                listeners[i] = new Listener(i, config, tlsContext, reusePort);
+            }
+        } catch (IOException e) {
+            closeListeners();
+            throw e;
+        }
+        this.admission = new AdmissionControl(config);
+        this.timingWheel = new TimingWheel();
+        this.connections = new ConnectionManager();
+        if (config.getTransportMode() == TransportMode.VIRTUAL) {
+            this.executorService = Executors.newVirtualThreadPerTaskExecutor();
+        } else if (config.getTransportMode() == TransportMode.BLOCKING) {
+            // Each task holds a connection for its lifetime, so the queue is the
+            // set of accepted connections still waiting for a thread
+            this.executorService = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(),
+                    0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getMaxPendingAccepts()));
+        } else {
+            this.executorService = Executors.newFixedThreadPool(config.getWorkerThreads());
+        }
         this.running = false;
     }
 
+    private static ServerConfig createConfig(boolean enableSSL, int threadPoolSize) {
+        ServerConfig config = new ServerConfig();
+        config.setSslEnabled(enableSSL);
+        config.setWorkerThreads(threadPoolSize);
+        return config;
+    }
+
     /**
      * Starts the server, accepting and processing connections
      */
     public void start() {
         running = true;
 
-        System.out.println("Server starting...");
+        Log.info("Server starting...");
+
+        for (Listener listener : listeners) {
+            if (listener.getBossLoop() != null) {
+                startEventLoops(listener);
+            } else {
+                startAcceptThread(listener);
+            }
+        }
+        if (config.getTransportMode() != TransportMode.NIO) {
+            startTimerThread();
+        }
+        Log.info("Server started successfully with {} listener(s).", listeners.length);
+    }
 
-        // Accept connections in a separate thread
+    /**
+     * Accepts connections for a listener on a dedicated thread.
+     *
+     * @param listener the listener to accept on
+     */
+    private void startAcceptThread(Listener listener) {
+        Acceptor acceptor = listener.getAcceptor();
         new Thread(() -> {
             while (running) {
                 try {
                     Socket clientSocket = acceptor.acceptConnection();
-                    handleConnection(clientSocket);
+                    listener.getMetrics().recordAccept();
+                    handleConnection(clientSocket, acceptor);
                 } catch (IOException e) {
                     if (running) {
-                        System.err.println("Error accepting connection: " + e.getMessage());
+                        Log.warn("Error accepting connection: {}", e.getMessage());
                     }
                 }
             }
-        }).start();
-        System.out.println("Server started successfully.");
+        }, "acceptor-" + listener.getIndex()).start();
     }
 
     /**
-     * Handles a new client connection.
+     * Advances the timing wheel shared by the thread-based transports. Their
+     * connection threads block in reads, so an expired deadline closes the
+     * socket from here to wake them.
+     */
+    private void startTimerThread() {
+        Thread timer = new Thread(() -> {
+            while (running) {
+                long wait = timingWheel.getMillisUntilNextTick();
+                try {
+                    Thread.sleep(wait > 0 ? wait : timingWheel.getTickMillis());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                timingWheel.advance();
+            }
+        }, "connection-timer");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    /**
+     * Starts the NIO transport. The boss loop accepts connections and hands each
+     * one to a worker loop, which services that socket for its whole life. The
+     * worker pool only runs request handlers.
      *
-     * @param clientSocket the clientSocket
+     * @param listener the listener whose loops should start
      */
-    private void handleConnection(Socket clientSocket) {
-        // Check if client is already connected
-        if (http1ConnectionManager.isClientConnected(clientSocket)) {
+    private void startEventLoops(Listener listener) {
+        EventLoop bossLoop = listener.getBossLoop();
+        listener.getWorkerLoops().start();
+        bossLoop.start();
+        bossLoop.execute(() -> {
             try {
-                System.out.println("Duplicate connection detected, closing: "
-                        + clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort());
-                clientSocket.close();
+                bossLoop.register(listener.getAcceptor().getChannel(), SelectionKey.OP_ACCEPT,
+                        key -> acceptChannels(listener));
             } catch (IOException e) {
-                System.err.println("Error closing duplicate connection: " + e.getMessage());
+                Log.error("Error registering server channel: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Accepts every pending connection and registers it with one of the
+     * listener's worker loops.
+     *
+     * @param listener the listener with pending connections
+     * @throws IOException if accepting fails
+     */
+    private void acceptChannels(Listener listener) throws IOException {
+        Acceptor acceptor = listener.getAcceptor();
+        SocketChannel channel;
+        while ((channel = acceptor.acceptChannel()) != null) {
+            listener.getMetrics().recordAccept();
+            AdmissionControl.Decision decision = admission.admit();
+            if (decision == AdmissionControl.Decision.DROP) {
+                channel.close();
+                continue;
+            }
+            if (decision == AdmissionControl.Decision.REJECT) {
+                NioConnection connection = new NioConnection(channel, listener.getWorkerLoops().next(),
+                        executorService, "http/1.1");
+                if (tlsContext != null) {
+                    connection.setSslEngine(tlsContext.createEngine(), tlsContext.getMetrics());
+                }
+                connection.setConfig(config);
+                connection.setRejection(admission);
+                connection.setCloseListener(admission::finishRejection);
+                connection.register();
+                continue;
             }
+
+            int connectionId = threadCounter.incrementAndGet();
+            Log.debug("Handling connection #{} - Total active connections: {}", connectionId, threadCounter.get());
+
+            ConnectionStats stats = connections.open(channel.socket().getRemoteSocketAddress());
+            NioConnection connection = new NioConnection(channel, listener.getWorkerLoops().next(),
+                    executorService, "http/1.1");
+            if (tlsContext != null) {
+                connection.setSslEngine(tlsContext.createEngine(), tlsContext.getMetrics());
+            }
+            connection.setConfig(config);
+            connection.setStats(stats);
+            connection.setCloseListener(() -> {
+                connections.close(stats);
+                admission.release();
+                threadCounter.decrementAndGet();
+                Log.debug("Remaining active connections: {}", threadCounter.get());
+            });
+            connection.register();
+        }
+    }
+
+    /**
+     * Handles a new client connection.
+     *
+     * @param clientSocket the clientSocket
+     * @param acceptor     the acceptor that accepted the connection
+     */
+    private void handleConnection(Socket clientSocket, Acceptor acceptor) {
+        AdmissionControl.Decision decision = admission.admit();
+        if (decision != AdmissionControl.Decision.ADMIT) {
+            refuseConnection(clientSocket, acceptor, decision);
             return;
         }
 
         int threadId = threadCounter.incrementAndGet();
-        System.out.println("Handling connection #" + threadId + " - Total active connections: " + threadCounter.get());
+        Log.debug("Handling connection #{} - Total active connections: {}", threadId, threadCounter.get());
 
+        try {
+            serveConnection(clientSocket, acceptor, threadId);
+        } catch (RejectedExecutionException e) {
+            // Every worker is busy and the queue of waiting connections is full
+            threadCounter.decrementAndGet();
+            admission.release();
+            refuseConnection(clientSocket, acceptor, admission.refuse());
+        }
+    }
+
+    /**
+     * Submits an admitted connection to the worker pool.
+     *
+     * @param clientSocket the client socket
+     * @param acceptor     the acceptor that accepted the connection
+     * @param threadId     the connection number for logging
+     * @throws RejectedExecutionException if no worker can take the connection
+     */
+    private void serveConnection(Socket clientSocket, Acceptor acceptor, int threadId) {
         executorService.submit(() -> {
+            // HTTP/2 streams whose handlers are still running. While there
+            // are any the connection is waiting on the server, not the
+            // client, so an idle deadline is armed again rather than closing
+            AtomicInteger streamsInFlight = new AtomicInteger();
+            // Lets the expiry callback reach the deadline it belongs to
+            AtomicReference<ConnectionDeadline> self = new AtomicReference<>();
+            ConnectionDeadline deadline = new ConnectionDeadline(timingWheel, config, kind -> {
+                if (kind == ConnectionDeadline.Kind.IDLE && streamsInFlight.get() > 0 && !clientSocket.isClosed()) {
+                    self.get().arm(ConnectionDeadline.Kind.IDLE);
+                    return;
+                }
+                expireConnection(clientSocket, threadId, kind);
+            });
+            self.set(deadline);
+            ConnectionStats stats = connections.open(clientSocket.getRemoteSocketAddress());
             try {
-                System.out.println("Thread #" + threadId + " started for connection from " +
-                        clientSocket.getInetAddress().getHostAddress());
+                if (Log.isDebugEnabled()) {
+                    Log.debug("Thread #{} started for connection from {}", threadId,
+                            clientSocket.getInetAddress().getHostAddress());
+                }
+
+                // The handshake and the first request head share one deadline
+                deadline.arm(ConnectionDeadline.Kind.REQUEST_HEADER);
 
-                clientSocket.setSoTimeout(30000);
+                // The TLS handshake runs here rather than on the accept thread
+                if (!acceptor.negotiate(clientSocket)) {
+                    return;
+                }
 
-                // Handle the connection with the appropriate protocol handler
-                if (acceptor.isHttp2(clientSocket)) {
-                    handleHttp2Connection(clientSocket, threadId);
+                // Handle the connection with the appropriate protocol handler.
+                // Plaintext connections may open with the HTTP/2 preface (h2c with
+                // prior knowledge), so their first bytes are sniffed
+                PushbackInputStream inputStream = new PushbackInputStream(
+                        stats.countInput(clientSocket.getInputStream()), Acceptor.CONNECTION_PREFACE.length);
+                OutputStream outputStream = stats.countOutput(clientSocket.getOutputStream());
+                if (acceptor.isHttp2(clientSocket)
+                        || (!acceptor.isSecure() && acceptor.detectPriorKnowledge(clientSocket, inputStream))) {
+                    stats.setProtocol(acceptor.isSecure() ? "h2" : "h2c");
+                    handleHttp2Connection(clientSocket, inputStream, outputStream, threadId, stats, deadline,
+                            streamsInFlight, null, null);
                 } else {
-                    handleHttp1Connection(clientSocket, threadId);
+                    stats.setProtocol("http/1.1");
+                    handleHttp1Connection(clientSocket, inputStream, outputStream, threadId, stats, deadline,
+                            streamsInFlight, !acceptor.isSecure());
                 }
             } catch (Exception e) {
-                System.err.println("Error handling connection #" + threadId + ": " + e.getMessage());
-                e.printStackTrace();
+                Log.error("Error handling connection #" + threadId, e);
             } finally {
+                deadline.cancel();
+                connections.close(stats);
                 try {
-                    System.out.println("Thread #" + threadId + " terminated");
+                    Log.debug("Thread #{} terminated", threadId);
+                    admission.release();
                     threadCounter.decrementAndGet();
-                    System.out.println("Remaining active connections: " + threadCounter.get());
+                    Log.debug("Remaining active connections: {}", threadCounter.get());
 
                     if (!clientSocket.isClosed()) {
                         clientSocket.close();
                     }
                 } catch (IOException closeEx) {
-                    System.err.println("Error closing connection: " + closeEx.getMessage());
+                    Log.warn("Error closing connection: {}", closeEx.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes a blocking connection whose deadline expired, which makes the read
+     * or write its thread is blocked in fail.
+     *
+     * @param clientSocket the client socket
+     * @param threadId     the connection number for logging
+     * @param kind         the deadline that expired
+     */
+    private void expireConnection(Socket clientSocket, int threadId, ConnectionDeadline.Kind kind) {
+        Log.debug("Connection #{} {} timeout, closing", threadId, kind);
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            Log.warn("Error closing timed out connection: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Refuses a connection the server has no capacity for. A rejected connection
+     * gets a virtual thread of its own, outside the worker pool, that reads the
+     * request head or HTTP/2 preface and answers with the pre-encoded 503 or
+     * GOAWAY. A dropped connection is closed at once.
+     *
+     * @param clientSocket the client socket
+     * @param acceptor     the acceptor that accepted the connection
+     * @param decision     {@link AdmissionControl.Decision#REJECT} or
+     *                     {@link AdmissionControl.Decision#DROP}
+     */
+    private void refuseConnection(Socket clientSocket, Acceptor acceptor, AdmissionControl.Decision decision) {
+        if (decision == AdmissionControl.Decision.DROP) {
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                Log.warn("Error closing dropped connection: {}", e.getMessage());
+            }
+            return;
+        }
+
+        Thread.ofVirtual().name("reject").start(() -> {
+            try {
+                clientSocket.setSoTimeout(REJECT_TIMEOUT_MS);
+                if (!acceptor.negotiate(clientSocket)) {
+                    return;
+                }
+
+                PushbackInputStream inputStream = new PushbackInputStream(clientSocket.getInputStream(),
+                        Acceptor.CONNECTION_PREFACE.length);
+                OutputStream outputStream = clientSocket.getOutputStream();
+                if (acceptor.isHttp2(clientSocket)
+                        || (!acceptor.isSecure() && acceptor.detectPriorKnowledge(clientSocket, inputStream))) {
+                    outputStream.write(admission.getHttp2Rejection());
+                } else {
+                    new Processor().parseRequest(inputStream);
+                    outputStream.write(admission.getHttp1Rejection());
+                }
+                outputStream.flush();
+            } catch (IOException e) {
+                Log.debug("Error refusing connection: {}", e.getMessage());
+            } finally {
+                admission.finishRejection();
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                    Log.warn("Error closing refused connection: {}", e.getMessage());
                 }
             }
         });
@@ -114,138 +410,534 @@ public class Server {
 
     /**
      * Handles an HTTP/1.1 connection.
+     *
+     * <p>
+     * Bytes are read into a buffer that belongs to the connection, so requests
+     * the client pipelines behind one another are never lost. Every complete
+     * request in the buffer is taken as one batch, answered in order, and the
+     * responses are flushed to the socket together.
+     * </p>
+     *
+     * <p>
+     * A request with a body ends its batch, and one that follows other
+     * requests waits for the next batch, so it is always handled alone. Its
+     * handler reads the body straight from the socket through the same buffer;
+     * whatever it leaves unread is skipped before the next request is parsed.
+     * </p>
+     *
+     * <p>
+     * The connection persists until a request asks for it to close or it has
+     * carried the configured number of requests; the last response says
+     * "Connection: close" so the client knows not to send more.
+     * </p>
      * 
-     * @param clientSocket the client socket
-     * @param threadId     the thread ID for logging
+     * @param clientSocket    the client socket
+     * @param inputStream     the socket input stream
+     * @param outputStream    the socket output stream
+     * @param threadId        the thread ID for logging
+     * @param stats           the connection's registry entry
+     * @param deadline        the connection's deadline, armed for the first
+     *                        request head
+     * @param streamsInFlight the count of HTTP/2 streams being handled, for
+     *                        a connection upgraded to h2c
+     * @param allowH2c        whether a request may upgrade the connection to
+     *                        h2c
      * @throws IOException if an I/O error occurs
      */
-    private void handleHttp1Connection(Socket clientSocket, int threadId) throws IOException {
-        http1ConnectionManager.addConnectedClient(clientSocket);
-
+    private void handleHttp1Connection(Socket clientSocket, InputStream inputStream, OutputStream outputStream,
+            int threadId, ConnectionStats stats, ConnectionDeadline deadline, AtomicInteger streamsInFlight,
+            boolean allowH2c) throws IOException {
         Processor processor = new Processor();
+        RequestParser parser = new RequestParser();
         Responder responder = new Responder();
+        OutputStream batchOutput = new BufferedOutputStream(outputStream, WRITE_BUFFER_SIZE);
 
-        PushbackInputStream pbInputStream = new PushbackInputStream(
-                clientSocket.getInputStream(), 1);
-        OutputStream outputStream = clientSocket.getOutputStream();
-
+        // Kept in read mode: the unparsed bytes lie between position and limit
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE).flip();
+        List<HttpRequest> batch = new ArrayList<>();
+        HttpRequest deferred = null;
         int requestCount = 0;
 
         while (!clientSocket.isClosed()) {
             try {
-                int peekedByte = pbInputStream.read();
-                if (peekedByte != -1) {
-                    requestCount++;
-
-                    pbInputStream.unread(peekedByte);
+                batch.clear();
+                HttpRequest upgradeRequest = null;
+                Http2Settings h2cSettings = null;
+                RequestBody.Streamed body = null;
+                HttpStatusException refusal = null;
+                boolean keepAlive = true;
+                while (batch.size() < config.getMaxPipelinedRequests()) {
+                    HttpRequest request = deferred != null ? deferred : parser.parse(readBuffer);
+                    deferred = null;
+                    if (request == null) {
+                        break;
+                    }
+                    h2cSettings = allowH2c ? processor.parseH2cUpgrade(request) : null;
+                    if (h2cSettings != null) {
+                        upgradeRequest = request;
+                        break;
+                    }
+                    if (BodyDecoder.hasBody(request)) {
+                        if (!batch.isEmpty()) {
+                            deferred = request;
+                            break;
+                        }
+                        try {
+                            body = openBody(request, readBuffer, inputStream, batchOutput, deadline, processor,
+                                    responder);
+                        } catch (HttpStatusException e) {
+                            Log.debug("Refusing request body: {}", e.getMessage());
+                            refusal = e;
+                            break;
+                        }
+                        batch.add(request);
+                        keepAlive = Processor.isKeepAlive(request)
+                                && Processor.isBelowRequestLimit(config, requestCount + batch.size());
+                        break;
+                    }
+                    batch.add(request);
+                    keepAlive = Processor.isKeepAlive(request)
+                            && Processor.isBelowRequestLimit(config, requestCount + batch.size());
+                    if (!keepAlive) {
+                        break;
+                    }
+                }
 
-                    System.out.println("Thread #" + threadId + " processing HTTP/1.1 request #" + requestCount);
-                    HttpRequest request = processor.parseRequest(pbInputStream);
-                    HttpResponse response = processor.processRequest(request);
-                    responder.sendResponse(response, outputStream);
+                if (refusal != null) {
+                    deadline.arm(ConnectionDeadline.Kind.IDLE);
+                    responder.sendResponse(processor.createErrorResponse(refusal.getStatusCode()), batchOutput);
+                    break;
+                }
+                if (batch.isEmpty() && upgradeRequest == null) {
+                    readBuffer = fill(inputStream, readBuffer, deadline);
+                    if (readBuffer == null) {
+                        Log.debug("Client closed the connection");
+                        break;
+                    }
+                    continue;
+                }
+                deadline.cancel();
 
-                    boolean keepAlive = request.getRequestHeaders().containsKey("Connection")
-                            && "keep-alive".equals(request.getRequestHeaders().get("Connection"));
+                requestCount += batch.size();
+                if (Log.isDebugEnabled()) {
+                    Log.debug("Thread #" + threadId + " processing " + batch.size() + " HTTP/1.1 request(s), "
+                            + requestCount + " so far");
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    stats.recordRequest();
+                }
+                List<HttpResponse> responses = processBatch(processor, batch);
 
-                    if (!keepAlive) {
-                        break;
+                // Bounds a write to a client that has stopped reading
+                deadline.arm(ConnectionDeadline.Kind.IDLE);
+                int firstRequest = requestCount - batch.size() + 1;
+                try {
+                    for (int i = 0; i < responses.size(); i++) {
+                        // Only the last request of a batch can end the connection
+                        boolean persistent = keepAlive || i < responses.size() - 1;
+                        Processor.setConnectionHeaders(responses.get(i), persistent, config, firstRequest + i);
+                        responder.writeResponse(responses.get(i), batchOutput);
                     }
-                } else {
-                    System.out.println("Client closed the connection");
+                } finally {
+                    // Streamed bodies a failed write never reached
+                    for (HttpResponse response : responses) {
+                        response.bodyDone();
+                    }
+                }
+
+                if (upgradeRequest != null) {
+                    responder.sendResponse(processor.createUpgradeResponse(), batchOutput);
+                    Log.debug("Thread #{} upgrading connection to h2c", threadId);
+                    stats.setProtocol("h2c");
+                    // Whatever is still buffered is the start of the client's preface
+                    InputStream http2Input = new SequenceInputStream(new ByteArrayInputStream(readBuffer.array(),
+                            readBuffer.position(), readBuffer.remaining()), inputStream);
+                    handleHttp2Connection(clientSocket, http2Input, outputStream, threadId, stats, deadline,
+                            streamsInFlight, upgradeRequest, h2cSettings);
+                    return;
+                }
+                batchOutput.flush();
+
+                if (!keepAlive) {
                     break;
                 }
-            } catch (SocketTimeoutException e) {
-                System.out.println("Connection to " + clientSocket.getInetAddress().getHostName()
-                        + " timed out");
-                break;
+                if (body != null && !skipBody(body)) {
+                    Log.debug("Closing connection after an unread request body");
+                    break;
+                }
+                deadline.arm(readBuffer.hasRemaining() ? ConnectionDeadline.Kind.REQUEST_HEADER
+                        : ConnectionDeadline.Kind.KEEP_ALIVE);
             } catch (IOException e) {
-                System.out.println("IO error processing request: " + e.getMessage());
+                Log.debug("IO error processing request: {}", e.getMessage());
                 break;
             }
         }
+    }
+
+    /**
+     * Attaches a body stream to a request, reading it from the connection's
+     * buffer and then its socket. A client that expects "100 Continue" gets it
+     * the first time the handler waits for the body.
+     *
+     * @return the body, or null if its declared length is 0
+     * @throws HttpStatusException if the body's framing is invalid or it is
+     *                             declared larger than the configured maximum
+     */
+    private RequestBody.Streamed openBody(HttpRequest request, ByteBuffer readBuffer, InputStream inputStream,
+            OutputStream outputStream, ConnectionDeadline deadline, Processor processor, Responder responder)
+            throws HttpStatusException {
+        BodyDecoder decoder = BodyDecoder.forRequest(request, config.getMaxRequestBodySize());
+        if (decoder == null) {
+            // A Content-Length of 0, however it is written
+            return null;
+        }
+        RequestBody.Streamed body = new RequestBody.Streamed(decoder, readBuffer, inputStream, deadline);
+        if (Processor.expectsContinue(request)) {
+            body.setContinueAction(() -> {
+                try {
+                    responder.sendResponse(processor.createContinueResponse(), outputStream);
+                } catch (IOException e) {
+                    // The body read that follows fails on the same socket
+                    Log.debug("IO error sending 100 Continue: {}", e.getMessage());
+                }
+            });
+        }
+        request.setBody(body);
+        return body;
+    }
+
+    /**
+     * Reads and drops whatever the handler left of a request body, so the
+     * next request starts where it should.
+     *
+     * @return true if the connection can carry on, false if the client never
+     *         sent the body or it could not be read
+     */
+    private static boolean skipBody(RequestBody.Streamed body) {
+        if (body.isComplete()) {
+            return true;
+        }
+        if (body.isAwaitingContinue()) {
+            // The client is still waiting to hear whether to send it
+            return false;
+        }
+        try {
+            byte[] scratch = new byte[8192];
+            while (body.read(scratch, 0, scratch.length) != -1) {
+                // Dropped
+            }
+            return true;
+        } catch (IOException e) {
+            Log.debug("Error skipping request body: {}", e.getMessage());
+            return false;
+        }
+    }
 
-        http1ConnectionManager.removeClient(clientSocket);
+    /**
+     * Runs the handlers for a batch of pipelined requests. With virtual threads
+     * and parallel pipelining enabled each request gets its own thread; a
+     * bounded pool could deadlock waiting on itself, so otherwise they run in
+     * order on the connection's thread.
+     *
+     * @return the responses, in request order
+     */
+    private List<HttpResponse> processBatch(Processor processor, List<HttpRequest> batch) throws IOException {
+        List<HttpResponse> responses = new ArrayList<>(batch.size());
+        if (batch.size() == 1 || !config.isPipelineParallel()
+                || config.getTransportMode() != TransportMode.VIRTUAL) {
+            for (HttpRequest request : batch) {
+                responses.add(processor.processRequest(request));
+            }
+            return responses;
+        }
+
+        List<CompletableFuture<HttpResponse>> pending = new ArrayList<>(batch.size());
+        for (HttpRequest request : batch) {
+            pending.add(CompletableFuture.supplyAsync(() -> processor.processRequest(request), executorService));
+        }
+        boolean complete = false;
+        try {
+            for (CompletableFuture<HttpResponse> response : pending) {
+                responses.add(response.get());
+            }
+            complete = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for pipelined requests");
+        } catch (ExecutionException e) {
+            throw new IOException("Pipelined request failed", e.getCause());
+        } finally {
+            if (!complete) {
+                // None of the batch will be written; streamed bodies give
+                // back their bulkhead places once their responses are ready
+                for (CompletableFuture<HttpResponse> response : pending) {
+                    response.thenAccept(HttpResponse::bodyDone);
+                }
+            }
+        }
+        return responses;
     }
 
     /**
-     * Handles an HTTP/2 connection.
+     * Reads more bytes into a connection's buffer, blocking until some arrive.
+     * The first bytes of a request after keep-alive start the clock on its
+     * head.
+     *
+     * @return the buffer, which is replaced when it has to grow, or null if
+     *         the client closed the connection
+     * @throws IOException if the read fails or a request head outgrows the
+     *                     largest buffer
+     */
+    private static ByteBuffer fill(InputStream inputStream, ByteBuffer buffer, ConnectionDeadline deadline)
+            throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            if (buffer.capacity() >= MAX_READ_BUFFER_SIZE) {
+                throw new IOException("Request exceeds " + MAX_READ_BUFFER_SIZE + " bytes");
+            }
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+        }
+
+        int bytesRead = inputStream.read(buffer.array(), buffer.position(), buffer.remaining());
+        if (bytesRead == -1) {
+            return null;
+        }
+        buffer.position(buffer.position() + bytesRead);
+        if (deadline.getKind() == ConnectionDeadline.Kind.KEEP_ALIVE) {
+            deadline.arm(ConnectionDeadline.Kind.REQUEST_HEADER);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Handles an HTTP/2 connection whose client preface has already been read,
+     * or one being upgraded from HTTP/1.1 whose preface is still to come.
      * 
-     * @param clientSocket the client socket
-     * @param threadId     the thread ID for logging
+     * @param clientSocket    the client socket
+     * @param inputStream     the socket input stream
+     * @param outputStream    the socket output stream
+     * @param threadId        the thread ID for logging
+     * @param stats           the connection's registry entry
+     * @param deadline        the connection's deadline
+     * @param streamsInFlight the count of streams whose handlers are running,
+     *                        which the idle deadline waits for
+     * @param upgradeRequest  the HTTP/1.1 request that asked for h2c, or null
+     * @param upgradeSettings the settings from its HTTP2-Settings header, or null
      * @throws IOException if an I/O error occurs
      */
-    private void handleHttp2Connection(Socket clientSocket, int threadId) throws IOException {
-        http2ConnectionManager.addConnectedClient(clientSocket);
-
-        InputStream inputStream = clientSocket.getInputStream();
-        OutputStream outputStream = clientSocket.getOutputStream();
+    private void handleHttp2Connection(Socket clientSocket, InputStream inputStream, OutputStream outputStream,
+            int threadId, ConnectionStats stats, ConnectionDeadline deadline, AtomicInteger streamsInFlight,
+            HttpRequest upgradeRequest, Http2Settings upgradeSettings) throws IOException {
+        // Stream state and HPACK tables belong to this connection alone
+        Http2ConnectionManager connectionManager = new Http2ConnectionManager();
+        connectionManager.setFrameDumps(config.isFrameDumps());
 
         // Create HTTP/2 processor and responder
-        Http2Processor processor = new Http2Processor(http2ConnectionManager);
-        Http2Responder responder = new Http2Responder(http2ConnectionManager);
+        Http2Processor processor = new Http2Processor(connectionManager);
+        Http2Responder responder = new Http2Responder(connectionManager);
+
+        // With virtual threads each stream gets its own thread, so a slow request
+        // does not hold up the frames of the others
+        boolean threadPerStream = config.getTransportMode() == TransportMode.VIRTUAL;
+        processor.setDeferRequests(threadPerStream);
+
+        // A client that never acknowledges SETTINGS is told why before the
+        // socket closes. The write runs on its own thread so a full socket
+        // buffer cannot stall the timer.
+        ConnectionDeadline settingsDeadline = new ConnectionDeadline(timingWheel, config, kind -> {
+            if (connectionManager.isSettingsAckPending()) {
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        connectionManager.sendFrame(new GoAwayFrame(0, Http2Frame.SETTINGS_TIMEOUT), outputStream);
+                    } catch (IOException e) {
+                        Log.debug("Error sending GOAWAY: {}", e.getMessage());
+                    }
+                    expireConnection(clientSocket, threadId, kind);
+                });
+            }
+        });
+        deadline.arm(ConnectionDeadline.Kind.IDLE);
+        settingsDeadline.arm(ConnectionDeadline.Kind.SETTINGS_ACK);
+
+        if (upgradeRequest != null) {
+            // The request that asked for the upgrade is answered on stream 1
+            // while the client's preface is still in flight
+            HttpResponse upgradeResponse = processor.upgrade(upgradeRequest, upgradeSettings, outputStream);
+            if (threadPerStream) {
+                dispatchStreams(processor, responder, connectionManager, outputStream, stats, deadline,
+                        streamsInFlight);
+            } else if (upgradeResponse != null) {
+                stats.recordRequest();
+                responder.sendResponse(upgradeResponse, connectionManager.getStream(1), outputStream);
+            }
 
-        // Initialize the HTTP/2 connection by sending initial settings
-        processor.initialise(outputStream);
+            if (!Acceptor.verifyHttp2ConnectionPreface(inputStream)) {
+                return;
+            }
+        } else {
+            // Initialize the HTTP/2 connection by sending initial settings
+            processor.initialise(outputStream);
+        }
 
-        System.out.println("Thread #" + threadId + " established HTTP/2 connection");
+        Log.debug("Thread #{} established HTTP/2 connection", threadId);
 
         // Process HTTP/2 frames until connection closes
         try {
             while (!clientSocket.isClosed()) {
                 try {
-                    System.out.println("Reading next HTTP/2 frame...");
+                    Log.debug("Reading next HTTP/2 frame...");
                     HttpResponse response = processor.processNextFrame(inputStream);
+                    deadline.touch();
+
+                    if (threadPerStream) {
+                        dispatchStreams(processor, responder, connectionManager, outputStream, stats, deadline,
+                                streamsInFlight);
+                    }
 
                     if (response != null) {
                         Object streamIdObj = response.getProperty("streamId");
                         if (streamIdObj != null) {
                             int streamId = (int) streamIdObj;
-                            Http2Stream stream = http2ConnectionManager.getStream(streamId);
+                            Http2Stream stream = connectionManager.getStream(streamId);
                             if (stream != null) {
-                                System.out.println("Sending HTTP/2 response for stream " + streamId);
+                                stats.recordRequest();
+                                Log.debug("Sending HTTP/2 response for stream {}", streamId);
                                 responder.sendResponse(response, stream, outputStream);
-                                System.out.println("Response sent successfully");
+                                deadline.touch();
+                                Log.debug("Response sent successfully");
                             } else {
-                                System.err.println("Stream " + streamId + " not found for sending response");
+                                Log.warn("Stream {} not found for sending response", streamId);
                             }
                         } else {
-                            System.out.println("No response to send or no stream ID");
+                            Log.debug("No response to send or no stream ID");
                         }
                     } else {
-                        System.out.println("No response to send or no stream ID");
-                        if (http2ConnectionManager.isGoAwayReceived()) {
-                            System.out.println("GOAWAY received, ending connection");
+                        Log.debug("No response to send or no stream ID");
+                        if (connectionManager.isGoAwayReceived()) {
+                            Log.debug("GOAWAY received, ending connection");
                             break;
                         }
                     }
-                } catch (SocketTimeoutException e) {
-                    System.out.println("HTTP/2 connection to " + clientSocket.getInetAddress().getHostName() + " timed out");
-                    break;
                 } catch (SocketException e) {
-                    System.out.println("Socket error: " + e.getMessage());
+                    Log.debug("Socket error: {}", e.getMessage());
                     break;
                 } catch (EOFException e) {
-                    System.out.println("EOF reached, client closed connection");
+                    Log.debug("EOF reached, client closed connection");
                     break;
                 } catch (IOException e) {
                     if (e.getMessage() != null &&
                             (e.getMessage().contains("Connection reset") ||
                                     e.getMessage().contains("Socket closed") ||
                                     e.getMessage().contains("Broken pipe"))) {
-                        System.out.println("Client closed connection: " + e.getMessage());
+                        Log.debug("Client closed connection: {}", e.getMessage());
                     } else {
-                        System.err.println("IO error: " + e.getMessage());
-                        e.printStackTrace();
+                        Log.error("IO error", e);
                     }
                     break;
                 } catch (Exception e) {
-                    System.err.println("Unexpected error: " + e.getMessage());
-                    e.printStackTrace();
+                    Log.error("Unexpected error", e);
                     break;
                 }
             }
         } finally {
-            http2ConnectionManager.removeClient(clientSocket);
+            settingsDeadline.cancel();
+        }
+    }
+
+    /**
+     * Runs each request completed by the last frame on its own virtual thread.
+     * Responses are written under the connection's write lock, so they may
+     * finish in any order, and a response that completes asynchronously is
+     * written by the thread that completes it. Each response written counts as
+     * activity on the connection, and a stream counts as in flight from its
+     * dispatch until its response has been written.
+     */
+    private void dispatchStreams(Http2Processor processor, Http2Responder responder,
+            Http2ConnectionManager connectionManager, OutputStream outputStream, ConnectionStats stats,
+            ConnectionDeadline deadline, AtomicInteger streamsInFlight) {
+        HttpRequest request;
+        while ((request = processor.pollPendingRequest()) != null) {
+            stats.recordRequest();
+            HttpRequest streamRequest = request;
+            int streamId = (int) streamRequest.getProperty("streamId");
+            streamsInFlight.incrementAndGet();
+            executorService.execute(() -> processor.processRequestAsync(streamRequest).thenAccept(response -> {
+                try {
+                    Http2Stream stream = connectionManager.getStream(streamId);
+                    if (stream == null) {
+                        Log.warn("Stream {} not found for sending response", streamId);
+                        return;
+                    }
+                    responder.sendResponse(response, stream, outputStream);
+                } catch (IOException e) {
+                    Log.debug("IO error sending HTTP/2 response: {}", e.getMessage());
+                } finally {
+                    // Touched first, so an idle deadline due now sees the activity
+                    deadline.touch();
+                    streamsInFlight.decrementAndGet();
+                }
+            }));
+        }
+    }
+
+    /**
+     * Gets the accept counters of every listener, in listener order.
+     *
+     * @return the accept metrics of each listener
+     */
+    public AcceptMetrics[] getAcceptMetrics() {
+        AcceptMetrics[] metrics = new AcceptMetrics[listeners.length];
+        for (int i = 0; i < listeners.length; i++) {
+            metrics[i] = listeners[i].getMetrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * Gets the admission counters shared by every listener.
+     *
+     * @return the admission control
+     */
+    public AdmissionControl getAdmissionControl() {
+        return admission;
+    }
+
+    /**
+     * Gets the bulkheads that bound the built-in endpoints, with their queue
+     * wait and rejection counters.
+     *
+     * @return the bulkheads
+     */
+    public Bulkhead[] getBulkheads() {
+        return Processor.getBulkheads();
+    }
+
+    /**
+     * Gets the registry of open connections.
+     *
+     * @return the connection manager
+     */
+    public ConnectionManager getConnectionManager() {
+        return connections;
+    }
+
+    /**
+     * Gets the TLS handshake counters shared by every listener.
+     *
+     * @return the TLS metrics, or null when SSL is disabled
+     */
+    public TlsMetrics getTlsMetrics() {
+        return tlsContext != null ? tlsContext.getMetrics() : null;
+    }
+
+    /**
+     * Closes every listener that has been created so far.
+     */
+    private void closeListeners() {
+        for (Listener listener : listeners) {
+            if (listener != null) {
+                listener.close();
+            }
         }
     }
 
@@ -255,13 +947,22 @@ public class Server {
     public void stop() {
         running = false;
 
-        try {
-            acceptor.close();
-        } catch (IOException e) {
-            System.err.println("Error closing acceptor: " + e.getMessage());
+        for (Listener listener : listeners) {
+            Log.info("Accept summary " + listener.getMetrics());
         }
-
+        Log.info(admission.toString());
+        for (Bulkhead bulkhead : Processor.getBulkheads()) {
+            Log.info(bulkhead.toString());
+        }
+        Log.info(connections.toString());
+        for (ConnectionStats stats : connections.snapshot()) {
+            Log.info("Open at shutdown " + stats);
+        }
+        if (tlsContext != null) {
+            Log.info(tlsContext.getMetrics().toString());
+        }
+        closeListeners();
         executorService.shutdown();
-        System.out.println("Server stopped.");
+        Log.info("Server stopped.");
     }
 }
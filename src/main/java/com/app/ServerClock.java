@@ -0,0 +1,134 @@
+package com.app;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * The ServerClock class is a coarse clock shared by the whole server.
+ *
+ * <p>
+ * A daemon thread samples the system clocks once per tick and publishes the
+ * readings, so code on the request path reads a volatile field instead of
+ * calling into the system for the time. Alongside the readings it keeps the
+ * current second formatted as an HTTP date, the IMF-fixdate of RFC 9110
+ * section 5.6.7, as both a string and its bytes; a new one is built only when
+ * the second changes. Readings lag the system clocks by up to one tick, which
+ * is well inside the resolution of the Date header and of connection
+ * deadlines.
+ * </p>
+ */
+public final class ServerClock {
+    /** How often the readings are refreshed. */
+    public static final long TICK_MILLIS = 10;
+
+    private static final DateTimeFormatter IMF_FIXDATE = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+
+    private static volatile long monotonicMillis;
+    private static volatile long currentMillis;
+    private static volatile HttpDate httpDate;
+
+    static {
+        tick();
+        Thread thread = new Thread(ServerClock::run, "server-clock");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private ServerClock() {
+    }
+
+    /**
+     * Gets the monotonic time, for measuring intervals such as deadlines.
+     *
+     * @return milliseconds from an arbitrary origin, never going backwards
+     */
+    public static long monotonicMillis() {
+        return monotonicMillis;
+    }
+
+    /**
+     * Gets the wall-clock time.
+     *
+     * @return milliseconds since the epoch
+     */
+    public static long currentTimeMillis() {
+        return currentMillis;
+    }
+
+    /**
+     * Gets the current time as an HTTP date, such as "Sun, 06 Nov 1994
+     * 08:49:37 GMT".
+     *
+     * @return the formatted date, the same instance throughout a second
+     */
+    public static String httpDate() {
+        return httpDate.text;
+    }
+
+    /**
+     * Gets the bytes of an HTTP date if it is the one the clock currently
+     * holds, so a writer can copy them instead of encoding the string.
+     *
+     * @param date a value of the Date header
+     * @return the shared bytes, which must not be modified, or null if the
+     *         value is not the current date instance
+     */
+    static byte[] httpDateBytes(String date) {
+        HttpDate current = httpDate;
+        return current.text == date ? current.bytes : null;
+    }
+
+    /**
+     * Formats a time as an HTTP date.
+     *
+     * @param epochMillis milliseconds since the epoch
+     * @return the IMF-fixdate
+     */
+    public static String formatHttpDate(long epochMillis) {
+        return IMF_FIXDATE.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    private static void run() {
+        while (true) {
+            try {
+                Thread.sleep(TICK_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            tick();
+        }
+    }
+
+    private static void tick() {
+        long now = System.currentTimeMillis();
+        monotonicMillis = System.nanoTime() / 1_000_000;
+        currentMillis = now;
+
+        long second = now / 1000;
+        HttpDate current = httpDate;
+        if (current == null || current.second != second) {
+            httpDate = new HttpDate(second, formatHttpDate(second * 1000));
+        }
+    }
+
+    /**
+     * One second's date, kept together so that readers never pair a string
+     * with another second's bytes.
+     */
+    private static final class HttpDate {
+        private final long second;
+        private final String text;
+        private final byte[] bytes;
+
+        private HttpDate(long second, String text) {
+            this.second = second;
+            this.text = text;
+            this.bytes = text.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package com.app;
+
+/**
+ * The ServerConfig class holds the tunable parameters of a {@link Server}.
+ *
+ * <p>
+ * Every setting is initialised to a sensible default in the constructor, so
+ * callers only need to override the values they care about.
+ * </p>
+ */
+public class ServerConfig {
+    private boolean sslEnabled;
+    private TransportMode transportMode;
+    private int workerThreads;
+    private int eventLoopThreads;
+    private LoopAssignment loopAssignment;
+    private int listeners;
+    private int tlsSessionCacheSize;
+    private int tlsSessionTimeout;
+    private boolean tlsSessionTickets;
+    private int maxConnections;
+    private int maxPendingAccepts;
+    private int retryAfterSeconds;
+    private int idleTimeout;
+    private int requestHeaderTimeout;
+    private int requestBodyTimeout;
+    private int keepAliveTimeout;
+    private int maxKeepAliveRequests;
+    private int settingsAckTimeout;
+    private int maxPipelinedRequests;
+    private boolean pipelineParallel;
+    private long maxRequestBodySize;
+    private Log.Level logLevel;
+    private boolean frameDumps;
+
+    /**
+     * Constructs a new ServerConfig with default values.
+     *
+     * <ul>
+     * <li>SSL: disabled</li>
+     * <li>Transport: blocking</li>
+     * <li>Worker threads: 10</li>
+     * <li>Event loop threads: one per available processor</li>
+     * <li>Loop assignment: round-robin</li>
+     * <li>Listeners: 1</li>
+     * <li>TLS session cache: 20480 sessions, 24 hour timeout</li>
+     * <li>TLS 1.3 session tickets: enabled</li>
+     * <li>Max connections: 10000</li>
+     * <li>Max pending accepts: 1024</li>
+     * <li>Retry-After on rejection: 1 second</li>
+     * <li>Timeouts: idle 60s, request header 10s, request body 30s, keep-alive
+     * 30s, HTTP/2 SETTINGS acknowledgement 10s</li>
+     * <li>Requests per persistent HTTP/1.1 connection: 1000</li>
+     * <li>Pipelined HTTP/1.1 requests per batch: 16, handled in order one at a
+     * time</li>
+     * <li>Max HTTP/1.1 request body: 10 MB</li>
+     * <li>Log level: INFO, without HTTP/2 frame dumps</li>
+     * </ul>
+     */
+    public ServerConfig() {
+        sslEnabled = false;
+        transportMode = TransportMode.BLOCKING;
+        workerThreads = 10;
+        eventLoopThreads = Runtime.getRuntime().availableProcessors();
+        loopAssignment = LoopAssignment.ROUND_ROBIN;
+        listeners = 1;
+        tlsSessionCacheSize = 20480;
+        tlsSessionTimeout = 86400;
+        tlsSessionTickets = true;
+        maxConnections = 10000;
+        maxPendingAccepts = 1024;
+        retryAfterSeconds = 1;
+        idleTimeout = 60000;
+        requestHeaderTimeout = 10000;
+        requestBodyTimeout = 30000;
+        keepAliveTimeout = 30000;
+        maxKeepAliveRequests = 1000;
+        settingsAckTimeout = 10000;
+        maxPipelinedRequests = 16;
+        pipelineParallel = false;
+        maxRequestBodySize = 10L * 1024 * 1024;
+        logLevel = Log.Level.INFO;
+        frameDumps = false;
+    }
+
+    /**
+     * Sets whether SSL/TLS is enabled.
+     *
+     * @param enabled true to serve HTTPS on port 8443, false for HTTP on 8080
+     */
+    public void setSslEnabled(boolean enabled) {
+        sslEnabled = enabled;
+    }
+
+    /**
+     * Checks if SSL/TLS is enabled.
+     *
+     * @return true if SSL/TLS is enabled
+     */
+    public boolean isSslEnabled() {
+        return sslEnabled;
+    }
+
+    /**
+     * Sets the transport used to service connections.
+     *
+     * @param mode the transport mode
+     */
+    public void setTransportMode(TransportMode mode) {
+        transportMode = mode;
+    }
+
+    /**
+     * Gets the transport used to service connections.
+     *
+     * @return the transport mode
+     */
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    /**
+     * Sets the number of worker threads. In blocking mode this bounds the number
+     * of connections served at once; with the NIO transport it bounds the number
+     * of requests being handled at once. The virtual thread transport is
+     * unbounded and ignores it.
+     *
+     * @param threads the number of worker threads
+     */
+    public void setWorkerThreads(int threads) {
+        workerThreads = threads;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return the number of worker threads
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Sets the number of worker event loops used by the NIO transport. Accepting
+     * runs on a separate boss loop.
+     *
+     * @param threads the number of worker event loops
+     */
+    public void setEventLoopThreads(int threads) {
+        eventLoopThreads = threads;
+    }
+
+    /**
+     * Gets the number of worker event loops used by the NIO transport.
+     *
+     * @return the number of worker event loops
+     */
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    /**
+     * Sets how new connections are spread across the worker event loops.
+     *
+     * @param assignment the assignment strategy
+     */
+    public void setLoopAssignment(LoopAssignment assignment) {
+        loopAssignment = assignment;
+    }
+
+    /**
+     * Gets how new connections are spread across the worker event loops.
+     *
+     * @return the assignment strategy
+     */
+    public LoopAssignment getLoopAssignment() {
+        return loopAssignment;
+    }
+
+    /**
+     * Sets the number of listening sockets bound to the server port. With more
+     * than one, every listener binds with SO_REUSEPORT and the kernel spreads
+     * incoming connections across them. Each listener gets its own accept thread
+     * and an equal share of the worker threads and event loops.
+     *
+     * @param count the number of listeners
+     */
+    public void setListeners(int count) {
+        listeners = count;
+    }
+
+    /**
+     * Gets the number of listening sockets bound to the server port.
+     *
+     * @return the number of listeners
+     */
+    public int getListeners() {
+        return listeners;
+    }
+
+    /**
+     * Sets the most TLS sessions kept for resumption. Zero means no limit.
+     *
+     * @param size the session cache size
+     */
+    public void setTlsSessionCacheSize(int size) {
+        tlsSessionCacheSize = size;
+    }
+
+    /**
+     * Gets the most TLS sessions kept for resumption.
+     *
+     * @return the session cache size
+     */
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * Sets how long a TLS session, or a ticket issued for it, may be resumed.
+     * Zero means no limit.
+     *
+     * @param seconds the session timeout in seconds
+     */
+    public void setTlsSessionTimeout(int seconds) {
+        tlsSessionTimeout = seconds;
+    }
+
+    /**
+     * Gets how long a TLS session may be resumed.
+     *
+     * @return the session timeout in seconds
+     */
+    public int getTlsSessionTimeout() {
+        return tlsSessionTimeout;
+    }
+
+    /**
+     * Sets whether TLS 1.3 clients are issued session tickets. Tickets carry
+     * the encrypted session state, so resuming does not depend on the server's
+     * cache still holding the session. The setting is process wide and only
+     * takes effect if no TLS connection has been made yet.
+     *
+     * @param enabled true to issue session tickets
+     */
+    public void setTlsSessionTickets(boolean enabled) {
+        tlsSessionTickets = enabled;
+    }
+
+    /**
+     * Checks if TLS 1.3 clients are issued session tickets.
+     *
+     * @return true if session tickets are enabled
+     */
+    public boolean isTlsSessionTickets() {
+        return tlsSessionTickets;
+    }
+
+    /**
+     * Sets the most connections served at once. Connections accepted beyond
+     * this are refused with a 503 or GOAWAY, or closed outright once the pending
+     * budget is spent.
+     *
+     * @param count the connection limit
+     */
+    public void setMaxConnections(int count) {
+        maxConnections = count;
+    }
+
+    /**
+     * Gets the most connections served at once.
+     *
+     * @return the connection limit
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the most accepted connections that may wait without being served. In
+     * blocking mode this bounds the connections queued for a worker thread. On
+     * every transport it also bounds the refused connections still waiting for
+     * their 503 or GOAWAY.
+     *
+     * @param count the pending-accept budget
+     */
+    public void setMaxPendingAccepts(int count) {
+        maxPendingAccepts = count;
+    }
+
+    /**
+     * Gets the most accepted connections that may wait without being served.
+     *
+     * @return the pending-accept budget
+     */
+    public int getMaxPendingAccepts() {
+        return maxPendingAccepts;
+    }
+
+    /**
+     * Sets the Retry-After value sent with a 503 when a connection is refused.
+     *
+     * @param seconds the delay clients are asked to wait before retrying
+     */
+    public void setRetryAfterSeconds(int seconds) {
+        retryAfterSeconds = seconds;
+    }
+
+    /**
+     * Gets the Retry-After value sent when a connection is refused.
+     *
+     * @return the retry delay in seconds
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Sets how long a connection may go without reading a byte while it has no
+     * other deadline, and how long a queued write may make no progress. This is
+     * the limit for an open HTTP/2 connection between frames.
+     *
+     * @param millis the idle timeout in milliseconds
+     */
+    public void setIdleTimeout(int millis) {
+        idleTimeout = millis;
+    }
+
+    /**
+     * Gets the idle timeout.
+     *
+     * @return the idle timeout in milliseconds
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets how long a client has to complete the TLS handshake and send a whole
+     * request head, counted from the connection's accept or from the first
+     * byte of a later request. A slow trickle of header bytes does not extend
+     * it.
+     *
+     * @param millis the request header timeout in milliseconds
+     */
+    public void setRequestHeaderTimeout(int millis) {
+        requestHeaderTimeout = millis;
+    }
+
+    /**
+     * Gets the request header timeout.
+     *
+     * @return the request header timeout in milliseconds
+     */
+    public int getRequestHeaderTimeout() {
+        return requestHeaderTimeout;
+    }
+
+    /**
+     * Sets how long a client may pause while sending a request body.
+     *
+     * @param millis the request body timeout in milliseconds
+     */
+    public void setRequestBodyTimeout(int millis) {
+        requestBodyTimeout = millis;
+    }
+
+    /**
+     * Gets the request body timeout.
+     *
+     * @return the request body timeout in milliseconds
+     */
+    public int getRequestBodyTimeout() {
+        return requestBodyTimeout;
+    }
+
+    /**
+     * Sets how long a persistent HTTP/1.1 connection may wait for its next
+     * request.
+     *
+     * @param millis the keep-alive timeout in milliseconds
+     */
+    public void setKeepAliveTimeout(int millis) {
+        keepAliveTimeout = millis;
+    }
+
+    /**
+     * Gets the keep-alive timeout.
+     *
+     * @return the keep-alive timeout in milliseconds
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * Sets how many requests a persistent HTTP/1.1 connection carries before
+     * the server closes it. The response to the last one says "Connection:
+     * close", so the client opens a new connection rather than losing a
+     * request to the close.
+     *
+     * @param count the maximum number of requests, or 0 for no limit
+     */
+    public void setMaxKeepAliveRequests(int count) {
+        maxKeepAliveRequests = count;
+    }
+
+    /**
+     * Gets how many requests a persistent HTTP/1.1 connection carries.
+     *
+     * @return the maximum number of requests, or 0 for no limit
+     */
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    /**
+     * Sets how long an HTTP/2 client has to acknowledge the server's SETTINGS
+     * before the connection is closed with SETTINGS_TIMEOUT.
+     *
+     * @param millis the SETTINGS acknowledgement timeout in milliseconds
+     */
+    public void setSettingsAckTimeout(int millis) {
+        settingsAckTimeout = millis;
+    }
+
+    /**
+     * Gets the SETTINGS acknowledgement timeout.
+     *
+     * @return the SETTINGS acknowledgement timeout in milliseconds
+     */
+    public int getSettingsAckTimeout() {
+        return settingsAckTimeout;
+    }
+
+    /**
+     * Sets how many pipelined HTTP/1.1 requests are taken from the read buffer
+     * and answered together as one batch. Requests beyond it wait for the next
+     * batch.
+     *
+     * @param count the maximum batch size
+     */
+    public void setMaxPipelinedRequests(int count) {
+        maxPipelinedRequests = count;
+    }
+
+    /**
+     * Gets the maximum number of pipelined requests in a batch.
+     *
+     * @return the maximum batch size
+     */
+    public int getMaxPipelinedRequests() {
+        return maxPipelinedRequests;
+    }
+
+    /**
+     * Sets whether the requests of a pipelined batch are handled concurrently.
+     * Their responses are still written in request order. The blocking
+     * transport ignores this, since a connection waiting on its own bounded
+     * pool could deadlock it.
+     *
+     * @param parallel true to handle each request of a batch on its own worker
+     */
+    public void setPipelineParallel(boolean parallel) {
+        pipelineParallel = parallel;
+    }
+
+    /**
+     * Checks whether pipelined requests are handled concurrently.
+     *
+     * @return true if each request of a batch gets its own worker
+     */
+    public boolean isPipelineParallel() {
+        return pipelineParallel;
+    }
+
+    /**
+     * Sets the largest HTTP/1.1 request body accepted. A request declaring a
+     * larger Content-Length is refused with 413 before its body is read, and a
+     * chunked body is cut off with 413 once it grows past the limit.
+     *
+     * @param bytes the maximum body size in bytes
+     */
+    public void setMaxRequestBodySize(long bytes) {
+        maxRequestBodySize = bytes;
+    }
+
+    /**
+     * Gets the largest HTTP/1.1 request body accepted.
+     *
+     * @return the maximum body size in bytes
+     */
+    public long getMaxRequestBodySize() {
+        return maxRequestBodySize;
+    }
+
+    /**
+     * Sets the least severe level of message the server logs.
+     *
+     * @param level the log level
+     */
+    public void setLogLevel(Log.Level level) {
+        logLevel = level;
+    }
+
+    /**
+     * Gets the least severe level of message the server logs.
+     *
+     * @return the log level
+     */
+    public Log.Level getLogLevel() {
+        return logLevel;
+    }
+
+    /**
+     * Sets whether new HTTP/2 connections log a description of every frame
+     * they send and receive. Describing a frame walks its flags and payload,
+     * so this is for debugging a client, not for a loaded server.
+     *
+     * @param enabled true to dump the frames of each new connection
+     */
+    public void setFrameDumps(boolean enabled) {
+        frameDumps = enabled;
+    }
+
+    /**
+     * Checks whether new HTTP/2 connections dump their frames.
+     *
+     * @return true if frames are dumped
+     */
+    public boolean isFrameDumps() {
+        return frameDumps;
+    }
+}
@@ -20,9 +20,12 @@ class SettingsFrame extends Http2Frame {
         // Each setting is 6 bytes: 2 bytes identifier, 4 bytes value
         ByteBuffer buffer = ByteBuffer.allocate(6 * 6); // Maximum 6 settings
 
-        // Add each setting that differs from default
+        // Add each setting that differs from default. A server must never
+        // advertise ENABLE_PUSH=1, so the setting is only sent to turn push off
         addSetting(buffer, Http2Settings.SETTINGS_HEADER_TABLE_SIZE, settings.getHeaderTableSize());
-        addSetting(buffer, Http2Settings.SETTINGS_ENABLE_PUSH, settings.isPushEnabled() ? 1 : 0);
+        if (!settings.isPushEnabled()) {
+            addSetting(buffer, Http2Settings.SETTINGS_ENABLE_PUSH, 0);
+        }
         addSetting(buffer, Http2Settings.SETTINGS_MAX_CONCURRENT_STREAMS, settings.getMaxConcurrentStreams());
         addSetting(buffer, Http2Settings.SETTINGS_INITIAL_WINDOW_SIZE, settings.getInitialWindowSize());
         addSetting(buffer, Http2Settings.SETTINGS_MAX_FRAME_SIZE, settings.getMaxFrameSize());
@@ -49,8 +52,8 @@ class SettingsFrame extends Http2Frame {
     public Http2Settings getSettings() {
         Http2Settings settings = new Http2Settings();
 
+        // The payload is always ready to read, flipping it again would empty it
         ByteBuffer buffer = payload.duplicate();
-        buffer.flip();
 
         while (buffer.remaining() >= 6) {
             int id = buffer.getShort() & 0xFFFF;
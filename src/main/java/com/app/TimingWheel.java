@@ -0,0 +1,305 @@
+package com.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The TimingWheel class is a hashed timing wheel: a ring of buckets, each
+ * holding the timeouts that fall due in one tick.
+ *
+ * <p>
+ * Scheduling hashes the deadline to its bucket and links the timeout in, and
+ * cancelling unlinks it, so both are O(1) however many timeouts are pending.
+ * Deadlines further away than one turn of the wheel carry a count of the turns
+ * left. The wheel has no thread of its own: its owner calls {@link #advance()}
+ * at least once per tick and expired tasks run on that caller's thread. A
+ * timeout fires up to one tick late, which is fine for connection deadlines
+ * measured in seconds and lets a hundred thousand idle connections share one
+ * wheel instead of each holding a timer.
+ * </p>
+ *
+ * <p>
+ * Scheduling and cancelling are safe from any thread. The NIO transport gives
+ * each event loop its own wheel, so the lock is never contended there.
+ * </p>
+ */
+public class TimingWheel {
+    private static final long DEFAULT_TICK_MILLIS = 100;
+    private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private final long tickMillis;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long startMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Timeout> expired = new ArrayList<>();
+    private long tick;
+    private int size;
+
+    /**
+     * Creates a wheel with 100 ms ticks and 512 buckets, which covers about 51
+     * seconds per turn.
+     */
+    public TimingWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_TICKS_PER_WHEEL, monotonicMillis());
+    }
+
+    /**
+     * Creates a wheel.
+     *
+     * @param tickMillis    the length of one tick, which is the timer resolution
+     * @param ticksPerWheel the number of buckets, rounded up to a power of two
+     * @param startMillis   the monotonic time the wheel starts at
+     */
+    TimingWheel(long tickMillis, int ticksPerWheel, long startMillis) {
+        if (tickMillis < 1 || ticksPerWheel < 1) {
+            throw new IllegalArgumentException("Tick length and wheel size must be positive");
+        }
+        int wheelSize = 1;
+        while (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = new Timeout[wheelSize];
+        this.mask = wheelSize - 1;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Schedules a task to run once the delay has passed.
+     *
+     * @param task        the task, run on the thread that advances the wheel
+     * @param delayMillis the delay in milliseconds
+     * @return a handle that can cancel the task
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        return schedule(task, delayMillis, monotonicMillis());
+    }
+
+    /**
+     * Schedules a task to run once the delay has passed, measured from the
+     * given time.
+     *
+     * @param task        the task
+     * @param delayMillis the delay in milliseconds
+     * @param nowMillis   the current monotonic time in milliseconds
+     * @return a handle that can cancel the task
+     */
+    Timeout schedule(Runnable task, long delayMillis, long nowMillis) {
+        // A bucket is expired once its tick has ended, so the task goes in the
+        // first tick that ends at or after the deadline. This is counted from
+        // the clock rather than from the last tick expired, which lags behind
+        // while the wheel is empty and not being advanced.
+        long deadlineMillis = nowMillis - startMillis + Math.max(0, delayMillis);
+        long deadlineTick = (deadlineMillis + tickMillis - 1) / tickMillis - 1;
+        lock.lock();
+        try {
+            deadlineTick = Math.max(deadlineTick, tick);
+            Timeout timeout = new Timeout(task, (deadlineTick - tick) / buckets.length);
+            link(timeout, (int) (deadlineTick & mask));
+            size++;
+            return timeout;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs every task whose deadline has passed, using the monotonic clock.
+     *
+     * @return the number of tasks run
+     */
+    public int advance() {
+        return advance(monotonicMillis());
+    }
+
+    /**
+     * Runs every task whose deadline has passed by the given time.
+     *
+     * @param nowMillis the current monotonic time in milliseconds
+     * @return the number of tasks run
+     */
+    int advance(long nowMillis) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        List<Timeout> due;
+        lock.lock();
+        try {
+            if (size == 0) {
+                // Nothing to expire, so the wheel can skip straight to now
+                tick = Math.max(tick, targetTick);
+                return 0;
+            }
+            while (tick < targetTick) {
+                expireBucket((int) (tick & mask));
+                tick++;
+            }
+            if (expired.isEmpty()) {
+                return 0;
+            }
+            due = new ArrayList<>(expired);
+            expired.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        int run = 0;
+        for (Timeout timeout : due) {
+            if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                try {
+                    timeout.task.run();
+                } catch (Exception e) {
+                    Log.error("Timer task failed", e);
+                }
+                run++;
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Gets how long the owner may wait before the wheel needs advancing again.
+     *
+     * @return the milliseconds until the current tick ends, at least 1, or 0 if
+     *         nothing is scheduled and the owner may wait indefinitely
+     */
+    public long getMillisUntilNextTick() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return 0;
+            }
+            long elapsed = monotonicMillis() - startMillis;
+            return Math.max(1, (tick + 1) * tickMillis - elapsed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of pending timeouts.
+     *
+     * @return the pending count
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the length of one tick.
+     *
+     * @return the tick length in milliseconds
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private void expireBucket(int index) {
+        Timeout timeout = buckets[index];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                unlink(timeout);
+                size--;
+                expired.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void link(Timeout timeout, int index) {
+        timeout.bucket = index;
+        timeout.next = buckets[index];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[index] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    static long monotonicMillis() {
+        return ServerClock.monotonicMillis();
+    }
+
+    /**
+     * A scheduled task. It is linked into its bucket until it expires or is
+     * cancelled.
+     */
+    public final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds;
+        private int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long remainingRounds) {
+            this.task = task;
+            this.remainingRounds = remainingRounds;
+        }
+
+        /**
+         * Cancels the task if it has not run yet.
+         *
+         * @return true if the task will now never run
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            lock.lock();
+            try {
+                if (bucket >= 0) {
+                    unlink(this);
+                    size--;
+                }
+            } finally {
+                lock.unlock();
+            }
+            return true;
+        }
+
+        /**
+         * Checks whether the task was cancelled before it ran.
+         *
+         * @return true if cancelled
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * Checks whether the task has run.
+         *
+         * @return true if expired
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+}
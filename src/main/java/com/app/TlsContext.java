@@ -0,0 +1,142 @@
+package com.app;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * The TlsContext class holds the server's TLS configuration and session state.
+ *
+ * <p>
+ * One instance is shared by every listener of a server. With SO_REUSEPORT a
+ * reconnecting client may land on a different listener than before, and it can
+ * only resume its session if all listeners share the session cache and the
+ * TLS 1.3 ticket keys, both of which live in the {@link SSLContext}.
+ * </p>
+ */
+public class TlsContext {
+    private static final String KEYSTORE_FILE = "keystore.jks";
+    private static final String KEYSTORE_PASSWORD = "password";
+    private static final int HTTPS_PORT = 8443;
+
+    private final SSLContext sslContext;
+    private final SSLParameters sslParameters;
+    private final TlsMetrics metrics = new TlsMetrics();
+
+    /**
+     * Loads the server keystore and builds the TLS context.
+     *
+     * @param config the server configuration holding the session cache settings
+     * @throws IOException if the keystore is missing or TLS cannot be initialised
+     */
+    public TlsContext(ServerConfig config) throws IOException {
+        File keystore = new File(KEYSTORE_FILE);
+        if (!keystore.exists()) {
+            throw new IOException("Keystore file 'keystore.jks' not found. Please create it using keytool.");
+        }
+
+        try (InputStream keystoreStream = new FileInputStream(keystore)) {
+            System.setProperty("javax.net.ssl.keyStore", KEYSTORE_FILE);
+            System.setProperty("javax.net.ssl.keyStorePassword", KEYSTORE_PASSWORD);
+
+            // The JDK reads this once, when TLS is first used in the process
+            System.setProperty("jdk.tls.server.enableSessionTicketExtension",
+                    String.valueOf(config.isTlsSessionTickets()));
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            KeyStore ks = KeyStore.getInstance("JKS");
+            ks.load(keystoreStream, KEYSTORE_PASSWORD.toCharArray());
+            kmf.init(ks, KEYSTORE_PASSWORD.toCharArray());
+            context.init(kmf.getKeyManagers(), null, null);
+
+            SSLSessionContext sessionContext = context.getServerSessionContext();
+            sessionContext.setSessionCacheSize(config.getTlsSessionCacheSize());
+            sessionContext.setSessionTimeout(config.getTlsSessionTimeout());
+
+            SSLParameters parameters = context.getDefaultSSLParameters();
+            parameters.setProtocols(new String[] { "TLSv1.2", "TLSv1.3" });
+            parameters.setApplicationProtocols(new String[] { "h2", "http/1.1" });
+
+            this.sslContext = context;
+            this.sslParameters = parameters;
+        } catch (Exception e) {
+            Log.error("Failed server listening on port " + HTTPS_PORT, e);
+            throw new IOException("SSL initialization failed", e);
+        }
+
+        Log.info("TLS session cache: " + config.getTlsSessionCacheSize() + " sessions, "
+                + config.getTlsSessionTimeout() + "s timeout, tickets "
+                + (config.isTlsSessionTickets() ? "enabled" : "disabled"));
+    }
+
+    /**
+     * Creates a server-mode engine for the non-blocking transport.
+     *
+     * @return a new engine
+     */
+    public SSLEngine createEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setSSLParameters(sslParameters);
+        return engine;
+    }
+
+    /**
+     * Layers a server-mode TLS socket over an accepted plain socket. The
+     * handshake has not started when this returns.
+     *
+     * @param socket the accepted socket
+     * @return the TLS socket, which closes the plain socket when closed
+     * @throws IOException if the socket cannot be layered
+     */
+    public SSLSocket wrapSocket(Socket socket) throws IOException {
+        SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket,
+                socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+        sslSocket.setUseClientMode(false);
+        sslSocket.setSSLParameters(sslParameters);
+        return sslSocket;
+    }
+
+    /**
+     * Gets the application protocols offered through ALPN.
+     *
+     * @return the protocol ids in order of preference
+     */
+    public String[] getApplicationProtocols() {
+        return sslParameters.getApplicationProtocols();
+    }
+
+    /**
+     * Gets the handshake counters shared by every connection using this context.
+     *
+     * @return the TLS metrics
+     */
+    public TlsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Checks whether a handshake resumed an earlier session. A resumed session,
+     * whether found in the cache or rebuilt from a ticket, keeps the creation
+     * time of the original handshake.
+     *
+     * @param session          the session negotiated by the handshake
+     * @param handshakeStartMs the wall-clock time the handshake started
+     * @return true if the session predates the handshake
+     */
+    static boolean isResumed(SSLSession session, long handshakeStartMs) {
+        return session.getCreationTime() < handshakeStartMs;
+    }
+}
@@ -0,0 +1,16 @@
+package com.app;
+
+/**
+ * The transport used by the server to move bytes between sockets and the
+ * protocol handlers.
+ */
+enum TransportMode {
+    /** One pooled thread blocks on each connection for its whole lifetime. */
+    BLOCKING,
+    /** A selector-driven event loop multiplexes every connection. */
+    NIO,
+    /**
+     * Blocking I/O with a virtual thread per connection and per HTTP/2 stream.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,31 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class AcceptMetricsTest {
+
+    @Test
+    void testRecordAcceptCountsTotal() {
+        AcceptMetrics metrics = new AcceptMetrics("listener-0");
+        for (int i = 0; i < 5; i++) {
+            metrics.recordAccept();
+        }
+
+        assertEquals(5, metrics.getTotalAccepted());
+        assertEquals("listener-0", metrics.getName());
+    }
+
+    @Test
+    void testRateExcludesCurrentSecond() {
+        AcceptMetrics metrics = new AcceptMetrics("listener-0");
+        assertEquals(0.0, metrics.getAcceptRate());
+
+        metrics.recordAccept();
+        long second = System.currentTimeMillis() / 1000;
+        if (System.currentTimeMillis() / 1000 == second) {
+            assertEquals(0.0, metrics.getAcceptRate(), "A partial second should not count towards the rate");
+        }
+    }
+}
@@ -45,6 +45,19 @@ public class AcceptorTest {
         }, "Constructor should initialize ServerSocket without exceptions.");
     }
 
+    @Test
+    void testConstructor_ReusePortAllowsSharedPort() throws IOException {
+        acceptor = new Acceptor(false, true);
+        Acceptor second = new Acceptor(false, true);
+        try {
+            assertEquals(acceptor.getChannel().socket().getLocalPort(),
+                    second.getChannel().socket().getLocalPort(),
+                    "Both acceptors should be bound to the same port");
+        } finally {
+            second.close();
+        }
+    }
+
     @Test
     void testConstructor_UnsuccessfulInitialization_WithSSL() {
         File originalKeystore = new File("keystore.jks");
@@ -0,0 +1,74 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class AdmissionControlTest {
+
+    private static AdmissionControl createAdmission(int maxConnections, int maxPendingAccepts) {
+        ServerConfig config = new ServerConfig();
+        config.setMaxConnections(maxConnections);
+        config.setMaxPendingAccepts(maxPendingAccepts);
+        config.setRetryAfterSeconds(3);
+        return new AdmissionControl(config);
+    }
+
+    @Test
+    void testAdmitsUpToLimitThenRejectsThenDrops() {
+        AdmissionControl admission = createAdmission(2, 1);
+
+        assertEquals(AdmissionControl.Decision.ADMIT, admission.admit());
+        assertEquals(AdmissionControl.Decision.ADMIT, admission.admit());
+        assertEquals(AdmissionControl.Decision.REJECT, admission.admit());
+        assertEquals(AdmissionControl.Decision.DROP, admission.admit());
+
+        assertEquals(2, admission.getActiveConnections());
+        assertEquals(1, admission.getPendingRejections());
+        assertEquals(2, admission.getAdmitted());
+        assertEquals(1, admission.getRejected());
+        assertEquals(1, admission.getDropped());
+    }
+
+    @Test
+    void testReleasedSlotsAreReused() {
+        AdmissionControl admission = createAdmission(1, 1);
+
+        assertEquals(AdmissionControl.Decision.ADMIT, admission.admit());
+        assertEquals(AdmissionControl.Decision.REJECT, admission.admit());
+
+        admission.release();
+        admission.finishRejection();
+
+        assertEquals(AdmissionControl.Decision.ADMIT, admission.admit());
+        assertEquals(AdmissionControl.Decision.REJECT, admission.admit());
+    }
+
+    @Test
+    void testHttp1RejectionCarriesRetryAfter() {
+        AdmissionControl admission = createAdmission(1, 1);
+        String response = new String(admission.getHttp1Rejection(), StandardCharsets.US_ASCII);
+
+        assertTrue(response.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+        assertTrue(response.contains("Retry-After: 3\r\n"));
+        assertTrue(response.contains("Connection: close\r\n"));
+    }
+
+    @Test
+    void testHttp2RejectionIsSettingsThenGoAway() {
+        AdmissionControl admission = createAdmission(1, 1);
+        ByteBuffer frames = ByteBuffer.wrap(admission.getHttp2Rejection());
+
+        Http2Frame settings = Http2Frame.parse(frames);
+        assertEquals(Http2Frame.TYPE_SETTINGS, settings.getType());
+        assertEquals(0, settings.getPayload().remaining());
+
+        GoAwayFrame goAway = (GoAwayFrame) Http2Frame.parse(frames);
+        assertEquals(0, goAway.getLastStreamId());
+        assertEquals(Http2Frame.REFUSED_STREAM, goAway.getErrorCode());
+        assertFalse(frames.hasRemaining());
+    }
+}
@@ -0,0 +1,122 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class BodyDecoderTest {
+    private static final long MAX = 1024;
+
+    private static HttpRequest request(String headers) throws IOException {
+        String head = "POST /util/upload HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n";
+        return new RequestParser().parse(bytes(head));
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String drain(BodyDecoder decoder, ByteBuffer buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer data;
+        while ((data = decoder.next(buffer)) != null) {
+            while (data.hasRemaining()) {
+                out.write(data.get());
+            }
+        }
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void testRequestWithoutBodyHasNoDecoder() throws IOException {
+        assertNull(BodyDecoder.forRequest(request(""), MAX));
+        assertNull(BodyDecoder.forRequest(request("Content-Length: 0\r\n"), MAX));
+        assertFalse(BodyDecoder.hasBody(request("Content-Length: 0\r\n")));
+    }
+
+    @Test
+    void testZeroPaddedContentLengthIsNoBody() throws IOException {
+        for (String length : new String[] { "00", "000" }) {
+            HttpRequest request = request("Content-Length: " + length + "\r\n");
+            assertFalse(BodyDecoder.hasBody(request), length);
+            assertNull(BodyDecoder.forRequest(request, MAX), length);
+        }
+        assertTrue(BodyDecoder.hasBody(request("Content-Length: 007\r\n")));
+        assertTrue(BodyDecoder.hasBody(request("Content-Length: 0\r\nContent-Length: 5\r\n")),
+                "A repeated length that differs is left for forRequest to refuse");
+    }
+
+    @Test
+    void testContentLengthStopsAtEndOfBody() throws IOException {
+        BodyDecoder decoder = BodyDecoder.forRequest(request("Content-Length: 5\r\n"), MAX);
+        ByteBuffer buffer = bytes("helloGET /next");
+
+        assertEquals("hello", drain(decoder, buffer));
+        assertTrue(decoder.isComplete());
+        assertEquals(5, buffer.position(), "Bytes after the body belong to the next request");
+    }
+
+    @Test
+    void testChunkedBodySplitAcrossReads() throws IOException {
+        BodyDecoder decoder = BodyDecoder.forRequest(request("Transfer-Encoding: chunked\r\n"), MAX);
+        byte[] data = "5;name=value\r\nhello\r\n7\r\n, world\r\n0\r\nChecksum: abc\r\n\r\nGET"
+                .getBytes(StandardCharsets.ISO_8859_1);
+
+        // One byte at a time, as the worst case of a socket read
+        StringBuilder body = new StringBuilder();
+        int consumed = 0;
+        for (byte b : data) {
+            ByteBuffer buffer = ByteBuffer.wrap(new byte[] { b });
+            body.append(drain(decoder, buffer));
+            consumed += buffer.position();
+            if (decoder.isComplete()) {
+                break;
+            }
+        }
+
+        assertEquals("hello, world", body.toString());
+        assertTrue(decoder.isComplete());
+        assertEquals(data.length - 3, consumed, "The trailer section ends the body");
+        assertEquals(-1, decoder.getContentLength());
+        assertEquals(12, decoder.getDecoded());
+    }
+
+    @Test
+    void testOversizedContentLengthIsRefusedUpFront() throws IOException {
+        HttpStatusException e = assertThrows(HttpStatusException.class,
+                () -> BodyDecoder.forRequest(request("Content-Length: 1025\r\n"), MAX));
+        assertEquals("413 Payload Too Large", e.getStatusCode());
+    }
+
+    @Test
+    void testChunkedBodyPastMaximumIsRefused() throws IOException {
+        BodyDecoder decoder = BodyDecoder.forRequest(request("Transfer-Encoding: chunked\r\n"), MAX);
+        ByteBuffer first = bytes("400\r\n" + "x".repeat(1024) + "\r\n");
+        assertEquals(1024, drain(decoder, first).length());
+
+        // Refused on the size line, before any of the chunk is read
+        HttpStatusException e = assertThrows(HttpStatusException.class, () -> decoder.next(bytes("1\r\n")));
+        assertEquals("413 Payload Too Large", e.getStatusCode());
+    }
+
+    @Test
+    void testInvalidFramingIsRefused() throws IOException {
+        assertEquals("400 Bad Request", assertThrows(HttpStatusException.class,
+                () -> BodyDecoder.forRequest(request("Content-Length: 5\r\nTransfer-Encoding: chunked\r\n"), MAX))
+                .getStatusCode());
+        assertEquals("400 Bad Request", assertThrows(HttpStatusException.class,
+                () -> BodyDecoder.forRequest(request("Content-Length: -5\r\n"), MAX)).getStatusCode());
+        assertEquals("501 Not Implemented", assertThrows(HttpStatusException.class,
+                () -> BodyDecoder.forRequest(request("Transfer-Encoding: gzip, chunked\r\n"), MAX))
+                .getStatusCode());
+
+        BodyDecoder decoder = BodyDecoder.forRequest(request("Transfer-Encoding: chunked\r\n"), MAX);
+        assertEquals("400 Bad Request",
+                assertThrows(HttpStatusException.class, () -> decoder.next(bytes("zz\r\n"))).getStatusCode());
+    }
+}
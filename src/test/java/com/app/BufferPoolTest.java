@@ -0,0 +1,49 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    void testReleasedBufferIsReused() {
+        BufferPool pool = new BufferPool(1024, 4);
+        ByteBuffer buffer = pool.acquire();
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(1, pool.getPooledCount());
+
+        ByteBuffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position(), "Reused buffers should come back cleared");
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    void testPoolKeepsAtMostMaxBuffers() {
+        BufferPool pool = new BufferPool(64, 2);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        ByteBuffer third = pool.acquire();
+
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertEquals(2, pool.getPooledCount());
+    }
+
+    @Test
+    void testForeignBufferIsNotPooled() {
+        BufferPool pool = new BufferPool(64, 2);
+        pool.release(ByteBuffer.allocateDirect(128));
+
+        assertEquals(0, pool.getPooledCount());
+    }
+}
@@ -0,0 +1,155 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class BulkheadTest {
+
+    private static CompletableFuture<HttpResponse> call(Router.AsyncHandler handler) {
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/work", new HttpHeaders());
+        return handler.handle(request, new HttpResponse("HTTP/1.1"));
+    }
+
+    @Test
+    void testQueuesThenRejectsBeyondTheLimit() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1);
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        CountDownLatch started = new CountDownLatch(2);
+        Router.AsyncHandler handler = bulkhead.guardAsync((request, response) -> {
+            started.countDown();
+            return release.thenApply(ignored -> response);
+        });
+
+        CompletableFuture<HttpResponse> first = call(handler);
+        CompletableFuture<HttpResponse> second = call(handler);
+        HttpResponse third = call(handler).getNow(null);
+
+        assertNotNull(third, "A request beyond the queue is answered at once");
+        assertEquals("503 Service Unavailable", third.getStatusCode());
+        assertEquals("1", third.getHeaders().get(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, bulkhead.getActive());
+        assertEquals(1, bulkhead.getQueued());
+        assertEquals(1, bulkhead.getRejected());
+        assertEquals(2, bulkhead.getAdmitted());
+        assertFalse(started.await(100, TimeUnit.MILLISECONDS), "The queued request waits for the first");
+
+        release.complete(null);
+        assertEquals("200 OK", first.get(1, TimeUnit.SECONDS).getStatusCode());
+        assertEquals("200 OK", second.get(1, TimeUnit.SECONDS).getStatusCode());
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.getActive());
+        assertEquals(2, bulkhead.getQueueWait().getCount());
+    }
+
+    @Test
+    void testStreamedResponseHoldsItsPlaceUntilTheBodyIsWritten() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0);
+        Router.AsyncHandler handler = bulkhead.guard((request, response) ->
+                response.setBodyWriter(body -> body.write("streamed".getBytes(StandardCharsets.UTF_8))));
+
+        HttpResponse response = call(handler).get(1, TimeUnit.SECONDS);
+        assertTrue(response.isStreamed());
+        assertEquals(1, bulkhead.getActive(), "The body has not been written yet");
+        assertEquals("503 Service Unavailable", call(handler).getNow(null).getStatusCode());
+
+        Responder.writeStreamedBody(response, new ByteArrayOutputStream());
+        assertEquals(0, bulkhead.getActive());
+
+        HttpResponse dropped = call(handler).get(1, TimeUnit.SECONDS);
+        dropped.bodyDone();
+        assertEquals(0, bulkhead.getActive(), "A dropped body gives its place back");
+    }
+
+    @Test
+    void testStreamedRequestsBeyondTheLimitAllComplete() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 2, 8);
+        Processor processor = new Processor(Router.builder()
+                .getAsync("/stream", bulkhead.guard((request, response) ->
+                        response.setBodyWriter(body -> body.write("streamed".getBytes(StandardCharsets.UTF_8)))))
+                .build());
+
+        for (int i = 0; i < 3 * (2 + 8); i++) {
+            // HTTP/1.0 bodies are gathered by the processor, HTTP/1.1 ones
+            // are written or dropped by the caller
+            String protocol = i % 3 == 0 ? "HTTP/1.0" : "HTTP/1.1";
+            HttpResponse response = processor.processRequestAsync(
+                    new HttpRequest("GET", protocol, "/stream", new HttpHeaders())).get(1, TimeUnit.SECONDS);
+            assertEquals("200 OK", response.getStatusCode(), "Request " + i);
+            if (i % 3 == 1) {
+                Responder.writeStreamedBody(response, new ByteArrayOutputStream());
+            } else if (i % 3 == 2) {
+                response.bodyDone();
+            }
+        }
+        assertEquals(0, bulkhead.getActive());
+        assertEquals(0, bulkhead.getRejected());
+    }
+
+    @Test
+    void testFailedFilterDropsTheStreamedBody() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0);
+        Processor processor = new Processor(Router.builder()
+                .getAsync("/stream", bulkhead.guard((request, response) ->
+                        response.setBodyWriter(body -> body.write("streamed".getBytes(StandardCharsets.UTF_8)))))
+                .build(), Pipeline.builder().after((request, response) -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        HttpResponse response = processor.processRequestAsync(
+                new HttpRequest("GET", "HTTP/1.1", "/stream", new HttpHeaders())).get(1, TimeUnit.SECONDS);
+
+        assertEquals("500 Internal Server Error", response.getStatusCode());
+        assertEquals(0, bulkhead.getActive(), "The response that was never sent gave back its place");
+    }
+
+    @Test
+    void testFailedHandlerGivesBackItsPlace() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0);
+        Router.AsyncHandler handler = bulkhead.guard((request, response) -> {
+            throw new IllegalStateException("boom");
+        });
+
+        CompletableFuture<HttpResponse> failed = call(handler);
+        Exception e = assertThrows(Exception.class, () -> failed.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    @Test
+    void testRejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new Bulkhead("none", 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new Bulkhead("negative", 1, -1));
+    }
+
+    @Test
+    void testFullBulkheadAnswers503ThroughTheProcessor() throws IOException {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0);
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        Processor processor = new Processor(Router.builder()
+                .getAsync("/slow", bulkhead.guardAsync((request, response) -> release.thenApply(ignored -> {
+                    response.setBody("done");
+                    return response;
+                })))
+                .get("/", (request, response) -> response.setBody("cheap"))
+                .build());
+
+        CompletableFuture<HttpResponse> slow = processor.processRequestAsync(
+                new HttpRequest("GET", "HTTP/1.1", "/slow", new HttpHeaders()));
+        HttpResponse overflow = processor.processRequest(
+                new HttpRequest("GET", "HTTP/1.1", "/slow", new HttpHeaders()));
+        HttpResponse cheap = processor.processRequest(new HttpRequest("GET", "HTTP/1.1", "/", new HttpHeaders()));
+
+        assertEquals("503 Service Unavailable", overflow.getStatusCode());
+        assertEquals("cheap", cheap.getBody(), "Routes outside the bulkhead are not held up");
+        release.complete(null);
+        assertEquals("done", slow.join().getBody());
+    }
+}
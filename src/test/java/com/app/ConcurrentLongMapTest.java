@@ -0,0 +1,113 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentLongMapTest {
+
+    @Test
+    void testPutGetAndRemove() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+
+        assertNull(map.put(7, "seven"));
+        assertEquals("seven", map.put(7, "SEVEN"), "Putting an existing key returns the old value");
+        assertEquals("SEVEN", map.get(7));
+        assertNull(map.get(8));
+        assertEquals(1, map.size());
+
+        assertEquals("SEVEN", map.remove(7));
+        assertNull(map.remove(7));
+        assertNull(map.get(7));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void testNullValueRejected() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    void testGrowsAndSurvivesChurn() {
+        // One segment puts every key in the same table, so removals have to
+        // shift probed entries back into place for lookups to keep working
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(1);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 2_000; key++) {
+            assertEquals(expected.get(key), map.get(key), "key " + key);
+        }
+    }
+
+    @Test
+    void testValuesIsACopy() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+        for (long key = 1; key <= 100; key++) {
+            map.put(key, "v" + key);
+        }
+
+        List<String> values = map.values();
+        assertEquals(100, values.size());
+
+        map.remove(1);
+        assertEquals(100, values.size());
+        assertTrue(values.contains("v1"));
+    }
+
+    @Test
+    void testConcurrentUpdatesOnDistinctKeys() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(4);
+        int threads = 8;
+        int perThread = 5_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            long base = (long) t * perThread;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long key = base; key < base + perThread; key++) {
+                    map.put(key, key);
+                }
+                // Remove every other key again
+                for (long key = base; key < base + perThread; key += 2) {
+                    map.remove(key);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * perThread / 2, map.size());
+        for (long key = 0; key < (long) threads * perThread; key++) {
+            assertEquals(key % 2 == 0 ? null : Long.valueOf(key), map.get(key));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures how quickly a transport takes on new connections and what each idle
+ * connection costs. Not a unit test: run it with
+ *
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.app.ConnectionBenchmark -Dexec.args="virtual 2000"
+ * </pre>
+ *
+ * <p>
+ * Arguments are the transport mode (blocking, nio or virtual) and the number of
+ * connections. In blocking mode the pool is sized to one platform thread per
+ * connection so every connection can be served. Each client connects, completes
+ * one keep-alive request and then stays idle while memory is sampled. The
+ * clients run in the same process, so their sockets are included in the RSS
+ * figure.
+ * </p>
+ */
+public class ConnectionBenchmark {
+    private static final byte[] REQUEST = ("GET / HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final int CLIENT_THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        TransportMode mode = args.length > 0 ? TransportMode.valueOf(args[0].toUpperCase()) : TransportMode.VIRTUAL;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        ServerConfig config = new ServerConfig();
+        config.setTransportMode(mode);
+        if (mode == TransportMode.BLOCKING) {
+            config.setWorkerThreads(connections);
+        }
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Server server = new Server(config);
+        server.start();
+        Thread.sleep(500);
+
+        long heapBefore = usedHeapAfterGc();
+        long rssBefore = residentSetKb();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        List<Socket> sockets = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> clients = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < CLIENT_THREADS; t++) {
+            int share = connections / CLIENT_THREADS + (t < connections % CLIENT_THREADS ? 1 : 0);
+            Thread client = new Thread(() -> {
+                for (int i = 0; i < share; i++) {
+                    try {
+                        sockets.add(openAndRequest());
+                    } catch (IOException e) {
+                        System.err.println("Connection failed: " + e.getMessage());
+                    }
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Thread.sleep(500);
+        long heapAfter = usedHeapAfterGc();
+        long rssAfter = residentSetKb();
+        int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        int open = sockets.size();
+        console.printf("mode=%s connections=%d%n", mode, open);
+        console.printf("connections/sec: %.0f%n", open / (elapsed / 1e9));
+        console.printf("platform threads: %d -> %d%n", threadsBefore, threadsAfter);
+        if (open > 0) {
+            console.printf("heap per connection: %.1f KB%n", (heapAfter - heapBefore) / 1024.0 / open);
+            console.printf("RSS per connection: %.1f KB%n", (rssAfter - rssBefore) / (double) open);
+        }
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        server.stop();
+        System.exit(0);
+    }
+
+    private static Socket openAndRequest() throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress("localhost", 8080));
+        socket.setSoTimeout(30000);
+        OutputStream out = socket.getOutputStream();
+        out.write(REQUEST);
+        out.flush();
+
+        // The body of "/" is short, so reading until it ends is enough
+        InputStream in = socket.getInputStream();
+        StringBuilder response = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            response.append((char) b);
+            if (response.toString().endsWith("Successful GET Request")) {
+                return socket;
+            }
+        }
+        socket.close();
+        throw new IOException("Connection closed before the response completed");
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long residentSetKb() throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class ConnectionManagerTest {
+
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("127.0.0.1", 50000);
+
+    @Test
+    void testConnectionsFromSameAddressGetDistinctIds() {
+        ConnectionManager manager = new ConnectionManager();
+
+        ConnectionStats first = manager.open(CLIENT);
+        ConnectionStats second = manager.open(CLIENT);
+
+        assertNotEquals(first.getId(), second.getId());
+        assertSame(first, manager.get(first.getId()));
+        assertSame(second, manager.get(second.getId()));
+        assertEquals(2, manager.getOpenConnections());
+    }
+
+    @Test
+    void testCloseRemovesOnlyThatConnection() {
+        ConnectionManager manager = new ConnectionManager();
+        ConnectionStats first = manager.open(CLIENT);
+        ConnectionStats second = manager.open(CLIENT);
+
+        manager.close(first);
+        manager.close(first);
+
+        assertNull(manager.get(first.getId()));
+        assertSame(second, manager.get(second.getId()));
+        assertEquals(1, manager.getOpenConnections());
+        assertEquals(2, manager.getOpenedConnections());
+    }
+
+    @Test
+    void testSnapshotIsUnaffectedByLaterChanges() {
+        ConnectionManager manager = new ConnectionManager();
+        ConnectionStats first = manager.open(CLIENT);
+        manager.open(CLIENT);
+
+        List<ConnectionStats> snapshot = manager.snapshot();
+        manager.close(first);
+        manager.open(CLIENT);
+
+        assertEquals(2, snapshot.size());
+        assertTrue(snapshot.contains(first));
+    }
+
+    @Test
+    void testStreamsCountBytes() throws IOException {
+        ConnectionStats stats = new ConnectionManager().open(CLIENT);
+
+        InputStream in = stats.countInput(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5 }));
+        in.read();
+        in.read(new byte[10], 0, 10);
+        assertEquals(-1, in.read());
+
+        OutputStream out = stats.countOutput(new ByteArrayOutputStream());
+        out.write(new byte[] { 1, 2, 3 });
+        out.write(4);
+
+        stats.recordRequest();
+        stats.setProtocol("http/1.1");
+
+        assertEquals(5, stats.getBytesIn());
+        assertEquals(4, stats.getBytesOut());
+        assertEquals(1, stats.getRequests());
+        assertEquals("http/1.1", stats.getProtocol());
+        assertEquals(CLIENT, stats.getRemoteAddress());
+    }
+}
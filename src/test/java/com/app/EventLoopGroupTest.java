@@ -0,0 +1,99 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class EventLoopGroupTest {
+    private EventLoopGroup group;
+
+    @AfterEach
+    void tearDown() {
+        if (group != null) {
+            group.shutdown();
+        }
+    }
+
+    @Test
+    void testRoundRobinCyclesThroughLoops() throws IOException {
+        group = new EventLoopGroup("test", 3, LoopAssignment.ROUND_ROBIN);
+
+        EventLoop first = group.next();
+        EventLoop second = group.next();
+        EventLoop third = group.next();
+
+        assertNotSame(first, second);
+        assertNotSame(second, third);
+        assertNotSame(first, third);
+        assertSame(first, group.next(), "Assignment should wrap around to the first loop");
+    }
+
+    @Test
+    void testLeastConnectionsPicksQuietestLoop() throws IOException {
+        group = new EventLoopGroup("test", 3, LoopAssignment.LEAST_CONNECTIONS);
+
+        EventLoop busy = group.next();
+        busy.connectionOpened();
+        busy.connectionOpened();
+
+        EventLoop other = group.next();
+        assertNotSame(busy, other);
+        other.connectionOpened();
+
+        EventLoop quietest = group.next();
+        assertNotSame(busy, quietest);
+        assertNotSame(other, quietest);
+        assertEquals(0, quietest.getConnectionCount());
+
+        busy.connectionClosed();
+        busy.connectionClosed();
+        assertSame(busy, group.next(), "Loop with no remaining connections should be chosen first");
+    }
+
+    @Test
+    void testFailingHandlerClosesOnlyItsChannel() throws Exception {
+        group = new EventLoopGroup("test", 1, LoopAssignment.ROUND_ROBIN);
+        group.start();
+        EventLoop loop = group.next();
+        Pipe pipe = Pipe.open();
+
+        CompletableFuture<Void> registered = new CompletableFuture<>();
+        loop.execute(() -> {
+            try {
+                loop.register(pipe.source(), SelectionKey.OP_READ, key -> {
+                    throw new IllegalStateException("boom");
+                });
+                registered.complete(null);
+            } catch (IOException e) {
+                registered.completeExceptionally(e);
+            }
+        });
+        registered.get(5, TimeUnit.SECONDS);
+        pipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+
+        for (int i = 0; i < 500 && pipe.source().isOpen(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(pipe.source().isOpen(), "The failing channel should be closed");
+
+        CountDownLatch ran = new CountDownLatch(1);
+        loop.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS), "The loop should keep running");
+        pipe.sink().close();
+    }
+
+    @Test
+    void testEmptyGroupIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new EventLoopGroup("test", 0,
+                LoopAssignment.ROUND_ROBIN));
+    }
+}
@@ -170,6 +170,30 @@ public class Http2ConnectionManagerTest {
         assertTrue(exception.getMessage().contains("Failed to send frame"));
     }
 
+    @Test
+    public void testFrameDumpsAreOffByDefault() {
+        assertFalse(connectionManager.isFrameDumps());
+        connectionManager.setFrameDumps(true);
+        assertTrue(connectionManager.isFrameDumps());
+    }
+
+    @Test
+    public void testDescribeFrame() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] { (byte) 0x82, (byte) 0x86, 0x41 });
+        String description = Http2ConnectionManager.describeFrame("RECEIVED", Http2Frame.TYPE_HEADERS,
+                Http2Frame.FLAG_END_STREAM | Http2Frame.FLAG_END_HEADERS, 3, payload);
+
+        assertTrue(description.startsWith("RECEIVED Frame Type: HEADERS, Stream ID: 3"));
+        assertTrue(description.contains("END_STREAM END_HEADERS"));
+        assertTrue(description.contains("Payload size: 3 bytes"));
+        assertTrue(description.endsWith("82 86 41 "));
+        assertEquals(0, payload.position(), "Describing a frame must not consume its payload");
+
+        String ack = Http2ConnectionManager.describeFrame("SENDING", Http2Frame.TYPE_SETTINGS, Http2Frame.FLAG_ACK, 0,
+                ByteBuffer.allocate(0));
+        assertTrue(ack.contains("(ACK )"), ack);
+    }
+
     // @Test
     // public void testSendSettingsFrameUpdatesLocalSettings() throws IOException {
     // Http2Settings initialSettings = connectionManager.getLocalSettings();
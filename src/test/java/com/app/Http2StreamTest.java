@@ -4,7 +4,6 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -265,14 +264,15 @@ public class Http2StreamTest {
         assertEquals("GET", stream.getRequestHeader("method"));
         assertEquals("GET", stream.getRequestHeader("METHOD")); // Case insensitive
 
-        HashMap<String, String> requestHeaders = stream.getRequestHeaders();
+        HttpHeaders requestHeaders = stream.getRequestHeaders();
         assertEquals(3, requestHeaders.size());
         assertEquals("GET", requestHeaders.get("method"));
         assertEquals("/test", requestHeaders.get("path"));
         assertEquals("https", requestHeaders.get("scheme"));
 
-        requestHeaders.put("new-header", "value");
-        assertNull(stream.getRequestHeader("new-header"));
+        // The stream hands out its own headers rather than a copy
+        requestHeaders.add("new-header", "value");
+        assertEquals("value", stream.getRequestHeader("new-header"));
     }
 
     @Test
@@ -285,21 +285,19 @@ public class Http2StreamTest {
         assertEquals("text/html", stream.getResponseHeader("content-type"));
         assertEquals("text/html", stream.getResponseHeader("CONTENT-TYPE")); // Case insensitive
 
-        HashMap<String, String> responseHeaders = stream.getResponseHeaders();
+        HttpHeaders responseHeaders = stream.getResponseHeaders();
         assertEquals(2, responseHeaders.size());
-
-        responseHeaders.put("new-header", "value");
-        assertNull(stream.getResponseHeader("new-header"));
+        assertSame(responseHeaders, stream.getResponseHeaders());
     }
 
     @Test
     @DisplayName("Receive headers should update stream state correctly")
     public void testReceiveHeaders() {
         // Create headers to receive
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put(":method", "GET");
-        headers.put(":path", "/test");
-        headers.put(":scheme", "https");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(":method", "GET");
+        headers.add(":path", "/test");
+        headers.add(":scheme", "https");
 
         // Receive headers without end stream
         stream.receiveHeaders(headers, false);
@@ -315,9 +313,11 @@ public class Http2StreamTest {
         assertEquals(StreamState.IDLE, stream.getState()); // State shouldn't change without endStream
 
         // Receive more headers with end stream
-        HashMap<String, String> trailers = new HashMap<>();
-        trailers.put("x-custom-trailer", "value");
+        HttpHeaders trailers = new HttpHeaders();
+        trailers.add("x-custom-trailer", "value");
         stream.receiveHeaders(trailers, true);
+        assertEquals("value", stream.getTrailer("x-custom-trailer"));
+        assertNull(stream.getRequestHeader("x-custom-trailer"), "Trailers are kept apart from the headers");
 
         // Verify end stream flag is now set and remote side is closed
         assertTrue(stream.isEndStreamReceived());
@@ -334,9 +334,9 @@ public class Http2StreamTest {
         // First transition to OPEN
         stream.transitionToOpen();
 
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put(":method", "GET");
-        headers.put(":path", "/test");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(":method", "GET");
+        headers.add(":path", "/test");
         stream.receiveHeaders(headers, true);
 
         assertTrue(stream.isHeadersReceived());
@@ -380,9 +380,9 @@ public class Http2StreamTest {
     public void testSendHeaders() throws IOException {
         stream.transitionToOpen();
 
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put(":status", "200");
-        headers.put("content-type", "text/plain");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(":status", "200");
+        headers.add("content-type", "text/plain");
 
         stream.sendHeaders(headers, false);
 
@@ -392,8 +392,8 @@ public class Http2StreamTest {
         assertFalse(stream.isEndStreamSent());
         assertEquals(StreamState.OPEN, stream.getState());
 
-        HashMap<String, String> moreHeaders = new HashMap<>();
-        moreHeaders.put("x-custom", "value");
+        HttpHeaders moreHeaders = new HttpHeaders();
+        moreHeaders.add("x-custom", "value");
         stream.sendHeaders(moreHeaders, true);
 
         assertEquals("value", stream.getResponseHeader("x-custom"));
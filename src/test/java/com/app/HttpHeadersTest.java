@@ -0,0 +1,108 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class HttpHeadersTest {
+
+    @Test
+    void testLookupIgnoresCase() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("content-type", "text/html");
+        headers.add("X-Custom", "1");
+
+        assertEquals("text/html", headers.get("Content-Type"));
+        assertEquals("text/html", headers.get("CONTENT-TYPE"));
+        assertEquals("1", headers.get("x-custom"));
+        assertTrue(headers.contains("X-CUSTOM"));
+        assertNull(headers.get("Content-Length"));
+    }
+
+    @Test
+    void testWellKnownNamesAreCanonical() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("content-length", "5");
+        headers.add("x-other", "1");
+
+        assertSame(HttpHeaders.CONTENT_LENGTH, headers.getName(0), "Well-known names share one constant");
+        assertEquals("x-other", headers.getName(1), "Other names are kept as given");
+
+        byte[] wire = "ACCEPT-ENCODING".getBytes(StandardCharsets.US_ASCII);
+        assertSame(HttpHeaders.ACCEPT_ENCODING, HttpHeaders.canonicalName(wire, 0, wire.length));
+        assertSame(HttpHeaders.lowerCase(HttpHeaders.HOST), HttpHeaders.lowerCase("HOST"));
+        assertEquals("x-other", HttpHeaders.lowerCase("X-Other"));
+        assertArrayEquals("content-type".getBytes(StandardCharsets.US_ASCII),
+                HttpHeaders.lowerCaseBytes(HttpHeaders.CONTENT_TYPE));
+    }
+
+    @Test
+    void testRepeatedNamesKeepEveryValue() {
+        HttpHeaders headers = new HttpHeaders(1);
+        headers.add("Set-Cookie", "a=1");
+        headers.add("Vary", "Accept");
+        headers.add("set-cookie", "b=2");
+
+        assertEquals(List.of("a=1", "b=2"), headers.getAll("Set-Cookie"));
+        assertEquals("b=2", headers.get("Set-Cookie"), "The last value wins a single lookup");
+        assertEquals(3, headers.size());
+        assertTrue(headers.getAll("Missing").isEmpty());
+    }
+
+    @Test
+    void testSetReplacesEveryValueInPlace() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("A", "1");
+        headers.add("B", "2");
+        headers.add("a", "3");
+        headers.add("C", "4");
+
+        headers.set("A", "5");
+        headers.set("D", "6");
+
+        assertEquals(4, headers.size());
+        assertEquals("A", headers.getName(0));
+        assertEquals("5", headers.getValue(0));
+        assertEquals("B", headers.getName(1));
+        assertEquals("C", headers.getName(2));
+        assertEquals("D", headers.getName(3));
+        assertEquals(List.of("5"), headers.getAll("a"));
+    }
+
+    @Test
+    void testRemoveDropsEveryValue() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("A", "1");
+        headers.add("B", "2");
+        headers.add("a", "3");
+
+        assertTrue(headers.remove("A"));
+        assertFalse(headers.remove("A"));
+        assertEquals(1, headers.size());
+        assertEquals("B", headers.getName(0));
+        assertEquals("{B=2}", headers.toString());
+    }
+
+    @Test
+    void testParsedHeadersAreReadInPlaceUntilChanged() throws IOException {
+        HttpRequest request = new RequestParser().parse(ByteBuffer.wrap(
+                "GET / HTTP/1.1\r\nhost: a\r\nX-Dup: 1\r\nX-Dup: 2\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+        HttpHeaders headers = request.getRequestHeaders();
+
+        assertSame(HttpHeaders.HOST, headers.getName(0));
+        assertEquals(List.of("1", "2"), headers.getAll("x-dup"));
+
+        headers.add("Via", "test");
+        headers.set("Host", "b");
+
+        assertEquals(4, headers.size());
+        assertEquals("b", request.getHeader("HOST"));
+        assertEquals("test", request.getHeader("via"));
+        assertEquals("2", request.getHeader("X-Dup"));
+    }
+}
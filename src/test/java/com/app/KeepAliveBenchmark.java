@@ -0,0 +1,160 @@
+package com.app;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures what persistent HTTP/1.1 connections save over opening a new
+ * connection for every request. Not a unit test: run it with
+ *
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.app.KeepAliveBenchmark -Dexec.args="nio 20000 1000"
+ * </pre>
+ *
+ * <p>
+ * Arguments are the transport mode (blocking, nio or virtual), the number of
+ * requests and the server's limit on requests per connection (0 for none).
+ * The same requests are sent twice, one at a time: first each on a connection
+ * of its own with "Connection: close", then on persistent connections that
+ * rely on HTTP/1.1 defaulting to keep-alive. A persistent client opens a new
+ * connection only when a response says "Connection: close".
+ * </p>
+ */
+public class KeepAliveBenchmark {
+    private static final byte[] CLOSE_REQUEST = ("GET / HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PERSISTENT_REQUEST = ("GET / HTTP/1.1\r\n"
+            + "Host: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final int WARMUP = 2000;
+
+    public static void main(String[] args) throws Exception {
+        TransportMode mode = args.length > 0 ? TransportMode.valueOf(args[0].toUpperCase()) : TransportMode.NIO;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int maxPerConnection = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        ServerConfig config = new ServerConfig();
+        config.setTransportMode(mode);
+        config.setMaxKeepAliveRequests(maxPerConnection);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Server server = new Server(config);
+        server.start();
+        Thread.sleep(500);
+
+        reconnecting(WARMUP);
+        persistent(WARMUP);
+
+        long start = System.nanoTime();
+        reconnecting(requests);
+        long reconnectNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int connections = persistent(requests);
+        long persistentNanos = System.nanoTime() - start;
+
+        console.printf("mode=%s requests=%d max-per-connection=%d%n", mode, requests, maxPerConnection);
+        console.printf("connection per request: %.0f req/s, %.1f us/request, %d connections%n",
+                requests / (reconnectNanos / 1e9), reconnectNanos / 1e3 / requests, requests);
+        console.printf("persistent:             %.0f req/s, %.1f us/request, %d connections%n",
+                requests / (persistentNanos / 1e9), persistentNanos / 1e3 / requests, connections);
+        console.printf("speedup: %.2fx%n", (double) reconnectNanos / persistentNanos);
+
+        server.stop();
+        System.exit(0);
+    }
+
+    private static void reconnecting(int requests) throws IOException {
+        for (int i = 0; i < requests; i++) {
+            try (Socket socket = open()) {
+                socket.getOutputStream().write(CLOSE_REQUEST);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                readResponse(in);
+                if (in.read() != -1) {
+                    throw new IOException("Connection stayed open after Connection: close");
+                }
+            }
+        }
+    }
+
+    private static int persistent(int requests) throws IOException {
+        int connections = 0;
+        Socket socket = null;
+        InputStream in = null;
+        try {
+            for (int i = 0; i < requests; i++) {
+                if (socket == null) {
+                    socket = open();
+                    in = new BufferedInputStream(socket.getInputStream());
+                    connections++;
+                }
+                socket.getOutputStream().write(PERSISTENT_REQUEST);
+                if (!readResponse(in)) {
+                    socket.close();
+                    socket = null;
+                }
+            }
+        } finally {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        return connections;
+    }
+
+    private static Socket open() throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress("localhost", 8080));
+        socket.setSoTimeout(30000);
+        return socket;
+    }
+
+    /**
+     * Reads one response.
+     *
+     * @return false if the server said it will close the connection
+     */
+    private static boolean readResponse(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            head.append((char) b);
+            if (head.length() >= 4 && head.lastIndexOf("\r\n\r\n") == head.length() - 4) {
+                break;
+            }
+        }
+        if (b == -1) {
+            throw new IOException("Connection closed before the response completed");
+        }
+
+        int contentLength = 0;
+        boolean keepAlive = true;
+        for (String line : head.toString().split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(value);
+            } else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close")) {
+                keepAlive = false;
+            }
+        }
+        if (in.readNBytes(contentLength).length != contentLength) {
+            throw new IOException("Connection closed before the response body completed");
+        }
+        return keepAlive;
+    }
+}
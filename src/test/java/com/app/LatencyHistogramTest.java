@@ -0,0 +1,57 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void testBucketBoundaries() {
+        assertEquals(0, LatencyHistogram.bucketFor(0));
+        assertEquals(1, LatencyHistogram.bucketFor(1));
+        assertEquals(2, LatencyHistogram.bucketFor(2));
+        assertEquals(2, LatencyHistogram.bucketFor(3));
+        assertEquals(11, LatencyHistogram.bucketFor(1024));
+        assertEquals(31, LatencyHistogram.bucketFor(Long.MAX_VALUE), "Huge samples land in the last bucket");
+    }
+
+    @Test
+    void testPercentilesAndMean() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100_000); // 100us
+        }
+        histogram.record(50_000_000); // 50ms
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(128, histogram.getPercentileMicros(50));
+        assertEquals(128, histogram.getPercentileMicros(99));
+        assertEquals(65536, histogram.getPercentileMicros(100));
+        assertEquals(599.0, histogram.getMeanMicros(), 0.001);
+    }
+
+    @Test
+    void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(99));
+        assertEquals(0.0, histogram.getMeanMicros());
+    }
+
+    @Test
+    void testTlsMetricsSplitsFullAndResumed() {
+        TlsMetrics metrics = new TlsMetrics();
+        metrics.recordHandshake(false, 5_000_000);
+        metrics.recordHandshake(true, 500_000);
+        metrics.recordHandshake(true, 400_000);
+        metrics.recordFailure();
+
+        assertEquals(1, metrics.getFullHandshakes());
+        assertEquals(2, metrics.getResumedHandshakes());
+        assertEquals(1, metrics.getFailedHandshakes());
+        assertEquals(1, metrics.getFullLatency().getCount());
+        assertEquals(2, metrics.getResumedLatency().getCount());
+    }
+}
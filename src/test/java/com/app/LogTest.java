@@ -0,0 +1,127 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LogTest {
+    private PrintStream originalOut;
+    private PrintStream originalErr;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    @BeforeEach
+    void captureConsole() {
+        Log.flush(1000);
+        originalOut = System.out;
+        originalErr = System.err;
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void restoreConsole() {
+        Log.flush(1000);
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        Log.setLevel(Log.Level.INFO);
+    }
+
+    @Test
+    void testFormatReplacesPlaceholdersInOrder() {
+        assertEquals("stream 3 sent 12 bytes", Log.format("stream {} sent {} bytes", 3, 12));
+        assertEquals("value null", Log.format("value {}", null, "unused"));
+        assertEquals("no placeholders", Log.format("no placeholders", 1, 2));
+        assertEquals("a {} {}", Log.format("a {} {}", "{}", "{}"));
+    }
+
+    @Test
+    void testDisabledLevelsAreDropped() {
+        Log.setLevel(Log.Level.WARN);
+        assertFalse(Log.isDebugEnabled());
+        assertFalse(Log.isEnabled(Log.Level.INFO));
+        assertTrue(Log.isEnabled(Log.Level.ERROR));
+
+        Log.info("hidden {}", 1);
+        Log.debug("hidden too");
+        Log.warn("shown {}", 2);
+        assertTrue(Log.flush(1000));
+
+        assertEquals("", out.toString(StandardCharsets.UTF_8));
+        String errors = err.toString(StandardCharsets.UTF_8);
+        assertTrue(errors.contains("WARN"), errors);
+        assertTrue(errors.contains("shown 2"), errors);
+        assertFalse(errors.contains("hidden"), errors);
+    }
+
+    @Test
+    void testMessagesGoToTheStreamForTheirLevel() {
+        Log.setLevel(Log.Level.DEBUG);
+        Log.debug("detail {} of {}", 1, 2);
+        Log.info("started");
+        Log.error("failed", new IllegalStateException("boom"));
+        assertTrue(Log.flush(1000));
+
+        String output = out.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("DEBUG [" + Thread.currentThread().getName() + "] detail 1 of 2"), output);
+        assertTrue(output.indexOf("detail") < output.indexOf("started"), "Messages keep their order");
+
+        String errors = err.toString(StandardCharsets.UTF_8);
+        assertTrue(errors.contains("ERROR"), errors);
+        assertTrue(errors.contains("java.lang.IllegalStateException: boom"), "The stack trace follows the message");
+        assertFalse(output.contains("failed"));
+    }
+
+    @Test
+    void testConcurrentMessagesAreAllWritten() throws InterruptedException {
+        int threads = 4;
+        int perThread = 1000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    Log.info("worker {} message {}", id, i);
+                    if (i % 100 == 0) {
+                        // Stay under the ring's capacity
+                        Log.flush(1000);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        long droppedBefore = Log.getDropped();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertTrue(Log.flush(5000));
+
+        String output = out.toString(StandardCharsets.UTF_8);
+        long lines = output.lines().filter(line -> line.contains("worker ")).count();
+        assertEquals(threads * perThread - (Log.getDropped() - droppedBefore), lines);
+        assertTrue(output.contains("worker 3 message 999"));
+    }
+
+    @Test
+    void testParsesLevelNames() {
+        assertEquals(Log.Level.DEBUG, Log.Level.parse("debug"));
+        assertEquals(Log.Level.WARN, Log.Level.parse(" Warn "));
+        assertThrows(IllegalArgumentException.class, () -> Log.Level.parse("verbose"));
+    }
+}
@@ -0,0 +1,333 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+public class NioConnectionTest {
+    private EventLoop eventLoop;
+    private ExecutorService workers;
+    private ServerSocketChannel serverChannel;
+    private Socket client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        eventLoop = new EventLoop("test-loop");
+        eventLoop.start();
+        workers = Executors.newFixedThreadPool(2);
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("localhost", 0));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        serverChannel.close();
+        eventLoop.shutdown();
+        workers.shutdownNow();
+    }
+
+    private NioConnection connect(CountDownLatch closed) throws IOException {
+        return connect(closed, new ServerConfig());
+    }
+
+    private NioConnection connect(CountDownLatch closed, ServerConfig config) throws IOException {
+        client = new Socket();
+        client.connect(serverChannel.getLocalAddress());
+        client.setSoTimeout(5000);
+        SocketChannel channel = serverChannel.accept();
+
+        NioConnection connection = new NioConnection(channel, eventLoop, workers, "http/1.1");
+        connection.setConfig(config);
+        connection.setCloseListener(closed::countDown);
+        connection.register();
+        return connection;
+    }
+
+    private String readResponse(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int contentLength = -1;
+        int b;
+        while ((b = in.read()) != -1) {
+            sb.append((char) b);
+            if (sb.toString().endsWith("\r\n\r\n")) {
+                for (String line : sb.toString().split("\r\n")) {
+                    if (line.startsWith("Content-Length:")) {
+                        contentLength = Integer.parseInt(line.substring(15).trim());
+                    }
+                }
+                break;
+            }
+        }
+        if (contentLength > 0) {
+            sb.append(new String(in.readNBytes(contentLength), StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    @Timeout(10)
+    void testKeepAliveRequestsShareConnection() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        connect(closed);
+
+        OutputStream out = client.getOutputStream();
+        InputStream in = client.getInputStream();
+        for (int i = 0; i < 3; i++) {
+            out.write("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String response = readResponse(in);
+            assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"), "Unexpected response: " + response);
+            assertTrue(response.endsWith("Successful GET Request"));
+        }
+
+        assertEquals(1, closed.getCount(), "Keep-alive connection should stay open");
+    }
+
+    @Test
+    @Timeout(10)
+    void testRequestSplitAcrossReadsIsReassembled() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        connect(closed);
+
+        OutputStream out = client.getOutputStream();
+        out.write("GET / HTTP/1.1\r\nHo".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        Thread.sleep(100);
+        out.write("st: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        String response = readResponse(client.getInputStream());
+        assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(closed.await(5, TimeUnit.SECONDS), "Connection: close should close the connection");
+    }
+
+    @Test
+    @Timeout(10)
+    void testHttp11ConnectionPersistsByDefault() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        connect(closed);
+
+        OutputStream out = client.getOutputStream();
+        InputStream in = client.getInputStream();
+        for (int i = 0; i < 2; i++) {
+            out.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String response = readResponse(in);
+            assertTrue(response.contains("\r\nConnection: keep-alive\r\n"), "Unexpected response: " + response);
+            assertTrue(response.contains("\r\nKeep-Alive: timeout=30, max=" + (999 - i) + "\r\n"));
+        }
+
+        assertEquals(1, closed.getCount(), "HTTP/1.1 connection should stay open without a Connection header");
+    }
+
+    @Test
+    @Timeout(10)
+    void testConnectionClosesAtRequestLimit() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        ServerConfig config = new ServerConfig();
+        config.setMaxKeepAliveRequests(2);
+        connect(closed, config);
+
+        // The third request is past the limit and is never answered
+        OutputStream out = client.getOutputStream();
+        String request = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        out.write(request.repeat(3).getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        InputStream in = client.getInputStream();
+        assertTrue(readResponse(in).contains("\r\nKeep-Alive: timeout=30, max=1\r\n"));
+        String last = readResponse(in);
+        assertTrue(last.contains("\r\nConnection: close\r\n"), "Unexpected response: " + last);
+        assertFalse(last.contains("Keep-Alive:"));
+        assertTrue(closed.await(5, TimeUnit.SECONDS), "Connection should close at the request limit");
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    @Timeout(10)
+    void testStreamedResponseIsChunkedAheadOfPipelinedRequest() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        connect(closed);
+
+        OutputStream out = client.getOutputStream();
+        out.write(("GET /hardware/processes HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        InputStream in = client.getInputStream();
+        String head = readResponse(in);
+        assertTrue(head.contains("\r\nTransfer-Encoding: chunked\r\n"), "Unexpected response: " + head);
+
+        // Whether or not ps exists here, the body is framed and ends cleanly
+        long size;
+        do {
+            String sizeLine = readLine(in);
+            size = Long.parseLong(sizeLine, 16);
+            in.readNBytes((int) size);
+            if (size > 0) {
+                assertEquals("", readLine(in));
+            }
+        } while (size > 0);
+        while (!readLine(in).isEmpty()) {
+            // Trailer fields
+        }
+
+        assertTrue(readResponse(in).endsWith("Successful GET Request"));
+        assertEquals(1, closed.getCount());
+    }
+
+    private String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            assertNotEquals(-1, b, "Connection closed mid-body");
+            line.append((char) b);
+        }
+        return line.toString().trim();
+    }
+
+    @Test
+    @Timeout(10)
+    void testClientCloseRunsCloseListener() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        connect(closed);
+
+        client.close();
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS), "Close listener should run when the peer closes");
+    }
+
+    @Test
+    @Timeout(10)
+    void testPipelinedRequestsAreAnsweredInOrder() throws Exception {
+        pipelineThreeRequests(new ServerConfig());
+    }
+
+    @Test
+    @Timeout(10)
+    void testParallelPipelineKeepsResponseOrder() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setPipelineParallel(true);
+        pipelineThreeRequests(config);
+    }
+
+    private void pipelineThreeRequests(ServerConfig config) throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        connect(closed, config);
+
+        // All three arrive in one write; the last asks for the connection to close
+        OutputStream out = client.getOutputStream();
+        out.write(("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n\r\n"
+                + "GET /missing HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n\r\n"
+                + "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        InputStream in = client.getInputStream();
+        assertTrue(readResponse(in).startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(readResponse(in).startsWith("HTTP/1.1 404 NOT FOUND\r\n"));
+        assertTrue(readResponse(in).startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(closed.await(5, TimeUnit.SECONDS), "Connection should close after the last request");
+    }
+
+    @Test
+    @Timeout(10)
+    void testRequestBodyIsReadBeforeNextPipelinedRequest() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        connect(closed);
+
+        OutputStream out = client.getOutputStream();
+        out.write(("POST /util/upload HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n"
+                + "Content-Length: 11\r\n\r\nhello world"
+                + "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        InputStream in = client.getInputStream();
+        assertTrue(readResponse(in).endsWith("Received 11 bytes"));
+        assertTrue(readResponse(in).endsWith("Successful GET Request"));
+    }
+
+    @Test
+    @Timeout(10)
+    void testZeroPaddedContentLengthIsAnEmptyBody() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        connect(closed);
+
+        OutputStream out = client.getOutputStream();
+        out.write(("POST /util/upload HTTP/1.1\r\nHost: localhost\r\nContent-Length: 00\r\n\r\n"
+                + "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        InputStream in = client.getInputStream();
+        assertTrue(readResponse(in).endsWith("Received 0 bytes"));
+        assertTrue(readResponse(in).endsWith("Successful GET Request"));
+    }
+
+    @Test
+    @Timeout(10)
+    void testLargeChunkedUploadStreamsThroughQueue() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        connect(closed);
+
+        OutputStream out = client.getOutputStream();
+        out.write(("POST /util/upload HTTP/1.1\r\nHost: localhost\r\nExpect: 100-continue\r\n"
+                + "Connection: close\r\nTransfer-Encoding: chunked\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        InputStream in = client.getInputStream();
+        assertTrue(readResponse(in).startsWith("HTTP/1.1 100 Continue\r\n"));
+
+        // Several times the body queue, so reading has to pause and resume
+        byte[] chunk = new byte[32 * 1024];
+        for (int i = 0; i < 16; i++) {
+            out.write(("8000\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(chunk);
+            out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        String response = readResponse(in);
+        assertTrue(response.endsWith("Received " + 16 * chunk.length + " bytes"), "Unexpected response: " + response);
+        assertTrue(closed.await(5, TimeUnit.SECONDS), "Connection: close should close the connection");
+    }
+
+    @Test
+    @Timeout(10)
+    void testOversizedBodyIsRefusedBeforeItIsSent() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        ServerConfig config = new ServerConfig();
+        config.setMaxRequestBodySize(1024);
+        connect(closed, config);
+
+        OutputStream out = client.getOutputStream();
+        out.write(("POST /util/upload HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n"
+                + "Content-Length: 4096\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        assertTrue(readResponse(client.getInputStream()).startsWith("HTTP/1.1 413 Payload Too Large\r\n"));
+        assertTrue(closed.await(5, TimeUnit.SECONDS), "Connection should close after refusing the body");
+    }
+}
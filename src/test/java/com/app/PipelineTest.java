@@ -0,0 +1,107 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+public class PipelineTest {
+
+    private static HttpRequest request(String path) {
+        return new HttpRequest("GET", "HTTP/1.1", path, new HttpHeaders());
+    }
+
+    @Test
+    void testFiltersRunInOrderInAndInReverseOut() {
+        List<String> calls = new ArrayList<>();
+        Pipeline pipeline = Pipeline.builder()
+                .before((request, response) -> calls.add("before 1"))
+                .after((request, response) -> calls.add("after 1"))
+                .around((request, response, next) -> {
+                    calls.add("around in");
+                    CompletableFuture<HttpResponse> result = next.proceed(request, response);
+                    calls.add("around out");
+                    return result;
+                })
+                .before((request, response) -> calls.add("before 2"))
+                .after((request, response) -> calls.add("after 2"))
+                .build((request, response) -> {
+                    calls.add("handler");
+                    return CompletableFuture.completedFuture(response);
+                });
+
+        HttpResponse response = pipeline.handle(request("/"), new HttpResponse("HTTP/1.1")).join();
+
+        assertEquals("200 OK", response.getStatusCode());
+        assertEquals(List.of("before 1", "around in", "before 2", "handler", "after 2", "around out", "after 1"),
+                calls);
+    }
+
+    @Test
+    void testBeforeFilterCanAnswerTheRequest() {
+        List<String> calls = new ArrayList<>();
+        Pipeline pipeline = Pipeline.builder()
+                .after((request, response) -> calls.add("after"))
+                .before((request, response) -> {
+                    response.setStatusCode("404 NOT FOUND");
+                    return false;
+                })
+                .after((request, response) -> calls.add("skipped"))
+                .build((request, response) -> {
+                    calls.add("handler");
+                    return CompletableFuture.completedFuture(response);
+                });
+
+        HttpResponse response = pipeline.handle(request("/"), new HttpResponse("HTTP/1.1")).join();
+
+        assertEquals("404 NOT FOUND", response.getStatusCode());
+        assertEquals(List.of("after"), calls, "Filters outside the one that answered still see the response");
+    }
+
+    @Test
+    void testAfterFiltersWaitForAnAsynchronousResponse() {
+        CompletableFuture<HttpResponse> pending = new CompletableFuture<>();
+        Pipeline pipeline = Pipeline.builder()
+                .after((request, response) -> response.setHeader("X-Filtered", "yes"))
+                .build((request, response) -> pending);
+
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        CompletableFuture<HttpResponse> result = pipeline.handle(request("/"), response);
+        assertFalse(result.isDone());
+        assertNull(response.getHeaders().get("X-Filtered"));
+
+        pending.complete(response);
+        assertEquals("yes", result.join().getHeaders().get("X-Filtered"));
+    }
+
+    @Test
+    void testAroundFilterCanServeWithoutTheHandler() {
+        Pipeline pipeline = Pipeline.builder()
+                .around((request, response, next) -> {
+                    if (request.getPath().equals("/cached")) {
+                        response.setBody("from cache");
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    return next.proceed(request, response);
+                })
+                .build((request, response) -> {
+                    response.setBody("from handler");
+                    return CompletableFuture.completedFuture(response);
+                });
+
+        assertEquals("from cache", pipeline.handle(request("/cached"), new HttpResponse("HTTP/1.1")).join().getBody());
+        assertEquals("from handler", pipeline.handle(request("/other"), new HttpResponse("HTTP/1.1")).join().getBody());
+    }
+
+    @Test
+    void testEmptyPipelineCallsTheHandler() {
+        Router router = Router.builder().get("/", (request, response) -> response.setBody("root")).build();
+        Pipeline pipeline = Pipeline.builder().build(router::route);
+
+        assertEquals("root", pipeline.handle(request("/"), new HttpResponse("HTTP/1.1")).join().getBody());
+        assertThrows(IllegalArgumentException.class, () -> Pipeline.builder().after(null));
+    }
+}
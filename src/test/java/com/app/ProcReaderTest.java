@@ -0,0 +1,106 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ProcReaderTest {
+    private static final String MEMINFO = "MemTotal:        6147400 kB\n"
+            + "MemFree:         5225904 kB\n"
+            + "MemAvailable:    5639608 kB\n"
+            + "Buffers:           69392 kB\n"
+            + "Cached:           542792 kB\n"
+            + "SwapCached:         1024 kB\n"
+            + "Shmem:              9048 kB\n"
+            + "SReclaimable:      31252 kB\n"
+            + "SwapTotal:       2097148 kB\n"
+            + "SwapFree:        2096124 kB\n";
+
+    private Path root;
+    private ProcReader reader;
+
+    @BeforeEach
+    void createRoot() throws IOException {
+        root = Files.createTempDirectory("proc-reader");
+        Files.createDirectories(root.resolve("proc"));
+        Files.createDirectories(root.resolve("etc"));
+        reader = new ProcReader(root);
+    }
+
+    @AfterEach
+    void deleteRoot() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private void write(String file, String content) throws IOException {
+        Files.write(root.resolve(file), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static HttpResponse answer(Router.Handler handler) {
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        handler.handle(new HttpRequest("GET", "HTTP/1.1", "/", new HttpHeaders()), response);
+        return response;
+    }
+
+    @Test
+    void testFilesAreCopiedAsTheyAre() throws IOException {
+        write("proc/loadavg", "0.97 0.58 0.50 2/72 6286\n");
+        String release = "PRETTY_NAME=\"Debian GNU/Linux 12 (bookworm)\"\n" + "x".repeat(20000) + "\n";
+        write("etc/os-release", release);
+
+        assertEquals("0.97 0.58 0.50 2/72 6286\n", answer(reader::loadAverage).getBody());
+        assertEquals(release, answer(reader::osRelease).getBody(), "A file larger than the buffer is read whole");
+    }
+
+    @Test
+    void testMemoryMatchesFree() throws IOException {
+        write("proc/meminfo", MEMINFO);
+
+        HttpResponse response = answer(reader::memory);
+
+        assertEquals("200 OK", response.getStatusCode());
+        assertEquals("               total        used        free      shared  buff/cache   available\n"
+                + "Mem:            6003         495        5103           8         628        5507\n"
+                + "Swap:           2047           1        2046\n", response.getBody());
+    }
+
+    @Test
+    void testCpuMatchesTopBetweenReadings() throws IOException {
+        write("proc/stat", "cpu  100 0 100 800 0 0 0 0 0 0\ncpu0 100 0 100 800 0 0 0 0 0 0\n");
+        assertEquals("%Cpu(s): 10.0 us, 10.0 sy,  0.0 ni, 80.0 id,  0.0 wa,  0.0 hi,  0.0 si,  0.0 st\n",
+                answer(reader::cpu).getBody(), "The first reading is the average since boot");
+
+        write("proc/stat", "cpu  125 0 150 1000 25 0 0 0 0 0\n");
+        assertEquals("%Cpu(s):  8.3 us, 16.7 sy,  0.0 ni, 66.7 id,  8.3 wa,  0.0 hi,  0.0 si,  0.0 st\n",
+                answer(reader::cpu).getBody());
+        assertEquals("%Cpu(s):  8.3 us, 16.7 sy,  0.0 ni, 66.7 id,  8.3 wa,  0.0 hi,  0.0 si,  0.0 st\n",
+                answer(reader::cpu).getBody(), "Without a tick in between the last shares stand");
+    }
+
+    @Test
+    void testMissingFileAnswers500() {
+        HttpResponse response = answer(reader::loadAverage);
+
+        assertEquals("500 Internal Server Error", response.getStatusCode());
+        assertTrue(response.getBody().startsWith("Error reading "), response.getBody());
+    }
+
+    @Test
+    void testFieldIgnoresNamesThatOnlyEndTheSame() {
+        byte[] data = MEMINFO.getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(542792, ProcReader.field(data, data.length, "Cached".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(-1, ProcReader.field(data, data.length, "Hugepagesize".getBytes(StandardCharsets.US_ASCII)));
+    }
+}
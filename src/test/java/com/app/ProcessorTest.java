@@ -13,7 +13,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.zip.GZIPInputStream;
 
 public class ProcessorTest {
@@ -137,7 +137,7 @@ public class ProcessorTest {
 
     @Test
     void testProcessRequest_RootEndpoint_Get() {
-        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/", new HashMap<>());
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/", new HttpHeaders());
 
         HttpResponse response = processor.processRequest(request);
 
@@ -153,13 +153,15 @@ public class ProcessorTest {
             "/util/time", "/util/logs", "/health"
     })
     void testProcessRequest_SupportedEndpoints_Get(String endpoint) {
-        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", endpoint, new HashMap<>());
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", endpoint, new HttpHeaders());
 
         HttpResponse response = processor.processRequest(request);
 
         // Cannot assert exact values since command execution depends on system
         assertNotNull(response.getStatusCode());
-        assertNotNull(response.getBody());
+        assertTrue(response.getBody() != null || response.isStreamed(), "Response should have a body");
+        // Dropping a streamed body gives back its place in the bulkhead
+        response.bodyDone();
     }
 
     @ParameterizedTest
@@ -170,7 +172,7 @@ public class ProcessorTest {
             "/util/time", "/util/logs", "/health"
     })
     void testProcessRequest_SupportedEndpoints_Post(String endpoint) {
-        HttpRequest request = new HttpRequest("POST", "HTTP/1.1", endpoint, new HashMap<>());
+        HttpRequest request = new HttpRequest("POST", "HTTP/1.1", endpoint, new HttpHeaders());
 
         HttpResponse response = processor.processRequest(request);
 
@@ -180,7 +182,7 @@ public class ProcessorTest {
 
     @Test
     void testProcessRequest_UnsupportedEndpoint() {
-        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/unknown", new HashMap<>());
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/unknown", new HttpHeaders());
 
         HttpResponse response = processor.processRequest(request);
 
@@ -188,9 +190,89 @@ public class ProcessorTest {
         assertEquals("Cannot find what you are looking for.", response.getBody());
     }
 
+    @Test
+    void testProcessRequest_QueryStringIsNotPartOfThePath() {
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/?x=1&y=2", new HttpHeaders());
+
+        HttpResponse response = processor.processRequest(request);
+
+        assertEquals("200 OK", response.getStatusCode());
+        assertEquals("Successful GET Request", response.getBody());
+        assertEquals("x=1&y=2", request.getQuery());
+    }
+
+    @Test
+    void testProcessRequestAsync_FinishesResponseWhenHandlerCompletes() throws IOException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        String text = "x".repeat(2048);
+        Processor asyncProcessor = new Processor(Router.builder()
+                .getAsync("/slow", (request, response) -> done.thenApply(ignored -> {
+                    response.setBody(text);
+                    return response;
+                }))
+                .build());
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+        CompletableFuture<HttpResponse> pending = asyncProcessor.processRequestAsync(
+                new HttpRequest("GET", "HTTP/1.1", "/slow", headers));
+        assertFalse(pending.isDone(), "The processor does not wait for the handler");
+
+        done.complete(null);
+        HttpResponse response = pending.join();
+        assertEquals("200 OK", response.getStatusCode());
+        assertEquals("gzip", response.getHeaders().get(HttpHeaders.CONTENT_ENCODING),
+                "The response is compressed once it is complete");
+        assertEquals(text, decompressGzip(response.getCompressedBody()));
+    }
+
+    @Test
+    void testProcessRequestAsync_FailedHandlerAnswers500() {
+        Processor failingProcessor = new Processor(Router.builder()
+                .getAsync("/broken", (request, response) -> CompletableFuture.failedFuture(
+                        new IllegalStateException("boom")))
+                .build());
+
+        HttpResponse response = failingProcessor.processRequest(
+                new HttpRequest("GET", "HTTP/1.1", "/broken", new HttpHeaders()));
+
+        assertEquals("500 Internal Server Error", response.getStatusCode());
+        assertTrue(response.getBody().contains("boom"), response.getBody());
+    }
+
+    @Test
+    void testProcessRequest_FiltersSeeTheResponseAsSent() {
+        String text = "y".repeat(2048);
+        Processor filtered = new Processor(Router.builder()
+                .get("/big", (request, response) -> response.setBody(text))
+                .build(), Pipeline.builder()
+                .after((request, response) -> response.setHeader("X-Encoding-Seen",
+                        String.valueOf(response.getHeaders().get(HttpHeaders.CONTENT_ENCODING)))));
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+        HttpResponse http1 = filtered.processRequest(new HttpRequest("GET", "HTTP/1.1", "/big", headers));
+        HttpResponse http2 = filtered.processRequest(new HttpRequest("GET", "HTTP/2", "/big", headers));
+
+        assertEquals("gzip", http1.getHeaders().get("X-Encoding-Seen"), "Compression runs inside added filters");
+        assertNull(http1.getHeaders().get("x-protocol"));
+        assertEquals("gzip", http2.getHeaders().get("X-Encoding-Seen"));
+        assertEquals("HTTP/2", http2.getHeaders().get("x-protocol"));
+    }
+
+    @Test
+    void testProcessRequest_MethodNotAllowedListsAllowedMethods() {
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/util/upload", new HttpHeaders());
+
+        HttpResponse response = processor.processRequest(request);
+
+        assertEquals("405 Method Not Allowed", response.getStatusCode());
+        assertEquals("POST, PUT", response.getHeaders().get(HttpHeaders.ALLOW));
+    }
+
     @Test
     void testProcessRequest_UnsupportedMethod() {
-        HttpRequest request = new HttpRequest("DELETE", "HTTP/1.1", "/", new HashMap<>());
+        HttpRequest request = new HttpRequest("DELETE", "HTTP/1.1", "/", new HttpHeaders());
 
         HttpResponse response = processor.processRequest(request);
 
@@ -207,7 +289,7 @@ public class ProcessorTest {
 
         ProcessBuilder echoCommand = new ProcessBuilder("echo", "test");
 
-        executeCommandMethod.invoke(processor, echoCommand, response);
+        ((CompletableFuture<?>) executeCommandMethod.invoke(processor, echoCommand, response)).join();
 
         assertEquals("200 OK", response.getStatusCode());
         assertTrue(response.getBody().contains("test"), "Response body should contain the echo output");
@@ -222,7 +304,7 @@ public class ProcessorTest {
 
         ProcessBuilder invalidCommand = new ProcessBuilder("nonexistentcommand");
 
-        executeCommandMethod.invoke(processor, invalidCommand, response);
+        ((CompletableFuture<?>) executeCommandMethod.invoke(processor, invalidCommand, response)).join();
 
         assertEquals("500 Internal Server Error", response.getStatusCode());
         assertTrue(response.getBody().startsWith("Error executing command") ||
@@ -232,7 +314,7 @@ public class ProcessorTest {
 
     @Test
     void testCompressResponse_NoAcceptEncodingHeader() throws Exception {
-        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", new HashMap<>());
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", new HttpHeaders());
         HttpResponse response = new HttpResponse("HTTP/1.1");
         response.setBody("Test body");
         response.setHeader("Content-Type", "text/html");
@@ -245,8 +327,8 @@ public class ProcessorTest {
 
     @Test
     void testCompressResponse_AcceptEncodingWithoutGzip() throws Exception {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Accept-Encoding", "deflate, br");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept-Encoding", "deflate, br");
         HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", headers);
         HttpResponse response = new HttpResponse("HTTP/1.1");
         response.setBody("Test body");
@@ -260,22 +342,23 @@ public class ProcessorTest {
 
     @Test
     void testCompressResponse_NullBody() throws Exception {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Accept-Encoding", "gzip");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept-Encoding", "gzip");
         HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", headers);
-        HttpResponse response = new HttpResponse("HTTP/1.1");
+        HttpResponse response = new HttpResponse("HTTP/1.1", "replaced");
         response.setBody(null);
 
         invokeCompressResponse(request, response);
 
+        assertNull(response.getHeaders().get("Content-Length"), "A removed body takes its length with it");
         assertNull(response.getCompressedBody());
         assertNull(response.getHeaders().get("Content-Encoding"));
     }
 
     @Test
     void testCompressResponse_EmptyBody() throws Exception {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Accept-Encoding", "gzip");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept-Encoding", "gzip");
         HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", headers);
         HttpResponse response = new HttpResponse("HTTP/1.1");
         response.setBody("");
@@ -288,8 +371,8 @@ public class ProcessorTest {
 
     @Test
     void testCompressResponse_SmallBody() throws Exception {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Accept-Encoding", "gzip");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept-Encoding", "gzip");
         HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", headers);
         HttpResponse response = new HttpResponse("HTTP/1.1");
         response.setBody("Small body less than 1024 bytes");
@@ -307,8 +390,8 @@ public class ProcessorTest {
             "audio/mpeg", "video/mp4"
     })
     void testCompressResponse_NonCompressibleContentType(String contentType) throws Exception {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Accept-Encoding", "gzip");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept-Encoding", "gzip");
         HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", headers);
         HttpResponse response = new HttpResponse("HTTP/1.1");
 
@@ -332,8 +415,8 @@ public class ProcessorTest {
     })
     void testCompressResponse_CompressibleContentType(String contentType) throws Exception {
         // Setup
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Accept-Encoding", "gzip");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept-Encoding", "gzip");
         HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", headers);
         HttpResponse response = new HttpResponse("HTTP/1.1");
 
@@ -363,8 +446,8 @@ public class ProcessorTest {
 
     @Test
     void testCompressResponse_MultipleEncodings() throws Exception {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Accept-Encoding", "deflate, gzip, br");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept-Encoding", "deflate, gzip, br");
         HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", headers);
         HttpResponse response = new HttpResponse("HTTP/1.1");
 
@@ -388,8 +471,8 @@ public class ProcessorTest {
 
     @Test
     void testCompressResponse_WithQualityValue() throws Exception {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Accept-Encoding", "deflate;q=0.9, gzip;q=0.8, *;q=0.1");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept-Encoding", "deflate;q=0.9, gzip;q=0.8, *;q=0.1");
         HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", headers);
         HttpResponse response = new HttpResponse("HTTP/1.1");
 
@@ -413,8 +496,8 @@ public class ProcessorTest {
 
     @Test
     void testCompressResponse_GzipWithUpperCase() throws Exception {
-        HashMap<String, String> headers = new HashMap<>();
-        headers.put("Accept-Encoding", "GZIP");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept-Encoding", "GZIP");
         HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/test", headers);
         HttpResponse response = new HttpResponse("HTTP/1.1");
 
@@ -435,4 +518,120 @@ public class ProcessorTest {
 
         assertTrue(compressedBodyBytes.length < originalBodyBytes.length, "Compressed body should be smaller than original body");
     }
-}
\ No newline at end of file
+
+    private static HttpRequest upgradeRequest(String connection, String settings) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Host", "localhost:8080");
+        headers.add("Connection", connection);
+        headers.add("upgrade", "h2c");
+        headers.add("HTTP2-Settings", settings);
+        return new HttpRequest("GET", "HTTP/1.1", "/test", headers);
+    }
+
+    @Test
+    void testParseH2cUpgrade_DecodesSettings() {
+        byte[] payload = { 0, 3, 0, 0, 0, 100, 0, 4, 0, 0, (byte) 0xff, (byte) 0xff };
+        String encoded = java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(payload);
+
+        Http2Settings settings = processor.parseH2cUpgrade(upgradeRequest("Upgrade, HTTP2-Settings", encoded));
+
+        assertNotNull(settings);
+        assertEquals(100, settings.getMaxConcurrentStreams());
+        assertEquals(65535, settings.getInitialWindowSize());
+    }
+
+    @Test
+    void testParseH2cUpgrade_RequiresConnectionTokens() {
+        assertNull(processor.parseH2cUpgrade(upgradeRequest("Upgrade", "")));
+    }
+
+    @Test
+    void testParseH2cUpgrade_RejectsMalformedSettings() {
+        assertNull(processor.parseH2cUpgrade(upgradeRequest("Upgrade, HTTP2-Settings", "AAMAAA")));
+    }
+
+    @Test
+    void testCreateUpgradeResponse() {
+        HttpResponse response = processor.createUpgradeResponse();
+
+        assertEquals("101 Switching Protocols", response.getStatusCode());
+        assertEquals("h2c", response.getHeaders().get("Upgrade"));
+        assertNull(response.getHeaders().get("Content-Type"));
+    }
+
+    private static HttpRequest connectionRequest(String version, String... connection) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Host", "localhost:8080");
+        for (String value : connection) {
+            headers.add("Connection", value);
+        }
+        return new HttpRequest("GET", version, "/", headers);
+    }
+
+    @Test
+    void testIsKeepAlive_PersistentByDefaultInHttp11() {
+        assertTrue(Processor.isKeepAlive(connectionRequest("HTTP/1.1")));
+        assertTrue(Processor.isKeepAlive(connectionRequest("HTTP/1.1", "Keep-Alive")));
+        assertFalse(Processor.isKeepAlive(connectionRequest("HTTP/1.1", "close")));
+        assertFalse(Processor.isKeepAlive(connectionRequest("HTTP/1.1", "TE", "Close")));
+    }
+
+    @Test
+    void testIsKeepAlive_Http10NeedsKeepAlive() {
+        assertFalse(Processor.isKeepAlive(connectionRequest("HTTP/1.0")));
+        assertTrue(Processor.isKeepAlive(connectionRequest("HTTP/1.0", "keep-alive")));
+    }
+
+    @Test
+    void testSetConnectionHeaders_AdvertisesLimits() {
+        ServerConfig config = new ServerConfig();
+        config.setKeepAliveTimeout(5000);
+        config.setMaxKeepAliveRequests(100);
+        HttpResponse response = processor.processRequest(connectionRequest("HTTP/1.1"));
+
+        Processor.setConnectionHeaders(response, true, config, 1);
+        assertEquals("keep-alive", response.getHeaders().get("Connection"));
+        assertEquals("timeout=5, max=99", response.getHeaders().get("Keep-Alive"));
+
+        Processor.setConnectionHeaders(response, false, config, 100);
+        assertEquals("close", response.getHeaders().get("Connection"));
+        assertNull(response.getHeaders().get("Keep-Alive"));
+
+        config.setMaxKeepAliveRequests(0);
+        Processor.setConnectionHeaders(response, true, config, 100);
+        assertEquals("timeout=5", response.getHeaders().get("Keep-Alive"));
+        assertTrue(Processor.isBelowRequestLimit(config, Integer.MAX_VALUE - 1));
+    }
+
+    @Test
+    void testProcessRequest_StreamedBodyIsGatheredWithoutChunkedFraming() {
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.0", "/hardware/processes", new HttpHeaders());
+
+        HttpResponse response = processor.processRequest(request);
+
+        assertFalse(response.isStreamed(), "HTTP/1.0 has no chunked framing to stream with");
+        assertNull(response.getHeaders().get("Transfer-Encoding"));
+        assertNull(response.getHeaders().get("Trailer"));
+        assertEquals(String.valueOf(response.getBody().getBytes(StandardCharsets.UTF_8).length),
+                response.getHeaders().get("Content-Length"));
+    }
+
+    @Test
+    void testProcessRequest_FailedStreamedBodyAnswers500WithoutChunkedFraming() {
+        Processor failing = new Processor(Router.builder()
+                .get("/stream", (request, response) -> {
+                    response.setHeader(HttpHeaders.TRAILER, "X-Exit-Code");
+                    response.setBodyWriter(body -> {
+                        throw new IOException("gone");
+                    });
+                })
+                .build());
+
+        HttpResponse response = failing.processRequest(new HttpRequest("GET", "HTTP/1.0", "/stream", new HttpHeaders()));
+
+        assertEquals("500 Internal Server Error", response.getStatusCode());
+        assertNull(response.getHeaders().get("Transfer-Encoding"));
+        assertNull(response.getHeaders().get("Trailer"));
+        assertEquals(String.valueOf(response.getBody().length()), response.getHeaders().get("Content-Length"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.app;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares {@link RequestParser} with the stream-based
+ * {@link Processor#parseRequest(java.io.InputStream)}. Not a unit test: run it
+ * with
+ *
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.app.RequestParserBenchmark -Dexec.args="5 200000"
+ * </pre>
+ *
+ * <p>
+ * Arguments are the number of measured rounds and the number of requests
+ * parsed per round; an equal number of rounds is run first to warm up. Each
+ * round parses a browser-like request head and reads its Host, Connection and
+ * Accept-Encoding headers, which is what serving a request needs. The
+ * reported figures are the fastest round's time per request and the bytes
+ * allocated per request.
+ * </p>
+ */
+public class RequestParserBenchmark {
+    private static final byte[] REQUEST = ("GET /system/info?verbose=true HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Language: en-GB,en;q=0.5\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Upgrade-Insecure-Requests: 1\r\n"
+            + "Sec-Fetch-Dest: document\r\n"
+            + "Sec-Fetch-Mode: navigate\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private interface Parse {
+        HttpRequest parse() throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        PrintStream console = System.out;
+        // Processor.parseRequest logs every header
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Processor processor = new Processor();
+        Parse stream = () -> processor.parseRequest(new ByteArrayInputStream(REQUEST));
+
+        RequestParser parser = new RequestParser();
+        ByteBuffer buffer = ByteBuffer.wrap(REQUEST);
+        Parse buffered = () -> {
+            buffer.clear();
+            return parser.parse(buffer);
+        };
+
+        for (int round = 0; round < rounds; round++) {
+            measure(stream, requests);
+            measure(buffered, requests);
+        }
+
+        long[] streamResult = best(stream, rounds, requests);
+        long[] bufferResult = best(buffered, rounds, requests);
+
+        console.printf("requests=%d rounds=%d head=%d bytes%n", requests, rounds, REQUEST.length);
+        console.printf("Processor.parseRequest: %6d ns/req %7d bytes/req%n", streamResult[0] / requests,
+                streamResult[1] / requests);
+        console.printf("RequestParser.parse:    %6d ns/req %7d bytes/req%n", bufferResult[0] / requests,
+                bufferResult[1] / requests);
+    }
+
+    /**
+     * Runs the rounds and keeps the fastest time and smallest allocation seen.
+     */
+    private static long[] best(Parse parse, int rounds, int requests) throws IOException {
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        for (int round = 0; round < rounds; round++) {
+            long[] result = measure(parse, requests);
+            best[0] = Math.min(best[0], result[0]);
+            best[1] = Math.min(best[1], result[1]);
+        }
+        return best;
+    }
+
+    private static long[] measure(Parse parse, int requests) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        int sink = 0;
+
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            HttpRequest request = parse.parse();
+            sink += request.getHeader("Host").length();
+            sink += request.getHeader("Connection").length();
+            sink += request.getHeader("Accept-Encoding").length();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        if (sink == 0) {
+            throw new IllegalStateException("Headers were not read");
+        }
+        return new long[] { elapsed, allocated };
+    }
+}
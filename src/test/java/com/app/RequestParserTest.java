@@ -0,0 +1,129 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class RequestParserTest {
+    private static final String REQUEST = "GET /system/info HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "Accept-Encoding:  gzip, deflate  \r\n"
+            + "Connection: keep-alive\r\n\r\n";
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void testParsesCompleteHead() throws IOException {
+        ByteBuffer buffer = bytes(REQUEST + "GET /next");
+
+        HttpRequest request = new RequestParser().parse(buffer);
+
+        assertNotNull(request);
+        assertSame("GET", request.getMethod(), "Common methods should not allocate");
+        assertEquals("/system/info", request.getUrlPath());
+        assertEquals("HTTP/1.1", request.getProtocolVersion());
+        assertEquals("localhost:8080", request.getHeader("host"));
+        assertEquals("gzip, deflate", request.getHeader("Accept-Encoding"), "Surrounding whitespace is trimmed");
+        assertEquals("keep-alive", request.getHeader("CONNECTION"));
+        assertNull(request.getHeader("Content-Length"));
+        assertEquals(REQUEST.length(), buffer.position(), "Position should stop at the end of the head");
+    }
+
+    @Test
+    void testResumesAcrossPartialReads() throws IOException {
+        RequestParser parser = new RequestParser();
+        byte[] data = REQUEST.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer buffer = ByteBuffer.allocate(data.length);
+
+        // Feed one byte at a time the way a connection's read buffer fills,
+        // compacting in between
+        HttpRequest request = null;
+        for (int i = 0; i < data.length; i++) {
+            buffer.put(data[i]);
+            buffer.flip();
+            request = parser.parse(buffer);
+            buffer.compact();
+            if (i < data.length - 1) {
+                assertNull(request, "Head should not be complete after " + (i + 1) + " bytes");
+            }
+        }
+
+        assertNotNull(request);
+        assertEquals("/system/info", request.getUrlPath());
+        assertEquals("keep-alive", request.getHeader("Connection"));
+        assertEquals(0, buffer.position(), "The whole head should have been consumed");
+    }
+
+    @Test
+    void testParsesBackToBackRequests() throws IOException {
+        RequestParser parser = new RequestParser();
+        ByteBuffer buffer = bytes("GET /a HTTP/1.1\r\nHost: a\r\n\r\nPOST /b HTTP/1.0\r\nHost: b\r\n\r\n");
+
+        HttpRequest first = parser.parse(buffer);
+        HttpRequest second = parser.parse(buffer);
+
+        assertEquals("/a", first.getUrlPath());
+        assertEquals("a", first.getHeader("Host"));
+        assertEquals("POST", second.getMethod());
+        assertEquals("HTTP/1.0", second.getProtocolVersion());
+        assertEquals("b", second.getHeader("Host"));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testRepeatedHeadersAreKept() throws IOException {
+        HttpRequest request = new RequestParser().parse(bytes("GET / HTTP/1.1\r\nX-Empty:\r\nX-Dup: 1\r\nX-Dup: 2\r\n\r\n"));
+
+        assertEquals("2", request.getHeader("x-dup"), "The last repeated header wins");
+        assertEquals(3, request.getRequestHeaders().size(), "Each repeated header is a field of its own");
+        assertEquals("", request.getRequestHeaders().get("X-Empty"));
+        assertEquals("1", request.getRequestHeaders().getValue(1));
+
+        request.getRequestHeaders().add("X-Added", "3");
+        assertEquals("2", request.getHeader("X-DUP"), "Lookup still ignores case once the headers are copied out");
+    }
+
+    @Test
+    void testSkipsLeadingEmptyLinesAndAcceptsBareLf() throws IOException {
+        HttpRequest request = new RequestParser().parse(bytes("\r\n\nGET / HTTP/1.1\nHost: a\n\n"));
+
+        assertNotNull(request);
+        assertEquals("/", request.getUrlPath());
+        assertEquals("a", request.getHeader("Host"));
+    }
+
+    @Test
+    void testRejectsMalformedHeads() {
+        String[] malformed = {
+                "GET /\r\n\r\n",
+                "GET / \r\n\r\n",
+                "G(T / HTTP/1.1\r\n\r\n",
+                "GET / HTTP/1.1 extra\r\n\r\n",
+                "GET / HTTP/1.1\r\nNoColon\r\n\r\n",
+                "GET / HTTP/1.1\r\nHost : a\r\n\r\n",
+                "GET / HTTP/1.1\r\n: empty\r\n\r\n",
+                "GET / HTTP/1.1\r\nHost: a\r\n folded\r\n\r\n",
+                "GET / HTTP/1.1\rHost: a\r\n\r\n",
+        };
+        for (String head : malformed) {
+            assertThrows(IOException.class, () -> new RequestParser().parse(bytes(head)), head);
+        }
+    }
+
+    @Test
+    void testRejectsTooManyHeaders() {
+        StringBuilder head = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i <= RequestParser.MAX_HEADERS; i++) {
+            head.append("X-").append(i).append(": v\r\n");
+        }
+        head.append("\r\n");
+
+        assertThrows(IOException.class, () -> new RequestParser().parse(bytes(head.toString())));
+    }
+}
@@ -6,8 +6,9 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -36,7 +37,7 @@ public class ResponderTest {
 
     @Test
     void testSendResponse_WithBody() throws IOException {
-        HashMap<String, String> headers = new HashMap<>();
+        HttpHeaders headers = new HttpHeaders();
         HttpResponse response = new HttpResponse("HTTP/1.1", "Hello, World!");
         response.setStatusCode("200 OK");
 
@@ -83,7 +84,7 @@ public class ResponderTest {
 
     @Test
     void testSendResponse_NullBody() throws IOException {
-        HashMap<String, String> headers = new HashMap<>();
+        HttpHeaders headers = new HttpHeaders();
         HttpResponse response = new HttpResponse("HTTP/1.1");
         response.setStatusCode("204 No Content");
 
@@ -98,7 +99,7 @@ public class ResponderTest {
 
     @Test
     void testSendResponse_EmptyBody() throws IOException {
-        HashMap<String, String> headers = new HashMap<>();
+        HttpHeaders headers = new HttpHeaders();
         HttpResponse response = new HttpResponse("HTTP/1.1", "");
         response.setStatusCode("200 OK");
 
@@ -112,7 +113,7 @@ public class ResponderTest {
 
     @Test
     void testSendResponse_SpecialCharactersInBody() throws IOException {
-        HashMap<String, String> headers = new HashMap<>();
+        HttpHeaders headers = new HttpHeaders();
         String specialBody = "Hello, 世界! Special chars: €£¥";
         HttpResponse response = new HttpResponse("HTTP/1.1", specialBody);
         response.setStatusCode("200 OK");
@@ -134,7 +135,7 @@ public class ResponderTest {
             }
         };
 
-        HashMap<String, String> headers = new HashMap<>();
+        HttpHeaders headers = new HttpHeaders();
         HttpResponse response = new HttpResponse("HTTP/1.1");
         response.setStatusCode("200 OK");
 
@@ -159,7 +160,7 @@ public class ResponderTest {
 
     @Test
     void testSendResponse_DifferentStatusCodes() throws IOException {
-        HashMap<String, String> headers = new HashMap<>();
+        HttpHeaders headers = new HttpHeaders();
 
         HttpResponse response404 = new HttpResponse("HTTP/1.1");
         response404.setStatusCode("404 Not Found");
@@ -178,7 +179,7 @@ public class ResponderTest {
 
     @Test
     void testSendResponse_LargeBody() throws IOException {
-        HashMap<String, String> headers = new HashMap<>();
+        HttpHeaders headers = new HttpHeaders();
 
         StringBuilder largeBody = new StringBuilder();
         for (int i = 0; i < 100 * 1024 / 10; i++) {
@@ -194,4 +195,125 @@ public class ResponderTest {
         assertTrue(output.contains("Content-Length: " + (100 * 1024) + "\r\n"));
         assertEquals(100 * 1024 + output.indexOf(largeBody.toString()), output.length());
     }
+
+    @Test
+    void testSendResponse_SharedReadOnlyBody() throws IOException {
+        ByteBuffer payload = ByteBuffer.wrap("static payload".getBytes(StandardCharsets.US_ASCII))
+                .asReadOnlyBuffer();
+
+        for (int i = 0; i < 2; i++) {
+            HttpResponse response = new HttpResponse("HTTP/1.1");
+            response.setBodyBuffers(payload);
+            outputStream.reset();
+            responder.sendResponse(response, outputStream);
+
+            String output = outputStream.toString(StandardCharsets.UTF_8);
+            assertTrue(output.contains("Content-Length: 14\r\n"));
+            assertTrue(output.endsWith("\r\n\r\nstatic payload"));
+        }
+        assertEquals(0, payload.position(), "A shared body must not be consumed by writing it");
+    }
+
+    @Test
+    void testSendResponse_CompositeBody() throws IOException {
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        response.setBodyBuffers(ByteBuffer.wrap("héllo ".getBytes(StandardCharsets.UTF_8)),
+                ByteBuffer.allocateDirect(5).put("world".getBytes(StandardCharsets.US_ASCII)).flip());
+
+        assertEquals(12, response.getBodyLength());
+        assertEquals("héllo world", response.getBody());
+
+        responder.sendResponse(response, outputStream);
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("Content-Length: 12\r\n"));
+        assertTrue(output.endsWith("héllo world"));
+    }
+
+    @Test
+    void testSendResponse_CompressedBodyReplacesBody() throws IOException {
+        HttpResponse response = new HttpResponse("HTTP/1.1", "uncompressed");
+        response.setCompressedBody(new byte[] { 1, 2, 3 });
+
+        responder.sendResponse(response, outputStream);
+        byte[] output = outputStream.toByteArray();
+        assertTrue(outputStream.toString(StandardCharsets.ISO_8859_1).contains("Content-Length: 3\r\n"));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Arrays.copyOfRange(output, output.length - 3, output.length));
+    }
+
+    @Test
+    void testEncodeHead_AppendsAfterEarlierHeads() {
+        HttpResponse first = new HttpResponse("HTTP/1.1", "one");
+        HttpResponse second = new HttpResponse("HTTP/1.0", "two");
+        second.setStatusCode("418 I'm a teapot");
+        second.setHeader("X-Custom", "yes");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+
+        assertTrue(responder.encodeHead(first, buffer));
+        int firstEnd = buffer.position();
+        assertTrue(responder.encodeHead(second, buffer));
+        buffer.flip();
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        String heads = new String(bytes, StandardCharsets.ISO_8859_1);
+        assertTrue(heads.startsWith("HTTP/1.1 200 OK\r\nDate: "));
+        assertTrue(heads.substring(0, firstEnd).endsWith("Content-Length: 3\r\n\r\n"));
+        assertTrue(heads.substring(firstEnd).startsWith("HTTP/1.0 418 I'm a teapot\r\n"));
+        assertTrue(heads.endsWith("X-Custom: yes\r\n\r\n"));
+    }
+
+    @Test
+    void testEncodeHead_LeavesBufferUnchangedWhenFull() {
+        HttpResponse response = new HttpResponse("HTTP/1.1", "body");
+        response.setHeader("X-Long", "x".repeat(200));
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        buffer.put((byte) 'a');
+
+        assertFalse(responder.encodeHead(response, buffer));
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    void testSendResponse_HeadLargerThanInitialBuffer() throws IOException {
+        HttpResponse response = new HttpResponse("HTTP/1.1", "body");
+        response.setHeader("X-Long", "x".repeat(5000));
+
+        responder.sendResponse(response, outputStream);
+
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("X-Long: " + "x".repeat(5000) + "\r\n"));
+        assertTrue(output.endsWith("\r\n\r\nbody"));
+    }
+
+    @Test
+    void testWriteResponse_StreamedBodyIsChunked() throws IOException {
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        response.setHeader("Trailer", "X-Count");
+        response.setBodyWriter(body -> {
+            body.write("Hello, ".getBytes(StandardCharsets.US_ASCII));
+            body.flush();
+            body.write("World!".getBytes(StandardCharsets.US_ASCII));
+            body.addTrailer("X-Count", "2");
+        });
+
+        responder.writeResponse(response, outputStream);
+
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("Transfer-Encoding: chunked\r\n"));
+        assertFalse(output.contains("Content-Length:"));
+        assertTrue(output.endsWith("\r\n\r\n7\r\nHello, \r\n6\r\nWorld!\r\n0\r\nX-Count: 2\r\n\r\n"),
+                "Unexpected response: " + output);
+    }
+
+    @Test
+    void testWriteResponse_FailingWriterIsReported() {
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        response.setBodyWriter(body -> {
+            throw new IllegalStateException("broken");
+        });
+
+        assertThrows(IOException.class, () -> responder.writeResponse(response, outputStream));
+        assertFalse(outputStream.toString(StandardCharsets.UTF_8).contains("0\r\n\r\n"),
+                "A failed body must not look complete");
+    }
 }
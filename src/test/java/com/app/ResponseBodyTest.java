@@ -0,0 +1,123 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class ResponseBodyTest {
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void testSmallWritesAreCollectedIntoOneChunk() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseBody.Chunked body = new ResponseBody.Chunked(out);
+        body.write(bytes("abc"));
+        body.write('d');
+        body.write(bytes("ef"));
+        assertEquals(0, out.size(), "Nothing goes out until a chunk is full or flushed");
+
+        body.close();
+        assertEquals("6\r\nabcdef\r\n0\r\n\r\n", out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testFullChunkIsSentAsItFills() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseBody.Chunked body = new ResponseBody.Chunked(out);
+        byte[] data = new byte[ResponseBody.Chunked.CHUNK_SIZE - 1];
+        body.write(data);
+        body.write(bytes("xy"));
+
+        String sent = out.toString(StandardCharsets.US_ASCII);
+        assertTrue(sent.startsWith("2000\r\n"));
+        assertEquals(6 + ResponseBody.Chunked.CHUNK_SIZE + 2, sent.length());
+
+        body.close();
+        assertTrue(out.toString(StandardCharsets.US_ASCII).endsWith("\r\n1\r\ny\r\n0\r\n\r\n"));
+    }
+
+    @Test
+    void testLargeWriteIsSentAsWholeChunks() throws IOException {
+        List<String> writes = new ArrayList<>();
+        ResponseBody.Chunked body = new ResponseBody.Chunked(new OutputStream() {
+            @Override
+            public void write(int b) {
+                writes.add(String.valueOf((char) b));
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes.add(new String(b, off, len, StandardCharsets.US_ASCII));
+            }
+        });
+        body.write(bytes("a"));
+        body.write(new byte[20000]);
+        assertEquals(2, writes.size(), "Each full chunk goes out in one write, the rest waits");
+        body.close();
+
+        assertEquals(4, writes.size());
+        for (String chunk : writes.subList(0, 2)) {
+            assertTrue(chunk.startsWith("2000\r\n"));
+            assertTrue(chunk.endsWith("\r\n"));
+            assertEquals(6 + ResponseBody.Chunked.CHUNK_SIZE + 2, chunk.length());
+        }
+        assertEquals("e21\r\n", writes.get(2).substring(0, 5));
+        assertEquals(5 + 3617 + 2, writes.get(2).length());
+        assertEquals("0\r\n\r\n", writes.get(3));
+    }
+
+    @Test
+    void testWriteAfterCloseFails() throws IOException {
+        ResponseBody.Chunked body = new ResponseBody.Chunked(new ByteArrayOutputStream());
+        body.close();
+        body.close();
+        assertThrows(IOException.class, () -> body.write(bytes("late")));
+    }
+
+    @Test
+    void testGatherTurnsTrailersIntoHeaders() throws IOException {
+        HttpResponse response = new HttpResponse("HTTP/2");
+        response.setHeader("Trailer", "X-Exit-Code");
+        response.setBodyWriter(body -> {
+            body.write(bytes("output"));
+            body.addTrailer("X-Exit-Code", "0");
+        });
+
+        ResponseBody.Buffered.gather(response);
+
+        assertFalse(response.isStreamed());
+        assertEquals("output", response.getBody());
+        assertEquals("6", response.getHeaders().get("Content-Length"));
+        assertEquals("0", response.getHeaders().get("X-Exit-Code"));
+        assertNull(response.getHeaders().get("Transfer-Encoding"));
+        assertNull(response.getHeaders().get("Trailer"));
+    }
+
+    @Test
+    void testFailedGatherLeavesABodyToReplaceTheStreamedOne() {
+        HttpResponse response = new HttpResponse("HTTP/2");
+        response.setHeader("Trailer", "X-Exit-Code");
+        response.setBodyWriter(body -> {
+            throw new IllegalStateException("boom");
+        });
+
+        IOException e = assertThrows(IOException.class, () -> ResponseBody.Buffered.gather(response));
+        assertTrue(e.getCause() instanceof IllegalStateException, "The writer's failure is wrapped like Responder's");
+
+        response.setBody("Error producing response");
+        assertFalse(response.isStreamed());
+        assertNull(response.getHeaders().get("Transfer-Encoding"));
+        assertNull(response.getHeaders().get("Trailer"));
+        assertEquals("24", response.getHeaders().get("Content-Length"));
+    }
+}
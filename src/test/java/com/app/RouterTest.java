@@ -0,0 +1,120 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+public class RouterTest {
+
+    private static Router.Handler body(String text) {
+        return (request, response) -> response.setBody(text);
+    }
+
+    private static HttpResponse route(Router router, String method, String target) {
+        HttpRequest request = new HttpRequest(method, "HTTP/1.1", target, new HttpHeaders());
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        router.route(request, response);
+        return response;
+    }
+
+    @Test
+    void testRoutesByMethodAndPath() {
+        Router router = Router.builder()
+                .get("/", body("root"))
+                .get("/items", body("list"))
+                .post("/items", body("create"))
+                .get("/items/all", body("all"))
+                .build();
+
+        assertEquals("root", route(router, "GET", "/").getBody());
+        assertEquals("list", route(router, "GET", "/items").getBody());
+        assertEquals("create", route(router, "POST", "/items").getBody());
+        assertEquals("all", route(router, "GET", "/items/all").getBody());
+        assertEquals("list", route(router, "GET", "/items/").getBody(), "A trailing slash is ignored");
+    }
+
+    @Test
+    void testPathParameters() {
+        Router router = Router.builder()
+                .get("/users/{id}", (request, response) -> response.setBody("user " + request.getPathParameter("id")))
+                .get("/users/{id}/posts/{post}", (request, response) -> response.setBody(
+                        request.getPathParameter("id") + ":" + request.getPathParameter("post")))
+                .get("/users/me", body("me"))
+                .build();
+
+        assertEquals("user 42", route(router, "GET", "/users/42").getBody());
+        assertEquals("42:7", route(router, "GET", "/users/42/posts/7?sort=new").getBody());
+        assertEquals("me", route(router, "GET", "/users/me").getBody(), "A literal segment wins over a parameter");
+        assertEquals("me:7", route(router, "GET", "/users/me/posts/7").getBody(),
+                "The parameter is tried when the literal branch has no match");
+        assertEquals("404 NOT FOUND", route(router, "GET", "/users//posts").getStatusCode());
+    }
+
+    @Test
+    void testQueryIsIgnored() {
+        Router router = Router.builder().get("/health", body("ok")).build();
+
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", "/health?x=1", new HttpHeaders());
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        router.route(request, response);
+
+        assertEquals("ok", response.getBody());
+        assertEquals("/health", request.getPath());
+        assertEquals("x=1", request.getQuery());
+    }
+
+    @Test
+    void testMethodNotAllowedAndNotFound() {
+        Router router = Router.builder()
+                .put("/files/{name}", body("stored"))
+                .get("/files/{name}", body("file"))
+                .build();
+
+        HttpResponse notAllowed = route(router, "DELETE", "/files/a.txt");
+        assertEquals("405 Method Not Allowed", notAllowed.getStatusCode());
+        assertEquals("GET, PUT", notAllowed.getHeaders().get(HttpHeaders.ALLOW));
+        assertEquals("GET, PUT", router.getAllowedMethods("/files/b"));
+
+        assertEquals("404 NOT FOUND", route(router, "GET", "/files").getStatusCode());
+        assertEquals("404 NOT FOUND", route(router, "GET", "/files/a/b").getStatusCode());
+        assertEquals("404 NOT FOUND", route(router, "GET", "*").getStatusCode());
+        assertNull(router.getAllowedMethods("/other"));
+    }
+
+    @Test
+    void testAsyncRouteCompletesLater() {
+        CompletableFuture<HttpResponse> pending = new CompletableFuture<>();
+        Router router = Router.builder()
+                .getAsync("/slow", (request, response) -> pending.thenApply(text -> {
+                    response.setBody("slow");
+                    return response;
+                }))
+                .get("/fast", body("fast"))
+                .build();
+
+        HttpResponse response = new HttpResponse("HTTP/1.1");
+        CompletableFuture<HttpResponse> routed = router.route(
+                new HttpRequest("GET", "HTTP/1.1", "/slow", new HttpHeaders()), response);
+        assertFalse(routed.isDone(), "The router does not wait for the handler");
+
+        pending.complete(response);
+        assertSame(response, routed.join());
+        assertEquals("slow", response.getBody());
+
+        assertTrue(router.route(new HttpRequest("GET", "HTTP/1.1", "/fast", new HttpHeaders()),
+                new HttpResponse("HTTP/1.1")).isDone(), "A plain handler has answered on return");
+        assertEquals("GET", router.getAllowedMethods("/slow"));
+    }
+
+    @Test
+    void testRejectsConflictingRoutes() {
+        Router.Builder builder = Router.builder().get("/a/{id}", body("a"));
+
+        assertThrows(IllegalArgumentException.class, () -> builder.get("/a/{id}", body("again")));
+        assertThrows(IllegalArgumentException.class, () -> builder.post("/a/{name}", body("renamed")));
+        assertThrows(IllegalArgumentException.class, () -> builder.get("a", body("relative")));
+        assertThrows(IllegalArgumentException.class, () -> builder.get("/a//b", body("empty")));
+    }
+}
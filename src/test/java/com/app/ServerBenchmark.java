@@ -0,0 +1,138 @@
+package com.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for comparing server transports. Not a unit test: run it with
+ *
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.app.ServerBenchmark -Dexec.args="nio 500 200"
+ * </pre>
+ *
+ * <p>
+ * Arguments are the transport mode (blocking or nio), the number of concurrent
+ * keep-alive connections and the number of requests sent on each. Every client
+ * connects first and then all start sending together, so the blocking
+ * transport's limit of one pooled thread per connection shows up as queueing.
+ * </p>
+ */
+public class ServerBenchmark {
+    private static final byte[] REQUEST = ("GET / HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    public static void main(String[] args) throws Exception {
+        TransportMode mode = args.length > 0 ? TransportMode.valueOf(args[0].toUpperCase()) : TransportMode.NIO;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int requestsPerConnection = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        ServerConfig config = new ServerConfig();
+        config.setTransportMode(mode);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Server server = new Server(config);
+        server.start();
+        Thread.sleep(500);
+
+        long[] latencies = new long[connections * requestsPerConnection];
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(connections);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> clients = new ArrayList<>();
+
+        for (int c = 0; c < connections; c++) {
+            Thread client = new Thread(() -> {
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress("localhost", 8080));
+                    socket.setSoTimeout(60000);
+                    connected.countDown();
+                    go.await();
+
+                    OutputStream out = socket.getOutputStream();
+                    InputStream in = socket.getInputStream();
+                    for (int r = 0; r < requestsPerConnection; r++) {
+                        long start = System.nanoTime();
+                        out.write(REQUEST);
+                        out.flush();
+                        readResponse(in);
+                        latencies[completed.getAndIncrement()] = System.nanoTime() - start;
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    connected.countDown();
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        server.stop();
+
+        int count = completed.get();
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        console.printf("mode=%s connections=%d requests=%d failures=%d%n", mode, connections, count,
+                failures.get());
+        console.printf("throughput: %.0f req/s%n", count / (elapsed / 1e9));
+        if (count > 0) {
+            console.printf("latency p50=%.2fms p99=%.2fms max=%.2fms%n",
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), sorted[count - 1] / 1e6);
+        }
+        System.exit(0);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))] / 1e6;
+    }
+
+    /**
+     * Reads one response, relying on Content-Length to find the end of the body.
+     */
+    private static void readResponse(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            head.append((char) b);
+            if (head.length() >= 4 && head.substring(head.length() - 4).equals("\r\n\r\n")) {
+                break;
+            }
+        }
+        if (b == -1) {
+            throw new IOException("Connection closed mid-response");
+        }
+
+        int contentLength = 0;
+        for (String line : head.toString().split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+        if (in.readNBytes(contentLength).length != contentLength) {
+            throw new IOException("Connection closed mid-body");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class ServerClockTest {
+
+    @Test
+    void testFormatsImfFixdate() {
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", ServerClock.formatHttpDate(784111777000L));
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", ServerClock.formatHttpDate(0));
+    }
+
+    @Test
+    void testReadingsTrackTheSystemClock() throws InterruptedException {
+        long monotonic = ServerClock.monotonicMillis();
+        long before = System.currentTimeMillis();
+        long current = ServerClock.currentTimeMillis();
+        assertTrue(Math.abs(before - current) < 1000, "Wall clock should lag by at most a tick");
+
+        Thread.sleep(ServerClock.TICK_MILLIS * 5);
+        assertTrue(ServerClock.monotonicMillis() > monotonic, "The clock should advance every tick");
+    }
+
+    @Test
+    void testDateIsSharedWithinASecond() {
+        String date = ServerClock.httpDate();
+        assertTrue(date.endsWith(" GMT"));
+        assertEquals(29, date.length());
+
+        byte[] bytes = ServerClock.httpDateBytes(date);
+        if (bytes != null) {
+            // Unless the second turned over in between
+            assertArrayEquals(date.getBytes(StandardCharsets.US_ASCII), bytes);
+        }
+        assertNull(ServerClock.httpDateBytes(new String(date)), "Only the clock's own instance is cached");
+    }
+}
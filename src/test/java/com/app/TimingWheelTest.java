@@ -0,0 +1,98 @@
+package com.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class TimingWheelTest {
+
+    @Test
+    void testTaskRunsOnceDelayHasPassed() {
+        TimingWheel wheel = new TimingWheel(100, 8, 0);
+        AtomicInteger runs = new AtomicInteger();
+        TimingWheel.Timeout timeout = wheel.schedule(runs::incrementAndGet, 250, 0);
+
+        assertEquals(0, wheel.advance(200));
+        assertEquals(0, runs.get());
+
+        assertEquals(1, wheel.advance(300));
+        assertEquals(1, runs.get());
+        assertTrue(timeout.isExpired());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testCancelledTaskNeverRuns() {
+        TimingWheel wheel = new TimingWheel(100, 8, 0);
+        AtomicInteger runs = new AtomicInteger();
+        TimingWheel.Timeout timeout = wheel.schedule(runs::incrementAndGet, 100, 0);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel(), "A timeout can only be cancelled once");
+        assertEquals(0, wheel.size());
+
+        wheel.advance(1000);
+        assertEquals(0, runs.get());
+        assertTrue(timeout.isCancelled());
+    }
+
+    @Test
+    void testDeadlineBeyondOneTurnWaitsForItsRound() {
+        // 8 buckets of 100 ms cover 800 ms per turn
+        TimingWheel wheel = new TimingWheel(100, 8, 0);
+        AtomicInteger runs = new AtomicInteger();
+        wheel.schedule(runs::incrementAndGet, 2000, 0);
+
+        wheel.advance(1000);
+        wheel.advance(1900);
+        assertEquals(0, runs.get(), "The task shares a bucket with earlier ticks but is rounds away");
+
+        wheel.advance(2100);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testTasksExpireInDeadlineOrder() {
+        TimingWheel wheel = new TimingWheel(10, 4, 0);
+        List<Integer> order = new ArrayList<>();
+        wheel.schedule(() -> order.add(3), 300, 0);
+        wheel.schedule(() -> order.add(1), 50, 0);
+        wheel.schedule(() -> order.add(2), 120, 0);
+
+        for (long now = 0; now <= 400; now += 10) {
+            wheel.advance(now);
+        }
+        assertEquals(List.of(1, 2, 3), order);
+    }
+
+    @Test
+    void testScheduleAfterQuietPeriodCountsFromNow() {
+        TimingWheel wheel = new TimingWheel(100, 8, 0);
+        wheel.advance(100);
+
+        // The wheel has not been advanced for ten seconds
+        AtomicInteger runs = new AtomicInteger();
+        wheel.schedule(runs::incrementAndGet, 500, 10_000);
+
+        wheel.advance(10_100);
+        assertEquals(0, runs.get());
+        wheel.advance(10_600);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testWheelSizeRoundsUpToPowerOfTwo() {
+        TimingWheel wheel = new TimingWheel(100, 5, 0);
+        AtomicInteger runs = new AtomicInteger();
+        wheel.schedule(runs::incrementAndGet, 700, 0);
+
+        wheel.advance(600);
+        assertEquals(0, runs.get());
+        wheel.advance(800);
+        assertEquals(1, runs.get());
+    }
+}